@@ -0,0 +1,87 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openehealth.ipf.boot.atna;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.openehealth.ipf.commons.audit.queue.AuditMessageQueue;
+import org.openehealth.ipf.commons.audit.queue.AuditMessageQueueMetrics;
+import org.openehealth.ipf.commons.audit.queue.BoundedAsynchronousAuditMessageQueue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+/**
+ * Binds the {@link AuditMessageQueueMetrics} of a {@link BoundedAsynchronousAuditMessageQueue} to a
+ * Micrometer {@link MeterRegistry}. Other audit message queues do not provide any metrics.
+ */
+public class AuditMessageQueueMeterBinder implements MeterBinder {
+
+    private static final String PREFIX = "ipf.atna.queue.";
+
+    private final AuditMessageQueue auditMessageQueue;
+
+    public AuditMessageQueueMeterBinder(AuditMessageQueue auditMessageQueue) {
+        this.auditMessageQueue = auditMessageQueue;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if (auditMessageQueue instanceof BoundedAsynchronousAuditMessageQueue) {
+            var metrics = ((BoundedAsynchronousAuditMessageQueue) auditMessageQueue).getMetrics();
+
+            Gauge.builder(PREFIX + "depth", metrics, AuditMessageQueueMetrics::getDepth)
+                    .description("Number of audit records waiting to be sent")
+                    .register(registry);
+            Gauge.builder(PREFIX + "capacity", metrics, AuditMessageQueueMetrics::getCapacity)
+                    .description("Maximum number of audit records waiting to be sent")
+                    .register(registry);
+
+            counter(registry, metrics, "dropped", AuditMessageQueueMetrics::getDroppedCount,
+                    "Audit records dropped because the queue was full");
+            counter(registry, metrics, "spilled", AuditMessageQueueMetrics::getSpilledCount,
+                    "Audit records spilled to disk because the queue was full");
+            counter(registry, metrics, "caller.runs", AuditMessageQueueMetrics::getCallerRunsCount,
+                    "Audit records sent by the caller because the queue was full");
+            counter(registry, metrics, "failed", AuditMessageQueueMetrics::getFailedCount,
+                    "Audit records that could not be sent");
+
+            FunctionTimer.builder(PREFIX + "enqueue", metrics,
+                            AuditMessageQueueMetrics::getEnqueuedCount,
+                            m -> m.getTotalEnqueueTime(TimeUnit.NANOSECONDS),
+                            TimeUnit.NANOSECONDS)
+                    .description("Time spent for handing over audit records to the queue")
+                    .register(registry);
+            FunctionTimer.builder(PREFIX + "send", metrics,
+                            AuditMessageQueueMetrics::getSendCount,
+                            m -> m.getTotalSendTime(TimeUnit.NANOSECONDS),
+                            TimeUnit.NANOSECONDS)
+                    .description("Time spent for sending audit records")
+                    .register(registry);
+        }
+    }
+
+    private static void counter(MeterRegistry registry, AuditMessageQueueMetrics metrics, String name,
+                                ToLongFunction<AuditMessageQueueMetrics> function, String description) {
+        FunctionCounter.builder(PREFIX + name, metrics, m -> function.applyAsLong(m))
+                .description(description)
+                .register(registry);
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openehealth.ipf.boot.atna;
+
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.openehealth.ipf.commons.audit.queue.AuditMessageQueue;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Exposes the metrics of the audit message queue, if available, to Micrometer
+ */
+@ConditionalOnClass({MeterBinder.class})
+@Configuration
+@AutoConfigureAfter(IpfAtnaAutoConfiguration.class)
+public class IpfAtnaMetricsAutoConfiguration {
+
+    @Bean
+    @ConditionalOnBean(AuditMessageQueue.class)
+    @ConditionalOnMissingBean
+    AuditMessageQueueMeterBinder auditMessageQueueMeterBinder(AuditMessageQueue auditMessageQueue) {
+        return new AuditMessageQueueMeterBinder(auditMessageQueue);
+    }
+
+}
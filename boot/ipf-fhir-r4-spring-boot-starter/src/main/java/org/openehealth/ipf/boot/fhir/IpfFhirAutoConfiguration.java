@@ -128,6 +128,9 @@ public class IpfFhirAutoConfiguration {
         pagingProvider.setDefaultPageSize(servletProperties.getDefaultPageSize());
         pagingProvider.setMaximumPageSize(servletProperties.getMaxPageSize());
         pagingProvider.setDistributed(servletProperties.isDistributedPagingProvider());
+        pagingProvider.setCompressed(servletProperties.isDistributedPagingCompressed());
+        pagingProvider.setTimeToLive(servletProperties.getDistributedPagingTimeToLive());
+        pagingProvider.setPrefetchChunks(servletProperties.getDistributedPagingPrefetchChunks());
         return pagingProvider;
     }
 
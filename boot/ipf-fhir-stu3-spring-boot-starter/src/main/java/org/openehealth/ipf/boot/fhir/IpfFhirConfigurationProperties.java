@@ -27,6 +27,7 @@ import org.springframework.web.cors.CorsConfiguration;
 
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Pattern;
+import java.time.Duration;
 import java.util.*;
 
 /**
@@ -133,11 +134,32 @@ public class IpfFhirConfigurationProperties {
 
         /**
          * Whether the Paging Provider cache is expected to be distributed, so that serialization of result
-         * bundles is necessary. In this case, FHIR endpoints must not use lazy-loading of results.
+         * bundles is necessary. In this case, the results are stored in page-sized chunks.
          */
         @Getter @Setter
         private boolean distributedPagingProvider = false;
 
+        /**
+         * Whether the result chunks of a distributed Paging Provider shall be compressed
+         */
+        @Getter @Setter
+        private boolean distributedPagingCompressed = false;
+
+        /**
+         * Time after which results of a distributed Paging Provider expire. If not set,
+         * expiry is left to the configuration of the fhirPagingCache cache.
+         */
+        @Getter @Setter
+        private Duration distributedPagingTimeToLive;
+
+        /**
+         * Number of result chunks of a distributed Paging Provider which are stored right away. Other chunks
+         * are stored when requested on the node which has performed the search, so that other nodes cannot
+         * serve them before.
+         */
+        @Getter @Setter
+        private int distributedPagingPrefetchChunks = 0;
+
         /**
          * Enable server-side request logging
          */
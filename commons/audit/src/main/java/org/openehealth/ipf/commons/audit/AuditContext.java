@@ -25,6 +25,7 @@ import org.openehealth.ipf.commons.audit.queue.AuditMessageQueue;
 import org.openehealth.ipf.commons.audit.types.AuditSource;
 
 import java.net.InetAddress;
+import java.util.Objects;
 import java.util.stream.Stream;
 
 /**
@@ -104,15 +105,20 @@ public interface AuditContext {
     }
 
     /**
-     * Sends out the (potentially post-processed) audit messages as configured in this audit context
+     * Sends out the (potentially post-processed) audit messages as configured in this audit context.
+     * Messages that are suppressed by the post-processor are not sent.
      *
      * @param messages audit messages to be sent
      */
     default void audit(AuditMessage... messages) {
         if (isAuditEnabled() && messages != null) {
-            getAuditMessageQueue().audit(this, Stream.of(messages)
+            var processed = Stream.of(messages)
                     .map(getAuditMessagePostProcessor())
-                    .toArray(AuditMessage[]::new));
+                    .filter(Objects::nonNull)
+                    .toArray(AuditMessage[]::new);
+            if (processed.length > 0) {
+                getAuditMessageQueue().audit(this, processed);
+            }
         }
     }
 
@@ -26,6 +26,10 @@ import java.util.function.Function;
  */
 public interface AuditMessagePostProcessor extends Function<AuditMessage, AuditMessage> {
 
+    /**
+     * @param auditMessage audit message to be post-processed
+     * @return post-processed audit message, or null if the audit message shall not be sent (since 4.5)
+     */
     @Override
     AuditMessage apply(AuditMessage auditMessage);
 
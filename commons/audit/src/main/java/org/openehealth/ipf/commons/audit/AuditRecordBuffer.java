@@ -0,0 +1,176 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.openehealth.ipf.commons.audit;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reusable byte buffer holding a serialized, UTF-8 encoded audit record. Space is reserved in front
+ * of the record, so that transport headers (e.g. the syslog header and the RFC 5425 length prefix)
+ * can be prepended without copying the record. The resulting frame is exposed as {@link ByteBuffer}
+ * that wraps the internal array.
+ * <p>
+ * Buffers are obtained by {@link #acquire()} and must be {@link #release() released} afterwards. The
+ * content of a buffer is only valid until it is released, so consumers that keep the audit record
+ * beyond that must copy it, e.g. by calling {@link #toString()}.
+ * </p>
+ *
+ * @since 4.5
+ */
+public final class AuditRecordBuffer extends OutputStream {
+
+    /**
+     * Space reserved for headers. Syslog header fields are limited to 255 + 48 + 128 + 32 ASCII
+     * characters plus the timestamp, so prepending headers usually does not need to move the record.
+     */
+    static final int HEADROOM = 1024;
+    static final int INITIAL_CAPACITY = 8192;
+
+    /**
+     * Buffers larger than this are not kept for reuse
+     */
+    static final int MAX_POOLED_CAPACITY = 1024 * 1024;
+
+    private static final ThreadLocal<AuditRecordBuffer> POOL = ThreadLocal.withInitial(AuditRecordBuffer::new);
+
+    private byte[] buffer;
+    private int start;
+    private int end;
+    private int frameStart;
+    private boolean inUse;
+
+    AuditRecordBuffer() {
+        this.buffer = new byte[HEADROOM + INITIAL_CAPACITY];
+        clear();
+    }
+
+    /**
+     * @return an empty buffer. A buffer cached for the current thread is returned if it is not in use.
+     */
+    public static AuditRecordBuffer acquire() {
+        var result = POOL.get();
+        if (result.inUse) {
+            result = new AuditRecordBuffer();
+        }
+        result.inUse = true;
+        return result;
+    }
+
+    /**
+     * Returns this buffer to the pool. The buffer must not be used afterwards.
+     */
+    public void release() {
+        inUse = false;
+        clear();
+        if (buffer.length > MAX_POOLED_CAPACITY && POOL.get() == this) {
+            POOL.remove();
+        }
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(1);
+        buffer[end++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        ensureCapacity(len);
+        System.arraycopy(b, off, buffer, end, len);
+        end += len;
+    }
+
+    /**
+     * @return length of the audit record without any prepended headers
+     */
+    public int length() {
+        return end - start;
+    }
+
+    /**
+     * Removes trailing whitespace from the audit record
+     */
+    public void trimTrailingWhitespace() {
+        while (end > start && (buffer[end - 1] & 0xff) <= ' ') {
+            end--;
+        }
+    }
+
+    /**
+     * Removes all headers prepended to the audit record
+     */
+    public void resetFrame() {
+        frameStart = start;
+    }
+
+    /**
+     * Prepends the bytes to the current frame. If the reserved space is exhausted, the content
+     * is moved once to make room.
+     *
+     * @param bytes bytes to prepend
+     */
+    public void prependToFrame(byte[] bytes) {
+        if (bytes.length > frameStart) {
+            var shift = bytes.length - frameStart + HEADROOM;
+            var newBuffer = new byte[buffer.length + shift];
+            System.arraycopy(buffer, frameStart, newBuffer, frameStart + shift, end - frameStart);
+            buffer = newBuffer;
+            start += shift;
+            end += shift;
+            frameStart += shift;
+        }
+        frameStart -= bytes.length;
+        System.arraycopy(bytes, 0, buffer, frameStart, bytes.length);
+    }
+
+    /**
+     * @return the audit record including prepended headers. The returned buffer shares the
+     * content of this buffer.
+     */
+    public ByteBuffer frame() {
+        return ByteBuffer.wrap(buffer, frameStart, end - frameStart).slice();
+    }
+
+    /**
+     * @return a copy of the audit record without any prepended headers
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOfRange(buffer, start, end);
+    }
+
+    /**
+     * @return the audit record without any prepended headers, decoded as UTF-8
+     */
+    @Override
+    public String toString() {
+        return new String(buffer, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    private void clear() {
+        start = HEADROOM;
+        end = HEADROOM;
+        frameStart = HEADROOM;
+    }
+
+    private void ensureCapacity(int additional) {
+        if (end + additional > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, end + additional));
+        }
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.openehealth.ipf.commons.audit;
+
+import org.openehealth.ipf.commons.audit.codes.EventOutcomeIndicator;
+import org.openehealth.ipf.commons.audit.model.AuditMessage;
+import org.openehealth.ipf.commons.audit.types.EventId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Post-processor that suppresses audit messages which are identical to a message that has been sent within a
+ * configurable time window, apart from the event date time. This is intended for high-frequency transactions
+ * (e.g. PDQ or PIX queries) that produce many identical audit events.
+ * <p>
+ * The {@link Policy} is configured per {@link EventId}. By default, all messages are passed, so only events
+ * that are explicitly configured may be suppressed. Messages with an outcome other than
+ * {@link EventOutcomeIndicator#Success} or without event ID are never suppressed.
+ * </p>
+ * <p>
+ * With {@link Policy#AGGREGATE}, the number of messages suppressed in the previous window is appended to the
+ * event outcome description of the next message with the same content that is sent. If no such message
+ * arrives, the last suppressed message is sent with this description after the window has expired, or
+ * at the latest when the post-processor is {@link #close() closed}. This requires the
+ * {@link #setAuditContext(AuditContext) audit context} to be set.
+ * </p>
+ *
+ * @since 4.5
+ */
+public class DeduplicatingAuditMessagePostProcessor implements AuditMessagePostProcessor, AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DeduplicatingAuditMessagePostProcessor.class);
+
+    public enum Policy {
+        /**
+         * Always send the message
+         */
+        PASS,
+        /**
+         * Drop identical messages within the time window
+         */
+        DEDUPLICATE,
+        /**
+         * Drop identical messages within the time window, and report their number with the next message
+         */
+        AGGREGATE
+    }
+
+    private final Clock clock;
+    private final Map<List<String>, Policy> policies = new ConcurrentHashMap<>();
+    private final Map<Fingerprint, Window> windows = new ConcurrentHashMap<>();
+    private Policy defaultPolicy = Policy.PASS;
+    private long windowMillis = 10000;
+    private int maxEntries = 10000;
+    private volatile AuditContext auditContext;
+    private ScheduledExecutorService flusher;
+
+    public DeduplicatingAuditMessagePostProcessor() {
+        this(Clock.systemUTC());
+    }
+
+    DeduplicatingAuditMessagePostProcessor(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Sets the policy for audit messages with the given event ID
+     *
+     * @param eventId event ID
+     * @param policy  policy
+     */
+    public void setPolicy(EventId eventId, Policy policy) {
+        policies.put(policyKey(eventId), requireNonNull(policy));
+    }
+
+    /**
+     * Sets the policies for audit messages per event ID
+     *
+     * @param policies policies per event ID
+     */
+    public void setPolicies(Map<? extends EventId, Policy> policies) {
+        policies.forEach(this::setPolicy);
+    }
+
+    /**
+     * Sets the policy for audit messages with event IDs that have no explicit policy. Defaults to {@link Policy#PASS}.
+     *
+     * @param defaultPolicy policy for audit messages with event IDs that have no explicit policy
+     */
+    public void setDefaultPolicy(Policy defaultPolicy) {
+        this.defaultPolicy = requireNonNull(defaultPolicy);
+    }
+
+    /**
+     * Sets the time window in which identical messages are suppressed. Defaults to 10 seconds.
+     *
+     * @param window time window in which identical messages are suppressed
+     */
+    public void setWindow(Duration window) {
+        this.windowMillis = window.toMillis();
+    }
+
+    /**
+     * Sets the maximum number of distinct messages that are tracked. If exceeded, messages are passed
+     * until the time window of tracked messages has elapsed. Defaults to 10000.
+     *
+     * @param maxEntries maximum number of distinct messages that are tracked
+     */
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Sets the audit context used for sending the number of suppressed messages if no further identical
+     * message arrives with {@link Policy#AGGREGATE}. Usually, this is the audit context this post-processor
+     * is configured for. If not set, the number is only logged in this case.
+     *
+     * @param auditContext audit context
+     */
+    public void setAuditContext(AuditContext auditContext) {
+        this.auditContext = auditContext;
+    }
+
+    @Override
+    public AuditMessage apply(AuditMessage auditMessage) {
+        var eventIdentification = auditMessage.getEventIdentification();
+        if (eventIdentification == null ||
+                eventIdentification.getEventID() == null ||
+                eventIdentification.getEventOutcomeIndicator() != EventOutcomeIndicator.Success) {
+            return auditMessage;
+        }
+        var policy = policies.getOrDefault(policyKey(eventIdentification.getEventID()), defaultPolicy);
+        if (policy == Policy.PASS) {
+            return auditMessage;
+        }
+        var now = clock.millis();
+        var fingerprint = new Fingerprint(auditMessage);
+        if (windows.size() >= maxEntries && !windows.containsKey(fingerprint)) {
+            flushExpired();
+            windows.values().removeIf(window -> !window.aggregate && window.isExpired(now));
+            if (windows.size() >= maxEntries) {
+                return auditMessage;
+            }
+        }
+        var aggregate = policy == Policy.AGGREGATE;
+        var expired = new Window[1];
+        var created = new Window(now, aggregate);
+        var window = windows.compute(fingerprint, (key, current) -> {
+            if (current == null || current.isExpired(now)) {
+                expired[0] = current;
+                return created;
+            }
+            current.suppressed++;
+            if (current.aggregate) {
+                current.lastSuppressed = copy(auditMessage);
+            }
+            return current;
+        });
+        if (window != created) {
+            if (aggregate) {
+                ensureFlusherStarted();
+            }
+            return null;
+        }
+        var previous = expired[0];
+        if (previous != null && previous.suppressed > 0) {
+            LOG.debug("Suppressed {} audit messages with event ID {} since {}",
+                    previous.suppressed, eventIdentification.getEventID().getCode(), Instant.ofEpochMilli(previous.start));
+            if (aggregate) {
+                addSuppressedCount(auditMessage, previous.suppressed, previous.start);
+            }
+        }
+        return auditMessage;
+    }
+
+    /**
+     * Sends the last suppressed message of each expired window with {@link Policy#AGGREGATE}, reporting the
+     * number of messages suppressed before. This is called periodically, so that the number is not lost if no
+     * further identical message arrives.
+     */
+    public void flushExpired() {
+        flush(false);
+    }
+
+    /**
+     * Stops the periodic flushing and sends the pending numbers of suppressed messages of all windows
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (flusher != null) {
+                flusher.shutdownNow();
+                flusher = null;
+            }
+        }
+        flush(true);
+    }
+
+    private void flush(boolean all) {
+        var now = clock.millis();
+        for (var entry : windows.entrySet()) {
+            var window = entry.getValue();
+            if (window.aggregate && (all || window.isExpired(now))) {
+                // Only the thread that removes the window reports it
+                var removed = windows.remove(entry.getKey(), window);
+                if (removed && window.suppressed > 0) {
+                    send(window);
+                }
+            }
+        }
+    }
+
+    private void send(Window window) {
+        var auditMessage = window.lastSuppressed;
+        // The last suppressed message carries the number of messages suppressed before
+        if (window.suppressed > 1) {
+            addSuppressedCount(auditMessage, window.suppressed - 1, window.start);
+        }
+        var context = auditContext;
+        if (context == null) {
+            LOG.info("Suppressed {} audit messages with event ID {} since {}",
+                    window.suppressed, auditMessage.getEventIdentification().getEventID().getCode(), Instant.ofEpochMilli(window.start));
+        } else if (context.isAuditEnabled()) {
+            try {
+                // Bypass post-processing, as the message has been processed already
+                context.getAuditMessageQueue().audit(context, auditMessage);
+            } catch (Exception e) {
+                context.getAuditExceptionHandler().handleException(context, e, auditMessage.toString());
+            }
+        }
+    }
+
+    private synchronized void ensureFlusherStarted() {
+        if (flusher == null) {
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                var thread = new Thread(runnable, "ipf-audit-deduplication-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            var interval = Math.max(windowMillis / 2, 1);
+            flusher.scheduleWithFixedDelay(this::flushExpired, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static void addSuppressedCount(AuditMessage auditMessage, int suppressed, long since) {
+        var eventIdentification = auditMessage.getEventIdentification();
+        var description = String.format("%d identical events suppressed since %s", suppressed, Instant.ofEpochMilli(since));
+        var current = eventIdentification.getEventOutcomeDescription();
+        eventIdentification.setEventOutcomeDescription(current == null ? description : current + " (" + description + ")");
+    }
+
+    /**
+     * The suppressed message is owned by the caller, so a deep copy is kept for sending it later
+     */
+    private static AuditMessage copy(AuditMessage auditMessage) {
+        try {
+            var bytes = new ByteArrayOutputStream();
+            try (var out = new ObjectOutputStream(bytes)) {
+                out.writeObject(auditMessage);
+            }
+            try (var in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                return (AuditMessage) in.readObject();
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            LOG.debug("Could not copy suppressed audit message, keeping the original: {}", e.getMessage());
+            return auditMessage;
+        }
+    }
+
+    private static List<String> policyKey(EventId eventId) {
+        return Arrays.asList(eventId.getCode(), eventId.getCodeSystemName());
+    }
+
+    private final class Window {
+
+        private final long start;
+        private final boolean aggregate;
+        private int suppressed;
+        private AuditMessage lastSuppressed;
+
+        private Window(long start, boolean aggregate) {
+            this.start = start;
+            this.aggregate = aggregate;
+        }
+
+        private boolean isExpired(long now) {
+            return now - start >= windowMillis;
+        }
+    }
+
+    /**
+     * Snapshot of the content of an audit message, excluding the event date time
+     */
+    private static final class Fingerprint {
+
+        private final List<Object> content;
+        private final int hashCode;
+
+        private Fingerprint(AuditMessage auditMessage) {
+            var eventIdentification = auditMessage.getEventIdentification();
+            this.content = Arrays.asList(
+                    eventIdentification.getEventID().getCode(),
+                    eventIdentification.getEventID().getCodeSystemName(),
+                    eventIdentification.getEventActionCode(),
+                    eventIdentification.getEventOutcomeDescription(),
+                    List.copyOf(eventIdentification.getEventTypeCode()),
+                    List.copyOf(eventIdentification.getPurposesOfUse()),
+                    auditMessage.getAuditSourceIdentification(),
+                    List.copyOf(auditMessage.getActiveParticipants()),
+                    List.copyOf(auditMessage.getParticipantObjectIdentifications()));
+            this.hashCode = content.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            var that = (Fingerprint) o;
+            return hashCode == that.hashCode && content.equals(that.content);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -19,8 +19,11 @@ package org.openehealth.ipf.commons.audit.marshal;
 import org.openehealth.ipf.commons.audit.model.AuditMessage;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Strategy for marshalling an {@link AuditMessage} into a serialized format. The primary
@@ -33,6 +36,22 @@ public interface SerializationStrategy {
 
     void marshal(AuditMessage auditMessage, Writer writer, boolean pretty) throws IOException;
 
+    /**
+     * Marshals the audit message as UTF-8 encoded bytes into the output stream. Implementations should
+     * override this method if they can write the bytes directly without going through a {@link Writer}.
+     *
+     * @param auditMessage audit message
+     * @param outputStream output stream, not closed by this method
+     * @param pretty       whether to indent the output
+     * @throws IOException if writing fails
+     * @since 4.5
+     */
+    default void marshal(AuditMessage auditMessage, OutputStream outputStream, boolean pretty) throws IOException {
+        var writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+        marshal(auditMessage, writer, pretty);
+        writer.flush();
+    }
+
     default String marshal(AuditMessage auditMessage, boolean pretty) {
         try {
             var writer = new StringWriter();
@@ -25,6 +25,11 @@ import java.io.Writer;
 /**
  * Uses a singleton instance of the most recent DICOM version that has relevant changes to
  * the audit message format.
+ * <p>
+ * The streaming {@link #STREAMING_INSTANCE} can be configured as serialization strategy of the audit context
+ * instead. It writes equivalent XML without building an element tree, but its output is not byte-identical,
+ * e.g. regarding whitespace, line separators and the escaping of attribute values.
+ * </p>
  *
  * @author Christian Ohr
  * @since 3.5
@@ -33,6 +38,13 @@ public class Current implements SerializationStrategy {
 
     public static final DICOM2017c INSTANCE = new DICOM2017c();
 
+    /**
+     * Streaming serializer, to be configured explicitly
+     *
+     * @since 4.5
+     */
+    public static final StaxDICOM2017c STREAMING_INSTANCE = new StaxDICOM2017c();
+
     public static String toString(AuditMessage auditMessage, boolean pretty) {
         return INSTANCE.marshal(auditMessage, pretty);
     }
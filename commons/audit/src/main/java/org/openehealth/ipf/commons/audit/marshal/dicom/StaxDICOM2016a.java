@@ -0,0 +1,335 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.openehealth.ipf.commons.audit.marshal.dicom;
+
+import org.openehealth.ipf.commons.audit.marshal.SerializationStrategy;
+import org.openehealth.ipf.commons.audit.model.*;
+import org.openehealth.ipf.commons.audit.types.AuditSource;
+import org.openehealth.ipf.commons.audit.types.CodedValueType;
+import org.openehealth.ipf.commons.audit.types.EnumeratedValueSet;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.openehealth.ipf.commons.audit.XMLNames.*;
+
+/**
+ * Streaming variant of {@link DICOM2016a} that writes the audit message directly to a StAX
+ * {@link XMLStreamWriter} without building an intermediate JDOM tree. When marshalling into
+ * an {@link OutputStream}, the UTF-8 encoded bytes are written without an intermediate String.
+ * <p>
+ * The XML is equivalent to the one written by {@link DICOM2016a}, but not byte-identical: text is written
+ * as is instead of being trimmed and normalized, lines of pretty output are separated by <code>\n</code>
+ * instead of <code>\r\n</code>, empty elements are closed without a space and line breaks in attribute
+ * values are not escaped. Illegal XML characters are not rejected. Therefore, this serializer is not used
+ * by default and must be configured explicitly as serialization strategy of the
+ * {@link org.openehealth.ipf.commons.audit.DefaultAuditContext audit context}.
+ * </p>
+ *
+ * @since 4.5
+ */
+public class StaxDICOM2016a implements SerializationStrategy {
+
+    private static final XMLOutputFactory XML_OUTPUT_FACTORY = XMLOutputFactory.newFactory();
+
+    @Override
+    public void marshal(AuditMessage auditMessage, Writer writer, boolean pretty) throws IOException {
+        try {
+            serialize(auditMessage, XML_OUTPUT_FACTORY.createXMLStreamWriter(writer), pretty);
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void marshal(AuditMessage auditMessage, OutputStream outputStream, boolean pretty) throws IOException {
+        try {
+            serialize(auditMessage, XML_OUTPUT_FACTORY.createXMLStreamWriter(outputStream, StandardCharsets.UTF_8.name()), pretty);
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    // Omit XML declaration, because this is done as part of the RFC5424Protocol
+    private void serialize(AuditMessage auditMessage, XMLStreamWriter xmlStreamWriter, boolean pretty) throws XMLStreamException {
+        var writer = new DicomWriter(xmlStreamWriter, pretty);
+        writer.start(AUDIT_MESSAGE);
+        eventIdentification(writer, auditMessage.getEventIdentification());
+        for (var activeParticipant : auditMessage.getActiveParticipants()) {
+            activeParticipant(writer, activeParticipant);
+        }
+        auditSourceIdentification(writer, auditMessage.getAuditSourceIdentification());
+        for (var poi : auditMessage.getParticipantObjectIdentifications()) {
+            participantObjectIdentification(writer, poi);
+        }
+        writer.end();
+        xmlStreamWriter.flush();
+        xmlStreamWriter.close();
+    }
+
+    protected void activeParticipant(DicomWriter writer, ActiveParticipantType activeParticipant) throws XMLStreamException {
+        var roleIdCodes = activeParticipant.getRoleIDCodes();
+        writer.start(ACTIVE_PARTICIPANT, (roleIdCodes != null && !roleIdCodes.isEmpty()) || activeParticipant.getMediaType() != null);
+        writer.attribute(USER_ID, activeParticipant.getUserID());
+        writer.attribute(ALTERNATIVE_USER_ID, activeParticipant.getAlternativeUserID());
+        writer.attribute(USER_NAME, activeParticipant.getUserName());
+        writer.attribute(USER_IS_REQUESTOR, Boolean.toString(activeParticipant.isUserIsRequestor()));
+        writer.attribute(NETWORK_ACCESS_POINT_ID, activeParticipant.getNetworkAccessPointID());
+        writer.attribute(NETWORK_ACCESS_POINT_TYPE_CODE, activeParticipant.getNetworkAccessPointTypeCode());
+        // RoleIDCode and MediaIdentifier are in a sequence so they should be written
+        // in exactly this order
+        if (roleIdCodes != null) {
+            for (var roleIdCode : roleIdCodes) {
+                codedValueType(writer, ROLE_ID_CODE, roleIdCode);
+            }
+        }
+        if (activeParticipant.getMediaType() != null) {
+            writer.start(MEDIA_IDENTIFIER);
+            codedValueType(writer, MEDIA_TYPE, activeParticipant.getMediaType());
+            writer.end();
+        }
+        writer.end();
+    }
+
+    protected void eventIdentification(DicomWriter writer, EventIdentificationType eventIdentification) throws XMLStreamException {
+        if (eventIdentification == null) {
+            writer.start(EVENT_IDENTIFICATION, false);
+            writer.end();
+            return;
+        }
+        writer.start(EVENT_IDENTIFICATION, eventIdentification.getEventID() != null ||
+                !eventIdentification.getEventTypeCode().isEmpty() ||
+                eventIdentification.getEventOutcomeDescription() != null ||
+                !eventIdentification.getPurposesOfUse().isEmpty());
+        writer.attribute(EVENT_ACTION_CODE, eventIdentification.getEventActionCode());
+        writer.attribute(EVENT_DATE_TIME, eventIdentification.getEventDateTime().toString());
+        writer.attribute(EVENT_OUTCOME_INDICATOR, eventIdentification.getEventOutcomeIndicator());
+        if (eventIdentification.getEventID() != null) {
+            codedValueType(writer, EVENT_ID, eventIdentification.getEventID());
+        }
+        for (var eventTypeCode : eventIdentification.getEventTypeCode()) {
+            codedValueType(writer, EVENT_TYPE_CODE, eventTypeCode);
+        }
+        if (eventIdentification.getEventOutcomeDescription() != null) {
+            writer.textElement(EVENT_OUTCOME_DESCRIPTION, eventIdentification.getEventOutcomeDescription());
+        }
+        for (var purposeOfUse : eventIdentification.getPurposesOfUse()) {
+            codedValueType(writer, PURPOSE_OF_USE, purposeOfUse);
+        }
+        writer.end();
+    }
+
+    protected void participantObjectIdentification(DicomWriter writer, ParticipantObjectIdentificationType poi) throws XMLStreamException {
+        if (poi == null) {
+            writer.start(PARTICIPANT_OBJECT_IDENTIFICATION, false);
+            writer.end();
+            return;
+        }
+        writer.start(PARTICIPANT_OBJECT_IDENTIFICATION);
+        writer.attribute(PARTICIPANT_OBJECT_ID, poi.getParticipantObjectID());
+        writer.attribute(PARTICIPANT_OBJECT_TYPE_CODE, poi.getParticipantObjectTypeCode());
+        writer.attribute(PARTICIPANT_OBJECT_TYPE_CODE_ROLE, poi.getParticipantObjectTypeCodeRole());
+        writer.attribute(PARTICIPANT_OBJECT_DATA_LIFE_CYCLE, poi.getParticipantObjectDataLifeCycle());
+        writer.attribute(PARTICIPANT_OBJECT_SENSITIVITY, poi.getParticipantObjectSensitivity());
+        codedValueType(writer, PARTICIPANT_OBJECT_ID_TYPE_CODE, poi.getParticipantObjectIDTypeCode());
+        if (poi.getParticipantObjectName() != null) {
+            writer.textElement(PARTICIPANT_OBJECT_NAME, poi.getParticipantObjectName());
+        }
+        if (poi.getParticipantObjectQuery() != null) {
+            writer.textElement(PARTICIPANT_OBJECT_QUERY, Base64.getEncoder().encodeToString(poi.getParticipantObjectQuery()));
+        }
+        for (var participantObjectDetail : poi.getParticipantObjectDetails()) {
+            typeValuePairType(writer, PARTICIPANT_OBJECT_DETAIL, participantObjectDetail);
+        }
+        for (var dicomObjectDescription : poi.getParticipantObjectDescriptions()) {
+            dicomObjectDescription(writer, dicomObjectDescription);
+        }
+        writer.end();
+    }
+
+    protected void auditSourceIdentification(DicomWriter writer, AuditSourceIdentificationType auditSourceIdentification) throws XMLStreamException {
+        if (auditSourceIdentification == null) {
+            writer.start(AUDIT_SOURCE_IDENTIFICATION, false);
+            writer.end();
+            return;
+        }
+        writer.start(AUDIT_SOURCE_IDENTIFICATION, !auditSourceIdentification.getAuditSourceType().isEmpty());
+        writer.attribute(AUDIT_ENTERPRISE_SITE_ID, auditSourceIdentification.getAuditEnterpriseSiteID());
+        writer.attribute(AUDIT_SOURCE_ID, auditSourceIdentification.getAuditSourceID());
+        for (var auditSourceType : auditSourceIdentification.getAuditSourceType()) {
+            auditSourceType(writer, auditSourceType);
+        }
+        writer.end();
+    }
+
+    protected void auditSourceType(DicomWriter writer, AuditSource auditSourceType) throws XMLStreamException {
+        writer.textElement(AUDIT_SOURCE_TYPE_CODE, auditSourceType.getCode());
+    }
+
+    protected void codedValueType(DicomWriter writer, String tagName, CodedValueType codedValue) throws XMLStreamException {
+        writer.start(tagName, false);
+        writer.attribute(CSD_CODE, codedValue.getCode());
+        writer.attribute(CODE_SYSTEM_NAME, codedValue.getCodeSystemName());
+        writer.attribute(DISPLAY_NAME, codedValue.getDisplayName());
+        writer.attribute(ORIGINAL_TEXT, codedValue.getOriginalText());
+        writer.end();
+    }
+
+    protected void typeValuePairType(DicomWriter writer, String tagName, TypeValuePairType typeValuePair) throws XMLStreamException {
+        writer.start(tagName, false);
+        writer.attribute(TYPE, typeValuePair.getType());
+        writer.attribute(VALUE, Base64.getEncoder().encodeToString(typeValuePair.getValue()));
+        writer.end();
+    }
+
+    protected void dicomObjectDescription(DicomWriter writer, DicomObjectDescriptionType dicomObjectDescription) throws XMLStreamException {
+        writer.start(PARTICIPANT_OBJECT_DESCRIPTION, !dicomObjectDescription.getMPPS().isEmpty() ||
+                !dicomObjectDescription.getAccession().isEmpty() ||
+                !dicomObjectDescription.getSOPClasses().isEmpty() ||
+                !dicomObjectDescription.getStudyIDs().isEmpty() ||
+                dicomObjectDescription.getEncrypted() != null ||
+                dicomObjectDescription.getAnonymized() != null);
+        for (var mpps : dicomObjectDescription.getMPPS()) {
+            writer.start(MPPS, false);
+            writer.attribute(UID, mpps);
+            writer.end();
+        }
+        for (var accession : dicomObjectDescription.getAccession()) {
+            writer.start(ACCESSION, false);
+            writer.attribute(NUMBER, accession);
+            writer.end();
+        }
+        for (var sop : dicomObjectDescription.getSOPClasses()) {
+            writer.start(SOP_CLASS, !sop.getInstanceUids().isEmpty());
+            writer.attribute(NUMBER_OF_INSTANCES, String.valueOf(sop.getNumberOfInstances()));
+            writer.attribute(UID, sop.getUid());
+            for (var uid : sop.getInstanceUids()) {
+                writer.start(INSTANCE, false);
+                writer.attribute(UID, uid);
+                writer.end();
+            }
+            writer.end();
+        }
+        if (!dicomObjectDescription.getStudyIDs().isEmpty()) {
+            writer.start(PARTICIPANT_OBJECT_CONTAINS_STUDY);
+            for (var studyID : dicomObjectDescription.getStudyIDs()) {
+                writer.start(STUDY_IDS, false);
+                writer.attribute(UID, studyID);
+                writer.end();
+            }
+            writer.end();
+        }
+        if (dicomObjectDescription.getEncrypted() != null) {
+            writer.textElement(ENCRYPTED, String.valueOf(dicomObjectDescription.getEncrypted()));
+        }
+        if (dicomObjectDescription.getAnonymized() != null) {
+            writer.textElement(ANONYMIZED, String.valueOf(dicomObjectDescription.getAnonymized()));
+        }
+        writer.end();
+    }
+
+    /**
+     * Thin wrapper around {@link XMLStreamWriter} that writes empty elements where possible,
+     * omits null attributes and optionally indents nested elements.
+     */
+    protected static final class DicomWriter {
+
+        private static final String INDENT = "  ";
+
+        private final XMLStreamWriter writer;
+        private final boolean pretty;
+        private int depth;
+        private boolean empty;
+        private boolean hasChildren;
+
+        DicomWriter(XMLStreamWriter writer, boolean pretty) {
+            this.writer = writer;
+            this.pretty = pretty;
+        }
+
+        /**
+         * Starts an element that has child elements
+         */
+        public void start(String name) throws XMLStreamException {
+            start(name, true);
+        }
+
+        /**
+         * Starts an element. Elements without child elements or text are written as empty elements.
+         */
+        public void start(String name, boolean withChildren) throws XMLStreamException {
+            indent();
+            if (withChildren) {
+                writer.writeStartElement(name);
+                depth++;
+                hasChildren = false;
+            } else {
+                writer.writeEmptyElement(name);
+            }
+            empty = !withChildren;
+        }
+
+        public void end() throws XMLStreamException {
+            if (empty) {
+                empty = false;
+                hasChildren = true;
+                return;
+            }
+            depth--;
+            if (hasChildren) {
+                indent();
+            }
+            writer.writeEndElement();
+            hasChildren = true;
+        }
+
+        public void textElement(String name, String text) throws XMLStreamException {
+            indent();
+            writer.writeStartElement(name);
+            writer.writeCharacters(text);
+            writer.writeEndElement();
+            hasChildren = true;
+        }
+
+        public void attribute(String name, String value) throws XMLStreamException {
+            if (value != null) {
+                writer.writeAttribute(name, value);
+            }
+        }
+
+        public void attribute(String name, EnumeratedValueSet<?> value) throws XMLStreamException {
+            if (value != null) {
+                writer.writeAttribute(name, value.getValue().toString());
+            }
+        }
+
+        private void indent() throws XMLStreamException {
+            if (pretty && (depth > 0 || hasChildren)) {
+                writer.writeCharacters("\n");
+                for (var i = 0; i < depth; i++) {
+                    writer.writeCharacters(INDENT);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.openehealth.ipf.commons.audit.marshal.dicom;
+
+import org.openehealth.ipf.commons.audit.types.AuditSource;
+
+import javax.xml.stream.XMLStreamException;
+
+import static org.openehealth.ipf.commons.audit.XMLNames.*;
+
+/**
+ * Streaming variant of {@link DICOM2016c}
+ *
+ * @since 4.5
+ */
+public class StaxDICOM2016c extends StaxDICOM2016a {
+
+    @Override
+    protected void auditSourceType(DicomWriter writer, AuditSource auditSourceType) throws XMLStreamException {
+        writer.start(AUDIT_SOURCE_TYPE_CODE, false);
+        writer.attribute(CODE, auditSourceType.getCode());
+        writer.attribute(CODE_SYSTEM_NAME, auditSourceType.getCodeSystemName());
+        writer.attribute(DISPLAY_NAME, auditSourceType.getDisplayName());
+        writer.attribute(ORIGINAL_TEXT, auditSourceType.getOriginalText());
+        writer.end();
+    }
+}
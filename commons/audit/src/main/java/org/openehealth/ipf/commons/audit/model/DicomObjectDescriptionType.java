@@ -16,6 +16,7 @@
 
 package org.openehealth.ipf.commons.audit.model;
 
+import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -27,6 +28,7 @@ import java.util.List;
  * @author Christian Ohr
  * @since 3.5
  */
+@EqualsAndHashCode
 public class DicomObjectDescriptionType implements Serializable, Validateable {
 
     /**
@@ -99,7 +101,8 @@ public class DicomObjectDescriptionType implements Serializable, Validateable {
 
     }
 
-    public static class SOPClass {
+    @EqualsAndHashCode
+    public static class SOPClass implements Serializable {
 
         /**
          * The number of SOP Instances referred to by this participant object.
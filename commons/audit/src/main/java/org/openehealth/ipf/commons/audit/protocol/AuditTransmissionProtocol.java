@@ -18,6 +18,7 @@ package org.openehealth.ipf.commons.audit.protocol;
 
 import org.openehealth.ipf.commons.audit.AuditContext;
 import org.openehealth.ipf.commons.audit.AuditMetadataProvider;
+import org.openehealth.ipf.commons.audit.AuditRecordBuffer;
 
 /**
  * Implementations of this interface transmit the serialized {@link org.openehealth.ipf.commons.audit.model.AuditMessage AuditMessage}
@@ -62,6 +63,32 @@ public interface AuditTransmissionProtocol {
      */
     void send(AuditContext auditContext, AuditMetadataProvider auditMetadataProvider, String auditMessage) throws Exception;
 
+    /**
+     * Transmits the serialized message. The buffer is only valid during this call.
+     *
+     * @param auditContext audit context that e.g. contains the destination
+     * @param auditRecord serialized audit message
+     * @throws Exception thrown if sending the messages has failed
+     * @since 4.5
+     */
+    default void send(AuditContext auditContext, AuditRecordBuffer auditRecord) throws Exception {
+        send(auditContext, auditContext.getAuditMetadataProvider(), auditRecord);
+    }
+
+    /**
+     * Transmits the serialized message. The buffer is only valid during this call. Implementations
+     * should override this method if they can send the bytes without decoding them into a String.
+     *
+     * @param auditContext audit context that e.g. contains the destination
+     * @param auditMetadataProvider dedicated (message-specific) audit metadata
+     * @param auditRecord serialized audit message
+     * @throws Exception thrown if sending the messages has failed
+     * @since 4.5
+     */
+    default void send(AuditContext auditContext, AuditMetadataProvider auditMetadataProvider, AuditRecordBuffer auditRecord) throws Exception {
+        send(auditContext, auditMetadataProvider, auditRecord.toString());
+    }
+
     /**
      * May be implemented to clean up instances on shut down
      */
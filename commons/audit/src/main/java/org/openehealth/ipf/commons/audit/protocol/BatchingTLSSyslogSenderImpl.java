@@ -0,0 +1,321 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.openehealth.ipf.commons.audit.protocol;
+
+import org.openehealth.ipf.commons.audit.AuditContext;
+import org.openehealth.ipf.commons.audit.AuditException;
+import org.openehealth.ipf.commons.audit.AuditMetadataProvider;
+import org.openehealth.ipf.commons.audit.AuditRecordBuffer;
+import org.openehealth.ipf.commons.audit.TlsParameters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLSocketFactory;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Variant of {@link TLSSyslogSenderImpl} that does not write each audit record on the calling thread.
+ * Instead, the RFC 5425-framed records are put into a bounded queue. A writer thread drains up to
+ * {@link #setMaxBatchSize(int) a number of records} waiting at most {@link #setMaxBatchDelayMillis(long) a time}
+ * for further records to arrive, and writes them to the socket with a single write and flush. The
+ * {@link SocketTestPolicy socket test} is therefore applied once per batch instead of once per record.
+ * <p>
+ * As records are written asynchronously, failures are not reported to the caller of
+ * {@link #send(AuditContext, AuditMetadataProvider, String)}, but passed to the
+ * {@link org.openehealth.ipf.commons.audit.handler.AuditExceptionHandler} of the audit context for each record
+ * of the failed batch. If the queue is full, the caller is blocked until there is space available.
+ * </p>
+ * <p>
+ * Callers only contend for the queue. The socket is written exclusively by the writer thread, so
+ * audit producers are not blocked while a batch is being written.
+ * </p>
+ *
+ * @since 4.5
+ */
+public class BatchingTLSSyslogSenderImpl extends TLSSyslogSenderImpl {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BatchingTLSSyslogSenderImpl.class);
+
+    private final Object startLock = new Object();
+    private volatile BlockingQueue<PendingRecord> queue;
+    private Thread writer;
+    private volatile boolean running = true;
+    private int queueCapacity = 10000;
+    private int maxBatchSize = 100;
+    private long maxBatchDelayMillis = 10L;
+    private int shutdownTimeoutSeconds = 30;
+
+    /**
+     * Constructor which uses default values for all parameters.
+     */
+    public BatchingTLSSyslogSenderImpl() {
+        super();
+    }
+
+    public BatchingTLSSyslogSenderImpl(SocketTestPolicy socketTestPolicy) {
+        super(socketTestPolicy);
+    }
+
+    public BatchingTLSSyslogSenderImpl(TlsParameters tlsParameters) {
+        super(tlsParameters);
+    }
+
+    /**
+     * @param socketFactory    SSL socket factory to be used for creating the TCP
+     *                         socket.
+     * @param socketTestPolicy Determining if and when to test the socket for a
+     *                         connection close/reset
+     */
+    public BatchingTLSSyslogSenderImpl(SSLSocketFactory socketFactory, SocketTestPolicy socketTestPolicy) {
+        super(socketFactory, socketTestPolicy);
+    }
+
+    /**
+     * @param tlsParameters    TlsParameters to be used for creating the TCP
+     *                         socket.
+     * @param socketTestPolicy Determining if and when to test the socket for a
+     *                         connection close/reset
+     */
+    public BatchingTLSSyslogSenderImpl(TlsParameters tlsParameters, SocketTestPolicy socketTestPolicy) {
+        super(tlsParameters, socketTestPolicy);
+    }
+
+    @Override
+    public String getTransportName() {
+        return AuditTransmissionChannel.BATCHING_TLS.getProtocolName();
+    }
+
+    /**
+     * Sets the maximum number of records waiting to be written. Must be set before the first record is sent.
+     * Defaults to 10000.
+     *
+     * @param queueCapacity maximum number of records waiting to be written
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Sets the maximum number of records written with one flush. Defaults to 100.
+     *
+     * @param maxBatchSize maximum number of records written with one flush
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Sets the maximum time to wait for further records after the first record of a batch has been
+     * taken from the queue. Defaults to 10.
+     *
+     * @param maxBatchDelayMillis maximum time to wait for further records of a batch
+     */
+    public void setMaxBatchDelayMillis(long maxBatchDelayMillis) {
+        this.maxBatchDelayMillis = maxBatchDelayMillis;
+    }
+
+    /**
+     * Sets the timeout to wait for pending records to be written on shutdown. Defaults to 30.
+     *
+     * @param shutdownTimeoutSeconds timeout to wait for pending records to be written on shutdown
+     */
+    public void setShutdownTimeoutSeconds(int shutdownTimeoutSeconds) {
+        this.shutdownTimeoutSeconds = shutdownTimeoutSeconds;
+    }
+
+    @Override
+    public void send(AuditContext auditContext, AuditMetadataProvider auditMetadataProvider, String auditMessage) throws Exception {
+        if (auditMessage != null) {
+            ensureRunning();
+            var msgBytes = getTransportPayload(auditMetadataProvider, auditMessage);
+            enqueue(new PendingRecord(auditContext, msgBytes, auditMessage, -1));
+        }
+    }
+
+    /**
+     * The audit record is queued, so the framed payload is copied once.
+     */
+    @Override
+    public void send(AuditContext auditContext, AuditMetadataProvider auditMetadataProvider, AuditRecordBuffer auditRecord) throws Exception {
+        if (auditRecord != null) {
+            ensureRunning();
+            var payload = getTransportPayload(auditMetadataProvider, auditRecord);
+            var msgBytes = new byte[payload.remaining()];
+            payload.get(msgBytes);
+            // The audit record is located at the end of the frame
+            enqueue(new PendingRecord(auditContext, msgBytes, null, msgBytes.length - auditRecord.length()));
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        running = false;
+        Thread writer;
+        synchronized (startLock) {
+            writer = this.writer;
+        }
+        if (writer != null) {
+            writer.interrupt();
+            try {
+                writer.join(TimeUnit.SECONDS.toMillis(shutdownTimeoutSeconds));
+                if (writer.isAlive()) {
+                    LOG.warn("Timeout occurred when flushing Audit events, some events might have been lost");
+                }
+            } catch (InterruptedException e) {
+                LOG.warn("Thread interrupt when flushing ATNA events, some events might have been lost", e);
+                Thread.currentThread().interrupt();
+            }
+            if (!writer.isAlive()) {
+                var leftovers = new ArrayList<PendingRecord>();
+                queue.drainTo(leftovers);
+                for (var record : leftovers) {
+                    record.auditContext.getAuditExceptionHandler().handleException(record.auditContext,
+                            new AuditException("TLS sender has been shut down"), record.auditMessage());
+                }
+            }
+        }
+        super.shutdown();
+    }
+
+    private void ensureRunning() {
+        if (!running) {
+            throw new AuditException("TLS sender has been shut down");
+        }
+    }
+
+    /**
+     * Queues the record for the writer thread. If the sender has been shut down concurrently, the writer
+     * thread may have already terminated. In this case the record is taken back and the caller is notified,
+     * unless the writer thread or {@link #shutdown()} has already taken it.
+     */
+    private void enqueue(PendingRecord record) throws InterruptedException {
+        var pendingRecords = ensureStarted();
+        pendingRecords.put(record);
+        if (!running && pendingRecords.remove(record)) {
+            throw new AuditException("TLS sender has been shut down");
+        }
+    }
+
+    /**
+     * Starts the writer thread on first use. Uses a dedicated lock, as the monitor of this instance is held
+     * by {@link TLSSyslogSenderImpl} while writing to the socket.
+     */
+    private BlockingQueue<PendingRecord> ensureStarted() {
+        var result = queue;
+        if (result == null) {
+            synchronized (startLock) {
+                result = queue;
+                if (result == null) {
+                    result = new LinkedBlockingQueue<>(queueCapacity);
+                    var pending = result;
+                    writer = new Thread(() -> writeBatches(pending), "ipf-audit-tls-batch-writer");
+                    writer.setDaemon(true);
+                    writer.start();
+                    queue = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private void writeBatches(BlockingQueue<PendingRecord> pendingRecords) {
+        var batch = new ArrayList<PendingRecord>(maxBatchSize);
+        var buffer = new ByteArrayOutputStream();
+        while (running || !pendingRecords.isEmpty()) {
+            try {
+                if (running) {
+                    var first = pendingRecords.take();
+                    batch.add(first);
+                    var deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxBatchDelayMillis);
+                    while (batch.size() < maxBatchSize) {
+                        var next = pendingRecords.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                    }
+                } else {
+                    pendingRecords.drainTo(batch, maxBatchSize);
+                }
+            } catch (InterruptedException e) {
+                // Shutdown has been requested. Write what has been collected and drain the rest.
+            }
+            writeBatch(batch, buffer);
+            batch.clear();
+        }
+    }
+
+    private void writeBatch(List<PendingRecord> batch, ByteArrayOutputStream buffer) {
+        var from = 0;
+        while (from < batch.size()) {
+            // Records of one batch must go to the same destination
+            var auditContext = batch.get(from).auditContext;
+            var to = from;
+            buffer.reset();
+            while (to < batch.size() && batch.get(to).auditContext == auditContext) {
+                buffer.writeBytes(batch.get(to).payload);
+                to++;
+            }
+            var records = batch.subList(from, to);
+            try {
+                LOG.debug("Auditing batch of {} records ({} bytes) to {}:{}",
+                        records.size(),
+                        buffer.size(),
+                        auditContext.getAuditRepositoryHostName(),
+                        auditContext.getAuditRepositoryPort());
+                sendPayload(auditContext, buffer.toByteArray());
+            } catch (Exception e) {
+                for (var record : records) {
+                    auditContext.getAuditExceptionHandler().handleException(auditContext, e, record.auditMessage());
+                }
+            }
+            from = to;
+        }
+    }
+
+    private static final class PendingRecord {
+
+        private final AuditContext auditContext;
+        private final byte[] payload;
+        private final String auditMessage;
+        private final int auditMessageOffset;
+
+        /**
+         * @param auditContext       audit context
+         * @param payload            RFC 5425-framed payload
+         * @param auditMessage       audit message, or null if it shall be decoded from the payload
+         * @param auditMessageOffset offset of the audit message within the payload if it is not given
+         */
+        private PendingRecord(AuditContext auditContext, byte[] payload, String auditMessage, int auditMessageOffset) {
+            this.auditContext = auditContext;
+            this.payload = payload;
+            this.auditMessage = auditMessage;
+            this.auditMessageOffset = auditMessageOffset;
+        }
+
+        private String auditMessage() {
+            return auditMessage != null ?
+                    auditMessage :
+                    new String(payload, auditMessageOffset, payload.length - auditMessageOffset, StandardCharsets.UTF_8);
+        }
+    }
+}
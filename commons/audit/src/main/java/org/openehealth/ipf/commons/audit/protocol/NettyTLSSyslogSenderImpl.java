@@ -17,6 +17,7 @@
 package org.openehealth.ipf.commons.audit.protocol;
 
 import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
@@ -35,6 +36,7 @@ import org.openehealth.ipf.commons.audit.TlsParameters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.ByteBuffer;
 import java.util.concurrent.TimeUnit;
 
 import static org.openehealth.ipf.commons.audit.protocol.NettyTLSSyslogSenderImpl.NettyDestination;
@@ -159,11 +161,25 @@ public class NettyTLSSyslogSenderImpl extends NioTLSSyslogSenderImpl<ChannelFutu
 
         @Override
         public void write(byte[] bytes) {
+            write(Unpooled.wrappedBuffer(bytes));
+        }
+
+        /**
+         * Wraps the buffer without copying. This is safe, because writing is awaited before returning.
+         */
+        @Override
+        public void write(ByteBuffer buffer) {
+            write(Unpooled.wrappedBuffer(buffer));
+        }
+
+        private void write(ByteBuf byteBuf) {
             // The write operation is asynchronous.
             var channel = getHandle().channel();
-            LOG.trace("Writing {} bytes using session: {}", bytes.length, channel);
+            LOG.trace("Writing {} bytes using session: {}", byteBuf.readableBytes(), channel);
             try {
-                if (!channel.writeAndFlush(Unpooled.wrappedBuffer(bytes)).await(sendTimeout)) {
+                if (!channel.writeAndFlush(byteBuf).await(sendTimeout)) {
+                    // Do not let a pending write pick up the buffer after it has been reused
+                    channel.close();
                     throw new AuditException("Could not send audit message to " + host + ":" + port);
                 }
             } catch (InterruptedException e) {
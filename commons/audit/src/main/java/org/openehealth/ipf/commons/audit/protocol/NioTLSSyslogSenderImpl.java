@@ -18,10 +18,12 @@ package org.openehealth.ipf.commons.audit.protocol;
 
 import org.openehealth.ipf.commons.audit.AuditContext;
 import org.openehealth.ipf.commons.audit.AuditMetadataProvider;
+import org.openehealth.ipf.commons.audit.AuditRecordBuffer;
 import org.openehealth.ipf.commons.audit.TlsParameters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -76,6 +78,24 @@ public abstract class NioTLSSyslogSenderImpl<H, D extends NioTLSSyslogSenderImpl
         }
     }
 
+    @Override
+    public void send(AuditContext auditContext, AuditMetadataProvider auditMetadataProvider, AuditRecordBuffer auditRecord) {
+        if (auditRecord != null) {
+            Destination<H> destination = getDestination(auditContext.getAuditRepositoryHostName(), auditContext.getAuditRepositoryPort());
+            var payload = getTransportPayload(auditMetadataProvider, auditRecord);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Auditing {} bytes to {}:{}",
+                        payload.remaining(),
+                        auditContext.getAuditRepositoryHostName(),
+                        auditContext.getAuditRepositoryPort());
+            }
+            if (LOG.isTraceEnabled()) {
+                LOG.trace(StandardCharsets.UTF_8.decode(payload.duplicate()).toString());
+            }
+            destination.write(payload);
+        }
+    }
+
     private D getDestination(String host, int port) {
         return destinations.computeIfAbsent(host + port, s ->
                 customizeDestination(makeDestination(tlsParameters, host, port, loggingEnabled)));
@@ -100,6 +120,20 @@ public abstract class NioTLSSyslogSenderImpl<H, D extends NioTLSSyslogSenderImpl
          */
         void write(byte[] bytes);
 
+        /**
+         * Write the audit record to the destination. The buffer is only valid during this call,
+         * so implementations must either complete writing before returning or copy the content.
+         * Copies the content into a byte array by default.
+         *
+         * @param buffer audit record content
+         * @since 4.5
+         */
+        default void write(ByteBuffer buffer) {
+            var bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            write(bytes);
+        }
+
         /**
          * Shut down the destination
          */
@@ -0,0 +1,440 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.openehealth.ipf.commons.audit.protocol;
+
+import org.openehealth.ipf.commons.audit.AuditContext;
+import org.openehealth.ipf.commons.audit.AuditException;
+import org.openehealth.ipf.commons.audit.AuditMetadataProvider;
+import org.openehealth.ipf.commons.audit.AuditRecordBuffer;
+import org.openehealth.ipf.commons.audit.TlsParameters;
+import org.openehealth.ipf.commons.audit.protocol.TLSSyslogSenderImpl.SocketTestPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Client implementation of RFC 5425 TLS syslog transport that keeps a pool of TLS connections to one or
+ * more Audit Record Repositories, so that concurrent senders do not contend for a single socket.
+ * <p>
+ * Audit records are sent to the first repository {@link #setEndpoints(String...) endpoint} that is available,
+ * using one of its connections selected by the configured {@link DistributionStrategy}. Before and/or after
+ * writing, a pooled connection is tested according to the {@link SocketTestPolicy}. If the test or writing over
+ * a pooled connection fails, the record is sent once more over a fresh connection. If this fails as well, the
+ * record is sent to the next endpoint. If no endpoints are configured, the repository host and port of the
+ * respective audit context are used.
+ * </p>
+ * <p>
+ * A background task periodically closes connections that have been closed by the repository and reconnects
+ * endpoints that have been unavailable, so that the pool is repaired before the next audit record is sent.
+ * </p>
+ *
+ * @since 4.5
+ */
+public class PooledTLSSyslogSenderImpl extends RFC5425Protocol implements AuditTransmissionProtocol {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PooledTLSSyslogSenderImpl.class);
+    private static final int MIN_SO_TIMEOUT = 1;
+
+    /**
+     * Determines which connection of an endpoint is used for sending an audit record
+     */
+    public enum DistributionStrategy {
+        /**
+         * Connections are used in turn
+         */
+        ROUND_ROBIN,
+        /**
+         * The connection with the fewest audit records being sent or waiting to be sent is used
+         */
+        LEAST_PENDING
+    }
+
+    private final SSLSocketFactory socketFactory;
+    private final Map<String, List<Endpoint>> endpoints = new ConcurrentHashMap<>();
+    private SocketTestPolicy socketTestPolicy = SocketTestPolicy.TEST_BEFORE_WRITE;
+    private List<String> endpointAddresses = List.of();
+    private int connectionsPerEndpoint = 4;
+    private DistributionStrategy distributionStrategy = DistributionStrategy.LEAST_PENDING;
+    private long healthCheckIntervalMillis = 10000;
+    private int connectTimeoutMillis = 5000;
+
+    private ScheduledExecutorService healthChecker;
+
+    public PooledTLSSyslogSenderImpl() {
+        this((SSLSocketFactory) SSLSocketFactory.getDefault());
+    }
+
+    public PooledTLSSyslogSenderImpl(TlsParameters tlsParameters) {
+        this(tlsParameters.getSSLSocketFactory(false));
+    }
+
+    public PooledTLSSyslogSenderImpl(SSLSocketFactory socketFactory) {
+        super();
+        this.socketFactory = socketFactory;
+    }
+
+    @Override
+    public String getTransportName() {
+        return AuditTransmissionChannel.POOLED_TLS.getProtocolName();
+    }
+
+    /**
+     * Sets the repository endpoints in order of preference. If not set, the repository
+     * host and port of the audit context are used.
+     *
+     * @param endpoints endpoints in the form {@code host:port}
+     */
+    public void setEndpoints(String... endpoints) {
+        this.endpointAddresses = List.of(endpoints);
+    }
+
+    /**
+     * Sets the policy for testing whether a pooled connection has been closed by the repository.
+     * Defaults to {@link SocketTestPolicy#TEST_BEFORE_WRITE}.
+     *
+     * @param socketTestPolicy policy for testing pooled connections
+     */
+    public void setSocketTestPolicy(SocketTestPolicy socketTestPolicy) {
+        this.socketTestPolicy = requireNonNull(socketTestPolicy);
+    }
+
+    /**
+     * Sets the number of TLS connections kept per endpoint. Defaults to 4.
+     *
+     * @param connectionsPerEndpoint number of TLS connections kept per endpoint
+     */
+    public void setConnectionsPerEndpoint(int connectionsPerEndpoint) {
+        this.connectionsPerEndpoint = connectionsPerEndpoint;
+    }
+
+    /**
+     * Sets the strategy for selecting a connection. Defaults to {@link DistributionStrategy#LEAST_PENDING}.
+     *
+     * @param distributionStrategy strategy for selecting a connection
+     */
+    public void setDistributionStrategy(DistributionStrategy distributionStrategy) {
+        this.distributionStrategy = requireNonNull(distributionStrategy);
+    }
+
+    /**
+     * Sets the interval of checking and repairing connections. Defaults to 10000.
+     *
+     * @param healthCheckIntervalMillis interval of checking and repairing connections
+     */
+    public void setHealthCheckIntervalMillis(long healthCheckIntervalMillis) {
+        this.healthCheckIntervalMillis = healthCheckIntervalMillis;
+    }
+
+    /**
+     * Sets the timeout for establishing a TCP connection. Defaults to 5000.
+     *
+     * @param connectTimeoutMillis timeout for establishing a TCP connection
+     */
+    public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    @Override
+    public void send(AuditContext auditContext, AuditMetadataProvider auditMetadataProvider, String auditMessage) throws Exception {
+        if (auditMessage != null) {
+            var msgBytes = getTransportPayload(auditMetadataProvider, auditMessage);
+            send(auditContext, msgBytes, 0, msgBytes.length);
+        }
+    }
+
+    @Override
+    public void send(AuditContext auditContext, AuditMetadataProvider auditMetadataProvider, AuditRecordBuffer auditRecord) throws Exception {
+        if (auditRecord != null) {
+            var payload = getTransportPayload(auditMetadataProvider, auditRecord);
+            send(auditContext, payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+        }
+    }
+
+    private void send(AuditContext auditContext, byte[] msgBytes, int offset, int length) {
+        var endpoints = getEndpoints(auditContext);
+        // Try available endpoints first, then the ones that have been unavailable recently
+        var candidates = new ArrayList<Endpoint>(endpoints.size());
+        endpoints.stream().filter(endpoint -> endpoint.available).forEach(candidates::add);
+        endpoints.stream().filter(endpoint -> !endpoint.available).forEach(candidates::add);
+        IOException lastException = null;
+        for (var endpoint : candidates) {
+            var connection = endpoint.select(distributionStrategy);
+            try {
+                LOG.debug("Auditing {} bytes to {}", length, endpoint);
+                connection.write(msgBytes, offset, length);
+                return;
+            } catch (IOException e) {
+                LOG.info("Failed to send audit record to {}: {}", endpoint, e.getMessage());
+                lastException = e;
+            }
+        }
+        throw new AuditException("Failed to send audit record to any of " + endpoints, lastException);
+    }
+
+    /**
+     * Returns the configured endpoints, or the endpoint of the repository configured in the audit context.
+     */
+    private List<Endpoint> getEndpoints(AuditContext auditContext) {
+        var key = endpointAddresses.isEmpty() ?
+                auditContext.getAuditRepositoryHostName() + ":" + auditContext.getAuditRepositoryPort() :
+                "";
+        var result = endpoints.get(key);
+        if (result == null) {
+            synchronized (this) {
+                result = endpoints.computeIfAbsent(key, k -> createEndpoints(auditContext));
+                if (healthChecker == null && healthCheckIntervalMillis > 0) {
+                    healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                        var thread = new Thread(runnable, "ipf-audit-tls-pool-health-check");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    healthChecker.scheduleWithFixedDelay(this::checkHealth,
+                            healthCheckIntervalMillis, healthCheckIntervalMillis, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+        return result;
+    }
+
+    private List<Endpoint> createEndpoints(AuditContext auditContext) {
+        if (endpointAddresses.isEmpty()) {
+            return List.of(new Endpoint(auditContext.getAuditRepositoryHostName(), auditContext.getAuditRepositoryPort()));
+        }
+        var result = new ArrayList<Endpoint>();
+        for (var endpointAddress : endpointAddresses) {
+            var separator = endpointAddress.lastIndexOf(':');
+            result.add(new Endpoint(
+                    endpointAddress.substring(0, separator),
+                    Integer.parseInt(endpointAddress.substring(separator + 1))));
+        }
+        return List.copyOf(result);
+    }
+
+    private void checkHealth() {
+        for (var destination : endpoints.values()) {
+            for (var endpoint : destination) {
+                try {
+                    endpoint.checkHealth();
+                } catch (Exception e) {
+                    LOG.debug("Health check of {} failed", endpoint, e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        if (healthChecker != null) {
+            healthChecker.shutdownNow();
+            healthChecker = null;
+        }
+        endpoints.values().forEach(destination -> destination.forEach(Endpoint::close));
+        endpoints.clear();
+    }
+
+    private final class Endpoint {
+
+        private final String host;
+        private final int port;
+        private final List<Connection> connections = new ArrayList<>();
+        private final AtomicInteger next = new AtomicInteger();
+        private volatile boolean available = true;
+
+        private Endpoint(String host, int port) {
+            this.host = host;
+            this.port = port;
+            for (var i = 0; i < connectionsPerEndpoint; i++) {
+                connections.add(new Connection(this));
+            }
+        }
+
+        private Connection select(DistributionStrategy strategy) {
+            if (strategy == DistributionStrategy.ROUND_ROBIN) {
+                return connections.get(Math.floorMod(next.getAndIncrement(), connections.size()));
+            }
+            // Start at a rotating index, so that idle connections are used evenly
+            var start = Math.floorMod(next.getAndIncrement(), connections.size());
+            var selected = connections.get(start);
+            for (var i = 1; i < connections.size() && selected.pending.get() > 0; i++) {
+                var candidate = connections.get((start + i) % connections.size());
+                if (candidate.pending.get() < selected.pending.get()) {
+                    selected = candidate;
+                }
+            }
+            return selected;
+        }
+
+        private void checkHealth() {
+            var reconnect = !available;
+            for (var connection : connections) {
+                if (connection.lock.tryLock()) {
+                    try {
+                        if (connection.socket != null && !connection.isAlive()) {
+                            LOG.info("TLS connection to {} has been closed by the repository", this);
+                            connection.close();
+                            reconnect = true;
+                        }
+                        if (reconnect && connection.socket == null) {
+                            connection.connect();
+                        }
+                    } catch (IOException e) {
+                        // Logged in connect()
+                        return;
+                    } finally {
+                        connection.lock.unlock();
+                    }
+                }
+            }
+        }
+
+        private void close() {
+            for (var connection : connections) {
+                connection.lock.lock();
+                try {
+                    connection.close();
+                } finally {
+                    connection.lock.unlock();
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return host + ":" + port;
+        }
+    }
+
+    private final class Connection {
+
+        private final Endpoint endpoint;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final AtomicInteger pending = new AtomicInteger();
+        private SSLSocket socket;
+
+        private Connection(Endpoint endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        /**
+         * Writes the payload. If a pooled connection turns out to be broken, the payload is written once
+         * more over a fresh connection.
+         */
+        private void write(byte[] msgBytes, int offset, int length) throws IOException {
+            pending.incrementAndGet();
+            lock.lock();
+            try {
+                var pooled = socket != null;
+                if (pooled && socketTestPolicy.isBeforeWrite() && !isAlive()) {
+                    LOG.debug("TLS connection to {} has been closed by the repository, reconnecting", endpoint);
+                    close();
+                    pooled = false;
+                }
+                try {
+                    doWrite(msgBytes, offset, length);
+                } catch (IOException e) {
+                    close();
+                    if (!pooled) {
+                        throw e;
+                    }
+                    LOG.debug("Failed to use pooled TLS connection to {}, retrying over a new connection", endpoint);
+                    doWrite(msgBytes, offset, length);
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            } finally {
+                lock.unlock();
+                pending.decrementAndGet();
+            }
+        }
+
+        private void doWrite(byte[] msgBytes, int offset, int length) throws IOException {
+            if (socket == null) {
+                connect();
+            }
+            var out = socket.getOutputStream();
+            out.write(msgBytes, offset, length);
+            out.flush();
+            if (socketTestPolicy.isAfterWrite() && !isAlive()) {
+                throw new SocketException("Read-test after write operation determined that the socket connection is dead");
+            }
+        }
+
+        private void connect() throws IOException {
+            try {
+                var newSocket = (SSLSocket) socketFactory.createSocket();
+                newSocket.setKeepAlive(true);
+                newSocket.connect(new InetSocketAddress(endpoint.host, endpoint.port), connectTimeoutMillis);
+                newSocket.startHandshake();
+                // Allows to detect connections closed by the repository without blocking
+                newSocket.setSoTimeout(MIN_SO_TIMEOUT);
+                socket = newSocket;
+                if (!endpoint.available) {
+                    LOG.info("Audit Record Repository at {} is available again", endpoint);
+                }
+                endpoint.available = true;
+            } catch (IOException e) {
+                if (endpoint.available) {
+                    LOG.warn("Could not establish TLS connection to {}: {}", endpoint, e.getMessage());
+                }
+                endpoint.available = false;
+                throw e;
+            }
+        }
+
+        /**
+         * Syslog is a simplex protocol, so reading from the socket times out as long as the
+         * connection is alive and returns -1 if it has been closed by the repository
+         */
+        private boolean isAlive() {
+            try {
+                return socket.getInputStream().read() > -1;
+            } catch (SocketTimeoutException e) {
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        private void close() {
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    LOG.debug("Failed to close TLS connection to {}", endpoint, e);
+                }
+                socket = null;
+            }
+        }
+    }
+}
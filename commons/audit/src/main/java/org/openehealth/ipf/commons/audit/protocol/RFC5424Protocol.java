@@ -17,7 +17,9 @@ package org.openehealth.ipf.commons.audit.protocol;
 
 
 import org.openehealth.ipf.commons.audit.AuditMetadataProvider;
+import org.openehealth.ipf.commons.audit.AuditRecordBuffer;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
 /**
@@ -66,4 +68,25 @@ public class RFC5424Protocol {
         return msg.trim().getBytes(StandardCharsets.UTF_8);
     }
 
+    /**
+     * Prepends the syslog header to the serialized audit record without copying the record.
+     *
+     * @param auditMetadataProvider audit meta data
+     * @param auditRecord           serialized audit record
+     * @return serialized message, sharing its content with the audit record buffer
+     */
+    protected ByteBuffer getTransportPayload(AuditMetadataProvider auditMetadataProvider, AuditRecordBuffer auditRecord) {
+        var header = String.format("<%s>1 %s %s %s %s %s - \uFEFF<?xml version=\"1.0\" encoding=\"UTF-8\"?>",
+                TRANSPORT_PRI,
+                auditMetadataProvider.getTimestamp(),
+                auditMetadataProvider.getHostname(),
+                auditMetadataProvider.getSendingApplication().replace(' ', '_'),
+                auditMetadataProvider.getProcessID(),
+                TRANSPORT_MSGID);
+        auditRecord.trimTrailingWhitespace();
+        auditRecord.resetFrame();
+        auditRecord.prependToFrame(header.getBytes(StandardCharsets.UTF_8));
+        return auditRecord.frame();
+    }
+
 }
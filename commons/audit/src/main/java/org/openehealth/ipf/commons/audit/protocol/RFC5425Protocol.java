@@ -17,6 +17,10 @@ package org.openehealth.ipf.commons.audit.protocol;
 
 
 import org.openehealth.ipf.commons.audit.AuditMetadataProvider;
+import org.openehealth.ipf.commons.audit.AuditRecordBuffer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Base client implementation of RFC 5425 syslog for sending audit messages to an Audit Record Repository
@@ -37,4 +41,11 @@ public class RFC5425Protocol extends RFC5424Protocol {
         return output;
     }
 
+    @Override
+    protected ByteBuffer getTransportPayload(AuditMetadataProvider auditMetadataProvider, AuditRecordBuffer auditRecord) {
+        var length = super.getTransportPayload(auditMetadataProvider, auditRecord).remaining();
+        auditRecord.prependToFrame(String.format("%d ", length).getBytes(StandardCharsets.US_ASCII));
+        return auditRecord.frame();
+    }
+
 }
@@ -16,6 +16,7 @@
 
 package org.openehealth.ipf.commons.audit.protocol;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelOption;
 import io.netty.handler.logging.LogLevel;
@@ -29,6 +30,7 @@ import reactor.netty.resources.LoopResources;
 import reactor.netty.tcp.TcpClient;
 import reactor.util.Metrics;
 
+import java.nio.ByteBuffer;
 import java.time.Duration;
 import java.util.concurrent.TimeUnit;
 
@@ -148,11 +150,25 @@ public class ReactorNettyTLSSyslogSenderImpl extends NioTLSSyslogSenderImpl<Conn
 
         @Override
         public void write(byte[] bytes) {
+            write(Unpooled.wrappedBuffer(bytes));
+        }
+
+        /**
+         * Wraps the buffer without copying. This is safe, because writing is awaited before returning.
+         */
+        @Override
+        public void write(ByteBuffer buffer) {
+            write(Unpooled.wrappedBuffer(buffer));
+        }
+
+        private void write(ByteBuf byteBuf) {
             // The write operation is asynchronous.
             var channel = getHandle().channel();
-            LOG.trace("Writing {} bytes using session: {}", bytes.length, channel);
+            LOG.trace("Writing {} bytes using session: {}", byteBuf.readableBytes(), channel);
             try {
-                if (!channel.writeAndFlush(Unpooled.wrappedBuffer(bytes)).await(sendTimeout)) {
+                if (!channel.writeAndFlush(byteBuf).await(sendTimeout)) {
+                    // Do not let a pending write pick up the buffer after it has been reused
+                    channel.close();
                     throw new AuditException("Could not send audit message to " + host + ":" + port);
                 }
             } catch (InterruptedException e) {
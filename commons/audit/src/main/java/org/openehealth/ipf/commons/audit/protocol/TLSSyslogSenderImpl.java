@@ -18,6 +18,7 @@ package org.openehealth.ipf.commons.audit.protocol;
 import org.openehealth.ipf.commons.audit.AuditContext;
 import org.openehealth.ipf.commons.audit.AuditException;
 import org.openehealth.ipf.commons.audit.AuditMetadataProvider;
+import org.openehealth.ipf.commons.audit.AuditRecordBuffer;
 import org.openehealth.ipf.commons.audit.TlsParameters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,7 +47,9 @@ import java.util.concurrent.atomic.AtomicReference;
  * Note that this implementation disobeys the ATNA specification saying, that
  * the Secure Application, Secure Node, or Audit Record Forwarder is unable to
  * send the message to the Audit Record Repository, then the actor shall store
- * the audit record locally and send it when it is able.
+ * the audit record locally and send it when it is able. Use a
+ * {@link org.openehealth.ipf.commons.audit.queue.StoreAndForwardAuditMessageQueue}
+ * if this is required.
  * </p>
  *
  * @author Lawrence Tarbox, Derived from code written by Matthew Davis of IBM.
@@ -122,24 +125,63 @@ public class TLSSyslogSenderImpl extends RFC5425Protocol implements AuditTransmi
                     msgBytes.length,
                     auditContext.getAuditRepositoryHostName(),
                     auditContext.getAuditRepositoryPort());
+            sendPayload(auditContext, msgBytes);
+        }
+    }
+
+    @Override
+    public void send(AuditContext auditContext, AuditMetadataProvider auditMetadataProvider, AuditRecordBuffer auditRecord) throws Exception {
+        if (auditRecord != null) {
+            var payload = getTransportPayload(auditMetadataProvider, auditRecord);
+            LOG.debug("Auditing {} bytes to {}:{}",
+                    payload.remaining(),
+                    auditContext.getAuditRepositoryHostName(),
+                    auditContext.getAuditRepositoryPort());
+            sendPayload(auditContext, payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+        }
+    }
+
+    /**
+     * Writes RFC 5425-framed payload, which may consist of one or more audit records, to the socket
+     * with one flush. If the existing connection turns out to be broken, a new connection is created
+     * and writing is retried once.
+     *
+     * @param auditContext audit context
+     * @param msgBytes     RFC 5425-framed payload
+     * @throws Exception if writing the payload has failed
+     */
+    protected void sendPayload(AuditContext auditContext, byte[] msgBytes) throws Exception {
+        sendPayload(auditContext, msgBytes, 0, msgBytes.length);
+    }
+
+    /**
+     * Writes RFC 5425-framed payload contained in a section of the byte array.
+     *
+     * @param auditContext audit context
+     * @param msgBytes     byte array containing the RFC 5425-framed payload
+     * @param offset       start of the payload
+     * @param length       length of the payload
+     * @throws Exception if writing the payload has failed
+     * @see #sendPayload(AuditContext, byte[])
+     */
+    protected void sendPayload(AuditContext auditContext, byte[] msgBytes, int offset, int length) throws Exception {
+        try {
+            doSend(auditContext, msgBytes, offset, length);
+            if (LOG.isTraceEnabled()) {
+                LOG.trace(new String(msgBytes, offset, length, StandardCharsets.UTF_8));
+            }
+        } catch (SocketException | SocketTimeoutException e) {
             try {
-                doSend(auditContext, msgBytes);
-                if (LOG.isTraceEnabled()) {
-                    LOG.trace(new String(msgBytes, StandardCharsets.UTF_8));
-                }
-            } catch (SocketException | SocketTimeoutException e) {
-                try {
-                    LOG.info("Failed to use existing TLS socket. Will create a new connection and retry.");
-                    closeSocket(socket.get());
-                    socket.set(null);
-                    doSend(auditContext, msgBytes);
-                } catch (Exception exception) {
-                    LOG.error("Failed to audit using new TLS socket, giving up - this audit message will be lost.");
-                    closeSocket(socket.get());
-                    socket.set(null);
-                    // re-throw the exception so caller knows what happened
-                    throw exception;
-                }
+                LOG.info("Failed to use existing TLS socket. Will create a new connection and retry.");
+                closeSocket(socket.get());
+                socket.set(null);
+                doSend(auditContext, msgBytes, offset, length);
+            } catch (Exception exception) {
+                LOG.error("Failed to audit using new TLS socket, giving up - this audit message will be lost.");
+                closeSocket(socket.get());
+                socket.set(null);
+                // re-throw the exception so caller knows what happened
+                throw exception;
             }
         }
     }
@@ -152,7 +194,7 @@ public class TLSSyslogSenderImpl extends RFC5425Protocol implements AuditTransmi
         }
     }
 
-    private synchronized void doSend(AuditContext auditContext, byte[] msgBytes)
+    private synchronized void doSend(AuditContext auditContext, byte[] msgBytes, int offset, int length)
             throws IOException {
         final var socket = getSocket(auditContext);
 
@@ -168,9 +210,13 @@ public class TLSSyslogSenderImpl extends RFC5425Protocol implements AuditTransmi
 
         LOG.trace("Now writing out ATNA record");
         var out = socket.getOutputStream();
-        out.write(msgBytes);
+        if (offset == 0 && length == msgBytes.length) {
+            out.write(msgBytes);
+        } else {
+            out.write(msgBytes, offset, length);
+        }
         out.flush();
-        LOG.trace("ATNA record has been written ({} bytes)", msgBytes.length);
+        LOG.trace("ATNA record has been written ({} bytes)", length);
 
         if (socketTestPolicy.isAfterWrite()) {
             LOG.trace(
@@ -18,6 +18,7 @@ package org.openehealth.ipf.commons.audit.protocol;
 
 import org.openehealth.ipf.commons.audit.AuditContext;
 import org.openehealth.ipf.commons.audit.AuditMetadataProvider;
+import org.openehealth.ipf.commons.audit.AuditRecordBuffer;
 import org.openehealth.ipf.commons.audit.TlsParameters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -82,6 +83,31 @@ public class UDPSyslogSenderImpl extends RFC5424Protocol implements AuditTransmi
         }
     }
 
+    @Override
+    public void send(AuditContext auditContext, AuditMetadataProvider auditMetadataProvider, AuditRecordBuffer auditRecord) throws Exception {
+        if (auditRecord != null) {
+            try (var socket = new DatagramSocket()) {
+                var payload = getTransportPayload(auditMetadataProvider, auditRecord);
+                var inetAddress = auditContext.getAuditRepositoryAddress();
+                LOG.debug("Auditing {} bytes to {}:{} ({})",
+                        payload.remaining(),
+                        auditContext.getAuditRepositoryHostName(),
+                        auditContext.getAuditRepositoryPort(),
+                        inetAddress.getHostAddress());
+                var packet = new DatagramPacket(
+                        payload.array(),
+                        payload.arrayOffset() + payload.position(),
+                        Math.min(MAX_DATAGRAM_PACKET_SIZE, payload.remaining()),
+                        inetAddress,
+                        auditContext.getAuditRepositoryPort());
+                socket.send(packet);
+                if (LOG.isTraceEnabled()) {
+                    LOG.trace(StandardCharsets.UTF_8.decode(payload).toString());
+                }
+            }
+        }
+    }
+
     @Override
     public void shutdown() {
     }
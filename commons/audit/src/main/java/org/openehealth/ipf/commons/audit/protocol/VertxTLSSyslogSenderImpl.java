@@ -16,6 +16,7 @@
 
 package org.openehealth.ipf.commons.audit.protocol;
 
+import io.netty.buffer.Unpooled;
 import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.buffer.impl.BufferImpl;
@@ -26,6 +27,7 @@ import org.openehealth.ipf.commons.audit.VertxTlsParameters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.ByteBuffer;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
@@ -94,6 +96,15 @@ public class VertxTLSSyslogSenderImpl extends NioTLSSyslogSenderImpl<String, Ver
             vertx.eventBus().send(getHandle(), buffer);
         }
 
+        /**
+         * Sending over the event bus is asynchronous, so the content is copied once into a
+         * Vert.x buffer.
+         */
+        @Override
+        public void write(ByteBuffer buffer) {
+            vertx.eventBus().send(getHandle(), Buffer.buffer(Unpooled.copiedBuffer(buffer)));
+        }
+
         @Override
         public void shutdown() {
             vertx.close();
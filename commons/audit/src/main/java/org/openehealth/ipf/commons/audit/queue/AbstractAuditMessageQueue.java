@@ -18,9 +18,11 @@ package org.openehealth.ipf.commons.audit.queue;
 
 import lombok.Setter;
 import org.openehealth.ipf.commons.audit.AuditContext;
+import org.openehealth.ipf.commons.audit.AuditException;
+import org.openehealth.ipf.commons.audit.AuditRecordBuffer;
 import org.openehealth.ipf.commons.audit.model.AuditMessage;
 
-import java.util.stream.Stream;
+import java.io.IOException;
 
 /**
  * <p>
@@ -43,16 +45,59 @@ public abstract class AbstractAuditMessageQueue implements AuditMessageQueue {
     @Setter
     private boolean pretty = false;
 
+    private final boolean handlesAuditRecordBuffers = overridesBufferHandler(getClass());
+
     @Override
     public void audit(AuditContext auditContext, AuditMessage... auditMessages) {
         if (auditMessages != null) {
-            Stream.of(auditMessages)
-                    .map(msg -> auditContext.getSerializationStrategy().marshal(msg, pretty))
-                    .forEach(msg -> handle(auditContext, msg));
+            for (var auditMessage : auditMessages) {
+                if (handlesAuditRecordBuffers) {
+                    marshalAndHandle(auditContext, auditMessage);
+                } else {
+                    handle(auditContext, auditContext.getSerializationStrategy().marshal(auditMessage, pretty));
+                }
+            }
+        }
+    }
+
+    private void marshalAndHandle(AuditContext auditContext, AuditMessage auditMessage) {
+        var auditRecord = AuditRecordBuffer.acquire();
+        try {
+            auditContext.getSerializationStrategy().marshal(auditMessage, auditRecord, pretty);
+            handle(auditContext, auditRecord);
+        } catch (IOException e) {
+            throw new AuditException(e);
+        } finally {
+            auditRecord.release();
         }
     }
 
+    /**
+     * Handles the serialized audit record. The buffer is reused after this method returns, so
+     * implementations that keep the audit record must copy it. Audit records are only serialized
+     * into a buffer if a subclass overrides this method, otherwise they are serialized into a String
+     * and passed to {@link #handle(AuditContext, String)}.
+     *
+     * @param auditContext audit context
+     * @param auditRecord  serialized audit record
+     * @since 4.5
+     */
+    protected void handle(AuditContext auditContext, AuditRecordBuffer auditRecord) {
+        handle(auditContext, auditRecord.toString());
+    }
+
     protected abstract void handle(AuditContext auditContext, String auditRecord);
 
+    private static boolean overridesBufferHandler(Class<?> type) {
+        for (var c = type; c != AbstractAuditMessageQueue.class; c = c.getSuperclass()) {
+            try {
+                c.getDeclaredMethod("handle", AuditContext.class, AuditRecordBuffer.class);
+                return true;
+            } catch (NoSuchMethodException e) {
+                // check superclass
+            }
+        }
+        return false;
+    }
 
 }
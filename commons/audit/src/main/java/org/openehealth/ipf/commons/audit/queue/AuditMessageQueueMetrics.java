@@ -0,0 +1,151 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.openehealth.ipf.commons.audit.queue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Counters and timers of an audit message queue. The values are monotonic, except for the queue depth,
+ * and can be bound to a metrics library such as Micrometer by polling the getters.
+ *
+ * @since 4.5
+ */
+public class AuditMessageQueueMetrics {
+
+    private final IntSupplier depth;
+    private final int capacity;
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder enqueueNanos = new LongAdder();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder sendNanos = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder spilled = new LongAdder();
+    private final LongAdder callerRuns = new LongAdder();
+
+    AuditMessageQueueMetrics(IntSupplier depth, int capacity) {
+        this.depth = depth;
+        this.capacity = capacity;
+    }
+
+    void recordEnqueue(long nanos) {
+        enqueued.increment();
+        enqueueNanos.add(nanos);
+    }
+
+    void recordSend(long nanos, boolean success) {
+        if (success) {
+            sent.increment();
+        } else {
+            failed.increment();
+        }
+        sendNanos.add(nanos);
+    }
+
+    void recordDrop() {
+        dropped.increment();
+    }
+
+    void recordSpill() {
+        spilled.increment();
+    }
+
+    void recordCallerRuns() {
+        callerRuns.increment();
+    }
+
+    /**
+     * @return current number of audit records waiting to be sent
+     */
+    public int getDepth() {
+        return depth.getAsInt();
+    }
+
+    /**
+     * @return maximum number of audit records waiting to be sent
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return number of audit records that have been accepted by the queue
+     */
+    public long getEnqueuedCount() {
+        return enqueued.sum();
+    }
+
+    /**
+     * @param timeUnit time unit
+     * @return total time spent by callers for handing over audit records to the queue
+     */
+    public double getTotalEnqueueTime(TimeUnit timeUnit) {
+        return (double) enqueueNanos.sum() / timeUnit.toNanos(1);
+    }
+
+    /**
+     * @return number of audit records that have been sent successfully
+     */
+    public long getSentCount() {
+        return sent.sum();
+    }
+
+    /**
+     * @return number of audit records that could not be sent
+     */
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    /**
+     * @return number of send attempts, successful or not
+     */
+    public long getSendCount() {
+        return getSentCount() + getFailedCount();
+    }
+
+    /**
+     * @param timeUnit time unit
+     * @return total time spent for sending audit records
+     */
+    public double getTotalSendTime(TimeUnit timeUnit) {
+        return (double) sendNanos.sum() / timeUnit.toNanos(1);
+    }
+
+    /**
+     * @return number of audit records that have been dropped because the queue was full
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return number of audit records that have been spilled to disk because the queue was full
+     */
+    public long getSpilledCount() {
+        return spilled.sum();
+    }
+
+    /**
+     * @return number of audit records that have been sent by the caller because the queue was full
+     */
+    public long getCallerRunsCount() {
+        return callerRuns.sum();
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.openehealth.ipf.commons.audit.queue;
+
+import org.openehealth.ipf.commons.audit.AuditContext;
+import org.openehealth.ipf.commons.audit.AuditException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Audit queue that hands over audit records to a fixed number of worker threads through a lock-free
+ * ring buffer of fixed capacity. If the ring buffer is full, e.g. because the Audit Record Repository
+ * is slow or not reachable, the configured {@link OverflowPolicy} applies instead of letting the heap grow.
+ * <p>
+ * Queue depth, enqueue and send times as well as dropped records are counted in
+ * {@link AuditMessageQueueMetrics}, which can be bound to a metrics library.
+ * </p>
+ * <p>
+ * Worker threads are started with the first audit record or when the metrics are requested. Configuration
+ * changes after that are not effective. When this queue is {@link #shutdown() shut down}, it waits at most
+ * {@link #setShutdownTimeoutSeconds(int)} until all pending records are sent.
+ * </p>
+ *
+ * @see AsynchronousAuditMessageQueue
+ * @since 4.5
+ */
+public class BoundedAsynchronousAuditMessageQueue extends AbstractAuditMessageQueue {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BoundedAsynchronousAuditMessageQueue.class);
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    /**
+     * Determines what happens with an audit record if the queue is full
+     */
+    public enum OverflowPolicy {
+        /**
+         * The caller is blocked until there is space available
+         */
+        BLOCK,
+        /**
+         * The oldest audit record is removed from the queue and passed to the
+         * {@link org.openehealth.ipf.commons.audit.handler.AuditExceptionHandler}
+         */
+        DROP_OLDEST,
+        /**
+         * The audit record is passed to a {@link StoreAndForwardAuditMessageQueue} using
+         * the {@link #setSpillDirectory(Path) spill directory}
+         */
+        SPILL_TO_DISK,
+        /**
+         * The audit record is sent synchronously by the caller
+         */
+        CALLER_RUNS
+    }
+
+    private int capacity = 1024;
+    private int workerThreads = 1;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+    private Path spillDirectory;
+    private int shutdownTimeoutSeconds = 30;
+
+    private volatile boolean running = true;
+    private volatile BoundedRingBuffer<PendingAuditRecord> ringBuffer;
+    private AuditMessageQueueMetrics metrics;
+    private StoreAndForwardAuditMessageQueue spillQueue;
+    private final List<Worker> workers = new ArrayList<>();
+
+    /**
+     * Sets the maximum number of audit records waiting to be sent, rounded up to the next power of two.
+     * Defaults to 1024.
+     *
+     * @param capacity maximum number of audit records waiting to be sent
+     */
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Sets the number of threads sending audit records. Defaults to 1.
+     *
+     * @param workerThreads number of threads sending audit records
+     */
+    public void setWorkerThreads(int workerThreads) {
+        this.workerThreads = workerThreads;
+    }
+
+    /**
+     * Sets the policy that applies when the queue is full. Defaults to {@link OverflowPolicy#BLOCK}.
+     *
+     * @param overflowPolicy policy that applies when the queue is full
+     */
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = requireNonNull(overflowPolicy);
+    }
+
+    /**
+     * Sets the directory used for storing audit records with {@link OverflowPolicy#SPILL_TO_DISK}.
+     *
+     * @param spillDirectory directory used for storing audit records that do not fit into the queue
+     */
+    public void setSpillDirectory(Path spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Sets the timeout to wait for pending audit records to be sent on shutdown. Defaults to 30.
+     *
+     * @param shutdownTimeoutSeconds timeout to wait for pending audit records to be sent on shutdown
+     */
+    public void setShutdownTimeoutSeconds(int shutdownTimeoutSeconds) {
+        this.shutdownTimeoutSeconds = shutdownTimeoutSeconds;
+    }
+
+    /**
+     * @return metrics of this queue
+     */
+    public AuditMessageQueueMetrics getMetrics() {
+        start();
+        return metrics;
+    }
+
+    @Override
+    protected void handle(AuditContext auditContext, String auditRecord) {
+        if (auditRecord != null) {
+            var ringBuffer = start();
+            // Copy the MDC contextMap to re-use it in the worker thread
+            var record = new PendingAuditRecord(auditContext, auditRecord, MDC.getCopyOfContextMap());
+            if (!running) {
+                send(record, false);
+                return;
+            }
+            var started = System.nanoTime();
+            if (!ringBuffer.offer(record)) {
+                overflow(ringBuffer, record);
+            }
+            metrics.recordEnqueue(System.nanoTime() - started);
+            signalWorker();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        running = false;
+        synchronized (this) {
+            var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(shutdownTimeoutSeconds);
+            for (var worker : workers) {
+                LockSupport.unpark(worker.thread);
+            }
+            try {
+                for (var worker : workers) {
+                    worker.thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+                }
+                if (ringBuffer != null && ringBuffer.size() > 0) {
+                    LOG.warn("Timeout occurred when flushing Audit events, some events might have been lost");
+                }
+            } catch (InterruptedException e) {
+                LOG.warn("Thread interrupt when flushing ATNA events, some events might have been lost", e);
+                Thread.currentThread().interrupt();
+            }
+            if (spillQueue != null) {
+                spillQueue.shutdown();
+            }
+        }
+    }
+
+    private BoundedRingBuffer<PendingAuditRecord> start() {
+        var result = ringBuffer;
+        if (result == null) {
+            synchronized (this) {
+                result = ringBuffer;
+                if (result == null) {
+                    result = new BoundedRingBuffer<>(capacity);
+                    metrics = new AuditMessageQueueMetrics(result::size, result.capacity());
+                    if (overflowPolicy == OverflowPolicy.SPILL_TO_DISK) {
+                        spillQueue = new StoreAndForwardAuditMessageQueue(
+                                requireNonNull(spillDirectory, "Spill directory must be set for overflow policy SPILL_TO_DISK"));
+                    }
+                    for (var i = 0; i < workerThreads; i++) {
+                        var worker = new Worker(result);
+                        worker.thread.setName("ipf-audit-queue-" + i);
+                        worker.thread.setDaemon(true);
+                        worker.thread.start();
+                        workers.add(worker);
+                    }
+                    ringBuffer = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private void overflow(BoundedRingBuffer<PendingAuditRecord> ringBuffer, PendingAuditRecord record) {
+        switch (overflowPolicy) {
+            case BLOCK:
+                while (!ringBuffer.offer(record)) {
+                    if (!running) {
+                        send(record, false);
+                        return;
+                    }
+                    LockSupport.parkNanos(FULL_PARK_NANOS);
+                }
+                break;
+            case DROP_OLDEST:
+                while (!ringBuffer.offer(record)) {
+                    var dropped = ringBuffer.poll();
+                    if (dropped != null) {
+                        metrics.recordDrop();
+                        dropped.auditContext.getAuditExceptionHandler().handleException(dropped.auditContext,
+                                new AuditException("Audit queue is full, dropped oldest audit record"),
+                                dropped.auditRecord);
+                    }
+                }
+                break;
+            case SPILL_TO_DISK:
+                metrics.recordSpill();
+                spillQueue.handle(record.auditContext, record.auditRecord);
+                break;
+            case CALLER_RUNS:
+                metrics.recordCallerRuns();
+                send(record, false);
+                break;
+        }
+    }
+
+    private void signalWorker() {
+        for (var worker : workers) {
+            if (worker.parked) {
+                LockSupport.unpark(worker.thread);
+                return;
+            }
+        }
+    }
+
+    private void send(PendingAuditRecord record, boolean workerThread) {
+        var started = System.nanoTime();
+        var success = false;
+        try {
+            if (workerThread && record.mdcContextMap != null) {
+                MDC.setContextMap(record.mdcContextMap);
+            }
+            record.auditContext.getAuditTransmissionProtocol().send(record.auditContext, record.auditRecord);
+            success = true;
+        } catch (Exception e) {
+            record.auditContext.getAuditExceptionHandler().handleException(record.auditContext, e, record.auditRecord);
+        } finally {
+            metrics.recordSend(System.nanoTime() - started, success);
+            if (workerThread) {
+                MDC.clear();
+            }
+        }
+    }
+
+    private final class Worker implements Runnable {
+
+        private final Thread thread;
+        private final BoundedRingBuffer<PendingAuditRecord> ringBuffer;
+        private volatile boolean parked;
+
+        private Worker(BoundedRingBuffer<PendingAuditRecord> ringBuffer) {
+            this.ringBuffer = ringBuffer;
+            this.thread = new Thread(this);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                var record = ringBuffer.poll();
+                if (record != null) {
+                    send(record, true);
+                } else if (!running) {
+                    return;
+                } else {
+                    parked = true;
+                    // Re-check after announcing to park, so that a concurrent producer either sees the
+                    // flag or we see its record
+                    if (ringBuffer.size() == 0 && running) {
+                        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                    }
+                    parked = false;
+                }
+            }
+        }
+    }
+
+    private static final class PendingAuditRecord {
+
+        private final AuditContext auditContext;
+        private final String auditRecord;
+        private final Map<String, String> mdcContextMap;
+
+        private PendingAuditRecord(AuditContext auditContext, String auditRecord, Map<String, String> mdcContextMap) {
+            this.auditContext = auditContext;
+            this.auditRecord = auditRecord;
+            this.mdcContextMap = mdcContextMap;
+        }
+    }
+}
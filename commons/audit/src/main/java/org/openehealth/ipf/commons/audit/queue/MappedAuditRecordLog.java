@@ -0,0 +1,435 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.openehealth.ipf.commons.audit.queue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Append-only record log on local disk, consisting of a sequence of memory-mapped segment files of
+ * fixed size. Records are appended to the last segment and consumed in FIFO order from the first
+ * unconsumed record. The consumer position is stored in a separate checkpoint file.
+ * <p>
+ * Each record is stored as its length, a CRC32 checksum and the payload. The length is written last,
+ * so on {@link #MappedAuditRecordLog(Path, int) opening} an existing log, a torn record at the end of a
+ * segment is detected and discarded. The length is stored incremented by one, so that empty records can
+ * be distinguished from the unused remainder of a segment. Segments that have been consumed completely
+ * are removed by {@link #compact()}.
+ * </p>
+ * <p>
+ * Appended records and the consumer position are durable only after {@link #force()} has been called. As
+ * the consumer position may therefore lag behind after a crash, records may be delivered more than once.
+ * The consumer position is only written to the checkpoint file by {@link #force()}, {@link #compact()} and
+ * {@link #close()}, not on every {@link #commit()}.
+ * </p>
+ *
+ * @since 4.5
+ */
+public class MappedAuditRecordLog implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MappedAuditRecordLog.class);
+    private static final Unmapper UNMAPPER = Unmapper.create();
+
+    static final String SEGMENT_SUFFIX = ".segment";
+    static final String CHECKPOINT_FILE = "checkpoint";
+    static final int RECORD_HEADER_SIZE = 8;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final NavigableMap<Long, Segment> segments = new TreeMap<>();
+    private final FileChannel checkpointChannel;
+    private final ByteBuffer checkpointBuffer = ByteBuffer.allocate(12);
+
+    private Segment writeSegment;
+    private Segment readSegment;
+    private int readPosition;
+    private int peekedRecordSize = -1;
+    private long pendingRecords;
+    private int unforcedAppends;
+    private boolean checkpointDirty;
+    private boolean closed;
+
+    /**
+     * Opens or creates a record log in the given directory. Existing segments are scanned in order to
+     * recover the append position and the number of unconsumed records.
+     *
+     * @param directory   directory holding the segment files
+     * @param segmentSize size of a newly created segment file in bytes; this is also the maximum record size
+     * @throws IOException if the log could not be opened
+     */
+    public MappedAuditRecordLog(Path directory, int segmentSize) throws IOException {
+        if (segmentSize <= RECORD_HEADER_SIZE) {
+            throw new IllegalArgumentException("Segment size must be larger than " + RECORD_HEADER_SIZE);
+        }
+        this.directory = Files.createDirectories(directory);
+        this.segmentSize = segmentSize;
+        this.checkpointChannel = FileChannel.open(directory.resolve(CHECKPOINT_FILE), CREATE, READ, WRITE);
+        recover();
+    }
+
+    /**
+     * Appends a record to the log. The record is not guaranteed to be durable before {@link #force()} is
+     * called.
+     *
+     * @param record record payload
+     * @return number of records appended since the last call to {@link #force()}
+     * @throws IOException if a new segment could not be created
+     */
+    public synchronized int append(byte[] record) throws IOException {
+        ensureOpen();
+        var recordSize = RECORD_HEADER_SIZE + record.length;
+        if (recordSize > segmentSize) {
+            throw new IOException(String.format("Record of %d bytes exceeds the segment size of %d bytes",
+                    record.length, segmentSize));
+        }
+        if (writeSegment.writePosition + recordSize > writeSegment.capacity()) {
+            writeSegment.buffer.force();
+            writeSegment = openSegment(writeSegment.id + 1);
+        }
+        var position = writeSegment.writePosition;
+        var crc = new CRC32();
+        crc.update(record);
+        var buffer = writeSegment.buffer.duplicate();
+        buffer.position(position + RECORD_HEADER_SIZE);
+        buffer.put(record);
+        writeSegment.buffer.putInt(position + 4, (int) crc.getValue());
+        writeSegment.buffer.putInt(position, record.length + 1);
+        writeSegment.writePosition += recordSize;
+        pendingRecords++;
+        return ++unforcedAppends;
+    }
+
+    /**
+     * Returns the first unconsumed record without consuming it. Subsequent calls return the same record
+     * until {@link #commit()} is called.
+     *
+     * @return the first unconsumed record or null if all records have been consumed
+     */
+    public synchronized byte[] peek() {
+        ensureOpen();
+        while (readPosition >= readSegment.writePosition) {
+            if (readSegment == writeSegment) {
+                return null;
+            }
+            readSegment = segments.higherEntry(readSegment.id).getValue();
+            readPosition = 0;
+        }
+        var length = readSegment.recordLength(readPosition);
+        var record = new byte[length];
+        var buffer = readSegment.buffer.duplicate();
+        buffer.position(readPosition + RECORD_HEADER_SIZE);
+        buffer.get(record);
+        peekedRecordSize = RECORD_HEADER_SIZE + length;
+        return record;
+    }
+
+    /**
+     * Consumes the record that has been returned by the last call to {@link #peek()}.
+     *
+     * @throws IOException if the checkpoint could not be written
+     */
+    public synchronized void commit() throws IOException {
+        ensureOpen();
+        if (peekedRecordSize < 0) {
+            throw new IllegalStateException("No record has been peeked before commit");
+        }
+        readPosition += peekedRecordSize;
+        peekedRecordSize = -1;
+        pendingRecords--;
+        checkpointDirty = true;
+    }
+
+    /**
+     * Forces appended records and the current checkpoint to be written to the storage device.
+     *
+     * @throws IOException if the checkpoint could not be forced
+     */
+    public synchronized void force() throws IOException {
+        if (!closed) {
+            writeSegment.buffer.force();
+            writeCheckpoint();
+            checkpointChannel.force(false);
+            unforcedAppends = 0;
+        }
+    }
+
+    /**
+     * Deletes all segment files whose records have been consumed completely. The segments are unmapped
+     * before their files are deleted.
+     *
+     * @return number of deleted segments
+     */
+    public synchronized int compact() {
+        ensureOpen();
+        var consumed = segments.headMap(readSegment.id, false);
+        if (consumed.isEmpty()) {
+            return 0;
+        }
+        try {
+            // The checkpoint must not refer to a deleted segment
+            writeCheckpoint();
+            checkpointChannel.force(false);
+        } catch (IOException e) {
+            LOG.debug("Could not write checkpoint of audit log {}, compacting later: {}", directory, e.getMessage());
+            return 0;
+        }
+        var deleted = 0;
+        for (var iterator = consumed.values().iterator(); iterator.hasNext(); ) {
+            var segment = iterator.next();
+            segment.unmap();
+            try {
+                Files.deleteIfExists(segment.path);
+                iterator.remove();
+                deleted++;
+            } catch (IOException e) {
+                LOG.debug("Could not delete consumed audit log segment {}, retrying later: {}", segment.path, e.getMessage());
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * @return number of records that have not been consumed yet
+     */
+    public synchronized long getPendingRecords() {
+        return pendingRecords;
+    }
+
+    /**
+     * @return number of segment files currently in use
+     */
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!closed) {
+            force();
+            closed = true;
+            checkpointChannel.close();
+            segments.values().forEach(Segment::unmap);
+            segments.clear();
+        }
+    }
+
+    private void recover() throws IOException {
+        try (var files = Files.list(directory)) {
+            var segmentFiles = files
+                    .filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .collect(Collectors.toList());
+            for (var path : segmentFiles) {
+                var name = path.getFileName().toString();
+                try {
+                    var id = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                    segments.put(id, Segment.open(path, id, segmentSize));
+                } catch (NumberFormatException e) {
+                    LOG.warn("Ignoring unexpected file {} in audit log directory", path);
+                }
+            }
+        }
+        if (segments.isEmpty()) {
+            openSegment(0);
+        }
+        for (var segment : segments.values()) {
+            segment.recover();
+        }
+        writeSegment = segments.lastEntry().getValue();
+
+        readSegment = segments.firstEntry().getValue();
+        readPosition = 0;
+        if (checkpointChannel.read(checkpointBuffer.clear(), 0) == checkpointBuffer.capacity()) {
+            var segmentId = checkpointBuffer.getLong(0);
+            var position = checkpointBuffer.getInt(8);
+            var segment = segments.get(segmentId);
+            if (segment != null && position <= segment.writePosition) {
+                readSegment = segment;
+                readPosition = position;
+            }
+        }
+
+        pendingRecords = readSegment.countRecords(readPosition);
+        for (var segment : segments.tailMap(readSegment.id, false).values()) {
+            pendingRecords += segment.countRecords(0);
+        }
+        if (pendingRecords > 0) {
+            LOG.info("Recovered {} unsent audit records from {}", pendingRecords, directory);
+        }
+    }
+
+    private Segment openSegment(long id) throws IOException {
+        var segment = Segment.open(directory.resolve(String.format("%020d%s", id, SEGMENT_SUFFIX)), id, segmentSize);
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private void writeCheckpoint() throws IOException {
+        if (checkpointDirty) {
+            checkpointBuffer.clear();
+            checkpointBuffer.putLong(readSegment.id).putInt(readPosition).flip();
+            checkpointChannel.write(checkpointBuffer, 0);
+            checkpointDirty = false;
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Audit record log " + directory + " has been closed");
+        }
+    }
+
+    private static final class Segment {
+
+        private final long id;
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private int writePosition;
+        private boolean unmapped;
+
+        private Segment(long id, Path path, MappedByteBuffer buffer) {
+            this.id = id;
+            this.path = path;
+            this.buffer = buffer;
+        }
+
+        static Segment open(Path path, long id, int segmentSize) throws IOException {
+            try (var channel = FileChannel.open(path, CREATE, READ, WRITE)) {
+                var size = channel.size() > 0 ? channel.size() : segmentSize;
+                return new Segment(id, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+            }
+        }
+
+        int capacity() {
+            return buffer.capacity();
+        }
+
+        /**
+         * Releases the mapping of the segment file. The segment must not be accessed afterwards.
+         */
+        void unmap() {
+            if (!unmapped) {
+                unmapped = true;
+                UNMAPPER.unmap(buffer);
+            }
+        }
+
+        /**
+         * Scans the segment for valid records and sets the write position after the last one. If a
+         * torn record is detected, the remainder of the segment is zeroed.
+         */
+        void recover() {
+            var position = 0;
+            var torn = false;
+            var crc = new CRC32();
+            while (position + RECORD_HEADER_SIZE <= capacity()) {
+                if (buffer.getInt(position) == 0) {
+                    break;
+                }
+                var length = recordLength(position);
+                if (length < 0 || position + RECORD_HEADER_SIZE + length > capacity()) {
+                    torn = true;
+                    break;
+                }
+                var record = buffer.duplicate();
+                record.position(position + RECORD_HEADER_SIZE).limit(position + RECORD_HEADER_SIZE + length);
+                crc.reset();
+                crc.update(record);
+                if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                    torn = true;
+                    break;
+                }
+                position += RECORD_HEADER_SIZE + length;
+            }
+            writePosition = position;
+            if (torn) {
+                LOG.warn("Discarding torn audit record at position {} of segment {}", position, path);
+                for (var i = position; i < capacity(); i++) {
+                    buffer.put(i, (byte) 0);
+                }
+            }
+        }
+
+        long countRecords(int from) {
+            var count = 0L;
+            var position = from;
+            while (position < writePosition) {
+                position += RECORD_HEADER_SIZE + recordLength(position);
+                count++;
+            }
+            return count;
+        }
+
+        int recordLength(int position) {
+            return buffer.getInt(position) - 1;
+        }
+    }
+
+    /**
+     * Releases mapped buffers eagerly, so that segment files can be deleted on platforms that do not allow
+     * deleting mapped files. There is no public API for this, so <code>sun.misc.Unsafe#invokeCleaner</code>
+     * is used if available. Otherwise the mapping is released when the buffer is garbage collected.
+     */
+    private static final class Unmapper {
+
+        private final Object unsafe;
+        private final Method invokeCleaner;
+
+        private Unmapper(Object unsafe, Method invokeCleaner) {
+            this.unsafe = unsafe;
+            this.invokeCleaner = invokeCleaner;
+        }
+
+        static Unmapper create() {
+            try {
+                var unsafeClass = Class.forName("sun.misc.Unsafe");
+                var theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                return new Unmapper(theUnsafe.get(null), unsafeClass.getMethod("invokeCleaner", ByteBuffer.class));
+            } catch (Exception e) {
+                LOG.debug("Mapped audit log segments cannot be unmapped eagerly: {}", e.getMessage());
+                return new Unmapper(null, null);
+            }
+        }
+
+        void unmap(MappedByteBuffer buffer) {
+            if (invokeCleaner != null) {
+                try {
+                    invokeCleaner.invoke(unsafe, buffer);
+                } catch (Exception e) {
+                    LOG.debug("Could not unmap audit log segment: {}", e.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,448 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.openehealth.ipf.commons.audit.queue;
+
+import org.openehealth.ipf.commons.audit.AuditContext;
+import org.openehealth.ipf.commons.audit.AuditException;
+import org.openehealth.ipf.commons.audit.AuditMetadataProvider;
+import org.openehealth.ipf.commons.audit.DefaultAuditMetadataProvider;
+import org.openehealth.ipf.commons.audit.protocol.AuditTransmissionProtocol;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Audit queue that implements the ATNA store-and-forward requirement: if the Audit Record Repository is
+ * not reachable, the audit record is stored locally and sent when the repository is available again.
+ * <p>
+ * Accepting an audit record only appends it to a {@link MappedAuditRecordLog} in the configured directory.
+ * A background drainer thread reads the records in FIFO order and passes them to the
+ * {@link AuditTransmissionProtocol}. A record is removed from the log only after it has been sent
+ * successfully, otherwise sending is retried after {@link #setRetryDelayMillis(long) a delay}. The
+ * RFC 5424 metadata of the audit context is stored along with each record, so the original timestamp
+ * is retained on delayed delivery.
+ * </p>
+ * <p>
+ * Records are forced to disk after {@link #setFsyncBatchSize(int) a number of appends} or at the latest after
+ * {@link #setFsyncIntervalMillis(long) a time interval}. Records that have not been sent before shutting down
+ * or crashing are recovered and sent after restart, as soon as an {@link AuditContext} is known, either by
+ * {@link #setAuditContext(AuditContext) configuration} or by the first audit event. Records may be sent more
+ * than once after a crash.
+ * </p>
+ * <p>
+ * By default, records are forced to disk in batches of 100 records or once per second. Appended records
+ * survive a crash of the JVM, because they are written into the page cache of the operating system. However,
+ * records appended since they were last forced to disk are lost if the operating system crashes or power
+ * fails. Set the {@link #setFsyncBatchSize(int) batch size} to 1 if each record must be on disk before the
+ * audit call returns, at the cost of one synchronous disk write per audit record.
+ * </p>
+ * <p>
+ * Failures caused by an I/O error, e.g. an unreachable repository, are retried indefinitely. A record that cannot
+ * be decoded or whose transmission fails {@link #setMaxSendAttempts(int) repeatedly} for other reasons is moved
+ * into the <code>quarantine</code> subdirectory, so that it does not block the records behind it.
+ * </p>
+ * <p>
+ * If the queue is created with the no-argument constructor, e.g. by the Spring Boot auto-configuration, the
+ * {@link #setDirectory(Path) directory} and {@link #setSegmentSize(int) segment size} can be configured until
+ * the first audit event arrives or the audit context is set. The store is opened at this point.
+ * </p>
+ *
+ * @since 4.5
+ */
+public class StoreAndForwardAuditMessageQueue extends AbstractAuditMessageQueue {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StoreAndForwardAuditMessageQueue.class);
+
+    private static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+    private static final String DEFAULT_DIRECTORY = "ipf-audit-store";
+    private static final String QUARANTINE_DIRECTORY = "quarantine";
+
+    private final Object signal = new Object();
+
+    private volatile MappedAuditRecordLog log;
+    private Thread drainer;
+    private Path directory = Path.of(DEFAULT_DIRECTORY);
+    private int segmentSize = DEFAULT_SEGMENT_SIZE;
+    private volatile AuditContext auditContext;
+    private volatile AuditTransmissionProtocol auditTransmissionProtocol;
+    private volatile boolean running = true;
+    private int fsyncBatchSize = 100;
+    private long fsyncIntervalMillis = 1000L;
+    private long retryDelayMillis = 5000L;
+    private int maxSendAttempts = 3;
+    private int shutdownTimeoutSeconds = 30;
+
+    /**
+     * Creates a queue storing audit records in the <code>ipf-audit-store</code> subdirectory of the
+     * working directory, unless {@link #setDirectory(Path) configured otherwise}. The store is opened
+     * on first use.
+     */
+    public StoreAndForwardAuditMessageQueue() {
+    }
+
+    /**
+     * @param directory directory used for storing audit records
+     */
+    public StoreAndForwardAuditMessageQueue(Path directory) {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * @param directory   directory used for storing audit records
+     * @param segmentSize size of the segment files in bytes, limiting the maximum size of a single audit record
+     */
+    public StoreAndForwardAuditMessageQueue(Path directory, int segmentSize) {
+        this.directory = requireNonNull(directory, "directory must not be null");
+        this.segmentSize = segmentSize;
+        open();
+    }
+
+    /**
+     * Sets the directory used for storing audit records. Must be called before the store is opened.
+     *
+     * @param directory directory used for storing audit records
+     */
+    public synchronized void setDirectory(Path directory) {
+        ensureNotOpened();
+        this.directory = requireNonNull(directory, "directory must not be null");
+    }
+
+    /**
+     * Sets the size of the segment files in bytes, limiting the maximum size of a single audit record.
+     * Defaults to 16 MB. Must be called before the store is opened.
+     *
+     * @param segmentSize size of the segment files in bytes
+     */
+    public synchronized void setSegmentSize(int segmentSize) {
+        ensureNotOpened();
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Sets the audit context that is used for sending records that have been recovered from a previous run
+     * before the first audit event arrives. Defaults to the audit context of the last audit event.
+     *
+     * @param auditContext audit context
+     */
+    public void setAuditContext(AuditContext auditContext) {
+        this.auditContext = auditContext;
+        open();
+        wakeUp();
+    }
+
+    /**
+     * Sets the transmission protocol used for sending stored records. If this is null, the transmission
+     * protocol of the audit context is used.
+     *
+     * @param auditTransmissionProtocol transmission protocol
+     */
+    public void setAuditTransmissionProtocol(AuditTransmissionProtocol auditTransmissionProtocol) {
+        this.auditTransmissionProtocol = auditTransmissionProtocol;
+    }
+
+    /**
+     * Sets the number of appended records after which the records are forced to disk. Defaults to 100.
+     * If set to 1, every record is forced to disk before the audit call returns.
+     *
+     * @param fsyncBatchSize number of appended records after which the records are forced to disk
+     */
+    public void setFsyncBatchSize(int fsyncBatchSize) {
+        this.fsyncBatchSize = fsyncBatchSize;
+    }
+
+    /**
+     * Sets the maximum interval after which appended records are forced to disk. Defaults to 1000.
+     *
+     * @param fsyncIntervalMillis maximum interval after which appended records are forced to disk
+     */
+    public void setFsyncIntervalMillis(long fsyncIntervalMillis) {
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+    }
+
+    /**
+     * Sets the delay before sending is retried after a failure. Defaults to 5000.
+     *
+     * @param retryDelayMillis delay before sending is retried after a failure
+     */
+    public void setRetryDelayMillis(long retryDelayMillis) {
+        this.retryDelayMillis = retryDelayMillis;
+    }
+
+    /**
+     * Sets the number of attempts after which a record whose transmission fails for other reasons than an
+     * I/O error is moved into quarantine. Defaults to 3.
+     *
+     * @param maxSendAttempts number of attempts after which a record is moved into quarantine
+     */
+    public void setMaxSendAttempts(int maxSendAttempts) {
+        this.maxSendAttempts = maxSendAttempts;
+    }
+
+    /**
+     * Sets the timeout to wait for the drainer thread to finish on shutdown. Defaults to 30
+     *
+     * @param shutdownTimeoutSeconds timeout to wait for the drainer thread to finish on shutdown
+     */
+    public void setShutdownTimeoutSeconds(int shutdownTimeoutSeconds) {
+        this.shutdownTimeoutSeconds = shutdownTimeoutSeconds;
+    }
+
+    /**
+     * @return number of stored audit records that have not been sent yet
+     */
+    public long getPendingRecords() {
+        return open().getPendingRecords();
+    }
+
+    @Override
+    protected void handle(AuditContext auditContext, String auditRecord) {
+        if (auditRecord != null) {
+            this.auditContext = auditContext;
+            try {
+                var log = open();
+                if (log.append(encode(auditContext.getAuditMetadataProvider(), auditRecord)) >= fsyncBatchSize) {
+                    log.force();
+                }
+                wakeUp();
+            } catch (Exception e) {
+                auditContext.getAuditExceptionHandler().handleException(auditContext, e, auditRecord);
+            }
+        }
+    }
+
+    @Override
+    public void flush() {
+        var log = this.log;
+        if (log != null) {
+            try {
+                log.force();
+            } catch (IOException e) {
+                LOG.warn("Could not force audit records to disk", e);
+            }
+            wakeUp();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        MappedAuditRecordLog log;
+        Thread drainer;
+        synchronized (this) {
+            running = false;
+            log = this.log;
+            drainer = this.drainer;
+        }
+        if (log == null) {
+            return;
+        }
+        wakeUp();
+        try {
+            drainer.join(TimeUnit.SECONDS.toMillis(shutdownTimeoutSeconds));
+            if (drainer.isAlive()) {
+                LOG.warn("Timeout occurred when stopping audit record drainer, unsent records are sent after restart");
+                drainer.interrupt();
+            }
+        } catch (InterruptedException e) {
+            LOG.warn("Thread interrupt when stopping audit record drainer, unsent records are sent after restart", e);
+            Thread.currentThread().interrupt();
+        }
+        try {
+            log.close();
+        } catch (IOException e) {
+            LOG.warn("Could not close audit record store", e);
+        }
+    }
+
+    private MappedAuditRecordLog open() {
+        var log = this.log;
+        return log != null ? log : openSynchronized();
+    }
+
+    private synchronized MappedAuditRecordLog openSynchronized() {
+        if (log == null) {
+            if (!running) {
+                throw new IllegalStateException("Audit record store has been shut down");
+            }
+            try {
+                log = new MappedAuditRecordLog(directory, segmentSize);
+            } catch (IOException e) {
+                throw new AuditException("Could not open audit record store in " + directory, e);
+            }
+            var openedLog = log;
+            drainer = new Thread(() -> drain(openedLog), "ipf-audit-store-and-forward");
+            drainer.setDaemon(true);
+            drainer.start();
+        }
+        return log;
+    }
+
+    private void ensureNotOpened() {
+        if (log != null) {
+            throw new IllegalStateException("Audit record store in " + directory + " has already been opened");
+        }
+    }
+
+    private void drain(MappedAuditRecordLog log) {
+        var lastForced = System.currentTimeMillis();
+        var failedAttempts = 0;
+        while (running) {
+            try {
+                if (System.currentTimeMillis() - lastForced >= fsyncIntervalMillis) {
+                    log.force();
+                    log.compact();
+                    lastForced = System.currentTimeMillis();
+                }
+                var context = auditContext;
+                var record = context != null ? log.peek() : null;
+                if (record == null) {
+                    await(fsyncIntervalMillis);
+                    continue;
+                }
+                var result = send(context, record, failedAttempts + 1);
+                if (result == SendResult.SENT) {
+                    failedAttempts = 0;
+                    log.commit();
+                } else if (result == SendResult.POISONED) {
+                    failedAttempts = 0;
+                    quarantine(record);
+                    log.commit();
+                } else {
+                    failedAttempts++;
+                    await(retryDelayMillis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                LOG.error("Unexpected error while draining audit record store", e);
+            }
+        }
+    }
+
+    private SendResult send(AuditContext context, byte[] record, int attempt) {
+        DefaultAuditMetadataProvider auditMetadataProvider;
+        String auditMessage;
+        try {
+            var buffer = ByteBuffer.wrap(record);
+            auditMetadataProvider = new DefaultAuditMetadataProvider(
+                    readString(buffer),
+                    readString(buffer),
+                    readString(buffer),
+                    readString(buffer));
+            auditMessage = readString(buffer);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            LOG.warn("Could not decode stored audit record of {} bytes", record.length);
+            return SendResult.POISONED;
+        }
+        var protocol = auditTransmissionProtocol != null ?
+                auditTransmissionProtocol :
+                context.getAuditTransmissionProtocol();
+        try {
+            protocol.send(context, auditMetadataProvider, auditMessage);
+            return SendResult.SENT;
+        } catch (Exception e) {
+            if (!isIOFailure(e) && attempt >= maxSendAttempts) {
+                LOG.warn("Could not send audit record after {} attempts: {}", attempt, e.getMessage());
+                return SendResult.POISONED;
+            }
+            LOG.warn("Could not send audit record, retrying in {} ms: {}", retryDelayMillis, e.getMessage());
+            return SendResult.FAILED;
+        }
+    }
+
+    private void quarantine(byte[] record) {
+        var quarantineDirectory = directory.resolve(QUARANTINE_DIRECTORY);
+        try {
+            Files.createDirectories(quarantineDirectory);
+            var file = Files.createTempFile(quarantineDirectory, "audit-", ".record");
+            Files.write(file, record);
+            LOG.warn("Moved undeliverable audit record into {}", file);
+        } catch (IOException e) {
+            LOG.error("Could not move undeliverable audit record into {}, discarding it", quarantineDirectory, e);
+        }
+    }
+
+    private static boolean isIOFailure(Throwable t) {
+        for (var cause = t; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void await(long millis) throws InterruptedException {
+        synchronized (signal) {
+            if (running) {
+                signal.wait(millis);
+            }
+        }
+    }
+
+    private void wakeUp() {
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+    }
+
+    private static byte[] encode(AuditMetadataProvider auditMetadataProvider, String auditRecord) {
+        var values = new byte[][]{
+                bytes(auditMetadataProvider.getHostname()),
+                bytes(auditMetadataProvider.getProcessID()),
+                bytes(auditMetadataProvider.getSendingApplication()),
+                bytes(auditMetadataProvider.getTimestamp()),
+                bytes(auditRecord)
+        };
+        var length = 0;
+        for (var value : values) {
+            length += Integer.BYTES + value.length;
+        }
+        var buffer = ByteBuffer.allocate(length);
+        for (var value : values) {
+            buffer.putInt(value.length).put(value);
+        }
+        return buffer.array();
+    }
+
+    private static byte[] bytes(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : new byte[0];
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        var length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        var value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private enum SendResult {
+        SENT, FAILED, POISONED
+    }
+
+}
@@ -17,6 +17,7 @@ package org.openehealth.ipf.commons.audit.queue;
 
 
 import org.openehealth.ipf.commons.audit.AuditContext;
+import org.openehealth.ipf.commons.audit.AuditRecordBuffer;
 
 /**
  *
@@ -27,6 +28,15 @@ import org.openehealth.ipf.commons.audit.AuditContext;
  */
 public class SynchronousAuditMessageQueue extends AbstractAuditMessageQueue {
 
+    @Override
+    protected void handle(AuditContext auditContext, AuditRecordBuffer auditRecord) {
+        try {
+            auditContext.getAuditTransmissionProtocol().send(auditContext, auditRecord);
+        } catch (Exception e) {
+            auditContext.getAuditExceptionHandler().handleException(auditContext, e, auditRecord.toString());
+        }
+    }
+
     @Override
     protected void handle(AuditContext auditContext, String auditRecord) {
         try {
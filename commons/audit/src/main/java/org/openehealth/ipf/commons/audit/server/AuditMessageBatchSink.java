@@ -0,0 +1,38 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.openehealth.ipf.commons.audit.server;
+
+import java.util.List;
+
+/**
+ * Receives batches of audit messages from a {@link SyslogIngestionPipeline}, e.g. for writing them
+ * into a database or file in bulk.
+ *
+ * @since 4.5
+ */
+@FunctionalInterface
+public interface AuditMessageBatchSink {
+
+    /**
+     * Processes a batch of audit messages. Called by one worker thread at a time per batch;
+     * with more than one worker thread, batches may be processed concurrently.
+     *
+     * @param batch received audit messages, in order of arrival per worker
+     * @throws Exception if processing the batch has failed
+     */
+    void accept(List<ReceivedAuditMessage> batch) throws Exception;
+
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.openehealth.ipf.commons.audit.server;
+
+import org.openehealth.ipf.commons.audit.model.AuditMessage;
+
+import java.util.Map;
+
+/**
+ * Audit message received by a {@link SyslogServer}, together with the syslog frame it was contained in.
+ *
+ * @since 4.5
+ */
+public class ReceivedAuditMessage {
+
+    private final Map<String, Object> syslogMap;
+    private final AuditMessage auditMessage;
+
+    public ReceivedAuditMessage(Map<String, Object> syslogMap, AuditMessage auditMessage) {
+        this.syslogMap = syslogMap;
+        this.auditMessage = auditMessage;
+    }
+
+    /**
+     * @return syslog frame with keys as specified in {@link com.github.palindromicity.syslog.DefaultKeyProvider}
+     */
+    public Map<String, Object> getSyslogMap() {
+        return syslogMap;
+    }
+
+    /**
+     * @return parsed audit message
+     */
+    public AuditMessage getAuditMessage() {
+        return auditMessage;
+    }
+}
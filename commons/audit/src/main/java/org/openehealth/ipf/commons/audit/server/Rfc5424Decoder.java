@@ -15,21 +15,16 @@
  */
 package org.openehealth.ipf.commons.audit.server;
 
-import com.github.palindromicity.syslog.NilPolicy;
-import com.github.palindromicity.syslog.SyslogParser;
-import com.github.palindromicity.syslog.SyslogParserBuilder;
-import com.github.palindromicity.syslog.dsl.ParseException;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.socket.DatagramPacket;
 import io.netty.handler.codec.MessageToMessageDecoder;
+import org.openehealth.ipf.commons.audit.AuditException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.nio.charset.StandardCharsets;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -38,6 +33,10 @@ import java.util.Map;
  * Converts a Syslog string into a Map of elements as described by RFC 5424. It also
  * adds remote host information if available. If the Syslog string could not be parsed,
  * the raw data together with the exception is preserved.
+ * <p>
+ * Successfully decoded frames are represented as {@link SyslogEvent}, which avoids creating
+ * strings and map entries for fields that are never looked at.
+ * </p>
  *
  * @author Christian Ohr
  * @since 4.0
@@ -46,10 +45,6 @@ class Rfc5424Decoder extends MessageToMessageDecoder<ByteBuf> {
 
     private static final Logger LOG = LoggerFactory.getLogger(Rfc5424Decoder.class);
 
-    private static final SyslogParser syslogParser = new SyslogParserBuilder()
-            .withNilPolicy(NilPolicy.OMIT)
-            .build();
-
     public static final String SYSLOG_RAW_MESSAGE = "syslog.raw.message";
     public static final String SYSLOG_EXCEPTION = "syslog.exception";
     public static final String SYSLOG_REMOTE_HOST = "syslog.remote.host";
@@ -69,27 +64,12 @@ class Rfc5424Decoder extends MessageToMessageDecoder<ByteBuf> {
         if (LOG.isDebugEnabled()) {
             LOG.debug("Decoding message with {} bytes into RFC 5424 map.", msg.readableBytes());
         }
-        var map = parseByteBuf(msg);
-        if (socketAddress instanceof InetSocketAddress) {
-            var enriched = new HashMap<>(map);
-            var inetSocketAddress = (InetSocketAddress) socketAddress;
-            enriched.put(SYSLOG_REMOTE_HOST, inetSocketAddress.getHostName());
-            enriched.put(SYSLOG_REMOTE_PORT, inetSocketAddress.getPort());
-            enriched.put(SYSLOG_REMOTE_IP, inetSocketAddress.getAddress().getHostAddress());
-            return Collections.unmodifiableMap(enriched);
-        } else {
-            return map;
-        }
-    }
-
-    private static Map<String, Object> parseByteBuf(ByteBuf byteBuf) {
-        var message = byteBuf.toString(StandardCharsets.UTF_8);
+        var readerIndex = msg.readerIndex();
         try {
-            // Get rid of the pesky BOM character
-            return syslogParser.parseLine(message.replace("\uFEFF", ""));
-        } catch (ParseException e) {
+            return SyslogEvent.decode(msg, socketAddress);
+        } catch (AuditException e) {
             var map = new HashMap<String, Object>();
-            map.put(SYSLOG_RAW_MESSAGE, message);
+            map.put(SYSLOG_RAW_MESSAGE, msg.toString(readerIndex, msg.writerIndex() - readerIndex, StandardCharsets.UTF_8));
             map.put(SYSLOG_EXCEPTION, e);
             return map;
         }
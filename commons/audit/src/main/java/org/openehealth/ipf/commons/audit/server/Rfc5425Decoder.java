@@ -46,6 +46,7 @@ class Rfc5425Decoder extends ByteToMessageDecoder {
     @Override
     protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
         if (frameLength.isEmpty()) {
+            in.markReaderIndex();
             frameLength = getFrameLength(in);
             frameLength.ifPresentOrElse(
                     i -> in.skipBytes(1),   // found frame length, skip space
@@ -55,18 +56,18 @@ class Rfc5425Decoder extends ByteToMessageDecoder {
         frameLength.ifPresent(length -> {
             if (in.readableBytes() >= length) {
                 frameLength = empty();
-                out.add(in.readBytes(length));
+                out.add(in.readRetainedSlice(length));
             }
         });
     }
 
     private OptionalInt getFrameLength(ByteBuf in) {
         // Find index of the first space after the length field
-        var index = in.indexOf(0, in.readableBytes(), (byte) 32);
+        var index = in.indexOf(in.readerIndex(), in.writerIndex(), (byte) 32);
         if (index < 0) return empty();
 
         // Read part until the first space and convert it into a number
-        var byteBuf = in.readBytes(index);
+        var byteBuf = in.readBytes(index - in.readerIndex());
         try {
             var number = byteBuf.readCharSequence(byteBuf.readableBytes(), StandardCharsets.US_ASCII);
             return OptionalInt.of(Integer.parseInt(number.toString()));
@@ -0,0 +1,366 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.openehealth.ipf.commons.audit.server;
+
+import io.netty.buffer.ByteBuf;
+import org.openehealth.ipf.commons.audit.AuditException;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static com.github.palindromicity.syslog.dsl.SyslogFieldKeys.*;
+import static org.openehealth.ipf.commons.audit.server.Rfc5424Decoder.*;
+
+/**
+ * Syslog frame as described by RFC 5424, decoded by {@link Rfc5424Decoder}. The frame is kept as a single
+ * byte array, and the header fields are only recorded as offsets into this array while decoding. Strings
+ * are created when the respective accessor is called; the message body is decoded at most once.
+ * <p>
+ * For compatibility with existing {@link SyslogServer} consumers, the event is also a read-only Map with
+ * the keys as specified in {@link com.github.palindromicity.syslog.DefaultKeyProvider}, omitting NILVALUE
+ * fields. Calling {@link #get(Object)} with a known key does not materialize the map.
+ * </p>
+ *
+ * @since 4.5
+ */
+public final class SyslogEvent extends AbstractMap<String, Object> {
+
+    private static final byte NIL = '-';
+    private static final byte SP = ' ';
+    private static final int MAX_SD_NAME_LENGTH = 32;
+    private static final int TIMESTAMP = 0;
+    private static final int HOSTNAME = 1;
+    private static final int APPNAME = 2;
+    private static final int PROCID = 3;
+    private static final int MSGID = 4;
+    private static final int STRUCTURED_DATA = 5;
+    private static final int FIELDS = 6;
+
+    private final byte[] frame;
+    private final int priority;
+    private final int version;
+    // start and end offsets of the header fields and the structured data, -1 if NILVALUE
+    private final int[] offsets = new int[2 * FIELDS];
+    private final int messageStart;
+    private final InetSocketAddress remoteAddress;
+
+    private String message;
+    private Map<String, Object> map;
+
+    private SyslogEvent(byte[] frame, SocketAddress remoteAddress) {
+        this.frame = frame;
+        this.remoteAddress = remoteAddress instanceof InetSocketAddress ? (InetSocketAddress) remoteAddress : null;
+        var pos = 0;
+        if (frame.length == 0 || frame[pos++] != '<') {
+            throw invalid("PRI", pos);
+        }
+        var pri = 0;
+        var digits = 0;
+        while (pos < frame.length && isDigit(frame[pos]) && digits < 3) {
+            pri = pri * 10 + frame[pos++] - '0';
+            digits++;
+        }
+        if (digits == 0 || pri > 191 || pos >= frame.length || frame[pos++] != '>') {
+            throw invalid("PRI", pos);
+        }
+        this.priority = pri;
+        var ver = 0;
+        digits = 0;
+        while (pos < frame.length && isDigit(frame[pos]) && digits < 3) {
+            ver = ver * 10 + frame[pos++] - '0';
+            digits++;
+        }
+        if (ver == 0 || pos >= frame.length || frame[pos++] != SP) {
+            throw invalid("VERSION", pos);
+        }
+        this.version = ver;
+        for (var field = TIMESTAMP; field < STRUCTURED_DATA; field++) {
+            var start = pos;
+            while (pos < frame.length && frame[pos] > SP && frame[pos] < 127) {
+                pos++;
+            }
+            if (pos == start || pos >= frame.length || frame[pos] != SP) {
+                throw invalid("header", pos);
+            }
+            setOffsets(field, start, pos);
+            pos++;
+        }
+        var start = pos;
+        pos = skipStructuredData(pos);
+        setOffsets(STRUCTURED_DATA, start, pos);
+        if (pos < frame.length) {
+            if (frame[pos++] != SP) {
+                throw invalid("STRUCTURED-DATA", pos);
+            }
+            // Get rid of the pesky BOM character
+            if (pos + 2 < frame.length && frame[pos] == (byte) 0xEF && frame[pos + 1] == (byte) 0xBB && frame[pos + 2] == (byte) 0xBF) {
+                pos += 3;
+            }
+        }
+        this.messageStart = pos;
+    }
+
+    /**
+     * Decodes a syslog frame
+     *
+     * @param byteBuf       frame, which is read completely
+     * @param remoteAddress address of the sender, may be null
+     * @return decoded event
+     * @throws AuditException if the frame does not conform to RFC 5424
+     */
+    static SyslogEvent decode(ByteBuf byteBuf, SocketAddress remoteAddress) {
+        var frame = new byte[byteBuf.readableBytes()];
+        byteBuf.readBytes(frame);
+        return new SyslogEvent(frame, remoteAddress);
+    }
+
+    public int getFacility() {
+        return priority >> 3;
+    }
+
+    public int getSeverity() {
+        return priority & 7;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * @return timestamp as contained in the frame, or null if NILVALUE
+     */
+    public String getTimestamp() {
+        return field(TIMESTAMP);
+    }
+
+    public String getHostName() {
+        return field(HOSTNAME);
+    }
+
+    public String getAppName() {
+        return field(APPNAME);
+    }
+
+    public String getProcId() {
+        return field(PROCID);
+    }
+
+    public String getMsgId() {
+        return field(MSGID);
+    }
+
+    /**
+     * @return structured data as contained in the frame, or null if NILVALUE
+     */
+    public String getStructuredData() {
+        return field(STRUCTURED_DATA);
+    }
+
+    /**
+     * @return message body, decoded as UTF-8, or null if the frame has no message body
+     */
+    public String getMessage() {
+        if (message == null && messageStart < frame.length) {
+            message = new String(frame, messageStart, frame.length - messageStart, StandardCharsets.UTF_8);
+        }
+        return message;
+    }
+
+    /**
+     * @return length of the message body in bytes
+     */
+    public int getMessageLength() {
+        return frame.length - messageStart;
+    }
+
+    /**
+     * @return address of the sender, or null if unknown
+     */
+    public InetSocketAddress getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (MESSAGE.getField().equals(key)) {
+            return getMessage();
+        }
+        if (HEADER_HOSTNAME.getField().equals(key)) {
+            return getHostName();
+        }
+        if (HEADER_APPNAME.getField().equals(key)) {
+            return getAppName();
+        }
+        if (HEADER_TIMESTAMP.getField().equals(key)) {
+            return getTimestamp();
+        }
+        return asMap().get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return asMap().entrySet();
+    }
+
+    private Map<String, Object> asMap() {
+        var result = map;
+        if (result == null) {
+            result = new LinkedHashMap<>();
+            putIfNotNull(result, HEADER_PRI.getField(), Integer.toString(priority));
+            putIfNotNull(result, HEADER_PRI_FACILITY.getField(), Integer.toString(getFacility()));
+            putIfNotNull(result, HEADER_PRI_SEVERITY.getField(), Integer.toString(getSeverity()));
+            putIfNotNull(result, HEADER_VERSION.getField(), Integer.toString(version));
+            putIfNotNull(result, HEADER_TIMESTAMP.getField(), getTimestamp());
+            putIfNotNull(result, HEADER_HOSTNAME.getField(), getHostName());
+            putIfNotNull(result, HEADER_APPNAME.getField(), getAppName());
+            putIfNotNull(result, HEADER_PROCID.getField(), getProcId());
+            putIfNotNull(result, HEADER_MSGID.getField(), getMsgId());
+            putStructuredData(result);
+            putIfNotNull(result, MESSAGE.getField(), getMessage());
+            if (remoteAddress != null) {
+                // Reverse lookup of the host name is deferred until it is actually needed
+                result.put(SYSLOG_REMOTE_HOST, remoteAddress.getHostName());
+                result.put(SYSLOG_REMOTE_PORT, remoteAddress.getPort());
+                if (remoteAddress.getAddress() != null) {
+                    result.put(SYSLOG_REMOTE_IP, remoteAddress.getAddress().getHostAddress());
+                }
+            }
+            map = result = Collections.unmodifiableMap(result);
+        }
+        return result;
+    }
+
+    /**
+     * Collects the SD-PARAMs. The syntax has been validated by {@link #skipStructuredData(int)} already.
+     */
+    private void putStructuredData(Map<String, Object> result) {
+        var pos = offsets[2 * STRUCTURED_DATA];
+        if (pos < 0) return;
+        var end = offsets[2 * STRUCTURED_DATA + 1];
+        while (pos < end) {
+            // '[' SD-ID *(SP PARAM-NAME '="' PARAM-VALUE '"') ']'
+            var idStart = ++pos;
+            while (frame[pos] != SP && frame[pos] != ']') pos++;
+            var id = ascii(idStart, pos);
+            while (frame[pos] == SP) {
+                var nameStart = ++pos;
+                while (frame[pos] != '=') pos++;
+                var name = ascii(nameStart, pos);
+                pos += 2;
+                // Like the syslog parser, escape sequences are kept as they are
+                var valueStart = pos;
+                while (frame[pos] != '"') {
+                    pos += frame[pos] == '\\' && isEscaped(frame[pos + 1]) ? 2 : 1;
+                }
+                var value = new String(frame, valueStart, pos - valueStart, StandardCharsets.UTF_8);
+                result.put(String.format(STRUCTURED_ELEMENT_ID_PNAME_FMT.getField(), id, name), value);
+                pos++;
+            }
+            pos++;
+        }
+    }
+
+    private int skipStructuredData(int pos) {
+        if (pos < frame.length && frame[pos] == NIL) {
+            return pos + 1;
+        }
+        if (pos >= frame.length || frame[pos] != '[') {
+            throw invalid("STRUCTURED-DATA", pos);
+        }
+        while (pos < frame.length && frame[pos] == '[') {
+            // '[' SD-ID *(SP PARAM-NAME '="' PARAM-VALUE '"') ']'
+            pos = skipSdName(pos + 1);
+            while (pos < frame.length && frame[pos] == SP) {
+                pos = skipSdName(pos + 1);
+                if (pos + 1 >= frame.length || frame[pos] != '=' || frame[pos + 1] != '"') {
+                    throw invalid("SD-PARAM", pos);
+                }
+                pos += 2;
+                while (pos < frame.length && frame[pos] != '"') {
+                    pos += frame[pos] == '\\' && pos + 1 < frame.length && isEscaped(frame[pos + 1]) ? 2 : 1;
+                }
+                if (pos >= frame.length) {
+                    throw invalid("PARAM-VALUE", pos);
+                }
+                pos++;
+            }
+            if (pos >= frame.length || frame[pos] != ']') {
+                throw invalid("SD-ELEMENT", pos);
+            }
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * Skips an SD-ID or PARAM-NAME, consisting of 1 to 32 printable US-ASCII characters except '=', SP, ']' and '"'
+     */
+    private int skipSdName(int pos) {
+        var start = pos;
+        while (pos < frame.length && frame[pos] > SP && frame[pos] < 127
+                && frame[pos] != '=' && frame[pos] != ']' && frame[pos] != '"') {
+            pos++;
+        }
+        if (pos == start || pos - start > MAX_SD_NAME_LENGTH) {
+            throw invalid("SD-NAME", pos);
+        }
+        return pos;
+    }
+
+    private void setOffsets(int field, int start, int end) {
+        var nil = end - start == 1 && frame[start] == NIL;
+        offsets[2 * field] = nil ? -1 : start;
+        offsets[2 * field + 1] = nil ? -1 : end;
+    }
+
+    private String field(int field) {
+        var start = offsets[2 * field];
+        return start < 0 ? null : ascii(start, offsets[2 * field + 1]);
+    }
+
+    private String ascii(int start, int end) {
+        return new String(frame, start, end - start, StandardCharsets.US_ASCII);
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean isEscaped(byte b) {
+        return b == '"' || b == '\\' || b == ']';
+    }
+
+    private static void putIfNotNull(Map<String, Object> map, String key, Object value) {
+        if (value != null) {
+            map.put(key, value);
+        }
+    }
+
+    private AuditException invalid(String part, int pos) {
+        return new AuditException(String.format("Invalid RFC 5424 %s at position %d", part, pos));
+    }
+}
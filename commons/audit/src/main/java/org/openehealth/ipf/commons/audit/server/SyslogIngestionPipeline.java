@@ -0,0 +1,303 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.openehealth.ipf.commons.audit.server;
+
+import com.github.palindromicity.syslog.dsl.SyslogFieldKeys;
+import org.openehealth.ipf.commons.audit.AuditException;
+import org.openehealth.ipf.commons.audit.unmarshal.AuditParser;
+import org.openehealth.ipf.commons.audit.unmarshal.dicom.StaxDICOMAuditParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Staged processing of syslog frames received by a {@link SyslogServer}. The network threads only hand
+ * over the frames to a bounded queue. Worker threads parse the contained audit messages and pass them
+ * in batches to an {@link AuditMessageBatchSink}, e.g. for writing them into a database in bulk.
+ * <p>
+ * If the queue is full, the server stops reading from the connection until there is space again, so
+ * that backpressure propagates to the senders instead of exhausting the heap. Note that syslog over UDP
+ * has no flow control, so datagrams are dropped by the operating system in this case.
+ * </p>
+ * <p>
+ * Syslog frames that could not be decoded and audit messages that could not be parsed are passed to the
+ * error consumer, as well as exceptions thrown by the sink. The pipeline is started with the first frame
+ * and must be {@link #close() closed} after the server has been stopped.
+ * </p>
+ *
+ * @since 4.5
+ */
+public class SyslogIngestionPipeline implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SyslogIngestionPipeline.class);
+
+    private final AuditMessageBatchSink sink;
+    private final Consumer<Throwable> errorConsumer;
+    private AuditParser auditParser = new StaxDICOMAuditParser();
+    private boolean validate = false;
+    private int queueCapacity = 1024;
+    private int workerThreads = 1;
+    private int maxBatchSize = 100;
+    private long maxBatchDelayMillis = 100;
+    private int shutdownTimeoutSeconds = 30;
+
+    private volatile boolean running = true;
+    private volatile BlockingQueue<Map<String, Object>> queue;
+    private final List<Thread> workers = new ArrayList<>();
+
+    /**
+     * @param sink          sink for batches of received audit messages
+     * @param errorConsumer consumer for errors
+     */
+    public SyslogIngestionPipeline(AuditMessageBatchSink sink, Consumer<Throwable> errorConsumer) {
+        this.sink = requireNonNull(sink);
+        this.errorConsumer = requireNonNull(errorConsumer);
+    }
+
+    /**
+     * Sets the parser for the audit messages. Defaults to {@link StaxDICOMAuditParser}.
+     *
+     * @param auditParser parser for the audit messages
+     */
+    public void setAuditParser(AuditParser auditParser) {
+        this.auditParser = requireNonNull(auditParser);
+    }
+
+    /**
+     * Sets whether audit messages are validated when parsed. Defaults to false.
+     *
+     * @param validate whether audit messages are validated when parsed
+     */
+    public void setValidate(boolean validate) {
+        this.validate = validate;
+    }
+
+    /**
+     * Sets the maximum number of syslog frames waiting to be processed. Defaults to 1024.
+     *
+     * @param queueCapacity maximum number of syslog frames waiting to be processed
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Sets the number of threads parsing audit messages and calling the sink. Defaults to 1.
+     *
+     * @param workerThreads number of threads parsing audit messages and calling the sink
+     */
+    public void setWorkerThreads(int workerThreads) {
+        this.workerThreads = workerThreads;
+    }
+
+    /**
+     * Sets the maximum number of audit messages passed to the sink at once. Defaults to 100.
+     *
+     * @param maxBatchSize maximum number of audit messages passed to the sink at once
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Sets the maximum time to wait for more audit messages before an incomplete batch
+     * is passed to the sink. Defaults to 100.
+     *
+     * @param maxBatchDelayMillis maximum time to wait for more audit messages
+     */
+    public void setMaxBatchDelayMillis(long maxBatchDelayMillis) {
+        this.maxBatchDelayMillis = maxBatchDelayMillis;
+    }
+
+    /**
+     * Sets the timeout to wait for pending syslog frames to be processed on close. Defaults to 30.
+     *
+     * @param shutdownTimeoutSeconds timeout to wait for pending syslog frames to be processed on close
+     */
+    public void setShutdownTimeoutSeconds(int shutdownTimeoutSeconds) {
+        this.shutdownTimeoutSeconds = shutdownTimeoutSeconds;
+    }
+
+    /**
+     * Hands over a syslog frame to the pipeline. The returned Mono completes immediately if there is space
+     * in the queue; otherwise it completes as soon as the frame could be enqueued. Subscribers should wait
+     * for completion before requesting the next frame, so that reading from the network is paused meanwhile.
+     *
+     * @param syslogMap decoded syslog frame
+     * @return Mono that completes when the frame has been accepted
+     */
+    public Mono<Void> offer(Map<String, Object> syslogMap) {
+        var queue = start();
+        if (!running) {
+            return Mono.error(new AuditException("Syslog ingestion pipeline has been closed"));
+        }
+        if (queue.offer(syslogMap)) {
+            return Mono.empty();
+        }
+        LOG.debug("Syslog ingestion queue is full, pausing");
+        return Mono.<Void>fromRunnable(() -> put(queue, syslogMap))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Hands over a syslog frame to the pipeline, blocking while the queue is full.
+     *
+     * @param syslogMap decoded syslog frame
+     */
+    public void put(Map<String, Object> syslogMap) {
+        put(start(), syslogMap);
+    }
+
+    /**
+     * @return number of syslog frames waiting to be processed
+     */
+    public int getQueueSize() {
+        var queue = this.queue;
+        return queue != null ? queue.size() : 0;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        synchronized (this) {
+            var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(shutdownTimeoutSeconds);
+            try {
+                for (var worker : workers) {
+                    worker.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+                }
+                if (queue != null && !queue.isEmpty()) {
+                    LOG.warn("Timeout occurred when processing received syslog frames, {} frames have not been processed", queue.size());
+                }
+            } catch (InterruptedException e) {
+                LOG.warn("Thread interrupt when processing received syslog frames, some frames might have been lost", e);
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private BlockingQueue<Map<String, Object>> start() {
+        var result = queue;
+        if (result == null) {
+            synchronized (this) {
+                result = queue;
+                if (result == null) {
+                    result = new ArrayBlockingQueue<>(queueCapacity);
+                    for (var i = 0; i < workerThreads; i++) {
+                        var worker = new Thread(new Worker(result), "ipf-audit-ingestion-" + i);
+                        worker.setDaemon(true);
+                        worker.start();
+                        workers.add(worker);
+                    }
+                    queue = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private void put(BlockingQueue<Map<String, Object>> queue, Map<String, Object> syslogMap) {
+        try {
+            while (!queue.offer(syslogMap, 100, TimeUnit.MILLISECONDS)) {
+                if (!running) {
+                    throw new AuditException("Syslog ingestion pipeline has been closed");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AuditException("Interrupted while waiting for space in the syslog ingestion queue", e);
+        }
+    }
+
+    private final class Worker implements Runnable {
+
+        private final BlockingQueue<Map<String, Object>> queue;
+
+        private Worker(BlockingQueue<Map<String, Object>> queue) {
+            this.queue = queue;
+        }
+
+        @Override
+        public void run() {
+            var batch = new ArrayList<ReceivedAuditMessage>(maxBatchSize);
+            var batchDeadline = 0L;
+            while (running || !queue.isEmpty()) {
+                try {
+                    var timeout = batch.isEmpty() ?
+                            TimeUnit.MILLISECONDS.toNanos(100) :
+                            batchDeadline - System.nanoTime();
+                    var syslogMap = queue.poll(Math.max(0, timeout), TimeUnit.NANOSECONDS);
+                    if (syslogMap != null) {
+                        var received = parse(syslogMap);
+                        if (received != null) {
+                            if (batch.isEmpty()) {
+                                batchDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxBatchDelayMillis);
+                            }
+                            batch.add(received);
+                        }
+                    }
+                    if (batch.size() >= maxBatchSize || (!batch.isEmpty() && System.nanoTime() - batchDeadline >= 0)) {
+                        flush(batch);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            flush(batch);
+        }
+
+        private ReceivedAuditMessage parse(Map<String, Object> syslogMap) {
+            try {
+                var exception = syslogMap.get(Rfc5424Decoder.SYSLOG_EXCEPTION);
+                if (exception instanceof Throwable) {
+                    throw new AuditException("Could not decode syslog frame", (Throwable) exception);
+                }
+                var message = syslogMap.get(SyslogFieldKeys.MESSAGE.getField());
+                if (message == null) {
+                    throw new AuditException("Syslog frame does not contain a message");
+                }
+                return new ReceivedAuditMessage(syslogMap, auditParser.parse(message.toString(), validate));
+            } catch (Exception e) {
+                errorConsumer.accept(e);
+                return null;
+            }
+        }
+
+        private void flush(List<ReceivedAuditMessage> batch) {
+            if (!batch.isEmpty()) {
+                try {
+                    sink.accept(List.copyOf(batch));
+                } catch (Exception e) {
+                    errorConsumer.accept(e);
+                } finally {
+                    batch.clear();
+                }
+            }
+        }
+    }
+}
@@ -15,6 +15,7 @@
  */
 package org.openehealth.ipf.commons.audit.server;
 
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 import reactor.netty.DisposableChannel;
@@ -47,6 +48,7 @@ public abstract class SyslogServer<T extends DisposableChannel> implements Close
     protected T channel;
     protected final Consumer<? super Map<String, Object>> consumer;
     protected final Consumer<Throwable> errorConsumer;
+    protected final SyslogIngestionPipeline pipeline;
 
     /**
      * @param consumer      consumer for handled syslog frames
@@ -56,6 +58,19 @@ public abstract class SyslogServer<T extends DisposableChannel> implements Close
                         Consumer<Throwable> errorConsumer) {
         this.consumer = consumer;
         this.errorConsumer = errorConsumer;
+        this.pipeline = null;
+    }
+
+    /**
+     * @param pipeline      pipeline processing received syslog frames on its own worker threads
+     * @param errorConsumer consumer for errors
+     * @since 4.5
+     */
+    public SyslogServer(SyslogIngestionPipeline pipeline,
+                        Consumer<Throwable> errorConsumer) {
+        this.consumer = pipeline::put;
+        this.errorConsumer = errorConsumer;
+        this.pipeline = pipeline;
     }
 
     /**
@@ -104,6 +119,20 @@ public abstract class SyslogServer<T extends DisposableChannel> implements Close
                 .subscribeOn(Schedulers.boundedElastic());
     }
 
+    /**
+     * Consumes the received syslog records. Without {@link SyslogIngestionPipeline}, each record is
+     * consumed asynchronously using {@link #handleMap(Map)}. Otherwise, the records are passed to the pipeline
+     * one after the other, so that the server stops reading while the pipeline is saturated.
+     *
+     * @param maps syslog maps
+     * @return completion signals
+     */
+    protected Flux<?> handleMaps(Flux<Map<String, Object>> maps) {
+        return pipeline != null ?
+                maps.concatMap(pipeline::offer) :
+                maps.flatMap(this::handleMap);
+    }
+
     @Override
     public void close() {
         stop();
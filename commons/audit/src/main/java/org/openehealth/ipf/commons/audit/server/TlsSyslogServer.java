@@ -53,6 +53,13 @@ public class TlsSyslogServer extends SyslogServer<DisposableChannel> {
         this.tlsParameters = tlsParameters;
     }
 
+    public TlsSyslogServer(SyslogIngestionPipeline pipeline,
+                           Consumer<Throwable> errorConsumer,
+                           TlsParameters tlsParameters) {
+        super(pipeline, errorConsumer);
+        this.tlsParameters = tlsParameters;
+    }
+
     @Override
     public TlsSyslogServer doStart(String host, int port) {
         var sslContext = NettyUtils.initSslContext(tlsParameters, true);
@@ -75,14 +82,19 @@ public class TlsSyslogServer extends SyslogServer<DisposableChannel> {
                             .addHandler(new Rfc5424Decoder());  // parse frame, fast enough for receiver thread
                 })
                 .handle((nettyInbound, nettyOutbound) -> nettyInbound.receiveObject()
-                        .cast(Map.class)
-                        .flatMap(this::handleMap)
+                        .map(this::asMap)
+                        .transform(this::handleMaps)
                         .doOnError(errorConsumer)
                         .then())
                 .bindNow(Duration.ofSeconds(TIMEOUT));
         return this;
     }
 
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> asMap(Object o) {
+        return (Map<String, Object>) o;
+    }
+
 
 
 }
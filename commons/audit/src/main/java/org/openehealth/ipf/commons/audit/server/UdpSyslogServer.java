@@ -44,6 +44,11 @@ public class UdpSyslogServer extends SyslogServer<Connection> {
         super(consumer, errorConsumer);
     }
 
+    public UdpSyslogServer(SyslogIngestionPipeline pipeline,
+                           Consumer<Throwable> errorConsumer) {
+        super(pipeline, errorConsumer);
+    }
+
     @Override
     public UdpSyslogServer doStart(String host, int port) {
         channel = UdpServer.create()
@@ -67,7 +72,7 @@ public class UdpSyslogServer extends SyslogServer<Connection> {
                         // Because the handlers don't seem to step in, we handle it here
                         .map(o -> ((DatagramPacket) o))
                         .map(Rfc5424Decoder::decodeDatagram)
-                        .flatMap(this::handleMap)
+                        .transform(this::handleMaps)
                         .doOnError(errorConsumer)
                         .then())
                 .bindNow(Duration.ofSeconds(TIMEOUT));
@@ -18,7 +18,7 @@ package org.openehealth.ipf.commons.audit.server.support;
 import com.github.palindromicity.syslog.dsl.SyslogFieldKeys;
 import org.openehealth.ipf.commons.audit.model.AuditMessage;
 import org.openehealth.ipf.commons.audit.unmarshal.AuditParser;
-import org.openehealth.ipf.commons.audit.unmarshal.dicom.DICOMAuditParser;
+import org.openehealth.ipf.commons.audit.unmarshal.dicom.StaxDICOMAuditParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,7 +40,7 @@ import java.util.stream.Collectors;
 public class SyslogEventCollector implements Consumer<Map<String, Object>> {
 
     private static final Logger LOG = LoggerFactory.getLogger(SyslogEventCollector.class);
-    private static final AuditParser PARSER = new DICOMAuditParser();
+    private static final AuditParser PARSER = new StaxDICOMAuditParser();
     private final Collection<Map<String, Object>> syslogMaps = new ConcurrentLinkedQueue<>();
 
     public static SyslogEventCollector newInstance() {
@@ -18,7 +18,7 @@ package org.openehealth.ipf.commons.audit.server.support;
 import com.github.palindromicity.syslog.dsl.SyslogFieldKeys;
 import org.openehealth.ipf.commons.audit.model.AuditMessage;
 import org.openehealth.ipf.commons.audit.unmarshal.AuditParser;
-import org.openehealth.ipf.commons.audit.unmarshal.dicom.DICOMAuditParser;
+import org.openehealth.ipf.commons.audit.unmarshal.dicom.StaxDICOMAuditParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,7 +34,7 @@ import java.util.function.Consumer;
 public class SyslogEventDICOMPrinter {
 
     private static final Logger LOG = LoggerFactory.getLogger(SyslogEventDICOMPrinter.class);
-    private static final AuditParser PARSER = new DICOMAuditParser();
+    private static final AuditParser PARSER = new StaxDICOMAuditParser();
 
     public static EventConsumer newEventConsumer(String channel) {
         return new EventConsumer(channel);
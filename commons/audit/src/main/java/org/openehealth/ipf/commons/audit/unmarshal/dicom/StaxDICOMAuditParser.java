@@ -0,0 +1,380 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.openehealth.ipf.commons.audit.unmarshal.dicom;
+
+import org.openehealth.ipf.commons.audit.AuditException;
+import org.openehealth.ipf.commons.audit.codes.AuditSourceType;
+import org.openehealth.ipf.commons.audit.codes.EventActionCode;
+import org.openehealth.ipf.commons.audit.codes.EventOutcomeIndicator;
+import org.openehealth.ipf.commons.audit.codes.NetworkAccessPointTypeCode;
+import org.openehealth.ipf.commons.audit.codes.ParticipantObjectDataLifeCycle;
+import org.openehealth.ipf.commons.audit.codes.ParticipantObjectTypeCode;
+import org.openehealth.ipf.commons.audit.codes.ParticipantObjectTypeCodeRole;
+import org.openehealth.ipf.commons.audit.model.ActiveParticipantType;
+import org.openehealth.ipf.commons.audit.model.AuditMessage;
+import org.openehealth.ipf.commons.audit.model.AuditSourceIdentificationType;
+import org.openehealth.ipf.commons.audit.model.DicomObjectDescriptionType;
+import org.openehealth.ipf.commons.audit.model.EventIdentificationType;
+import org.openehealth.ipf.commons.audit.model.ParticipantObjectIdentificationType;
+import org.openehealth.ipf.commons.audit.model.TypeValuePairType;
+import org.openehealth.ipf.commons.audit.types.ActiveParticipantRoleId;
+import org.openehealth.ipf.commons.audit.types.CodedValueType;
+import org.openehealth.ipf.commons.audit.types.EventId;
+import org.openehealth.ipf.commons.audit.types.EventType;
+import org.openehealth.ipf.commons.audit.types.MediaType;
+import org.openehealth.ipf.commons.audit.types.ParticipantObjectIdType;
+import org.openehealth.ipf.commons.audit.types.PurposeOfUse;
+import org.openehealth.ipf.commons.audit.unmarshal.AuditParser;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import java.io.StringReader;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.util.Base64;
+import java.util.function.Function;
+
+import static org.openehealth.ipf.commons.audit.XMLNames.*;
+
+/**
+ * Parses XML-formatted Audit messages as written by
+ * {@link org.openehealth.ipf.commons.audit.marshal.dicom.DICOM2017c} using a StAX pull parser that maps
+ * the XML directly onto an {@link AuditMessage} without building a document tree. Audit source type codes
+ * written by {@link org.openehealth.ipf.commons.audit.marshal.dicom.DICOM2016a} and
+ * {@link org.openehealth.ipf.commons.audit.marshal.dicom.DICOM2016c} are accepted as well.
+ * <p>
+ * If validation is requested, the message is validated against the DICOM 2017c schema before being
+ * parsed. The compiled schema is cached and shared between threads. Instances of this class are thread-safe.
+ * </p>
+ *
+ * @see DICOMAuditParser
+ * @since 4.5
+ */
+public class StaxDICOMAuditParser implements AuditParser {
+
+    private static final XMLInputFactory XML_INPUT_FACTORY;
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = new DateTimeFormatterBuilder()
+            .append(DateTimeFormatter.ISO_LOCAL_DATE_TIME)
+            .optionalStart().appendOffsetId()
+            .toFormatter();
+
+    static {
+        XML_INPUT_FACTORY = XMLInputFactory.newFactory();
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_COALESCING, true);
+    }
+
+    private static final class SchemaHolder {
+        private static final Schema SCHEMA = loadSchema();
+
+        private static Schema loadSchema() {
+            try {
+                var schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+                return schemaFactory.newSchema(StaxDICOMAuditParser.class.getResource("/dicom2017c.xsd"));
+            } catch (SAXException e) {
+                throw new AuditException("Could not load DICOM audit schema", e);
+            }
+        }
+    }
+
+    @Override
+    public AuditMessage parse(String s, boolean validate) {
+        try {
+            if (validate) {
+                // Validator instances are cheap, but not thread-safe
+                SchemaHolder.SCHEMA.newValidator().validate(new StreamSource(new StringReader(s)));
+            }
+            var reader = XML_INPUT_FACTORY.createXMLStreamReader(new StringReader(s));
+            try {
+                reader.nextTag();
+                reader.require(XMLStreamConstants.START_ELEMENT, null, AUDIT_MESSAGE);
+                return auditMessage(reader);
+            } finally {
+                reader.close();
+            }
+        } catch (AuditException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new AuditException(e);
+        }
+    }
+
+    private AuditMessage auditMessage(XMLStreamReader reader) throws XMLStreamException {
+        var auditMessage = new AuditMessage();
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            switch (reader.getLocalName()) {
+                case EVENT_IDENTIFICATION:
+                    auditMessage.setEventIdentification(eventIdentificationType(reader));
+                    break;
+                case ACTIVE_PARTICIPANT:
+                    auditMessage.getActiveParticipants().add(activeParticipantType(reader));
+                    break;
+                case AUDIT_SOURCE_IDENTIFICATION:
+                    auditMessage.setAuditSourceIdentification(auditSourceIdentificationType(reader));
+                    break;
+                case PARTICIPANT_OBJECT_IDENTIFICATION:
+                    auditMessage.getParticipantObjectIdentifications().add(participantObjectIdentificationType(reader));
+                    break;
+                default:
+                    skipElement(reader);
+            }
+        }
+        return auditMessage;
+    }
+
+    private EventIdentificationType eventIdentificationType(XMLStreamReader reader) throws XMLStreamException {
+        var eventActionCode = attribute(reader, EVENT_ACTION_CODE);
+        var eventDateTime = dateTime(attribute(reader, EVENT_DATE_TIME));
+        var eventOutcomeIndicator = EventOutcomeIndicator.enumForCode(Integer.parseInt(attribute(reader, EVENT_OUTCOME_INDICATOR)));
+        EventId eventId = null;
+        EventIdentificationType ei = null;
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            // EventID is the first child element
+            if (EVENT_ID.equals(reader.getLocalName())) {
+                eventId = codedValue(reader, EventId::of);
+                continue;
+            }
+            if (ei == null) {
+                ei = new EventIdentificationType(eventId, eventDateTime, eventOutcomeIndicator);
+            }
+            switch (reader.getLocalName()) {
+                case EVENT_TYPE_CODE:
+                    ei.getEventTypeCode().add(codedValue(reader, EventType::of));
+                    break;
+                case EVENT_OUTCOME_DESCRIPTION:
+                    ei.setEventOutcomeDescription(reader.getElementText());
+                    break;
+                case PURPOSE_OF_USE:
+                    ei.getPurposesOfUse().add(codedValue(reader, PurposeOfUse::of));
+                    break;
+                default:
+                    skipElement(reader);
+            }
+        }
+        if (ei == null) {
+            ei = new EventIdentificationType(eventId, eventDateTime, eventOutcomeIndicator);
+        }
+        if (eventActionCode != null) {
+            ei.setEventActionCode(EventActionCode.enumForCode(eventActionCode));
+        }
+        return ei;
+    }
+
+    private ActiveParticipantType activeParticipantType(XMLStreamReader reader) throws XMLStreamException {
+        var ap = new ActiveParticipantType(
+                attribute(reader, USER_ID),
+                Boolean.parseBoolean(attribute(reader, USER_IS_REQUESTOR)));
+        ap.setAlternativeUserID(attribute(reader, ALTERNATIVE_USER_ID));
+        ap.setUserName(attribute(reader, USER_NAME));
+        ap.setNetworkAccessPointID(attribute(reader, NETWORK_ACCESS_POINT_ID));
+        var networkAccessPointTypeCode = attribute(reader, NETWORK_ACCESS_POINT_TYPE_CODE);
+        if (networkAccessPointTypeCode != null) {
+            ap.setNetworkAccessPointTypeCode(NetworkAccessPointTypeCode.enumForCode(
+                    Short.parseShort(networkAccessPointTypeCode)));
+        }
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            switch (reader.getLocalName()) {
+                case ROLE_ID_CODE:
+                    ap.getRoleIDCodes().add(codedValue(reader, ActiveParticipantRoleId::of));
+                    break;
+                case MEDIA_IDENTIFIER:
+                    while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                        if (MEDIA_TYPE.equals(reader.getLocalName())) {
+                            ap.setMediaType(codedValue(reader, MediaType::of));
+                        } else {
+                            skipElement(reader);
+                        }
+                    }
+                    break;
+                default:
+                    skipElement(reader);
+            }
+        }
+        return ap;
+    }
+
+    private AuditSourceIdentificationType auditSourceIdentificationType(XMLStreamReader reader) throws XMLStreamException {
+        var asi = new AuditSourceIdentificationType(attribute(reader, AUDIT_SOURCE_ID));
+        asi.setAuditEnterpriseSiteID(attribute(reader, AUDIT_ENTERPRISE_SITE_ID));
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if (AUDIT_SOURCE_TYPE_CODE.equals(reader.getLocalName())) {
+                // DICOM 2017c uses csd-code, DICOM 2016c uses code, DICOM 2016a uses the element text
+                var code = attribute(reader, CSD_CODE);
+                if (code == null) {
+                    code = attribute(reader, CODE);
+                }
+                var text = reader.getElementText();
+                asi.getAuditSourceType().add(AuditSourceType.enumForCode(code != null ? code : text.trim()));
+            } else {
+                skipElement(reader);
+            }
+        }
+        return asi;
+    }
+
+    private ParticipantObjectIdentificationType participantObjectIdentificationType(XMLStreamReader reader) throws XMLStreamException {
+        var participantObjectId = attribute(reader, PARTICIPANT_OBJECT_ID);
+        var participantObjectTypeCode = attribute(reader, PARTICIPANT_OBJECT_TYPE_CODE);
+        var participantObjectTypeCodeRole = attribute(reader, PARTICIPANT_OBJECT_TYPE_CODE_ROLE);
+        var participantObjectDataLifeCycle = attribute(reader, PARTICIPANT_OBJECT_DATA_LIFE_CYCLE);
+        var participantObjectSensitivity = attribute(reader, PARTICIPANT_OBJECT_SENSITIVITY);
+
+        // ParticipantObjectIDTypeCode is the first child element
+        reader.nextTag();
+        reader.require(XMLStreamConstants.START_ELEMENT, null, PARTICIPANT_OBJECT_ID_TYPE_CODE);
+        var poi = new ParticipantObjectIdentificationType(participantObjectId, codedValue(reader, ParticipantObjectIdType::of));
+        if (participantObjectTypeCode != null) {
+            poi.setParticipantObjectTypeCode(ParticipantObjectTypeCode.enumForCode(
+                    Short.parseShort(participantObjectTypeCode)));
+        }
+        if (participantObjectTypeCodeRole != null) {
+            poi.setParticipantObjectTypeCodeRole(ParticipantObjectTypeCodeRole.enumForCode(
+                    Short.parseShort(participantObjectTypeCodeRole)));
+        }
+        if (participantObjectDataLifeCycle != null) {
+            poi.setParticipantObjectDataLifeCycle(ParticipantObjectDataLifeCycle.enumForCode(
+                    Short.parseShort(participantObjectDataLifeCycle)));
+        }
+        poi.setParticipantObjectSensitivity(participantObjectSensitivity);
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            switch (reader.getLocalName()) {
+                case PARTICIPANT_OBJECT_NAME:
+                    poi.setParticipantObjectName(reader.getElementText());
+                    break;
+                case PARTICIPANT_OBJECT_QUERY:
+                    poi.setParticipantObjectQuery(Base64.getDecoder().decode(reader.getElementText()));
+                    break;
+                case PARTICIPANT_OBJECT_DETAIL:
+                    poi.getParticipantObjectDetails().add(valuePair(reader));
+                    break;
+                case PARTICIPANT_OBJECT_DESCRIPTION:
+                    poi.getParticipantObjectDescriptions().add(participantObjectDescription(reader));
+                    break;
+                default:
+                    skipElement(reader);
+            }
+        }
+        return poi;
+    }
+
+    private DicomObjectDescriptionType participantObjectDescription(XMLStreamReader reader) throws XMLStreamException {
+        var dicom = new DicomObjectDescriptionType();
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            switch (reader.getLocalName()) {
+                case MPPS:
+                    dicom.getMPPS().add(attribute(reader, UID));
+                    skipElement(reader);
+                    break;
+                case ACCESSION:
+                    dicom.getAccession().add(attribute(reader, NUMBER));
+                    skipElement(reader);
+                    break;
+                case SOP_CLASS:
+                    dicom.getSOPClasses().add(sopClass(reader));
+                    break;
+                case PARTICIPANT_OBJECT_CONTAINS_STUDY:
+                    while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                        if (STUDY_IDS.equals(reader.getLocalName())) {
+                            dicom.getStudyIDs().add(attribute(reader, UID));
+                        }
+                        skipElement(reader);
+                    }
+                    break;
+                case ENCRYPTED:
+                    dicom.setEncrypted(Boolean.parseBoolean(reader.getElementText()));
+                    break;
+                case ANONYMIZED:
+                    dicom.setAnonymized(Boolean.parseBoolean(reader.getElementText()));
+                    break;
+                default:
+                    skipElement(reader);
+            }
+        }
+        return dicom;
+    }
+
+    private DicomObjectDescriptionType.SOPClass sopClass(XMLStreamReader reader) throws XMLStreamException {
+        var sopClass = new DicomObjectDescriptionType.SOPClass(
+                Integer.parseInt(attribute(reader, NUMBER_OF_INSTANCES)));
+        sopClass.setUid(attribute(reader, UID));
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if (INSTANCE.equals(reader.getLocalName())) {
+                sopClass.getInstanceUids().add(attribute(reader, UID));
+            }
+            skipElement(reader);
+        }
+        return sopClass;
+    }
+
+    private TypeValuePairType valuePair(XMLStreamReader reader) throws XMLStreamException {
+        var valuePair = new TypeValuePairType(
+                attribute(reader, TYPE),
+                Base64.getDecoder().decode(attribute(reader, VALUE)));
+        skipElement(reader);
+        return valuePair;
+    }
+
+    private <T> T codedValue(XMLStreamReader reader, Function<CodedValueType, T> f) throws XMLStreamException {
+        var codedValue = f.apply(CodedValueType.of(
+                attribute(reader, CSD_CODE),
+                attribute(reader, CODE_SYSTEM_NAME),
+                attribute(reader, ORIGINAL_TEXT),
+                attribute(reader, DISPLAY_NAME)));
+        skipElement(reader);
+        return codedValue;
+    }
+
+    private static String attribute(XMLStreamReader reader, String name) {
+        return reader.getAttributeValue(null, name);
+    }
+
+    /**
+     * Skips the rest of the current element including its children, leaving the reader at its end tag
+     */
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        var depth = 1;
+        while (depth > 0) {
+            var event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private Instant dateTime(String s) {
+        var parsed = DATE_TIME_FORMATTER.parseBest(s, Instant::from, LocalDateTime::from);
+        if (parsed instanceof Instant) {
+            return (Instant) parsed;
+        } else if (parsed instanceof LocalDateTime) {
+            return ((LocalDateTime) parsed).atOffset(ZoneOffset.UTC).toInstant();
+        } else {
+            throw new AuditException("Could not parse " + s + " to Instant");
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.openehealth.ipf.commons.audit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BatchingTLSAuditorIntegrationTest extends AbstractTLSAuditorIntegrationTest {
+
+    @Override
+    protected String transport() {
+        return "BATCHING-TLS";
+    }
+
+    @Test
+    public void testFailedBatchReportsAuditMessages() throws Exception {
+        auditContext.setTlsParameters(setupDefaultTlsParameter());
+        auditContext.setAuditRepositoryTransport(transport());
+        var count = 3;
+        List<String> failed = new CopyOnWriteArrayList<>();
+        var latch = new CountDownLatch(count);
+        auditContext.setAuditExceptionHandler((auditContext, t, auditMessage) -> {
+            failed.add(auditMessage);
+            latch.countDown();
+        });
+
+        // No server is listening, so the batch cannot be written
+        for (var i = 0; i < count; i++) {
+            sendAudit();
+        }
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(count, failed.size());
+        for (var auditMessage : failed) {
+            assertTrue(auditMessage.startsWith("<AuditMessage"), "Expected audit message, but got " + auditMessage);
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.openehealth.ipf.commons.audit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openehealth.ipf.commons.audit.DeduplicatingAuditMessagePostProcessor.Policy;
+import org.openehealth.ipf.commons.audit.codes.EventIdCode;
+import org.openehealth.ipf.commons.audit.codes.EventOutcomeIndicator;
+import org.openehealth.ipf.commons.audit.codes.ParticipantObjectIdTypeCode;
+import org.openehealth.ipf.commons.audit.event.ApplicationActivityBuilder;
+import org.openehealth.ipf.commons.audit.model.AuditMessage;
+import org.openehealth.ipf.commons.audit.model.DicomObjectDescriptionType;
+import org.openehealth.ipf.commons.audit.model.EventIdentificationType;
+import org.openehealth.ipf.commons.audit.model.ParticipantObjectIdentificationType;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DeduplicatingAuditMessagePostProcessorTest {
+
+    private MutableClock clock;
+    private DeduplicatingAuditMessagePostProcessor postProcessor;
+    private DefaultAuditContext auditContext;
+
+    @BeforeEach
+    public void setup() {
+        clock = new MutableClock();
+        postProcessor = new DeduplicatingAuditMessagePostProcessor(clock);
+        postProcessor.setWindow(Duration.ofSeconds(10));
+        auditContext = new DefaultAuditContext();
+        auditContext.setAuditEnabled(true);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        postProcessor.close();
+    }
+
+    @Test
+    public void testPassByDefault() {
+        assertNotNull(postProcessor.apply(message("user", EventOutcomeIndicator.Success)));
+        assertNotNull(postProcessor.apply(message("user", EventOutcomeIndicator.Success)));
+    }
+
+    @Test
+    public void testDeduplicate() {
+        postProcessor.setPolicy(EventIdCode.ApplicationActivity, Policy.DEDUPLICATE);
+        assertNotNull(postProcessor.apply(message("user", EventOutcomeIndicator.Success)));
+        clock.advance(Duration.ofSeconds(1));
+        assertNull(postProcessor.apply(message("user", EventOutcomeIndicator.Success)));
+        assertNotNull(postProcessor.apply(message("other", EventOutcomeIndicator.Success)));
+        clock.advance(Duration.ofSeconds(10));
+        var message = postProcessor.apply(message("user", EventOutcomeIndicator.Success));
+        assertNotNull(message);
+        assertNull(message.getEventIdentification().getEventOutcomeDescription());
+    }
+
+    @Test
+    public void testFailuresAreNeverSuppressed() {
+        postProcessor.setDefaultPolicy(Policy.DEDUPLICATE);
+        assertNotNull(postProcessor.apply(message("user", EventOutcomeIndicator.MajorFailure)));
+        assertNotNull(postProcessor.apply(message("user", EventOutcomeIndicator.MajorFailure)));
+    }
+
+    @Test
+    public void testAggregate() {
+        postProcessor.setPolicy(EventIdCode.ApplicationActivity, Policy.AGGREGATE);
+        assertNotNull(postProcessor.apply(message("user", EventOutcomeIndicator.Success)));
+        assertNull(postProcessor.apply(message("user", EventOutcomeIndicator.Success)));
+        assertNull(postProcessor.apply(message("user", EventOutcomeIndicator.Success)));
+        clock.advance(Duration.ofSeconds(10));
+        var message = postProcessor.apply(message("user", EventOutcomeIndicator.Success));
+        assertNotNull(message);
+        assertTrue(message.getEventIdentification().getEventOutcomeDescription()
+                .startsWith("2 identical events suppressed"));
+    }
+
+    @Test
+    public void testFlushExpiredAggregate() {
+        var sent = new ArrayList<AuditMessage>();
+        postProcessor.setPolicy(EventIdCode.ApplicationActivity, Policy.AGGREGATE);
+        postProcessor.setAuditContext(auditContext);
+        auditContext.setAuditMessageQueue((context, messages) -> sent.addAll(List.of(messages)));
+        assertNotNull(postProcessor.apply(message("user", EventOutcomeIndicator.Success)));
+        assertNull(postProcessor.apply(message("user", EventOutcomeIndicator.Success)));
+        assertNull(postProcessor.apply(message("user", EventOutcomeIndicator.Success)));
+        assertNull(postProcessor.apply(message("user", EventOutcomeIndicator.Success)));
+        postProcessor.flushExpired();
+        assertTrue(sent.isEmpty());
+
+        clock.advance(Duration.ofSeconds(10));
+        postProcessor.flushExpired();
+        assertEquals(1, sent.size());
+        assertTrue(sent.get(0).getEventIdentification().getEventOutcomeDescription()
+                .startsWith("2 identical events suppressed"));
+
+        // The count has been reported, so the next message is passed without description
+        var message = postProcessor.apply(message("user", EventOutcomeIndicator.Success));
+        assertNotNull(message);
+        assertNull(message.getEventIdentification().getEventOutcomeDescription());
+    }
+
+    @Test
+    public void testCloseFlushesAggregate() {
+        var sent = new ArrayList<AuditMessage>();
+        postProcessor.setPolicy(EventIdCode.ApplicationActivity, Policy.AGGREGATE);
+        postProcessor.setAuditContext(auditContext);
+        auditContext.setAuditMessageQueue((context, messages) -> sent.addAll(List.of(messages)));
+        assertNotNull(postProcessor.apply(message("user", EventOutcomeIndicator.Success)));
+        assertNull(postProcessor.apply(message("user", EventOutcomeIndicator.Success)));
+        postProcessor.close();
+        assertEquals(1, sent.size());
+        assertNull(sent.get(0).getEventIdentification().getEventOutcomeDescription());
+    }
+
+    @Test
+    public void testCompareDicomObjectDescriptions() {
+        postProcessor.setPolicy(EventIdCode.ApplicationActivity, Policy.DEDUPLICATE);
+        assertNotNull(postProcessor.apply(message("user", "1.2.3", "instance1")));
+        assertNull(postProcessor.apply(message("user", "1.2.3", "instance1")));
+        assertNotNull(postProcessor.apply(message("user", "1.2.3", "instance2")));
+        assertNotNull(postProcessor.apply(message("user", "1.2.4", "instance1")));
+    }
+
+    @Test
+    public void testSuppressedMessageIsNotModified() {
+        var sent = new ArrayList<AuditMessage>();
+        postProcessor.setPolicy(EventIdCode.ApplicationActivity, Policy.AGGREGATE);
+        postProcessor.setAuditContext(auditContext);
+        auditContext.setAuditMessageQueue((context, messages) -> sent.addAll(List.of(messages)));
+        assertNotNull(postProcessor.apply(message("user", EventOutcomeIndicator.Success)));
+        assertNull(postProcessor.apply(message("user", EventOutcomeIndicator.Success)));
+        var suppressed = message("user", EventOutcomeIndicator.Success);
+        assertNull(postProcessor.apply(suppressed));
+        clock.advance(Duration.ofSeconds(10));
+        postProcessor.flushExpired();
+        assertEquals(1, sent.size());
+        assertNotSame(suppressed, sent.get(0));
+        assertNotNull(sent.get(0).getEventIdentification().getEventOutcomeDescription());
+        assertNull(suppressed.getEventIdentification().getEventOutcomeDescription());
+    }
+
+    @Test
+    public void testMessageWithoutEventId() {
+        postProcessor.setDefaultPolicy(Policy.DEDUPLICATE);
+        // Lombok prevents setting a null event ID, but messages may be constructed otherwise
+        var eventIdentification = mock(EventIdentificationType.class);
+        when(eventIdentification.getEventOutcomeIndicator()).thenReturn(EventOutcomeIndicator.Success);
+        var message = mock(AuditMessage.class);
+        when(message.getEventIdentification()).thenReturn(eventIdentification);
+        assertSame(message, postProcessor.apply(message));
+        assertSame(message, postProcessor.apply(message));
+    }
+
+    @Test
+    public void testMaxEntries() {
+        postProcessor.setDefaultPolicy(Policy.DEDUPLICATE);
+        postProcessor.setMaxEntries(1);
+        assertNotNull(postProcessor.apply(message("user", EventOutcomeIndicator.Success)));
+        assertNotNull(postProcessor.apply(message("other", EventOutcomeIndicator.Success)));
+        assertNotNull(postProcessor.apply(message("other", EventOutcomeIndicator.Success)));
+        assertNull(postProcessor.apply(message("user", EventOutcomeIndicator.Success)));
+    }
+
+    @Test
+    public void testSuppressedMessagesAreNotSent() {
+        var sent = new ArrayList<AuditMessage>();
+        postProcessor.setDefaultPolicy(Policy.DEDUPLICATE);
+        auditContext.setAuditMessagePostProcessor(postProcessor);
+        auditContext.setAuditMessageQueue((context, messages) -> sent.addAll(List.of(messages)));
+        auditContext.audit(message("user", EventOutcomeIndicator.Success));
+        auditContext.audit(message("user", EventOutcomeIndicator.Success), message("other", EventOutcomeIndicator.Success));
+        auditContext.audit(message("user", EventOutcomeIndicator.Success));
+        assertEquals(2, sent.size());
+    }
+
+    private AuditMessage message(String userName, EventOutcomeIndicator outcome) {
+        var message = new ApplicationActivityBuilder.ApplicationStart(outcome)
+                .setAuditSource(auditContext)
+                .setApplicationParticipant(userName, null, null, "localhost")
+                .getMessage();
+        message.getEventIdentification().setEventDateTime(clock.instant());
+        return message;
+    }
+
+    private AuditMessage message(String userName, String sopClassUid, String instanceUid) {
+        var message = message(userName, EventOutcomeIndicator.Success);
+        var sopClass = new DicomObjectDescriptionType.SOPClass(1);
+        sopClass.setUid(sopClassUid);
+        sopClass.getInstanceUids().add(instanceUid);
+        var description = new DicomObjectDescriptionType();
+        description.getSOPClasses().add(sopClass);
+        var study = new ParticipantObjectIdentificationType("1.2.840.1", ParticipantObjectIdTypeCode.StudyInstanceUID);
+        study.getParticipantObjectDescriptions().add(description);
+        message.getParticipantObjectIdentifications().add(study);
+        return message;
+    }
+
+    private static class MutableClock extends Clock {
+
+        private Instant instant = Instant.now();
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.openehealth.ipf.commons.audit;
+
+import org.junit.jupiter.api.Test;
+import org.openehealth.ipf.commons.audit.codes.EventOutcomeIndicator;
+import org.openehealth.ipf.commons.audit.event.ApplicationActivityBuilder;
+import org.openehealth.ipf.commons.audit.protocol.PooledTLSSyslogSenderImpl;
+import org.openehealth.ipf.commons.audit.server.TlsSyslogServer;
+import org.openehealth.ipf.commons.audit.server.support.SyslogEventCollector;
+import org.openehealth.ipf.commons.audit.utils.AuditUtils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PooledTLSAuditorIntegrationTest extends AbstractTLSAuditorIntegrationTest {
+
+    @Override
+    protected String transport() {
+        return "POOLED-TLS";
+    }
+
+    @Test
+    public void testFailover() throws Exception {
+        var defaultTls = setupDefaultTlsParameter();
+        var sender = new PooledTLSSyslogSenderImpl(defaultTls);
+        sender.setEndpoints(LOCALHOST + ":" + freePort(), LOCALHOST + ":" + port);
+        sender.setDistributionStrategy(PooledTLSSyslogSenderImpl.DistributionStrategy.ROUND_ROBIN);
+        auditContext.setAuditTransmissionProtocol(sender);
+        var count = 10;
+        var consumer = SyslogEventCollector.newInstance().withExpectation(count);
+
+        try (var ignored = new TlsSyslogServer(consumer, Throwable::printStackTrace, defaultTls)
+                .start("localhost", port)) {
+            IntStream.range(0, count).forEach(i -> sendAudit());
+            assertTrue(consumer.await(5, TimeUnit.SECONDS));
+        } finally {
+            sender.shutdown();
+        }
+    }
+
+    @Test
+    public void testEndpointsPerAuditContext() throws Exception {
+        var defaultTls = setupDefaultTlsParameter();
+        var sender = new PooledTLSSyslogSenderImpl(defaultTls);
+        auditContext.setAuditTransmissionProtocol(sender);
+        var otherPort = freePort();
+        var otherAuditContext = new DefaultAuditContext();
+        otherAuditContext.setAuditRepositoryHost(LOCALHOST);
+        otherAuditContext.setAuditRepositoryPort(otherPort);
+        otherAuditContext.setAuditEnabled(true);
+        otherAuditContext.setAuditTransmissionProtocol(sender);
+        var count = 5;
+        var consumer = SyslogEventCollector.newInstance().withExpectation(count);
+        var otherConsumer = SyslogEventCollector.newInstance().withExpectation(count);
+
+        try (var ignored = new TlsSyslogServer(consumer, Throwable::printStackTrace, defaultTls)
+                .start("localhost", port);
+             var ignoredToo = new TlsSyslogServer(otherConsumer, Throwable::printStackTrace, defaultTls)
+                     .start("localhost", otherPort)) {
+            IntStream.range(0, count).forEach(i -> {
+                sendAudit();
+                otherAuditContext.audit(
+                        new ApplicationActivityBuilder.ApplicationStart(EventOutcomeIndicator.Success)
+                                .setAuditSource(otherAuditContext)
+                                .setApplicationParticipant("appName", null, null, AuditUtils.getLocalHostName())
+                                .getMessages());
+            });
+            assertTrue(consumer.await(5, TimeUnit.SECONDS));
+            assertTrue(otherConsumer.await(5, TimeUnit.SECONDS));
+        } finally {
+            sender.shutdown();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.openehealth.ipf.commons.audit;
+
+import org.junit.jupiter.api.Test;
+import org.openehealth.ipf.commons.audit.codes.EventIdCode;
+import org.openehealth.ipf.commons.audit.server.ReceivedAuditMessage;
+import org.openehealth.ipf.commons.audit.server.SyslogIngestionPipeline;
+import org.openehealth.ipf.commons.audit.server.TlsSyslogServer;
+import org.openehealth.ipf.commons.audit.server.UdpSyslogServer;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SyslogIngestionPipelineIntegrationTest extends AbstractAuditorIntegrationTest {
+
+    @Test
+    public void testTlsBatches() throws Exception {
+        var defaultTls = setupDefaultTlsParameter();
+        auditContext.setTlsParameters(defaultTls);
+        auditContext.setAuditRepositoryTransport("TLS");
+        var count = 200;
+        var latch = new CountDownLatch(count);
+        var batches = new ConcurrentLinkedQueue<List<ReceivedAuditMessage>>();
+        var pipeline = new SyslogIngestionPipeline(batch -> {
+            batches.add(batch);
+            batch.forEach(m -> latch.countDown());
+        }, Throwable::printStackTrace);
+        pipeline.setMaxBatchSize(50);
+
+        try (pipeline; var ignored = new TlsSyslogServer(pipeline, Throwable::printStackTrace, defaultTls)
+                .start("localhost", port)) {
+            IntStream.range(0, count).forEach(i -> sendAudit());
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        }
+        assertTrue(batches.size() < count, "Audit messages were not batched");
+        batches.forEach(batch -> assertTrue(batch.size() <= 50));
+        batches.stream().flatMap(List::stream).forEach(received ->
+                assertEquals(EventIdCode.ApplicationActivity.getCode(),
+                        received.getAuditMessage().getEventIdentification().getEventID().getCode()));
+    }
+
+    @Test
+    public void testTlsBackpressure() throws Exception {
+        var defaultTls = setupDefaultTlsParameter();
+        auditContext.setTlsParameters(defaultTls);
+        auditContext.setAuditRepositoryTransport("TLS");
+        var count = 100;
+        var received = new AtomicInteger();
+        var latch = new CountDownLatch(count);
+        var pipeline = new SyslogIngestionPipeline(batch -> {
+            Thread.sleep(20); // slow sink
+            received.addAndGet(batch.size());
+            batch.forEach(m -> latch.countDown());
+        }, Throwable::printStackTrace);
+        pipeline.setQueueCapacity(4);
+        pipeline.setMaxBatchSize(2);
+        var executor = Executors.newFixedThreadPool(2);
+
+        try (pipeline; var ignored = new TlsSyslogServer(pipeline, Throwable::printStackTrace, defaultTls)
+                .start("localhost", port)) {
+            IntStream.range(0, count).forEach(i -> executor.execute(() -> sendAudit(Integer.toString(i))));
+            assertTrue(latch.await(20, TimeUnit.SECONDS), "Sink only received " + received.get());
+            assertTrue(pipeline.getQueueSize() <= 4);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(count, received.get());
+    }
+
+    @Test
+    public void testUdpWithInvalidMessage() throws Exception {
+        auditContext.setAuditRepositoryTransport("UDP");
+        var latch = new CountDownLatch(1);
+        var errors = new CountDownLatch(1);
+        var pipeline = new SyslogIngestionPipeline(batch -> batch.forEach(m -> latch.countDown()),
+                t -> errors.countDown());
+
+        try (pipeline; var ignored = new UdpSyslogServer(pipeline, Throwable::printStackTrace)
+                .start("localhost", port);
+             var socket = new DatagramSocket()) {
+            var garbage = "no syslog frame".getBytes(StandardCharsets.UTF_8);
+            socket.send(new DatagramPacket(garbage, garbage.length, InetAddress.getByName(LOCALHOST), port));
+            sendAudit();
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            assertTrue(errors.await(5, TimeUnit.SECONDS));
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.openehealth.ipf.commons.audit.marshal.dicom;
+
+import org.junit.jupiter.api.Test;
+import org.openehealth.ipf.commons.audit.DefaultAuditContext;
+import org.openehealth.ipf.commons.audit.marshal.SerializationStrategy;
+import org.openehealth.ipf.commons.audit.model.AuditMessage;
+import org.openehealth.ipf.commons.audit.unmarshal.dicom.DICOMAuditParser;
+import org.xmlunit.builder.DiffBuilder;
+import org.xmlunit.builder.Input;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Checks that the streaming serializers produce audit records that are equivalent to the ones written by the
+ * JDOM-based serializers, and that the default serialization strategy still uses the latter
+ */
+public class StaxDICOMSerializationTest {
+
+    @Test
+    public void sameAsDICOM2016a() throws Exception {
+        assertSameOutput(new DICOM2016a(), new StaxDICOM2016a());
+    }
+
+    @Test
+    public void sameAsDICOM2016c() throws Exception {
+        assertSameOutput(new DICOM2016c(), new StaxDICOM2016c());
+    }
+
+    @Test
+    public void sameAsDICOM2017c() throws Exception {
+        assertSameOutput(new DICOM2017c(), new StaxDICOM2017c());
+    }
+
+    @Test
+    public void defaultIsJdomBased() throws Exception {
+        var auditContext = new DefaultAuditContext();
+        var expected = new DICOM2017c();
+        for (var auditMessage : auditMessages()) {
+            for (var pretty : new boolean[]{false, true}) {
+                var serialized = expected.marshal(auditMessage, pretty);
+                assertEquals(serialized, Current.toString(auditMessage, pretty));
+                assertEquals(serialized, auditContext.getSerializationStrategy().marshal(auditMessage, pretty));
+            }
+        }
+    }
+
+    @Test
+    public void writeBytes() throws Exception {
+        var serializer = new StaxDICOM2017c();
+        var outputStream = new ByteArrayOutputStream();
+        for (var auditMessage : auditMessages()) {
+            outputStream.reset();
+            serializer.marshal(auditMessage, outputStream, false);
+            assertEquals(serializer.marshal(auditMessage, false), outputStream.toString(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void assertSameOutput(SerializationStrategy expected, SerializationStrategy actual) throws Exception {
+        for (var auditMessage : auditMessages()) {
+            for (var pretty : new boolean[]{false, true}) {
+                var diff = DiffBuilder.compare(Input.fromString(expected.marshal(auditMessage, pretty)))
+                        .withTest(Input.fromString(actual.marshal(auditMessage, pretty)))
+                        .checkForIdentical()
+                        .build();
+                assertFalse(diff.hasDifferences(), diff::toString);
+            }
+        }
+    }
+
+    private List<AuditMessage> auditMessages() throws URISyntaxException, IOException {
+        var parser = new DICOMAuditParser();
+        var result = new ArrayList<AuditMessage>();
+        for (var file : getAllFilesFromResource("audit")) {
+            result.add(parser.parse(Files.readString(file, StandardCharsets.UTF_8), true));
+        }
+        return result;
+    }
+
+    private List<Path> getAllFilesFromResource(String folder) throws URISyntaxException, IOException {
+        var resource = getClass().getClassLoader().getResource(folder);
+        try (var paths = Files.walk(Paths.get(resource.toURI()))) {
+            return paths.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+    }
+}
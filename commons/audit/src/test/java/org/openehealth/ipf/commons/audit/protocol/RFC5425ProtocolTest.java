@@ -0,0 +1,69 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.openehealth.ipf.commons.audit.protocol;
+
+import org.junit.jupiter.api.Test;
+import org.openehealth.ipf.commons.audit.AuditRecordBuffer;
+import org.openehealth.ipf.commons.audit.DefaultAuditMetadataProvider;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class RFC5425ProtocolTest {
+
+    private final RFC5425Protocol protocol = new RFC5425Protocol();
+
+    @Test
+    public void bufferPayloadEqualsStringPayload() throws Exception {
+        var metadata = new DefaultAuditMetadataProvider("localhost", "4711", "IPF", "2023-01-01T00:00:00Z");
+        var auditMessage = "<AuditMessage>Übermittlung</AuditMessage>\n";
+        var auditRecord = AuditRecordBuffer.acquire();
+        try {
+            auditRecord.write(auditMessage.getBytes(StandardCharsets.UTF_8));
+            var expected = protocol.getTransportPayload(metadata, auditMessage);
+            assertArrayEquals(expected, toBytes(protocol.getTransportPayload(metadata, auditRecord)));
+            // Framing again yields the same result
+            assertArrayEquals(expected, toBytes(protocol.getTransportPayload(metadata, auditRecord)));
+        } finally {
+            auditRecord.release();
+        }
+    }
+
+    @Test
+    public void headerExceedingHeadroom() throws Exception {
+        var metadata = new DefaultAuditMetadataProvider("localhost", "4711", "A".repeat(2000), "2023-01-01T00:00:00Z");
+        var auditMessage = "<AuditMessage/>";
+        var auditRecord = AuditRecordBuffer.acquire();
+        try {
+            auditRecord.write(auditMessage.getBytes(StandardCharsets.UTF_8));
+            var expected = protocol.getTransportPayload(metadata, auditMessage);
+            assertArrayEquals(expected, toBytes(protocol.getTransportPayload(metadata, auditRecord)));
+            assertEquals(auditMessage, auditRecord.toString());
+        } finally {
+            auditRecord.release();
+        }
+    }
+
+    private static byte[] toBytes(ByteBuffer buffer) {
+        var bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.openehealth.ipf.commons.audit.queue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openehealth.ipf.commons.audit.AuditContext;
+import org.openehealth.ipf.commons.audit.DefaultAuditContext;
+import org.openehealth.ipf.commons.audit.handler.AuditExceptionHandler;
+import org.openehealth.ipf.commons.audit.model.AuditMessage;
+import org.openehealth.ipf.commons.audit.protocol.AuditTransmissionProtocol;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class BoundedAsynchronousAuditMessageQueueTest {
+
+    private DefaultAuditContext auditContext;
+    private AuditTransmissionProtocol protocol;
+    private BoundedAsynchronousAuditMessageQueue queue;
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    public void setup() throws Exception {
+        protocol = mock(AuditTransmissionProtocol.class);
+        // Worker threads are blocked until released
+        doAnswer(invocation -> Thread.currentThread().getName().startsWith("ipf-audit-queue") &&
+                release.await(5, TimeUnit.SECONDS))
+                .when(protocol).send(any(AuditContext.class), anyString());
+        auditContext = new DefaultAuditContext();
+        auditContext.setAuditEnabled(true);
+        auditContext.setAuditTransmissionProtocol(protocol);
+        auditContext.setAuditExceptionHandler(mock(AuditExceptionHandler.class));
+        queue = new BoundedAsynchronousAuditMessageQueue();
+        queue.setCapacity(4);
+        auditContext.setAuditMessageQueue(queue);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        release.countDown();
+        queue.shutdown();
+    }
+
+    @Test
+    public void sendMessages() throws Exception {
+        release.countDown();
+        IntStream.range(0, 10).forEach(i -> auditContext.audit(mock(AuditMessage.class)));
+        queue.shutdown();
+
+        verify(protocol, times(10)).send(any(AuditContext.class), anyString());
+        var metrics = queue.getMetrics();
+        assertEquals(10, metrics.getEnqueuedCount());
+        assertEquals(10, metrics.getSentCount());
+        assertEquals(0, metrics.getDepth());
+        assertEquals(0, metrics.getDroppedCount());
+    }
+
+    @Test
+    public void dropOldestWhenFull() throws Exception {
+        queue.setOverflowPolicy(BoundedAsynchronousAuditMessageQueue.OverflowPolicy.DROP_OLDEST);
+        auditContext.audit(mock(AuditMessage.class));
+        Thread.sleep(200);
+        IntStream.range(0, 9).forEach(i -> auditContext.audit(mock(AuditMessage.class)));
+
+        var metrics = queue.getMetrics();
+        assertEquals(4, metrics.getCapacity());
+        assertEquals(4, metrics.getDepth());
+        // One record is taken by the blocked worker, four are in the queue
+        assertEquals(5, metrics.getDroppedCount());
+        verify(auditContext.getAuditExceptionHandler(), times(5))
+                .handleException(eq(auditContext), any(Throwable.class), anyString());
+    }
+
+    @Test
+    public void callerRunsWhenFull() throws Exception {
+        queue.setOverflowPolicy(BoundedAsynchronousAuditMessageQueue.OverflowPolicy.CALLER_RUNS);
+        auditContext.audit(mock(AuditMessage.class));
+        Thread.sleep(200);
+        // Fill the queue while the worker is blocked
+        IntStream.range(0, 5).forEach(i -> auditContext.audit(mock(AuditMessage.class)));
+
+        var metrics = queue.getMetrics();
+        assertEquals(1, metrics.getCallerRunsCount());
+        assertEquals(1, metrics.getSentCount());
+
+        release.countDown();
+        queue.shutdown();
+        assertEquals(0, metrics.getDroppedCount());
+        assertEquals(6, metrics.getSentCount());
+    }
+
+    @Test
+    public void ringBufferIsBounded() {
+        var ringBuffer = new BoundedRingBuffer<Integer>(3);
+        assertEquals(4, ringBuffer.capacity());
+        IntStream.range(0, 4).forEach(i -> assertTrue(ringBuffer.offer(i)));
+        assertFalse(ringBuffer.offer(4));
+        assertEquals(4, ringBuffer.size());
+        assertEquals(0, ringBuffer.poll());
+        assertTrue(ringBuffer.offer(4));
+        IntStream.range(1, 5).forEach(i -> assertEquals(i, ringBuffer.poll()));
+        assertNull(ringBuffer.poll());
+    }
+
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.openehealth.ipf.commons.audit.queue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openehealth.ipf.commons.audit.AuditContext;
+import org.openehealth.ipf.commons.audit.AuditMetadataProvider;
+import org.openehealth.ipf.commons.audit.DefaultAuditContext;
+import org.openehealth.ipf.commons.audit.marshal.dicom.Current;
+import org.openehealth.ipf.commons.audit.model.AuditMessage;
+import org.openehealth.ipf.commons.audit.protocol.AuditTransmissionProtocol;
+import org.openehealth.ipf.commons.audit.protocol.RecordingAuditMessageTransmission;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class StoreAndForwardAuditMessageQueueTest {
+
+    @TempDir
+    Path directory;
+
+    private DefaultAuditContext auditContext;
+    private RecordingAuditMessageTransmission recorder;
+
+    @BeforeEach
+    public void setup() {
+        recorder = new RecordingAuditMessageTransmission();
+        auditContext = new DefaultAuditContext();
+        auditContext.setAuditTransmissionProtocol(recorder);
+        auditContext.setAuditEnabled(true);
+    }
+
+    @Test
+    public void sendMessage() throws Exception {
+        var queue = new StoreAndForwardAuditMessageQueue(directory);
+        auditContext.setAuditMessageQueue(queue);
+        try {
+            var auditMessage = mock(AuditMessage.class);
+            auditContext.audit(auditMessage);
+            awaitPending(queue, 0);
+            assertEquals(Current.toString(auditMessage, false), recorder.getFirstMessage().orElseThrow());
+        } finally {
+            queue.shutdown();
+        }
+    }
+
+    @Test
+    public void retryAfterFailure() throws Exception {
+        var protocol = mock(AuditTransmissionProtocol.class);
+        doThrow(new IOException("ARR not reachable"))
+                .doNothing()
+                .when(protocol).send(any(AuditContext.class), any(AuditMetadataProvider.class), anyString());
+        auditContext.setAuditTransmissionProtocol(protocol);
+        var queue = new StoreAndForwardAuditMessageQueue(directory);
+        queue.setRetryDelayMillis(10);
+        auditContext.setAuditMessageQueue(queue);
+        try {
+            var auditMessage = mock(AuditMessage.class);
+            var auditRecord = Current.toString(auditMessage, false);
+            auditContext.audit(auditMessage);
+            awaitPending(queue, 0);
+            verify(protocol, times(2)).send(eq(auditContext), any(AuditMetadataProvider.class), eq(auditRecord));
+        } finally {
+            queue.shutdown();
+        }
+    }
+
+    @Test
+    public void sendRecoveredMessagesAfterRestart() throws Exception {
+        var protocol = mock(AuditTransmissionProtocol.class);
+        doThrow(new IOException("ARR not reachable"))
+                .when(protocol).send(any(AuditContext.class), any(AuditMetadataProvider.class), anyString());
+        auditContext.setAuditTransmissionProtocol(protocol);
+        var queue = new StoreAndForwardAuditMessageQueue(directory);
+        auditContext.setAuditMessageQueue(queue);
+        var auditMessage = mock(AuditMessage.class);
+        auditContext.audit(auditMessage, auditMessage);
+        queue.shutdown();
+
+        auditContext.setAuditTransmissionProtocol(recorder);
+        queue = new StoreAndForwardAuditMessageQueue(directory);
+        try {
+            assertEquals(2, queue.getPendingRecords());
+            queue.setAuditContext(auditContext);
+            awaitPending(queue, 0);
+            assertEquals(2, recorder.getMessages().size());
+        } finally {
+            queue.shutdown();
+        }
+    }
+
+    @Test
+    public void quarantinePoisonRecord() throws Exception {
+        var protocol = mock(AuditTransmissionProtocol.class);
+        var poison = mock(AuditMessage.class);
+        var auditMessage = mock(AuditMessage.class);
+        var poisonRecord = Current.toString(poison, false) + "poison";
+        var auditRecord = Current.toString(auditMessage, false);
+        doThrow(new IllegalArgumentException("Rejected"))
+                .when(protocol).send(any(AuditContext.class), any(AuditMetadataProvider.class), eq(poisonRecord));
+        auditContext.setAuditTransmissionProtocol(protocol);
+        var queue = new StoreAndForwardAuditMessageQueue(directory);
+        queue.setRetryDelayMillis(10);
+        queue.setMaxSendAttempts(2);
+        try {
+            queue.handle(auditContext, poisonRecord);
+            queue.handle(auditContext, auditRecord);
+            awaitPending(queue, 0);
+            verify(protocol, times(2)).send(eq(auditContext), any(AuditMetadataProvider.class), eq(poisonRecord));
+            verify(protocol).send(eq(auditContext), any(AuditMetadataProvider.class), eq(auditRecord));
+            try (var files = Files.list(directory.resolve("quarantine"))) {
+                assertEquals(1, files.count());
+            }
+        } finally {
+            queue.shutdown();
+        }
+    }
+
+    @Test
+    public void configureBeforeFirstUse() throws Exception {
+        var queue = new StoreAndForwardAuditMessageQueue();
+        queue.setDirectory(directory);
+        queue.setSegmentSize(4096);
+        auditContext.setAuditMessageQueue(queue);
+        try {
+            auditContext.audit(mock(AuditMessage.class));
+            awaitPending(queue, 0);
+            assertEquals(1, recorder.getMessages().size());
+            assertThrows(IllegalStateException.class, () -> queue.setDirectory(directory));
+        } finally {
+            queue.shutdown();
+        }
+    }
+
+    @Test
+    public void recoverEmptyRecord() throws Exception {
+        var record = "record".getBytes(StandardCharsets.UTF_8);
+        try (var log = new MappedAuditRecordLog(directory, 1024)) {
+            log.append(record);
+            log.append(new byte[0]);
+            log.append(record);
+        }
+        try (var log = new MappedAuditRecordLog(directory, 1024)) {
+            assertEquals(3, log.getPendingRecords());
+            assertArrayEquals(record, log.peek());
+            log.commit();
+            assertArrayEquals(new byte[0], log.peek());
+            log.commit();
+            assertArrayEquals(record, log.peek());
+            log.commit();
+            assertNull(log.peek());
+        }
+    }
+
+    @Test
+    public void discardTornRecord() throws Exception {
+        var record = "record".getBytes(StandardCharsets.UTF_8);
+        try (var log = new MappedAuditRecordLog(directory, 1024)) {
+            log.append(record);
+            log.append(record);
+        }
+
+        // Corrupt the payload of the second record
+        var segment = directory.resolve(String.format("%020d%s", 0, MappedAuditRecordLog.SEGMENT_SUFFIX));
+        try (var channel = Files.newByteChannel(segment, StandardOpenOption.WRITE)) {
+            channel.position(2L * MappedAuditRecordLog.RECORD_HEADER_SIZE + record.length);
+            channel.write(ByteBuffer.wrap(new byte[]{'X'}));
+        }
+
+        try (var log = new MappedAuditRecordLog(directory, 1024)) {
+            assertEquals(1, log.getPendingRecords());
+            assertArrayEquals(record, log.peek());
+            log.commit();
+            assertNull(log.peek());
+        }
+    }
+
+    @Test
+    public void compactConsumedSegments() throws Exception {
+        var record = new byte[100];
+        try (var log = new MappedAuditRecordLog(directory, 256)) {
+            for (var i = 0; i < 6; i++) {
+                log.append(record);
+            }
+            assertEquals(3, log.getSegmentCount());
+            for (var i = 0; i < 5; i++) {
+                log.peek();
+                log.commit();
+            }
+            log.peek();
+            assertEquals(2, log.compact());
+            assertEquals(1, log.getSegmentCount());
+            try (var files = Files.list(directory)) {
+                assertEquals(1, files.filter(path -> path.toString().endsWith(MappedAuditRecordLog.SEGMENT_SUFFIX)).count());
+            }
+        }
+        try (var log = new MappedAuditRecordLog(directory, 256)) {
+            assertEquals(1, log.getPendingRecords());
+        }
+    }
+
+    private static void awaitPending(StoreAndForwardAuditMessageQueue queue, long pending) throws InterruptedException {
+        for (var i = 0; i < 100 && queue.getPendingRecords() != pending; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(pending, queue.getPendingRecords());
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.openehealth.ipf.commons.audit.server;
+
+import com.github.palindromicity.syslog.NilPolicy;
+import com.github.palindromicity.syslog.SyslogParser;
+import com.github.palindromicity.syslog.SyslogParserBuilder;
+import com.github.palindromicity.syslog.dsl.SyslogFieldKeys;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.socket.DatagramPacket;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class Rfc5424DecoderTest {
+
+    private static final SyslogParser PARSER = new SyslogParserBuilder()
+            .withNilPolicy(NilPolicy.OMIT)
+            .build();
+
+    private static final String[] FRAMES = {
+            "<85>1 2023-03-14T10:15:30.123+01:00 myhost IPF 1234 IHE+RFC-3881 - \uFEFF<?xml version=\"1.0\"?><AuditMessage/>",
+            "<13>1 2023-03-14T10:15:30Z myhost - - - - <AuditMessage>äöü</AuditMessage>",
+            "<165>1 2003-10-11T22:14:15.003Z mymachine.example.com evntslog - ID47 [exampleSDID@32473 iut=\"3\" eventSource=\"Application\" eventID=\"1011\"][examplePriority@32473 class=\"high\"] message",
+            "<34>1 2003-10-11T22:14:15.003Z host app - - [id@1 k=\"a\\\"b\\]c\\\\d\"]",
+            "<0>1 - - - - - -",
+            "<85>1 - - - - - [a@1][b@2 x=\"1\"] msg"
+    };
+
+    @Test
+    public void testEquivalentToSyslogParser() {
+        for (var frame : FRAMES) {
+            var event = decode(frame);
+            assertInstanceOf(SyslogEvent.class, event);
+            var expected = PARSER.parseLine(frame.replace("\uFEFF", ""));
+            assertEquals(expected, Map.copyOf(event), frame);
+            expected.forEach((key, value) -> assertEquals(value, event.get(key), key));
+        }
+    }
+
+    @Test
+    public void testTypedAccess() {
+        var event = (SyslogEvent) decode(FRAMES[0]);
+        assertEquals(10, event.getFacility());
+        assertEquals(5, event.getSeverity());
+        assertEquals(1, event.getVersion());
+        assertEquals("myhost", event.getHostName());
+        assertEquals("IPF", event.getAppName());
+        assertEquals("1234", event.getProcId());
+        assertEquals("IHE+RFC-3881", event.getMsgId());
+        assertNull(event.getStructuredData());
+        assertEquals("<?xml version=\"1.0\"?><AuditMessage/>", event.getMessage());
+        assertSame(event.getMessage(), event.get(SyslogFieldKeys.MESSAGE.getField()));
+    }
+
+    @Test
+    public void testRemoteAddress() {
+        var sender = new InetSocketAddress("127.0.0.1", 4711);
+        var content = Unpooled.copiedBuffer(FRAMES[1], StandardCharsets.UTF_8);
+        var event = Rfc5424Decoder.decodeDatagram(new DatagramPacket(content, sender, sender));
+        assertEquals(4711, event.get(Rfc5424Decoder.SYSLOG_REMOTE_PORT));
+        assertEquals("127.0.0.1", event.get(Rfc5424Decoder.SYSLOG_REMOTE_IP));
+        assertNotNull(event.get(Rfc5424Decoder.SYSLOG_REMOTE_HOST));
+    }
+
+    @Test
+    public void testInvalidFrames() {
+        for (var frame : new String[]{ "", "no syslog", "<192>1 - - - - - -", "<85>1 - - - - -", "<85>1 - - - - - [id", "<85>1 - - - - - x",
+                "<85>1 - - - - - []", "<85>1 - - - - - [id x]", "<85>1 - - - - - [id x=1]",
+                "<85>1 - - - - - [id x=\"1]", "<85>1 - - - - - [id =\"1\"]", "<85>1 - - - - - [id x=\"1\"y=\"2\"]",
+                "<85>1 - - - - - [id x=\"1\" ]", "<85>1 - - - - - [i\"d x=\"1\"]" }) {
+            var map = decode(frame);
+            assertEquals(frame, map.get(Rfc5424Decoder.SYSLOG_RAW_MESSAGE));
+            assertNotNull(map.get(Rfc5424Decoder.SYSLOG_EXCEPTION), frame);
+        }
+    }
+
+    private static Map<String, Object> decode(String frame) {
+        var channel = new EmbeddedChannel(new Rfc5424Decoder());
+        channel.writeInbound(Unpooled.copiedBuffer(frame, StandardCharsets.UTF_8));
+        return channel.readInbound();
+    }
+}
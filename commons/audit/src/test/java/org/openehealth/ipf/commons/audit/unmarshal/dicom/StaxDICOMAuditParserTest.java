@@ -0,0 +1,95 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.openehealth.ipf.commons.audit.unmarshal.dicom;
+
+import org.junit.jupiter.api.Test;
+import org.openehealth.ipf.commons.audit.AuditException;
+import org.openehealth.ipf.commons.audit.marshal.dicom.Current;
+import org.openehealth.ipf.commons.audit.marshal.dicom.DICOM2016a;
+import org.openehealth.ipf.commons.audit.marshal.dicom.DICOM2016c;
+import org.xmlunit.builder.DiffBuilder;
+import org.xmlunit.builder.Input;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class StaxDICOMAuditParserTest {
+
+    private final StaxDICOMAuditParser parser = new StaxDICOMAuditParser();
+
+    @Test
+    public void roundtrip() throws IOException, URISyntaxException {
+        for (var file : getAllFilesFromResource("audit")) {
+            var read = Files.readString(file, StandardCharsets.UTF_8);
+            var auditMessage = parser.parse(read, true);
+            var written = Current.INSTANCE.marshal(auditMessage, true);
+
+            var diff = DiffBuilder.compare(Input.fromString(read))
+                    .withTest(written)
+                    .ignoreComments()
+                    .ignoreWhitespace()
+                    .checkForSimilar()
+                    .build();
+            assertFalse(diff.hasDifferences(), file + ": " + diff);
+        }
+    }
+
+    @Test
+    public void sameResultAsDICOMAuditParser() throws IOException, URISyntaxException {
+        var domParser = new DICOMAuditParser();
+        for (var file : getAllFilesFromResource("audit")) {
+            var read = Files.readString(file, StandardCharsets.UTF_8);
+            assertEquals(domParser.parse(read, false), parser.parse(read, false), file.toString());
+        }
+    }
+
+    @Test
+    public void parseOlderAuditSourceTypeCodes() throws IOException, URISyntaxException {
+        for (var file : getAllFilesFromResource("audit")) {
+            var auditMessage = parser.parse(Files.readString(file, StandardCharsets.UTF_8), false);
+            assertEquals(auditMessage, parser.parse(new DICOM2016a().marshal(auditMessage, false), false));
+            assertEquals(auditMessage, parser.parse(new DICOM2016c().marshal(auditMessage, false), false));
+        }
+    }
+
+    @Test
+    public void rejectInvalidMessage() {
+        assertThrows(AuditException.class, () -> parser.parse("<AuditMessage><Unknown/></AuditMessage>", true));
+    }
+
+    @Test
+    public void rejectDoctype() {
+        var xml = "<!DOCTYPE AuditMessage [<!ENTITY x SYSTEM \"file:///etc/passwd\">]><AuditMessage>&x;</AuditMessage>";
+        assertThrows(AuditException.class, () -> parser.parse(xml, false));
+    }
+
+    private List<Path> getAllFilesFromResource(String folder) throws URISyntaxException, IOException {
+        var resource = getClass().getClassLoader().getResource(folder);
+        try (var paths = Files.walk(Paths.get(resource.toURI()))) {
+            return paths.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,435 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.ipf.commons.ihe.core.payload;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes payload log entries into files on a background thread, so that payload logging does not
+ * add file system latency to the processing of messages. An instance can be shared by several
+ * payload loggers, see {@link PayloadLoggerBase#setPayloadWriter(AsyncPayloadWriter)}.
+ * <p>
+ * Entries are put into a bounded queue; when the queue is full, new entries are dropped. The writer
+ * thread keeps the most recently used files open and flushes them periodically. Optionally, files
+ * can be gzip-compressed (a <tt>.gz</tt> suffix is appended to the file name) and rolled over when
+ * they exceed a configured size. The numbers of written, dropped and failed entries are counted
+ * for monitoring purposes.
+ * <p>
+ * The writer thread is started with the first entry. The writer is closed, so that pending entries
+ * are written and files are closed, when the last payload logger using it is
+ * {@link PayloadLoggerBase#close() closed}, or when {@link #close()} is called explicitly, e.g. by
+ * the Spring container when the writer is declared as a bean.
+ *
+ * @since 4.5
+ */
+public class AsyncPayloadWriter implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncPayloadWriter.class);
+
+    private int queueCapacity = 10000;
+    private int maxBatchSize = 256;
+    private int maxOpenFiles = 64;
+    private long flushIntervalMillis = 1000;
+    private boolean compress = false;
+    private long maxFileSize = -1;
+    private int shutdownTimeoutSeconds = 30;
+
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    private volatile boolean running = true;
+    private volatile BlockingQueue<Entry> queue;
+    private Thread worker;
+    private int users;
+
+    /**
+     * Sets the maximum number of entries waiting to be written. Defaults to 10000.
+     *
+     * @param queueCapacity maximum number of entries waiting to be written
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Sets the maximum number of entries taken from the queue at once. Defaults to 256.
+     *
+     * @param maxBatchSize maximum number of entries taken from the queue at once
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Sets the maximum number of files kept open; the least recently used file is closed
+     * when this number is exceeded. Defaults to 64.
+     *
+     * @param maxOpenFiles maximum number of files kept open
+     */
+    public void setMaxOpenFiles(int maxOpenFiles) {
+        this.maxOpenFiles = maxOpenFiles;
+    }
+
+    /**
+     * Sets the maximum time written entries may remain in buffers before they are flushed. Defaults to 1000.
+     *
+     * @param flushIntervalMillis maximum time written entries may remain in buffers
+     */
+    public void setFlushIntervalMillis(long flushIntervalMillis) {
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    /**
+     * Sets whether files are gzip-compressed. Defaults to false.
+     *
+     * @param compress whether files are gzip-compressed
+     */
+    public void setCompress(boolean compress) {
+        this.compress = compress;
+    }
+
+    /**
+     * Sets the file size in bytes after which a file is rolled over, i.e. renamed by inserting a numeric
+     * index before the file name extension (e.g. <tt>payload.txt</tt> to <tt>payload.1.txt</tt>, or
+     * <tt>payload.txt.gz</tt> to <tt>payload.1.txt.gz</tt>), so that new entries go to a new file.
+     * The size is counted as written to the file system, i.e. after compression. Defaults to -1 (no rolling).
+     *
+     * @param maxFileSize size in bytes after which a file is rolled over, negative for no rolling
+     */
+    public void setMaxFileSize(long maxFileSize) {
+        this.maxFileSize = maxFileSize;
+    }
+
+    /**
+     * Sets the timeout to wait for pending entries to be written on close. Defaults to 30.
+     *
+     * @param shutdownTimeoutSeconds timeout to wait for pending entries to be written on close
+     */
+    public void setShutdownTimeoutSeconds(int shutdownTimeoutSeconds) {
+        this.shutdownTimeoutSeconds = shutdownTimeoutSeconds;
+    }
+
+    /**
+     * @return number of entries which have been written
+     */
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    /**
+     * @return number of entries which have been dropped because the queue was full
+     * or the writer was already closed
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return number of entries which could not be written because of I/O errors
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * @return number of entries waiting to be written
+     */
+    public int getQueueSize() {
+        var queue = this.queue;
+        return (queue != null) ? queue.size() : 0;
+    }
+
+    /**
+     * Hands over payload pieces to be appended to a file.
+     *
+     * @param path          file path
+     * @param charsetName   character set name, may be <code>null</code> for the platform default
+     * @param payloadPieces payload pieces
+     * @param errorCount    error counter of the payload logger, reset on success and incremented on failure
+     * @return <code>true</code> if the entry has been accepted, <code>false</code> if it has been dropped
+     */
+    boolean submit(String path, String charsetName, String[] payloadPieces, AtomicInteger errorCount) {
+        var queue = start();
+        if (running && queue.offer(new Entry(path, charsetName, payloadPieces, errorCount))) {
+            return true;
+        }
+        droppedCount.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Registers a payload logger using this writer.
+     */
+    synchronized void retain() {
+        users++;
+    }
+
+    /**
+     * Unregisters a payload logger using this writer, and closes the writer when it has been the last one.
+     */
+    synchronized void release() {
+        if ((users > 0) && (--users == 0)) {
+            close();
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        synchronized (this) {
+            if (worker != null) {
+                try {
+                    worker.join(TimeUnit.SECONDS.toMillis(shutdownTimeoutSeconds));
+                    if (worker.isAlive()) {
+                        LOG.warn("Timeout occurred when writing payload log entries, {} entries have not been written", queue.size());
+                    }
+                } catch (InterruptedException e) {
+                    LOG.warn("Thread interrupt when writing payload log entries, some entries might have been lost", e);
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private BlockingQueue<Entry> start() {
+        var result = queue;
+        if (result == null) {
+            synchronized (this) {
+                result = queue;
+                if (result == null) {
+                    result = new ArrayBlockingQueue<>(queueCapacity);
+                    worker = new Thread(new Worker(result), "ipf-payload-writer");
+                    worker.setDaemon(true);
+                    worker.start();
+                    queue = result;
+                }
+            }
+        }
+        return result;
+    }
+
+
+    private static final class Entry {
+        private final String path;
+        private final String charsetName;
+        private final String[] payloadPieces;
+        private final AtomicInteger errorCount;
+
+        private Entry(String path, String charsetName, String[] payloadPieces, AtomicInteger errorCount) {
+            this.path = path;
+            this.charsetName = charsetName;
+            this.payloadPieces = payloadPieces;
+            this.errorCount = errorCount;
+        }
+    }
+
+
+    private final class Worker implements Runnable {
+        private final BlockingQueue<Entry> queue;
+        private final LinkedHashMap<Path, OpenFile> openFiles = new LinkedHashMap<>(16, 0.75f, true);
+        private boolean dirty;
+        private long lastFlush = System.nanoTime();
+
+        private Worker(BlockingQueue<Entry> queue) {
+            this.queue = queue;
+        }
+
+        @Override
+        public void run() {
+            var batch = new ArrayList<Entry>(maxBatchSize);
+            try {
+                while (running || !queue.isEmpty()) {
+                    var entry = queue.poll(Math.max(1, flushIntervalMillis), TimeUnit.MILLISECONDS);
+                    if (entry != null) {
+                        batch.add(entry);
+                        queue.drainTo(batch, maxBatchSize - 1);
+                        for (var e : batch) {
+                            write(e);
+                        }
+                        batch.clear();
+                    }
+                    if (dirty && (System.nanoTime() - lastFlush >= TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis))) {
+                        flushAll();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                closeAll();
+            }
+        }
+
+        private void write(Entry entry) {
+            var path = Paths.get(entry.path + (compress ? ".gz" : ""));
+            try {
+                var charset = (entry.charsetName != null) ? Charset.forName(entry.charsetName) : Charset.defaultCharset();
+                var file = getOpenFile(path);
+                for (var payloadPiece : entry.payloadPieces) {
+                    file.out.write(payloadPiece.getBytes(charset));
+                }
+                dirty = true;
+                if ((maxFileSize > 0) && (file.size >= maxFileSize)) {
+                    roll(path, file);
+                }
+                writtenCount.incrementAndGet();
+                entry.errorCount.set(0);
+            } catch (Exception e) {
+                failedCount.incrementAndGet();
+                entry.errorCount.incrementAndGet();
+                LOG.warn("Cannot write into {}", path, e);
+                var file = openFiles.remove(path);
+                if (file != null) {
+                    close(path, file);
+                }
+            }
+        }
+
+        private OpenFile getOpenFile(Path path) throws IOException {
+            var file = openFiles.get(path);
+            if (file == null) {
+                var parent = path.toAbsolutePath().getParent();
+                if (parent != null) {
+                    Files.createDirectories(parent);
+                }
+                file = new OpenFile(FileChannel.open(path,
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND));
+                openFiles.put(path, file);
+                evictLeastRecentlyUsed();
+            }
+            return file;
+        }
+
+        private void evictLeastRecentlyUsed() {
+            Iterator<Map.Entry<Path, OpenFile>> iterator = openFiles.entrySet().iterator();
+            while (openFiles.size() > Math.max(1, maxOpenFiles)) {
+                var eldest = iterator.next();
+                iterator.remove();
+                close(eldest.getKey(), eldest.getValue());
+            }
+        }
+
+        private void roll(Path path, OpenFile file) throws IOException {
+            openFiles.remove(path);
+            file.close();
+            // insert the index before the extension, e.g. payload.txt.gz -> payload.1.txt.gz
+            var suffix = compress ? ".gz" : "";
+            var fileName = path.getFileName().toString();
+            fileName = fileName.substring(0, fileName.length() - suffix.length());
+            var dot = fileName.lastIndexOf('.');
+            var stem = (dot > 0) ? fileName.substring(0, dot) : fileName;
+            var extension = (dot > 0) ? fileName.substring(dot) : "";
+            var index = 1;
+            Path target;
+            do {
+                target = path.resolveSibling(stem + "." + index++ + extension + suffix);
+            } while (Files.exists(target));
+            Files.move(path, target);
+        }
+
+        private void flushAll() {
+            for (Iterator<Map.Entry<Path, OpenFile>> iterator = openFiles.entrySet().iterator(); iterator.hasNext(); ) {
+                var entry = iterator.next();
+                try {
+                    entry.getValue().out.flush();
+                } catch (IOException e) {
+                    failedCount.incrementAndGet();
+                    LOG.warn("Cannot flush {}", entry.getKey(), e);
+                    iterator.remove();
+                    close(entry.getKey(), entry.getValue());
+                }
+            }
+            dirty = false;
+            lastFlush = System.nanoTime();
+        }
+
+        private void closeAll() {
+            for (var entry : openFiles.entrySet()) {
+                close(entry.getKey(), entry.getValue());
+            }
+            openFiles.clear();
+        }
+
+        private void close(Path path, OpenFile file) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                LOG.warn("Cannot close {}", path, e);
+            }
+        }
+    }
+
+
+    private final class OpenFile {
+        private final FileChannel channel;
+        private final OutputStream out;
+        private long size;
+
+        private OpenFile(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            // count the bytes going to the file, so that the size of existing files and
+            // the size of the written (possibly compressed) data are measured alike
+            OutputStream os = new FilterOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024)) {
+                @Override
+                public void write(int b) throws IOException {
+                    out.write(b);
+                    size++;
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                    size += len;
+                }
+            };
+            // appending to an existing gzip file results in a valid multi-member gzip file
+            this.out = compress ? new GZIPOutputStream(os, 64 * 1024, true) : os;
+        }
+
+        private void close() throws IOException {
+            try {
+                out.close();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+}
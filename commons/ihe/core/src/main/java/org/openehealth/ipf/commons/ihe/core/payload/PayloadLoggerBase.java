@@ -54,6 +54,10 @@ import static java.util.Objects.requireNonNull;
  * <p>
  * As an alternative to SpEL, the user can provide another {@link ExpressionResolver expression resolver}.
  * <p>
+ * By default, files are opened, written and closed on the calling thread. When an
+ * {@link AsyncPayloadWriter} is configured, file names are still resolved on the calling thread,
+ * but writing is delegated to the background thread of the writer.
+ * <p>
  * Furthermore, the behavior of this class is regulated application-widely by the following Boolean
  * system properties:
  * <ul>
@@ -67,7 +71,7 @@ import static java.util.Objects.requireNonNull;
  *
  * @author Dmytro Rud
  */
-abstract public class PayloadLoggerBase<T extends PayloadLoggingContext> {
+abstract public class PayloadLoggerBase<T extends PayloadLoggingContext> implements AutoCloseable {
     private static final transient Logger LOG = LoggerFactory.getLogger(PayloadLoggerBase.class);
 
     private static final AtomicLong SEQUENCE_ID_GENERATOR = new AtomicLong(0L);
@@ -86,6 +90,7 @@ abstract public class PayloadLoggerBase<T extends PayloadLoggingContext> {
     private final AtomicInteger errorCount = new AtomicInteger(0);
 
     private ExpressionResolver resolver;
+    private AsyncPayloadWriter payloadWriter;
 
     protected static Long getNextSequenceId() {
         return SEQUENCE_ID_GENERATOR.getAndIncrement();
@@ -110,6 +115,10 @@ abstract public class PayloadLoggerBase<T extends PayloadLoggingContext> {
         } else {
             // compute the file path and write payload pieces into this file
             var path = resolver.resolveExpression(context);
+            if (payloadWriter != null) {
+                payloadWriter.submit(path, charsetName, payloadPieces, errorCount);
+                return;
+            }
             try (var outputStream = FileUtils.openOutputStream(new File(path), true);
                  var writer = (charsetName != null) ?
                          new OutputStreamWriter(outputStream, charsetName) :
@@ -182,4 +191,43 @@ abstract public class PayloadLoggerBase<T extends PayloadLoggingContext> {
     public void setExpressionResolver(ExpressionResolver resolver) {
         this.resolver = requireNonNull(resolver);
     }
+
+    /**
+     * @return asynchronous writer for payload files, or <code>null</code> if files are written synchronously.
+     * @since 4.5
+     */
+    public AsyncPayloadWriter getPayloadWriter() {
+        return payloadWriter;
+    }
+
+    /**
+     * Configures an asynchronous writer for payload files, which can be shared between several loggers.
+     * Defaults to <code>null</code>, i.e. files are written synchronously.
+     *
+     * @param payloadWriter asynchronous writer for payload files, or <code>null</code>.
+     * @since 4.5
+     */
+    public void setPayloadWriter(AsyncPayloadWriter payloadWriter) {
+        if (payloadWriter != null) {
+            payloadWriter.retain();
+        }
+        if (this.payloadWriter != null) {
+            this.payloadWriter.release();
+        }
+        this.payloadWriter = payloadWriter;
+    }
+
+    /**
+     * Stops using the {@link AsyncPayloadWriter asynchronous writer}, if any. The writer writes pending
+     * entries and closes its files when it is not used by any other payload logger. Afterwards,
+     * payload files are written synchronously.
+     * <p>
+     * Called by the Spring container when the payload logger is declared as a bean.
+     *
+     * @since 4.5
+     */
+    @Override
+    public void close() {
+        setPayloadWriter(null);
+    }
 }
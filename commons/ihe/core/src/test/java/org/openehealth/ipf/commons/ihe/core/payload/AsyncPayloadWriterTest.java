@@ -0,0 +1,160 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.ipf.commons.ihe.core.payload;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AsyncPayloadWriterTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testWriteManyFiles() throws Exception {
+        var errorCount = new AtomicInteger(5);
+        try (var writer = new AsyncPayloadWriter()) {
+            writer.setMaxOpenFiles(3);
+            for (var i = 0; i < 100; i++) {
+                assertTrue(writer.submit(dir.resolve("sub/" + (i % 10) + ".txt").toString(), "UTF-8",
+                        new String[]{"header\n", "payload " + i + "\n"}, errorCount));
+            }
+        }
+        for (var i = 0; i < 10; i++) {
+            var lines = Files.readAllLines(dir.resolve("sub/" + i + ".txt"));
+            assertEquals(20, lines.size());
+            assertEquals("payload " + i, lines.get(1));
+            assertEquals("payload " + (90 + i), lines.get(19));
+        }
+        assertEquals(0, errorCount.get());
+    }
+
+    @Test
+    public void testCountersAndErrors() throws Exception {
+        var errorCount = new AtomicInteger();
+        var blocker = Files.createFile(dir.resolve("blocker"));
+        var writer = new AsyncPayloadWriter();
+        writer.submit(dir.resolve("ok.txt").toString(), null, new String[]{"ok"}, errorCount);
+        writer.submit(blocker.resolve("failed.txt").toString(), null, new String[]{"failed"}, errorCount);
+        writer.close();
+        assertFalse(writer.submit(dir.resolve("ok.txt").toString(), null, new String[]{"dropped"}, errorCount));
+
+        assertEquals(1, writer.getWrittenCount());
+        assertEquals(1, writer.getFailedCount());
+        assertEquals(1, writer.getDroppedCount());
+        assertEquals(1, errorCount.get());
+        assertEquals("ok", Files.readString(dir.resolve("ok.txt")));
+    }
+
+    @Test
+    public void testCompressionAndRolling() throws Exception {
+        var errorCount = new AtomicInteger();
+        try (var writer = new AsyncPayloadWriter()) {
+            writer.setCompress(true);
+            writer.setMaxFileSize(10);
+            for (var i = 0; i < 3; i++) {
+                writer.submit(dir.resolve("log.txt").toString(), "UTF-8", new String[]{"0123456789"}, errorCount);
+            }
+        }
+        assertEquals("0123456789", gunzip(dir.resolve("log.1.txt.gz")));
+        assertEquals("0123456789", gunzip(dir.resolve("log.2.txt.gz")));
+        assertEquals("0123456789", gunzip(dir.resolve("log.3.txt.gz")));
+        assertFalse(Files.exists(dir.resolve("log.txt.gz")));
+    }
+
+    @Test
+    public void testRollingCountsExistingFileSize() throws Exception {
+        var errorCount = new AtomicInteger();
+        Files.writeString(dir.resolve("log.txt"), "existing\n");
+        try (var writer = new AsyncPayloadWriter()) {
+            writer.setMaxFileSize(15);
+            for (var i = 0; i < 3; i++) {
+                writer.submit(dir.resolve("log.txt").toString(), "UTF-8", new String[]{"entry " + i + "\n"}, errorCount);
+            }
+        }
+        assertEquals("existing\nentry 0\n", Files.readString(dir.resolve("log.1.txt")));
+        assertEquals("entry 1\nentry 2\n", Files.readString(dir.resolve("log.2.txt")));
+        assertFalse(Files.exists(dir.resolve("log.txt")));
+    }
+
+    @Test
+    public void testCompressedSizeIsCounted() throws Exception {
+        var errorCount = new AtomicInteger();
+        var entry = "a".repeat(1000);
+        try (var writer = new AsyncPayloadWriter()) {
+            writer.setCompress(true);
+            writer.setMaxFileSize(1000);
+            for (var i = 0; i < 10; i++) {
+                writer.submit(dir.resolve("log").toString(), "UTF-8", new String[]{entry}, errorCount);
+            }
+        }
+        // 10000 bytes before, far less than 1000 bytes after compression
+        assertEquals(entry.repeat(10), gunzip(dir.resolve("log.gz")));
+        assertFalse(Files.exists(dir.resolve("log.1.gz")));
+    }
+
+    @Test
+    public void testClosedWithLastLogger() throws Exception {
+        var writer = new AsyncPayloadWriter();
+        var logger1 = new TestPayloadLogger(dir.resolve("1.txt"));
+        var logger2 = new TestPayloadLogger(dir.resolve("2.txt"));
+        logger1.setPayloadWriter(writer);
+        logger2.setPayloadWriter(writer);
+
+        logger1.log("first");
+        logger1.close();
+        assertNull(logger1.getPayloadWriter());
+        // still used by the second logger
+        logger2.log("second");
+        assertEquals(0, writer.getDroppedCount());
+
+        logger2.close();
+        assertEquals(2, writer.getWrittenCount());
+        assertEquals("first", Files.readString(dir.resolve("1.txt")));
+        assertEquals("second", Files.readString(dir.resolve("2.txt")));
+
+        // closed writer does not accept entries any more
+        assertFalse(writer.submit(dir.resolve("3.txt").toString(), null, new String[]{"third"}, new AtomicInteger()));
+    }
+
+    private static class TestPayloadLogger extends PayloadLoggerBase<PayloadLoggingContext> {
+
+        TestPayloadLogger(Path path) {
+            setExpressionResolver(context -> path.toString());
+        }
+
+        void log(String payload) {
+            doLogPayload(new PayloadLoggingContext(getNextSequenceId(), "test"), "UTF-8", payload);
+        }
+    }
+
+    private static String gunzip(Path path) throws Exception {
+        try (var in = new GZIPInputStream(Files.newInputStream(path))) {
+            var out = new ByteArrayOutputStream();
+            in.transferTo(out);
+            return out.toString(StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.ipf.commons.ihe.fhir;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.model.primitive.InstantDt;
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import ca.uhn.fhir.rest.server.exceptions.ResourceGoneException;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.springframework.cache.Cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Bundle provider on top of a search result which has been stored by a distributed
+ * {@link SpringCachePagingProvider} as a sequence of chunks. Each chunk is a byte array
+ * containing a fixed number of JSON-encoded resources, optionally GZIP-compressed.
+ * Only the chunks overlapping the requested range are loaded, and only the
+ * resources within the requested range are parsed. Chunks may be materialized on demand
+ * by the chunk loader.
+ *
+ * @since 4.5
+ */
+class ChunkedBundleProvider implements IBundleProvider {
+
+    private final Cache cache;
+    private final String key;
+    private final Index index;
+    private final FhirContext fhirContext;
+    private final ChunkLoader chunkLoader;
+
+    ChunkedBundleProvider(Cache cache, String key, Index index, FhirContext fhirContext, ChunkLoader chunkLoader) {
+        this.cache = cache;
+        this.key = key;
+        this.index = index;
+        this.fhirContext = fhirContext;
+        this.chunkLoader = chunkLoader;
+    }
+
+    @Override
+    public List<IBaseResource> getResources(int fromIndex, int toIndex) {
+        var size = size();
+        var to = (size != null) ? Math.min(toIndex, size) : toIndex;
+        var result = new ArrayList<IBaseResource>(Math.max(to - fromIndex, 0));
+        if (fromIndex >= to) {
+            return result;
+        }
+        var parser = fhirContext.newJsonParser();
+        for (var chunk = fromIndex / index.chunkSize; chunk <= (to - 1) / index.chunkSize; ++chunk) {
+            var bytes = chunkLoader.load(key, chunk);
+            if (bytes == null) {
+                // end of a search result of previously unknown size
+                break;
+            }
+            var chunkStart = chunk * index.chunkSize;
+            try (var in = new DataInputStream(decompressing(new ByteArrayInputStream(bytes)))) {
+                var count = in.readInt();
+                for (var i = 0; i < count && chunkStart + i < to; ++i) {
+                    var length = in.readInt();
+                    if (chunkStart + i < fromIndex) {
+                        if (in.skipBytes(length) != length) {
+                            throw new EOFException();
+                        }
+                    } else {
+                        var encoded = new byte[length];
+                        in.readFully(encoded);
+                        result.add(parser.parseResource(new String(encoded, StandardCharsets.UTF_8)));
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot decode search result " + key, e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return number of resources, or <code>null</code> as long as it is unknown, i.e. as long as
+     * the search result of a source with unknown size has not been stored completely.
+     */
+    @Override
+    public Integer size() {
+        if (index.size >= 0) {
+            return index.size;
+        }
+        var current = cache.get(key, Index.class);
+        return ((current != null) && (current.size >= 0)) ? current.size : null;
+    }
+
+    @Override
+    public InstantDt getPublished() {
+        return new InstantDt(new Date(index.created));
+    }
+
+    @Override
+    public String getUuid() {
+        return null;
+    }
+
+    @Override
+    public Integer preferredPageSize() {
+        return null;
+    }
+
+    private InputStream decompressing(InputStream in) throws IOException {
+        return index.compressed ? new GZIPInputStream(in) : in;
+    }
+
+    /**
+     * Encodes a chunk of resources.
+     *
+     * @param resources   resources to be encoded
+     * @param fhirContext FHIR context
+     * @param compressed  whether the chunk shall be GZIP-compressed
+     * @return encoded chunk
+     */
+    static byte[] encodeChunk(List<IBaseResource> resources, FhirContext fhirContext, boolean compressed) {
+        var parser = fhirContext.newJsonParser();
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new DataOutputStream(compressed ? new GZIPOutputStream(bytes) : (OutputStream) bytes)) {
+            out.writeInt(resources.size());
+            for (var resource : resources) {
+                var encoded = parser.encodeResourceToString(resource).getBytes(StandardCharsets.UTF_8);
+                out.writeInt(encoded.length);
+                out.write(encoded);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static String chunkKey(String key, int chunk) {
+        return key + '#' + chunk;
+    }
+
+    /**
+     * Loads chunks of a stored search result.
+     */
+    @FunctionalInterface
+    interface ChunkLoader {
+
+        /**
+         * @param key   key of the search result
+         * @param chunk number of the chunk
+         * @return encoded chunk, or <code>null</code> if the search result has less chunks
+         * @throws ResourceGoneException if the chunk is not available anymore
+         */
+        byte[] load(String key, int chunk);
+    }
+
+    /**
+     * Cache entry describing a stored search result.
+     */
+    static final class Index implements Serializable {
+
+        private static final long serialVersionUID = 2L;
+
+        /** Number of resources, -1 if not known yet */
+        final int size;
+        final int chunkSize;
+        /** Number of stored chunks, only valid when complete */
+        final int chunkCount;
+        final boolean compressed;
+        final long created;
+        /** Whether all chunks have been stored */
+        final boolean complete;
+
+        Index(int size, int chunkSize, int chunkCount, boolean compressed, long created, boolean complete) {
+            this.size = size;
+            this.chunkSize = chunkSize;
+            this.chunkCount = chunkCount;
+            this.compressed = compressed;
+            this.created = created;
+            this.complete = complete;
+        }
+    }
+}
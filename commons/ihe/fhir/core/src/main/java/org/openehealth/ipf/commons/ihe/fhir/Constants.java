@@ -62,5 +62,10 @@ public interface Constants {
     String FHIR_REQUEST_SIZE_ONLY = "FhirRequestSizeOnly";
     String FHIR_REQUEST_GET_ONLY = "FhirRequestGetOnly";
 
+    // Set to true in order to have the entries of a request bundle validated in parallel. This header is evaluated
+    // by the FhirTransactionValidator when the route validates the request (see FhirCamelValidators). Validators
+    // may still validate serially, e.g. if the bundle profile cannot be checked entry by entry.
+    String FHIR_VALIDATE_ENTRIES_IN_PARALLEL = "FhirValidateEntriesInParallel";
+
     String URN_IETF_RFC_3986 = "urn:ietf:rfc:3986";
 }
@@ -21,13 +21,17 @@ import ca.uhn.fhir.context.support.DefaultProfileValidationSupport;
 import ca.uhn.fhir.rest.api.EncodingEnum;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Scanner;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Validation loader that first tries to load a custom structure definition before falling back to the
- * default.
+ * default. Custom structure definitions are parsed only once.
  *
  * @author Christian Ohr
  * @since 3.4
@@ -36,6 +40,7 @@ public class CustomValidationSupport extends DefaultProfileValidationSupport {
 
     public static final String HTTP_HL7_ORG_FHIR_STRUCTURE_DEFINITION = "http://hl7.org/fhir/StructureDefinition/";
     private String prefix = "profiles/";
+    private final Map<String, Optional<IBaseResource>> profiles = new ConcurrentHashMap<>();
 
     public CustomValidationSupport(FhirContext fhirContext) {
         super(fhirContext);
@@ -58,17 +63,26 @@ public class CustomValidationSupport extends DefaultProfileValidationSupport {
 
     private <T extends IBaseResource> Optional<T> findProfile(Class<T> clazz, String resourceName) {
         var path = prefix + resourceName + ".xml";
-        var is = getClass().getClassLoader().getResourceAsStream(path);
-        if (is != null) {
-            var profileText = new Scanner(getClass().getClassLoader().getResourceAsStream(path), StandardCharsets.UTF_8).useDelimiter("\\A").next();
-            var parser = EncodingEnum.detectEncodingNoDefault(profileText).newParser(getFhirContext());
-            var structureDefinition = parser.parseResource(clazz, profileText);
-            return Optional.of(structureDefinition);
+        return profiles.computeIfAbsent(path, p -> parseProfile(clazz, p))
+                .filter(clazz::isInstance)
+                .map(clazz::cast);
+    }
+
+    private Optional<IBaseResource> parseProfile(Class<? extends IBaseResource> clazz, String path) {
+        try (var is = getClass().getClassLoader().getResourceAsStream(path)) {
+            if (is != null) {
+                var profileText = new Scanner(is, StandardCharsets.UTF_8).useDelimiter("\\A").next();
+                var parser = EncodingEnum.detectEncodingNoDefault(profileText).newParser(getFhirContext());
+                return Optional.of(parser.parseResource(clazz, profileText));
+            }
+            return Optional.empty();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        return Optional.empty();
     }
 
     public void setPrefix(String prefix) {
         this.prefix = prefix;
+        profiles.clear();
     }
 }
@@ -49,6 +49,15 @@ public interface FhirTransactionValidator {
      */
     void validateResponse(Object payload, Map<String, Object> parameters);
 
+    /**
+     * Prepares the validator before the first payload is validated, e.g. by loading
+     * profiles and populating caches. Called when a FHIR endpoint is started.
+     *
+     * @since 4.5
+     */
+    default void initialize() {
+    }
+
     class Support implements FhirTransactionValidator {
 
         @Override
@@ -58,6 +67,17 @@ public interface FhirTransactionValidator {
         @Override
         public void validateResponse(Object payload, Map<String, Object> parameters) {
         }
+
+        /**
+         * @param parameters request parameters
+         * @return true if the entries of a request bundle shall be validated in parallel,
+         * see {@link Constants#FHIR_VALIDATE_ENTRIES_IN_PARALLEL}
+         * @since 4.5
+         */
+        protected static boolean isValidateEntriesInParallel(Map<String, Object> parameters) {
+            return parameters != null &&
+                    Boolean.parseBoolean(String.valueOf(parameters.get(Constants.FHIR_VALIDATE_ENTRIES_IN_PARALLEL)));
+        }
     }
 }
 
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.ipf.commons.ihe.fhir;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.support.IValidationSupport;
+import ca.uhn.fhir.util.BundleUtil;
+import ca.uhn.fhir.validation.FhirValidator;
+import ca.uhn.fhir.validation.SingleValidationMessage;
+import ca.uhn.fhir.validation.ValidationOptions;
+import ca.uhn.fhir.validation.ValidationResult;
+import org.hl7.fhir.common.hapi.validation.support.CachingValidationSupport;
+import org.hl7.fhir.common.hapi.validation.validator.FhirInstanceValidator;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Shared engine for validating FHIR resources against structure definitions.
+ * <p>
+ * The validation support is wrapped into a {@link CachingValidationSupport}, so that profiles are
+ * loaded and their snapshots are generated only once. As the same structure definition instances are
+ * used for all validations, the FHIRPath expressions of their constraints are compiled only once as well.
+ * The {@link FhirValidator} and its {@link FhirInstanceValidator} module are thread-safe and are
+ * reused for all validations.
+ * <p>
+ * An engine is usually owned by a {@link FhirTransactionValidator}, which in turn is created once per
+ * {@link FhirTransactionConfiguration} of a FHIR component, using the FHIR context of the component. It is
+ * released together with the validator, or explicitly by {@link #close()}.
+ * <p>
+ * Large bundles can be validated entry by entry with {@link #validateEntries(IBaseBundle, Function)}, using
+ * a bounded pool of worker threads. Each entry resource is validated against the profiles selected by the
+ * caller, e.g. the profiles the bundle profile requires for the entry slice. Neither the bundle profile
+ * itself nor constraints spanning several entries are checked in this mode, so they must be verified
+ * separately by the caller.
+ *
+ * @since 4.5
+ */
+public class FhirValidationEngine implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FhirValidationEngine.class);
+
+    private final FhirContext fhirContext;
+    private final FhirValidator validator;
+    private volatile boolean warmedUp;
+    private volatile int parallelism = ForkJoinPool.getCommonPoolParallelism();
+    private ForkJoinPool validationPool;
+
+    /**
+     * @param fhirContext       FHIR context
+     * @param validationSupport validation support providing the structure definitions
+     * @param customizer        configures the instance validator, e.g. terminology checks
+     */
+    public FhirValidationEngine(FhirContext fhirContext,
+                                IValidationSupport validationSupport,
+                                Consumer<FhirInstanceValidator> customizer) {
+        this.fhirContext = fhirContext;
+        var instanceValidator = new FhirInstanceValidator(new CachingValidationSupport(validationSupport));
+        customizer.accept(instanceValidator);
+        validator = fhirContext.newValidator();
+        validator.setValidateAgainstStandardSchema(false);
+        validator.setValidateAgainstStandardSchematron(false);
+        validator.registerValidatorModule(instanceValidator);
+    }
+
+    /**
+     * Validates the resource.
+     *
+     * @param resource resource to be validated
+     * @return validation result
+     */
+    public ValidationResult validate(IBaseResource resource) {
+        return validator.validateWithResult(resource);
+    }
+
+    /**
+     * Validates the resource against the profiles given in the validation options, in addition to the
+     * profiles declared by the resource itself.
+     *
+     * @param resource resource to be validated
+     * @param options  validation options
+     * @return validation result
+     */
+    public ValidationResult validate(IBaseResource resource, ValidationOptions options) {
+        return validator.validateWithResult(resource, options);
+    }
+
+    /**
+     * Validates the resources of the bundle entries independently of each other, in parallel. Locations
+     * of the resulting messages are relative to the bundle.
+     *
+     * @param bundle  bundle whose entries shall be validated
+     * @param options returns the validation options for an entry resource, e.g. the profile of its slice,
+     *                or <code>null</code> if the resource shall not be validated
+     * @return merged validation result, with messages in the order of the bundle entries
+     */
+    public ValidationResult validateEntries(IBaseBundle bundle, Function<IBaseResource, ValidationOptions> options) {
+        var entries = BundleUtil.toListOfEntries(fhirContext, bundle);
+        try {
+            var messages = getValidationPool().submit(() -> IntStream.range(0, entries.size())
+                    .parallel()
+                    .mapToObj(i -> validateEntry(i, entries.get(i).getResource(), options))
+                    .flatMap(List::stream)
+                    .collect(Collectors.toList())).get();
+            return new ValidationResult(fhirContext, messages);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while validating bundle entries", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private List<SingleValidationMessage> validateEntry(int index, IBaseResource resource,
+                                                        Function<IBaseResource, ValidationOptions> options) {
+        var entryOptions = resource != null ? options.apply(resource) : null;
+        if (entryOptions == null) {
+            return List.of();
+        }
+        var resourceType = fhirContext.getResourceType(resource);
+        var entryPath = "Bundle.entry[" + index + "].resource";
+        var messages = new ArrayList<SingleValidationMessage>();
+        for (var message : validate(resource, entryOptions).getMessages()) {
+            message.setLocationString(entryLocation(message.getLocationString(), resourceType, entryPath));
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    /**
+     * Rewrites a location within a validated resource, e.g. <code>DocumentReference.content[0]</code>,
+     * into the corresponding location within the bundle, e.g. <code>Bundle.entry[2].resource.content[0]</code>.
+     */
+    static String entryLocation(String location, String resourceType, String entryPath) {
+        if (location == null || !location.startsWith(resourceType)) {
+            return entryPath;
+        }
+        var rest = location.substring(resourceType.length());
+        return (rest.isEmpty() || rest.charAt(0) == '.') ? entryPath + rest : entryPath;
+    }
+
+    private synchronized ForkJoinPool getValidationPool() {
+        if (validationPool == null) {
+            validationPool = new ForkJoinPool(parallelism);
+        }
+        return validationPool;
+    }
+
+    /**
+     * Stops the worker threads used for validating bundle entries in parallel. They are started
+     * again if bundle entries are validated afterwards.
+     */
+    @Override
+    public synchronized void close() {
+        if (validationPool != null) {
+            validationPool.shutdown();
+            validationPool = null;
+        }
+    }
+
+    /**
+     * Sets the maximal number of threads validating bundle entries in parallel. Defaults to the
+     * parallelism of the common fork/join pool. Must be set before bundles are validated.
+     *
+     * @param parallelism number of worker threads
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Validates the given resources once, so that the profiles they refer to are loaded and the
+     * internal caches of the validator are populated before the first actual request arrives.
+     * Subsequent calls have no effect.
+     *
+     * @param resources sample resources
+     */
+    public synchronized void warmUp(IBaseResource... resources) {
+        if (!warmedUp) {
+            var start = System.currentTimeMillis();
+            for (var resource : resources) {
+                validate(resource);
+            }
+            warmedUp = true;
+            LOG.info("Warmed up FHIR validation engine in {} ms", System.currentTimeMillis() - start);
+        }
+    }
+
+    public FhirContext getFhirContext() {
+        return fhirContext;
+    }
+}
@@ -25,8 +25,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import static org.openehealth.ipf.commons.ihe.fhir.Constants.FHIR_FROM_INDEX;
 import static org.openehealth.ipf.commons.ihe.fhir.Constants.FHIR_REQUEST_SIZE_ONLY;
@@ -45,7 +51,19 @@ import static org.openehealth.ipf.commons.ihe.fhir.Constants.FHIR_TO_INDEX;
  * </li>
  * </ul>
  * <p>
- * Note: instances of this class is neither thread-safe nor can they be reused across requests
+ * As only parts of the result are fetched, sorting (if enabled) only applies to each fetched range of results.
+ * If the complete result shall be sorted (see the {@link FhirSearchAndSortParameters} in the
+ * {@link Constants#FHIR_REQUEST_PARAMETERS} header), the route is expected to return the requested range of the sorted result.
+ * </p>
+ * <p>
+ * When results are cached, the number of cached resources can be limited by {@link #setMaxCachedResources(int)}.
+ * In this case, the least recently used ranges of results are evicted first. If a
+ * {@link #setPrefetchExecutor(Executor) prefetch executor} is set, the range following the requested one is
+ * fetched in the background. Results are fetched without holding a lock, but a range that is currently being
+ * fetched is not requested a second time.
+ * </p>
+ * <p>
+ * Note: instances of this class cannot be reused across requests. They are only thread-safe with regard to prefetching.
  * </p>
  */
 public class LazyBundleProvider extends AbstractBundleProvider {
@@ -53,9 +71,18 @@ public class LazyBundleProvider extends AbstractBundleProvider {
     private static final Logger LOG = LoggerFactory.getLogger(LazyBundleProvider.class);
 
     private final boolean cacheResults;
-    private int size = -1;
-    private final transient List<IBaseResource> cachedResults = new ArrayList<>();
+    private volatile int size = -1;
+    // cached ranges of results, keyed by their lower index
+    private final transient NavigableMap<Integer, CachedRange> cachedRanges = new TreeMap<>();
     private final transient ResultRanges resultRanges = new ResultRanges();
+    // ranges that are currently fetched, completed when the fetch has ended
+    private final transient Map<Range<Integer>, CompletableFuture<Void>> pendingRanges = new HashMap<>();
+    // ranges that are currently requested, and must not be evicted
+    private final transient List<Range<Integer>> requestedRanges = new ArrayList<>();
+    private int cachedResourceCount;
+    private long accessCounter;
+    private int maxCachedResources = Integer.MAX_VALUE;
+    private transient Executor prefetchExecutor;
 
     /**
      * Initializes a lazy bundle provider
@@ -74,7 +101,7 @@ public class LazyBundleProvider extends AbstractBundleProvider {
      *
      * @param consumer     FHIR consumer that uses ths provider
      * @param cacheResults cache results. So far, only the result set size is cached
-     * @param sort         sort results
+     * @param sort         sort each fetched range of results
      * @param payload      incoming payload
      * @param headers      incoming headers
      */
@@ -83,6 +110,34 @@ public class LazyBundleProvider extends AbstractBundleProvider {
         this.cacheResults = cacheResults;
     }
 
+    /**
+     * Sets the maximal number of cached resources. Defaults to no limit.
+     * Only considered if results are cached.
+     *
+     * @param maxCachedResources maximal number of cached resources
+     * @since 4.5
+     */
+    public void setMaxCachedResources(int maxCachedResources) {
+        this.maxCachedResources = maxCachedResources;
+    }
+
+    /**
+     * Sets the executor used to fetch the range of results following the requested one in the background.
+     * Defaults to <code>null</code>, which means that no prefetching is done. Only considered if results are cached.
+     * <p>
+     * Prefetching requests carry a copy of the headers of the original request, but the executor threads
+     * do not have any thread-bound context of the request thread (e.g. a security context or the logging MDC).
+     * If the route depends on such context, the executor is responsible for propagating it. Prefetching
+     * is skipped if the executor rejects the task.
+     * </p>
+     *
+     * @param prefetchExecutor executor for prefetching results
+     * @since 4.5
+     */
+    public void setPrefetchExecutor(Executor prefetchExecutor) {
+        this.prefetchExecutor = prefetchExecutor;
+    }
+
     @Override
     public List<IBaseResource> getResources(int fromIndex, int toIndex) {
         if (!cacheResults) {
@@ -90,24 +145,113 @@ public class LazyBundleProvider extends AbstractBundleProvider {
             sortIfApplicable(result);
             return result;
         }
-        LOG.debug("Cached results contain the following ranges: {}. Requesting resources from index {} to {}", resultRanges, fromIndex, toIndex);
         var wanted = Range.closedOpen(fromIndex, toIndex);
-        var needed = resultRanges.required(wanted);
-        LOG.debug("Requiring the following ranges {}", needed);
-        for (var requiredRange : needed.asDescendingSetOfRanges()) {
-            LOG.debug("Now requesting the following range {}", requiredRange);
-            var results = getPartialResult(requiredRange.lowerEndpoint(), requiredRange.upperEndpoint());
-            LOG.debug("Got back a list of size {}", results.size());
-            if (!results.isEmpty()) {
-                cacheAll(requiredRange.lowerEndpoint(), results);
-                // Take care, potentially less elements than requested have been retrieved
-                resultRanges.add(Range.closedOpen(requiredRange.lowerEndpoint(), requiredRange.lowerEndpoint() + results.size()));
+        List<IBaseResource> result;
+        synchronized (this) {
+            LOG.debug("Cached results contain the following ranges: {}. Requesting resources from index {} to {}", resultRanges, fromIndex, toIndex);
+            requestedRanges.add(wanted);
+        }
+        try {
+            fetchRequired(wanted);
+            synchronized (this) {
+                result = collectCached(fromIndex, toIndex);
+            }
+        } finally {
+            synchronized (this) {
+                requestedRanges.remove(wanted);
+                evict(wanted);
+                LOG.debug("Cached results now contain the following ranges: {}", resultRanges);
             }
         }
-        LOG.debug("Cached results now contain the following ranges: {}", resultRanges);
 
-        // Everything went OK, return whatever we got
-        return cachedResults.subList(fromIndex, Math.min(cachedResults.size(), Math.min(cachedResults.size(), toIndex)));
+        // A complete range indicates that there might be more results
+        var executor = prefetchExecutor;
+        if (executor != null && result.size() == toIndex - fromIndex && result.size() > 0) {
+            try {
+                executor.execute(() -> prefetch(toIndex, toIndex + result.size()));
+            } catch (RejectedExecutionException e) {
+                LOG.debug("Skipped prefetching resources from index {}", toIndex);
+            }
+        }
+        return result;
+    }
+
+    private void prefetch(int fromIndex, int toIndex) {
+        if (size >= 0 && fromIndex >= size) {
+            return;
+        }
+        var wanted = Range.closedOpen(fromIndex, toIndex);
+        try {
+            LOG.debug("Prefetching resources from index {} to {}", fromIndex, toIndex);
+            fetchRequired(wanted);
+        } catch (RuntimeException e) {
+            LOG.warn("Prefetching resources from index {} to {} failed", fromIndex, toIndex, e);
+        } finally {
+            synchronized (this) {
+                evict(wanted);
+            }
+        }
+    }
+
+    /**
+     * Fetches the ranges of the wanted range that are not cached yet. If some of them are currently
+     * fetched by another thread, this thread waits for them and checks again afterwards.
+     */
+    private void fetchRequired(Range<Integer> wanted) {
+        while (true) {
+            var awaited = new ArrayList<CompletableFuture<Void>>();
+            var owned = new HashMap<Range<Integer>, CompletableFuture<Void>>();
+            RangeSet<Integer> needed;
+            synchronized (this) {
+                needed = resultRanges.required(wanted);
+                LOG.debug("Requiring the following ranges {}", needed);
+                for (var entry : pendingRanges.entrySet()) {
+                    if (needed.intersects(entry.getKey())) {
+                        awaited.add(entry.getValue());
+                    }
+                }
+                if (awaited.isEmpty()) {
+                    for (var requiredRange : needed.asRanges()) {
+                        var pending = new CompletableFuture<Void>();
+                        pendingRanges.put(requiredRange, pending);
+                        owned.put(requiredRange, pending);
+                    }
+                }
+            }
+            if (awaited.isEmpty()) {
+                fetch(needed, owned);
+                return;
+            }
+            LOG.debug("Waiting for {} ranges being fetched by other threads", awaited.size());
+            awaited.forEach(CompletableFuture::join);
+        }
+    }
+
+    private void fetch(RangeSet<Integer> needed, Map<Range<Integer>, CompletableFuture<Void>> owned) {
+        try {
+            for (var requiredRange : needed.asDescendingSetOfRanges()) {
+                LOG.debug("Now requesting the following range {}", requiredRange);
+                var results = new ArrayList<>(getPartialResult(requiredRange.lowerEndpoint(), requiredRange.upperEndpoint()));
+                LOG.debug("Got back a list of size {}", results.size());
+                sortIfApplicable(results);
+                synchronized (this) {
+                    if (!results.isEmpty()) {
+                        cache(requiredRange.lowerEndpoint(), results);
+                    }
+                }
+                release(requiredRange, owned.get(requiredRange));
+            }
+        } finally {
+            // After a failure, waiting threads try to fetch the remaining ranges themselves
+            owned.forEach(this::release);
+        }
+    }
+
+    private void release(Range<Integer> range, CompletableFuture<Void> pending) {
+        synchronized (this) {
+            pendingRanges.remove(range, pending);
+        }
+        pending.complete(null);
     }
 
     private List<IBaseResource> getPartialResult(int fromIndex, int toIndex) {
@@ -119,27 +263,87 @@ public class LazyBundleProvider extends AbstractBundleProvider {
 
     @Override
     public Integer size() {
-        if (!cacheResults || size < 0) {
+        var currentSize = size;
+        if (!cacheResults || currentSize < 0) {
             var headers = getHeaders();
             headers.put(FHIR_REQUEST_SIZE_ONLY, null);
-            size = getConsumer().handleSizeRequest(getPayload(), headers);
+            currentSize = getConsumer().handleSizeRequest(getPayload(), headers);
+            size = currentSize;
+        }
+        return currentSize;
+    }
+
+    private void cache(int fromIndex, List<IBaseResource> resources) {
+        cachedRanges.put(fromIndex, new CachedRange(resources, ++accessCounter));
+        cachedResourceCount += resources.size();
+        // Take care, potentially less elements than requested have been retrieved
+        resultRanges.add(Range.closedOpen(fromIndex, fromIndex + resources.size()));
+    }
+
+    /**
+     * @return cached resources from the given range, up to the first gap
+     */
+    private List<IBaseResource> collectCached(int fromIndex, int toIndex) {
+        var result = new ArrayList<IBaseResource>(Math.max(toIndex - fromIndex, 0));
+        var index = fromIndex;
+        while (index < toIndex) {
+            var entry = cachedRanges.floorEntry(index);
+            if (entry == null) {
+                break;
+            }
+            var cachedRange = entry.getValue();
+            var offset = index - entry.getKey();
+            if (offset >= cachedRange.resources.size()) {
+                break;
+            }
+            cachedRange.lastAccess = ++accessCounter;
+            var end = Math.min(cachedRange.resources.size(), offset + toIndex - index);
+            result.addAll(cachedRange.resources.subList(offset, end));
+            index += end - offset;
         }
-        return size;
+        return result;
     }
 
-    private void cacheAll(int fromIndex, List<IBaseResource> resources) {
-        if (cachedResults.size() <= fromIndex) {
-            for (var i = cachedResults.size(); i < fromIndex; i++) {
-                LOG.debug("Adding null for index {}", i);
-                cachedResults.add(null);
+    /**
+     * Evicts least recently used ranges until the maximal number of cached resources is not exceeded anymore.
+     * Ranges overlapping with the given one or with currently requested ones are kept.
+     */
+    private void evict(Range<Integer> kept) {
+        while (cachedResourceCount > maxCachedResources) {
+            Map.Entry<Integer, CachedRange> eldest = null;
+            for (var entry : cachedRanges.entrySet()) {
+                var lower = entry.getKey();
+                var cachedRange = Range.closedOpen(lower, lower + entry.getValue().resources.size());
+                if (!overlaps(cachedRange, kept) &&
+                        requestedRanges.stream().noneMatch(requested -> overlaps(cachedRange, requested)) &&
+                        (eldest == null || entry.getValue().lastAccess < eldest.getValue().lastAccess)) {
+                    eldest = entry;
+                }
             }
-            cachedResults.addAll(resources);
-        } else {
-            for (var i = 0; i < resources.size(); i++) {
-                cachedResults.set(fromIndex + i, resources.get(i));
+            if (eldest == null) {
+                break;
             }
+            var lower = eldest.getKey();
+            var count = eldest.getValue().resources.size();
+            LOG.debug("Evicting cached resources from index {} to {}", lower, lower + count);
+            cachedRanges.remove(lower);
+            cachedResourceCount -= count;
+            resultRanges.remove(Range.closedOpen(lower, lower + count));
+        }
+    }
+
+    private static boolean overlaps(Range<Integer> range1, Range<Integer> range2) {
+        return range1.isConnected(range2) && !range1.intersection(range2).isEmpty();
+    }
+
+    private static class CachedRange {
+        private final List<IBaseResource> resources;
+        private long lastAccess;
+
+        CachedRange(List<IBaseResource> resources, long lastAccess) {
+            this.resources = resources;
+            this.lastAccess = lastAccess;
         }
-        sortIfApplicable(cachedResults);
     }
 
     private static class ResultRanges {
@@ -159,13 +363,13 @@ public class LazyBundleProvider extends AbstractBundleProvider {
             rangeSet.add(wantedRange.canonical(DiscreteDomain.integers()));
         }
 
+        public void remove(Range<Integer> evictedRange) {
+            rangeSet.remove(evictedRange.canonical(DiscreteDomain.integers()));
+        }
+
         @Override
         public String toString() {
             return rangeSet.toString();
         }
     }
-
-
-
-
 }
@@ -20,34 +20,57 @@ import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.rest.api.server.IBundleProvider;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.server.IPagingProvider;
-import ca.uhn.fhir.rest.server.SimpleBundleProvider;
+import ca.uhn.fhir.rest.server.exceptions.ResourceGoneException;
 import lombok.Getter;
 import lombok.Setter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
 
-import java.util.List;
+import java.time.Duration;
+import java.util.Map;
 import java.util.UUID;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.openehealth.ipf.commons.ihe.fhir.ChunkedBundleProvider.chunkKey;
 
 /**
  * Paging provider that uses a Spring cache abstraction to store {@link IBundleProvider} instances.
  * The PagingProvider is used whenever there are more results than the client has requested.
  * <p>
  * Note that {@link IBundleProvider} is not serializable, so if {@link #isDistributed()} returns true,
- * only the bundles are stored. When the result list is {@link #retrieveResultList(RequestDetails, String) retrieved}
- * a new instance of {@link SimpleBundleProvider} is created and returned instead. This does
- * not work with {@link org.openehealth.ipf.commons.ihe.fhir.LazyBundleProvider}
- * as this class relies on a completely initialized result list.
+ * only the resources are stored, encoded as chunks of {@link #getChunkSize()} resources each,
+ * which are optionally compressed. When a result list is stored, only a small index entry and the
+ * first {@link #getPrefetchChunks()} chunks are written to the cache, on the requesting thread.
+ * The other chunks are stored on demand, when a page is requested on the node which has stored the
+ * result list. The source bundle provider is asked for chunk-sized ranges only, so that a
+ * {@link LazyBundleProvider} does not fetch the whole result at once.
+ * </p>
+ * <p>
+ * Other nodes can only serve the chunks which have been stored already. Therefore, either paging
+ * requests must be routed to the node which has performed the search, or {@link #setPrefetchChunks(int)}
+ * must cover the pages clients are expected to request, e.g. {@link Integer#MAX_VALUE} to store
+ * the whole result list right away.
  * </p>
  * <p>
- * Eviction of paging results is done by appropriately configuring the fhirPagingCache cache
+ * Eviction of paging results is done by appropriately configuring the fhirPagingCache cache.
+ * In addition, a {@link #getTimeToLive() time to live} can be set: a background thread then evicts
+ * the result lists stored by this node when they have expired, and expired result lists stored by
+ * other nodes are evicted when they are retrieved. The paging provider must be {@link #close() closed}
+ * to stop the background thread. Without a time to live, result lists which have not been paged through
+ * completely keep their source bundle provider on this node until the paging provider is closed.
  * </p>
  *
  * @author Christian Ohr
  * @since 3.2
  */
-public class SpringCachePagingProvider implements IPagingProvider {
+public class SpringCachePagingProvider implements IPagingProvider, AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SpringCachePagingProvider.class);
 
     private static final String PAGING_CACHE = "fhirPagingCache";
     private final Cache cache;
@@ -64,44 +87,266 @@ public class SpringCachePagingProvider implements IPagingProvider {
     @Setter
     private boolean distributed;
 
+    /**
+     * Number of resources per stored chunk in distributed mode. Defaults to the default page size.
+     * @since 4.5
+     */
+    @Setter
+    private int chunkSize;
+
+    /**
+     * Whether stored chunks are GZIP-compressed in distributed mode. Defaults to false.
+     * @since 4.5
+     */
+    @Getter
+    @Setter
+    private boolean compressed;
+
+    /**
+     * Time after which stored search results expire. Defaults to null,
+     * which means that expiry is left to the cache configuration.
+     * @since 4.5
+     */
+    @Getter
+    @Setter
+    private Duration timeToLive;
+
+    /**
+     * Number of chunks which are stored right away in distributed mode, on the thread storing the
+     * result list. Defaults to 0, i.e. chunks are only stored when pages are requested.
+     * @since 4.5
+     */
+    @Getter
+    @Setter
+    private int prefetchChunks;
+
 
     private final FhirContext fhirContext;
 
+    // result lists stored by this node
+    private final Map<String, Long> storedKeys = new ConcurrentHashMap<>();
+    // result lists stored by this node of which not all chunks have been stored yet
+    private final Map<String, Fill> fills = new ConcurrentHashMap<>();
+    private ScheduledExecutorService executorService;
+
     public SpringCachePagingProvider(CacheManager cacheManager, FhirContext fhirContext) {
         this.cache = cacheManager.getCache(PAGING_CACHE);
         this.fhirContext = fhirContext;
     }
 
+    public int getChunkSize() {
+        return (chunkSize > 0) ? chunkSize : defaultPageSize;
+    }
+
     @Override
     public String storeResultList(RequestDetails requestDetails, IBundleProvider bundleProvider) {
         var key = UUID.randomUUID().toString();
-        cache.put(key, distributed ?
-                serialize(bundleProvider) :
-                bundleProvider);
+        if (distributed) {
+            store(key, bundleProvider);
+        } else {
+            cache.put(key, bundleProvider);
+        }
+        if (timeToLive != null) {
+            storedKeys.put(key, System.currentTimeMillis());
+            startEviction();
+        }
         return key;
     }
 
     @Override
     public IBundleProvider retrieveResultList(RequestDetails requestDetails, String id) {
         return distributed ?
-                deserialize(cache.get(id, List.class)) :
+                retrieve(id) :
                 cache.get(id, IBundleProvider.class);
     }
 
+    /**
+     * Stops storing chunks on demand and stops the eviction of expired result lists.
+     * Result lists remain in the cache until they are evicted by the cache.
+     */
+    @Override
+    public synchronized void close() {
+        if (executorService != null) {
+            executorService.shutdownNow();
+            executorService = null;
+        }
+        fills.values().forEach(Fill::cancel);
+        fills.clear();
+        storedKeys.clear();
+    }
+
+
+    private void store(String key, IBundleProvider bundleProvider) {
+        var size = bundleProvider.size();
+        var fill = new Fill(key, bundleProvider, getChunkSize(), compressed, System.currentTimeMillis());
+        fills.put(key, fill);
+        cache.put(key, new ChunkedBundleProvider.Index(
+                (size != null) ? size : -1, fill.chunkSize, 0, compressed, fill.created, false));
+        if (prefetchChunks > 0) {
+            fill.fillUpTo(prefetchChunks - 1);
+        }
+    }
+
+    private IBundleProvider retrieve(String key) {
+        var index = cache.get(key, ChunkedBundleProvider.Index.class);
+        if (index == null) {
+            return null;
+        }
+        if (timeToLive != null && System.currentTimeMillis() - index.created > timeToLive.toMillis()) {
+            evict(key);
+            return null;
+        }
+        return new ChunkedBundleProvider(cache, key, index, fhirContext, this::loadChunk);
+    }
+
+    /**
+     * Returns the given chunk from the cache. If it has not been stored yet, it is stored on demand,
+     * provided that the result list has been stored by this node.
+     */
+    private byte[] loadChunk(String key, int chunk) {
+        var bytes = cache.get(chunkKey(key, chunk), byte[].class);
+        if (bytes != null) {
+            return bytes;
+        }
+        var fill = fills.get(key);
+        if (fill != null) {
+            if (!fill.fillUpTo(chunk)) {
+                return null;
+            }
+            bytes = cache.get(chunkKey(key, chunk), byte[].class);
+            if (bytes != null) {
+                return bytes;
+            }
+            throw new ResourceGoneException("Search result " + key + " is not available anymore");
+        }
+        var index = cache.get(key, ChunkedBundleProvider.Index.class);
+        if (index == null) {
+            throw new ResourceGoneException("Search result " + key + " is not available anymore");
+        }
+        if (index.complete) {
+            if (chunk >= index.chunkCount) {
+                return null;
+            }
+            throw new ResourceGoneException("Search result " + key + " is not available anymore");
+        }
+        throw new ResourceGoneException("Search result " + key + " has not been stored completely, " +
+                "this page is only available on the node which has performed the search");
+    }
 
-    private List<String> serialize(IBundleProvider bundleProvider) {
-        var parser = fhirContext.newJsonParser();
-        return bundleProvider.getResources(0, Integer.MAX_VALUE).stream()
-                .map(parser::encodeResourceToString)
-                .collect(Collectors.toList());
+    private void evict(String key) {
+        var chunkCount = 0;
+        var fill = fills.remove(key);
+        if (fill != null) {
+            chunkCount = fill.cancel();
+        }
+        if (distributed) {
+            var index = cache.get(key, ChunkedBundleProvider.Index.class);
+            if (index != null) {
+                chunkCount = Math.max(chunkCount, index.chunkCount);
+            }
+        }
+        cache.evict(key);
+        for (var i = 0; i < chunkCount; ++i) {
+            cache.evict(chunkKey(key, i));
+        }
+        storedKeys.remove(key);
     }
 
-    private IBundleProvider deserialize(List<String> list) {
-        if (list == null) return null;
-        var parser = fhirContext.newJsonParser();
-        return new SimpleBundleProvider(list.stream()
-                .map(parser::parseResource)
-                .collect(Collectors.toList()));
+    /**
+     * Evicts the result lists stored by this node which have expired.
+     */
+    private void evictExpired() {
+        var now = System.currentTimeMillis();
+        storedKeys.forEach((key, created) -> {
+            if (now - created > timeToLive.toMillis()) {
+                LOG.debug("Search result {} expired", key);
+                evict(key);
+            }
+        });
     }
 
+    private synchronized void startEviction() {
+        if (executorService == null) {
+            executorService = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                var thread = new Thread(runnable, "ipf-fhir-paging");
+                thread.setDaemon(true);
+                return thread;
+            });
+            var interval = Math.max(timeToLive.toMillis() / 2, 1);
+            executorService.scheduleWithFixedDelay(this::evictExpired, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+
+    /**
+     * Stores the chunks of a result list one after another, on demand.
+     */
+    private final class Fill {
+
+        private final String key;
+        private final IBundleProvider source;
+        private final int chunkSize;
+        private final boolean compressed;
+        private final long created;
+        private int chunkCount;
+        private int count;
+        private boolean done;
+
+        private Fill(String key, IBundleProvider source, int chunkSize, boolean compressed, long created) {
+            this.key = key;
+            this.source = source;
+            this.chunkSize = chunkSize;
+            this.compressed = compressed;
+            this.created = created;
+        }
+
+        /**
+         * Stores the chunks up to the given one, unless they have been stored before.
+         *
+         * @return <code>true</code> if the chunk exists, <code>false</code> if the result list has less chunks
+         */
+        synchronized boolean fillUpTo(int chunk) {
+            while (!done && chunkCount <= chunk) {
+                fillNext();
+            }
+            return chunk < chunkCount;
+        }
+
+        /**
+         * Stops storing chunks.
+         *
+         * @return number of chunks stored so far
+         */
+        synchronized int cancel() {
+            done = true;
+            return chunkCount;
+        }
+
+        private void fillNext() {
+            try {
+                var resources = source.getResources(count, count + chunkSize);
+                if (resources.size() > chunkSize) {
+                    resources = resources.subList(0, chunkSize);
+                }
+                if (!resources.isEmpty()) {
+                    cache.put(chunkKey(key, chunkCount),
+                            ChunkedBundleProvider.encodeChunk(resources, fhirContext, compressed));
+                    ++chunkCount;
+                    count += resources.size();
+                }
+                var size = source.size();
+                if ((resources.size() < chunkSize) || ((size != null) && (count >= size))) {
+                    done = true;
+                    fills.remove(key);
+                    cache.put(key, new ChunkedBundleProvider.Index(count, chunkSize, chunkCount, compressed, created, true));
+                }
+            } catch (RuntimeException e) {
+                LOG.warn("Cannot store chunk {} of search result {}", chunkCount, key, e);
+                done = true;
+                fills.remove(key);
+                evict(key);
+                throw e;
+            }
+        }
+    }
 }
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.ipf.commons.ihe.fhir;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests for {@link FhirValidationEngine}
+ */
+public class FhirValidationEngineTest {
+
+    private static final String ENTRY_PATH = "Bundle.entry[3].resource";
+
+    @Test
+    public void testEntryLocation() {
+        assertEquals(ENTRY_PATH, FhirValidationEngine.entryLocation("DocumentReference", "DocumentReference", ENTRY_PATH));
+        assertEquals(ENTRY_PATH + ".content[0].attachment",
+                FhirValidationEngine.entryLocation("DocumentReference.content[0].attachment", "DocumentReference", ENTRY_PATH));
+        assertEquals(ENTRY_PATH, FhirValidationEngine.entryLocation("DocumentReferenceX.id", "DocumentReference", ENTRY_PATH));
+        assertEquals(ENTRY_PATH, FhirValidationEngine.entryLocation(null, "DocumentReference", ENTRY_PATH));
+    }
+}
@@ -16,6 +16,11 @@
 
 package org.openehealth.ipf.commons.ihe.fhir;
 
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.model.api.Include;
+import ca.uhn.fhir.rest.api.SortOrderEnum;
+import ca.uhn.fhir.rest.api.SortSpec;
+import ca.uhn.fhir.rest.param.TokenParam;
 import org.easymock.EasyMock;
 import org.easymock.IArgumentMatcher;
 import org.hl7.fhir.dstu3.model.Patient;
@@ -24,12 +29,21 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static org.easymock.EasyMock.eq;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  *
@@ -146,6 +160,127 @@ public class LazyBundleProviderTest {
         EasyMock.verify(requestConsumer);
     }
 
+    @Test
+    public void testGetResourcesEvictLeastRecentlyUsed() {
+        EasyMock.expect(requestConsumer.handleBundleRequest(eq(bundleProvider.getPayload()), hasRequestSublistParameters(10, 30)))
+                .andReturn(response.subList(10, 30));
+        EasyMock.expect(requestConsumer.handleBundleRequest(eq(bundleProvider.getPayload()), hasRequestSublistParameters(30, 40)))
+                .andReturn(response.subList(30, 40));
+        EasyMock.expect(requestConsumer.handleBundleRequest(eq(bundleProvider.getPayload()), hasRequestSublistParameters(10, 20)))
+                .andReturn(response.subList(10, 20));
+        EasyMock.replay(requestConsumer);
+
+        // At most 25 resources are kept, so that elements 10 to 30 are evicted when elements 30 to 40 are requested
+        ((LazyBundleProvider) bundleProvider).setMaxCachedResources(25);
+        bundleProvider.getResources(10, 30);
+        bundleProvider.getResources(30, 40);
+        var result = bundleProvider.getResources(10, 20);
+
+        assertEquals(response.subList(10, 20), result);
+        assertEquals(response.subList(30, 40), bundleProvider.getResources(30, 40));
+        EasyMock.verify(requestConsumer);
+    }
+
+    @Test
+    public void testGetResourcesPrefetched() {
+        EasyMock.expect(requestConsumer.handleBundleRequest(eq(bundleProvider.getPayload()), hasRequestSublistParameters(0, 10)))
+                .andReturn(response.subList(0, 10));
+        EasyMock.expect(requestConsumer.handleBundleRequest(eq(bundleProvider.getPayload()), hasRequestSublistParameters(10, 20)))
+                .andReturn(response.subList(10, 20));
+        EasyMock.expect(requestConsumer.handleBundleRequest(eq(bundleProvider.getPayload()), hasRequestSublistParameters(20, 30)))
+                .andReturn(response.subList(20, 30));
+        EasyMock.replay(requestConsumer);
+
+        // The next page is fetched together with each requested page
+        ((LazyBundleProvider) bundleProvider).setPrefetchExecutor(Runnable::run);
+        bundleProvider.getResources(0, 10);
+        var result = bundleProvider.getResources(10, 20);
+
+        assertEquals(response.subList(10, 20), result);
+        EasyMock.verify(requestConsumer);
+    }
+
+    @Test
+    public void testGetResourcesWhilePrefetching() throws Exception {
+        var prefetchStarted = new CountDownLatch(1);
+        var prefetchReleased = new CountDownLatch(1);
+        EasyMock.expect(requestConsumer.handleBundleRequest(eq(bundleProvider.getPayload()), hasRequestSublistParameters(0, 10)))
+                .andReturn(response.subList(0, 10));
+        EasyMock.expect(requestConsumer.handleBundleRequest(eq(bundleProvider.getPayload()), hasRequestSublistParameters(10, 20)))
+                .andAnswer(() -> {
+                    prefetchStarted.countDown();
+                    prefetchReleased.await();
+                    return response.subList(10, 20);
+                });
+        EasyMock.expect(requestConsumer.handleBundleRequest(eq(bundleProvider.getPayload()), hasRequestSublistParameters(20, 30)))
+                .andReturn(response.subList(20, 30)).times(0, 1);
+        EasyMock.expect(requestConsumer.handleSizeRequest(eq(bundleProvider.getPayload()), hasRequestSizeParameter())).andReturn(MAX_SIZE);
+        // The mock must be called while it is blocked by the prefetching thread
+        EasyMock.makeThreadSafe(requestConsumer, false);
+        EasyMock.replay(requestConsumer);
+
+        var executor = Executors.newSingleThreadExecutor();
+        try {
+            ((LazyBundleProvider) bundleProvider).setPrefetchExecutor(executor);
+            bundleProvider.getResources(0, 10);
+            assertTrue(prefetchStarted.await(10, TimeUnit.SECONDS));
+
+            // The provider is not locked while the next page is fetched
+            assertEquals(response.subList(0, 10), bundleProvider.getResources(0, 10));
+            assertEquals(MAX_SIZE, bundleProvider.size().intValue());
+
+            // The page being prefetched is not requested again, but awaited
+            var result = CompletableFuture.supplyAsync(() -> bundleProvider.getResources(10, 20));
+            prefetchReleased.countDown();
+            assertEquals(response.subList(10, 20), result.get(10, TimeUnit.SECONDS));
+        } finally {
+            prefetchReleased.countDown();
+            executor.shutdownNow();
+        }
+        EasyMock.verify(requestConsumer);
+    }
+
+    @Test
+    public void testGetResourcesSorted() {
+        var headers = new HashMap<String, Object>();
+        headers.put(Constants.FHIR_REQUEST_PARAMETERS, new FhirSearchAndSortParameters<Patient>() {
+            @Override
+            public SortSpec getSortSpec() {
+                return new SortSpec("_id", SortOrderEnum.DESC);
+            }
+
+            @Override
+            protected Optional<Comparator<Patient>> comparatorFor(String paramName) {
+                return Optional.of(Comparator.comparing(patient -> Integer.valueOf(patient.getIdElement().getIdPart())));
+            }
+
+            @Override
+            public Set<Include> getIncludeSpec() {
+                return null;
+            }
+
+            @Override
+            public List<TokenParam> getPatientIdParam() {
+                return null;
+            }
+
+            @Override
+            public FhirContext getFhirContext() {
+                return null;
+            }
+        });
+        bundleProvider = new LazyBundleProvider(requestConsumer, false, true, new Object(), headers);
+        EasyMock.expect(requestConsumer.handleBundleRequest(eq(bundleProvider.getPayload()), hasRequestSublistParameters(10, 20)))
+                .andReturn(new ArrayList<>(response.subList(10, 20)));
+        EasyMock.replay(requestConsumer);
+
+        // Only the requested range is sorted
+        var result = bundleProvider.getResources(10, 20);
+        var expected = new ArrayList<>(response.subList(10, 20));
+        Collections.reverse(expected);
+        assertEquals(expected, result);
+        EasyMock.verify(requestConsumer);
+    }
 
     private static Map<String, Object> hasRequestSizeParameter() {
         EasyMock.reportMatcher(new HasRequestSizeParameter());
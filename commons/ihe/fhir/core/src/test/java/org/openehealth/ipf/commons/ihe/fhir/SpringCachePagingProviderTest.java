@@ -0,0 +1,251 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.ipf.commons.ihe.fhir;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.server.SimpleBundleProvider;
+import ca.uhn.fhir.rest.server.exceptions.ResourceGoneException;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link SpringCachePagingProvider}
+ */
+public class SpringCachePagingProviderTest {
+
+    private static final int SIZE = 2000;
+    private static FhirContext fhirContext;
+
+    private final ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager("fhirPagingCache");
+
+    @BeforeAll
+    public static void setupClass() {
+        fhirContext = FhirContext.forR4();
+    }
+
+    private static List<IBaseResource> patients(int size) {
+        var result = new ArrayList<IBaseResource>(size);
+        for (var i = 0; i < size; i++) {
+            result.add(new Patient().setBirthDate(new Date(i * 86_400_000L)).setId("Patient/" + i));
+        }
+        return result;
+    }
+
+    private static List<String> ids(List<IBaseResource> resources) {
+        return resources.stream()
+                .map(resource -> resource.getIdElement().getIdPart())
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void testNotDistributed() {
+        var pagingProvider = new SpringCachePagingProvider(cacheManager, fhirContext);
+        var bundleProvider = new SimpleBundleProvider(patients(10));
+        var key = pagingProvider.storeResultList(null, bundleProvider);
+        assertSame(bundleProvider, pagingProvider.retrieveResultList(null, key));
+    }
+
+    @Test
+    public void testDistributed() {
+        testDistributed(false);
+    }
+
+    @Test
+    public void testDistributedCompressed() {
+        testDistributed(true);
+    }
+
+    private void testDistributed(boolean compressed) {
+        var pagingProvider = new SpringCachePagingProvider(cacheManager, fhirContext);
+        pagingProvider.setDistributed(true);
+        pagingProvider.setCompressed(compressed);
+
+        var requestedRanges = new CopyOnWriteArrayList<String>();
+        var patients = patients(SIZE);
+        var bundleProvider = new SimpleBundleProvider(patients) {
+            @Override
+            public List<IBaseResource> getResources(int fromIndex, int toIndex) {
+                requestedRanges.add(fromIndex + "-" + toIndex);
+                return super.getResources(fromIndex, toIndex);
+            }
+        };
+        var key = pagingProvider.storeResultList(null, bundleProvider);
+
+        var retrieved = pagingProvider.retrieveResultList(null, key);
+        assertEquals(SIZE, retrieved.size().intValue());
+        assertEquals(ids(patients.subList(1950, 2000)), ids(retrieved.getResources(1950, 2000)));
+        assertEquals(ids(patients.subList(1025, 1130)), ids(retrieved.getResources(1025, 1130)));
+        assertEquals(ids(patients.subList(1990, 2000)), ids(retrieved.getResources(1990, 2100)));
+        assertEquals(0, retrieved.getResources(2000, 2050).size());
+        assertEquals(fhirContext.newJsonParser().encodeResourceToString(patients.get(1234)),
+                fhirContext.newJsonParser().encodeResourceToString(retrieved.getResources(1234, 1235).get(0)));
+
+        // the source has been asked for each page-sized range once
+        assertEquals(SIZE / pagingProvider.getDefaultPageSize(), requestedRanges.size());
+        assertEquals("0-50", requestedRanges.get(0));
+        pagingProvider.close();
+    }
+
+    @Test
+    public void testDistributedStoreIsLazy() throws Exception {
+        var pagingProvider = new SpringCachePagingProvider(cacheManager, fhirContext);
+        pagingProvider.setDistributed(true);
+
+        var released = new CountDownLatch(1);
+        var patients = patients(SIZE);
+        var bundleProvider = new SimpleBundleProvider(patients) {
+            @Override
+            public List<IBaseResource> getResources(int fromIndex, int toIndex) {
+                try {
+                    released.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return super.getResources(fromIndex, toIndex);
+            }
+        };
+
+        // only the index is stored synchronously
+        var key = pagingProvider.storeResultList(null, bundleProvider);
+        var retrieved = pagingProvider.retrieveResultList(null, key);
+        assertEquals(SIZE, retrieved.size().intValue());
+        assertNull(cacheManager.getCache("fhirPagingCache").get(ChunkedBundleProvider.chunkKey(key, 0)));
+
+        released.countDown();
+        assertEquals(ids(patients.subList(100, 150)), ids(retrieved.getResources(100, 150)));
+        pagingProvider.close();
+    }
+
+    @Test
+    public void testDistributedRetrievalOnOtherNode() {
+        var pagingProvider1 = new SpringCachePagingProvider(cacheManager, fhirContext);
+        pagingProvider1.setDistributed(true);
+        var pagingProvider2 = new SpringCachePagingProvider(cacheManager, fhirContext);
+        pagingProvider2.setDistributed(true);
+
+        var patients = patients(SIZE);
+        var key = pagingProvider1.storeResultList(null, new SimpleBundleProvider(patients));
+
+        // chunks which have not been stored yet are only available on the first node
+        var retrieved = pagingProvider2.retrieveResultList(null, key);
+        assertThrows(ResourceGoneException.class, () -> retrieved.getResources(1950, 2000));
+        assertEquals(ids(patients.subList(1950, 2000)),
+                ids(pagingProvider1.retrieveResultList(null, key).getResources(1950, 2000)));
+        assertEquals(ids(patients.subList(1950, 2000)), ids(retrieved.getResources(1950, 2000)));
+        assertEquals(ids(patients.subList(0, 50)), ids(retrieved.getResources(0, 50)));
+        pagingProvider1.close();
+        pagingProvider2.close();
+    }
+
+    @Test
+    public void testDistributedPrefetch() {
+        var cache = cacheManager.getCache("fhirPagingCache");
+        var pagingProvider = new SpringCachePagingProvider(cacheManager, fhirContext);
+        pagingProvider.setDistributed(true);
+        pagingProvider.setPrefetchChunks(2);
+
+        var key = pagingProvider.storeResultList(null, new SimpleBundleProvider(patients(SIZE)));
+        assertNotNull(cache.get(ChunkedBundleProvider.chunkKey(key, 0)));
+        assertNotNull(cache.get(ChunkedBundleProvider.chunkKey(key, 1)));
+        assertNull(cache.get(ChunkedBundleProvider.chunkKey(key, 2)));
+        pagingProvider.close();
+
+        // everything
+        pagingProvider = new SpringCachePagingProvider(cacheManager, fhirContext);
+        pagingProvider.setDistributed(true);
+        pagingProvider.setPrefetchChunks(Integer.MAX_VALUE);
+        var patients = patients(120);
+        key = pagingProvider.storeResultList(null, new SimpleBundleProvider(patients));
+        pagingProvider.close();
+
+        var otherNode = new SpringCachePagingProvider(cacheManager, fhirContext);
+        otherNode.setDistributed(true);
+        var retrieved = otherNode.retrieveResultList(null, key);
+        assertEquals(ids(patients.subList(60, 120)), ids(retrieved.getResources(60, 200)));
+        otherNode.close();
+    }
+
+    @Test
+    public void testDistributedUnknownSize() {
+        var pagingProvider = new SpringCachePagingProvider(cacheManager, fhirContext);
+        pagingProvider.setDistributed(true);
+        pagingProvider.setChunkSize(30);
+
+        var patients = patients(100);
+        var bundleProvider = new SimpleBundleProvider(patients) {
+            @Override
+            public Integer size() {
+                return null;
+            }
+        };
+        var key = pagingProvider.storeResultList(null, bundleProvider);
+        var retrieved = pagingProvider.retrieveResultList(null, key);
+        assertEquals(ids(patients.subList(25, 95)), ids(retrieved.getResources(25, 95)));
+        // known when the last chunk has been stored
+        assertEquals(100, retrieved.size().intValue());
+        assertEquals(ids(patients.subList(90, 100)), ids(retrieved.getResources(90, 120)));
+        pagingProvider.close();
+    }
+
+    @Test
+    public void testTimeToLive() throws Exception {
+        var pagingProvider = new SpringCachePagingProvider(cacheManager, fhirContext);
+        pagingProvider.setDistributed(true);
+        pagingProvider.setTimeToLive(Duration.ofMillis(50));
+
+        var key = pagingProvider.storeResultList(null, new SimpleBundleProvider(patients(120)));
+        assertEquals(120, pagingProvider.retrieveResultList(null, key).size().intValue());
+        Thread.sleep(100);
+        assertNull(pagingProvider.retrieveResultList(null, key));
+        assertNull(cacheManager.getCache("fhirPagingCache").get(ChunkedBundleProvider.chunkKey(key, 0)));
+        pagingProvider.close();
+    }
+
+    @Test
+    public void testTimeToLiveWithoutRetrieval() throws Exception {
+        var cache = cacheManager.getCache("fhirPagingCache");
+        for (var distributed : new boolean[]{false, true}) {
+            var pagingProvider = new SpringCachePagingProvider(cacheManager, fhirContext);
+            pagingProvider.setDistributed(distributed);
+            pagingProvider.setTimeToLive(Duration.ofMillis(50));
+
+            var key = pagingProvider.storeResultList(null, new SimpleBundleProvider(patients(120)));
+            assertNotNull(cache.get(key));
+            // evicted in the background
+            Thread.sleep(300);
+            assertNull(cache.get(key));
+            assertNull(cache.get(ChunkedBundleProvider.chunkKey(key, 0)));
+            pagingProvider.close();
+        }
+    }
+}
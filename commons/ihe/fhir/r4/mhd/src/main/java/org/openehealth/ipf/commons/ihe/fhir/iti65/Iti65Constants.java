@@ -28,5 +28,10 @@ public interface Iti65Constants {
 
     String ITI65_MINIMAL_DOCUMENT_MANIFEST_PROFILE = "http://ihe.net/fhir/StructureDefinition/IHE_MHD_Minimal_DocumentManifest";
     String ITI65_MINIMAL_DOCUMENT_REFERENCE_PROFILE = "http://ihe.net/fhir/StructureDefinition/IHE_MHD_Provide_Minimal_DocumentReference";
+    String ITI65_MINIMAL_LIST_PROFILE = "http://ihe.net/fhir/StructureDefinition/IHE_MHD_Minimal_List";
+
+    String ITI65_COMPREHENSIVE_DOCUMENT_MANIFEST_PROFILE = "http://ihe.net/fhir/StructureDefinition/IHE_MHD_Comprehensive_DocumentManifest";
+    String ITI65_COMPREHENSIVE_DOCUMENT_REFERENCE_PROFILE = "http://ihe.net/fhir/StructureDefinition/IHE_MHD_Provide_Comprehensive_DocumentReference";
+    String ITI65_COMPREHENSIVE_LIST_PROFILE = "http://ihe.net/fhir/StructureDefinition/IHE_MHD_Comprehensive_List";
 
 }
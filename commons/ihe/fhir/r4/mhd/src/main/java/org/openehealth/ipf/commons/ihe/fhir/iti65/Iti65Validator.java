@@ -22,12 +22,15 @@ import ca.uhn.fhir.context.support.IValidationSupport;
 import ca.uhn.fhir.context.support.ValidationSupportContext;
 import ca.uhn.fhir.rest.api.EncodingEnum;
 import ca.uhn.fhir.rest.server.exceptions.UnprocessableEntityException;
+import ca.uhn.fhir.validation.ResultSeverityEnum;
+import ca.uhn.fhir.validation.SingleValidationMessage;
+import ca.uhn.fhir.validation.ValidationOptions;
+import ca.uhn.fhir.validation.ValidationResult;
 import org.hl7.fhir.common.hapi.validation.support.CommonCodeSystemsTerminologyService;
 import org.hl7.fhir.common.hapi.validation.support.InMemoryTerminologyServerValidationSupport;
 import org.hl7.fhir.common.hapi.validation.support.PrePopulatedValidationSupport;
 import org.hl7.fhir.common.hapi.validation.support.SnapshotGeneratingValidationSupport;
 import org.hl7.fhir.common.hapi.validation.support.ValidationSupportChain;
-import org.hl7.fhir.common.hapi.validation.validator.FhirInstanceValidator;
 import org.hl7.fhir.r4.model.Binary;
 import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.DocumentManifest;
@@ -41,12 +44,14 @@ import org.hl7.fhir.r4.model.ResourceType;
 import org.hl7.fhir.r4.model.StructureDefinition;
 import org.hl7.fhir.r5.utils.validation.constants.BestPracticeWarningLevel;
 import org.openehealth.ipf.commons.ihe.fhir.FhirTransactionValidator;
+import org.openehealth.ipf.commons.ihe.fhir.FhirValidationEngine;
 import org.openehealth.ipf.commons.ihe.fhir.support.FhirUtils;
 import org.openehealth.ipf.commons.ihe.xds.core.responses.ErrorCode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
@@ -68,17 +73,41 @@ public class Iti65Validator extends FhirTransactionValidator.Support {
     private static final Logger LOG = LoggerFactory.getLogger(Iti65Validator.class);
     private static final String IHE_PROFILE_PREFIX = "http://ihe.net/fhir/StructureDefinition/";
 
-    private final FhirContext fhirContext;
-    private IValidationSupport validationSupport;
+    private static final Map<ResourceType, String> MINIMAL_ENTRY_PROFILES = Map.of(
+            ResourceType.DocumentManifest, Iti65Constants.ITI65_MINIMAL_DOCUMENT_MANIFEST_PROFILE,
+            ResourceType.DocumentReference, Iti65Constants.ITI65_MINIMAL_DOCUMENT_REFERENCE_PROFILE,
+            ResourceType.List, Iti65Constants.ITI65_MINIMAL_LIST_PROFILE);
+    private static final Map<ResourceType, String> COMPREHENSIVE_ENTRY_PROFILES = Map.of(
+            ResourceType.DocumentManifest, Iti65Constants.ITI65_COMPREHENSIVE_DOCUMENT_MANIFEST_PROFILE,
+            ResourceType.DocumentReference, Iti65Constants.ITI65_COMPREHENSIVE_DOCUMENT_REFERENCE_PROFILE,
+            ResourceType.List, Iti65Constants.ITI65_COMPREHENSIVE_LIST_PROFILE);
+
+    private final FhirValidationEngine validationEngine;
 
     public Iti65Validator(FhirContext fhirContext) {
-        this.fhirContext = fhirContext;
         LOG.info("Initializing Validator for ITI-65 bundles");
-        validationSupport = loadStructureDefinitions(new DefaultProfileValidationSupport(fhirContext), "Minimal");
+        IValidationSupport validationSupport = loadStructureDefinitions(new DefaultProfileValidationSupport(fhirContext), "Minimal");
         validationSupport = loadStructureDefinitions(validationSupport, "Comprehensive");
+        validationEngine = new FhirValidationEngine(fhirContext, validationSupport,
+                instanceValidator -> {
+                    instanceValidator.setNoTerminologyChecks(false);
+                    instanceValidator.setErrorForUnknownProfiles(true);
+                    instanceValidator.setBestPracticeWarningLevel(BestPracticeWarningLevel.Hint);
+                });
         LOG.info("Initialized Validator for ITI-65 bundles");
     }
 
+    public FhirValidationEngine getValidationEngine() {
+        return validationEngine;
+    }
+
+    @Override
+    public void initialize() {
+        validationEngine.warmUp(
+                warmUpBundle(Iti65Constants.ITI65_MINIMAL_METADATA_PROFILE),
+                warmUpBundle(Iti65Constants.ITI65_COMPREHENSIVE_METADATA_PROFILE));
+    }
+
     @Override
     public void validateRequest(Object payload, Map<String, Object> parameters) {
 
@@ -86,22 +115,79 @@ public class Iti65Validator extends FhirTransactionValidator.Support {
 
         validateBundleConsistency(transactionBundle);
 
-        var validator = fhirContext.newValidator();
-        validator.setValidateAgainstStandardSchema(false);
-        validator.setValidateAgainstStandardSchematron(false);
-        var instanceValidator = new FhirInstanceValidator(validationSupport);
-        instanceValidator.setNoTerminologyChecks(false);
-        instanceValidator.setErrorForUnknownProfiles(true);
-        instanceValidator.setBestPracticeWarningLevel(BestPracticeWarningLevel.Hint);
-        validator.registerValidatorModule(instanceValidator);
-        var validationResult = validator.validateWithResult(transactionBundle);
+        var entryProfiles = isValidateEntriesInParallel(parameters) ? entryProfiles(transactionBundle) : null;
+        var validationResult = entryProfiles != null
+                ? validateEntries(transactionBundle, entryProfiles)
+                : validationEngine.validate(transactionBundle);
         if (!validationResult.isSuccessful()) {
             var operationOutcome = validationResult.toOperationOutcome();
             throw FhirUtils.exception(UnprocessableEntityException::new, operationOutcome, "Validation Failed");
         }
     }
 
+    /**
+     * Validates each entry resource against the profile of its slice in the bundle profile, and checks the
+     * remaining constraints of the bundle profile, which do not depend on the entry resources, separately.
+     * Cross-entry constraints have been checked by {@link #validateBundleConsistency(Bundle)} before.
+     */
+    private ValidationResult validateEntries(Bundle bundle, Map<ResourceType, String> entryProfiles) {
+        var entryResult = validationEngine.validateEntries(bundle, resource -> {
+            var options = new ValidationOptions();
+            var profile = entryProfiles.get(((Resource) resource).getResourceType());
+            return profile != null ? options.addProfile(profile) : options;
+        });
+        var messages = new ArrayList<SingleValidationMessage>();
+        if (bundle.getType() != Bundle.BundleType.TRANSACTION) {
+            messages.add(errorMessage("Bundle.type", "Bundle type must be transaction"));
+        }
+        for (var i = 0; i < bundle.getEntry().size(); i++) {
+            var entry = bundle.getEntry().get(i);
+            if (!entry.hasFullUrl()) {
+                messages.add(errorMessage("Bundle.entry[" + i + "]", "Bundle entry must have a fullUrl"));
+            }
+            if (entry.getRequest().getMethod() != Bundle.HTTPVerb.POST) {
+                messages.add(errorMessage("Bundle.entry[" + i + "].request", "Bundle entry request method must be POST"));
+            }
+        }
+        messages.addAll(entryResult.getMessages());
+        return new ValidationResult(validationEngine.getFhirContext(), messages);
+    }
+
+    /**
+     * @return the profiles the bundle profile requires for the entry resources, or <code>null</code> if the bundle
+     * does not claim conformance to exactly one of the Minimal and Comprehensive bundle profiles.
+     */
+    private static Map<ResourceType, String> entryProfiles(Bundle bundle) {
+        var profiles = bundle.getMeta().getProfile();
+        if (profiles.size() == 1) {
+            var profile = profiles.get(0).getValue();
+            // The Comprehensive profiles are derived from the Minimal ones
+            if (Iti65Constants.ITI65_MINIMAL_METADATA_PROFILE.equals(profile)) {
+                return MINIMAL_ENTRY_PROFILES;
+            }
+            if (Iti65Constants.ITI65_COMPREHENSIVE_METADATA_PROFILE.equals(profile)) {
+                return COMPREHENSIVE_ENTRY_PROFILES;
+            }
+        }
+        return null;
+    }
+
+    private static SingleValidationMessage errorMessage(String location, String text) {
+        var message = new SingleValidationMessage();
+        message.setSeverity(ResultSeverityEnum.ERROR);
+        message.setLocationString(location);
+        message.setMessage(text);
+        return message;
+    }
+
+    private static Bundle warmUpBundle(String profile) {
+        var bundle = new Bundle().setType(Bundle.BundleType.TRANSACTION);
+        bundle.getMeta().addProfile(profile);
+        return bundle;
+    }
+
     public ValidationSupportChain loadStructureDefinitions(IValidationSupport baseValidationSupport, String kind) {
+        var fhirContext = baseValidationSupport.getFhirContext();
         var validationSupport = new PrePopulatedValidationSupport(fhirContext);
         var supportChain = new ValidationSupportChain(
                 validationSupport,
@@ -124,6 +210,7 @@ public class Iti65Validator extends FhirTransactionValidator.Support {
     private Optional<StructureDefinition> findProfile(
             ValidationSupportChain snaphotGenerationSupport,
             String name) {
+        var fhirContext = snaphotGenerationSupport.getFhirContext();
         var path = "META-INF/profiles/" + name + ".xml";
         var url = IHE_PROFILE_PREFIX + name;
         var is = Thread.currentThread().getContextClassLoader().getResourceAsStream(path);
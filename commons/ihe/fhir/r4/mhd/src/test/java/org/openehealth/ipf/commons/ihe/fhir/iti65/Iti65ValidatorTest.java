@@ -31,6 +31,7 @@ import org.hl7.fhir.r4.model.OperationOutcome;
 import org.hl7.fhir.r4.model.Practitioner;
 import org.hl7.fhir.r4.model.Reference;
 import org.junit.jupiter.api.Test;
+import org.openehealth.ipf.commons.ihe.fhir.Constants;
 
 import java.security.MessageDigest;
 import java.time.LocalDate;
@@ -39,7 +40,14 @@ import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.openehealth.ipf.commons.ihe.fhir.iti65.Iti65Constants.ITI65_MINIMAL_DOCUMENT_MANIFEST_PROFILE;
 import static org.openehealth.ipf.commons.ihe.fhir.iti65.Iti65Constants.ITI65_MINIMAL_DOCUMENT_REFERENCE_PROFILE;
 
@@ -48,6 +56,8 @@ import static org.openehealth.ipf.commons.ihe.fhir.iti65.Iti65Constants.ITI65_MI
  */
 public class Iti65ValidatorTest {
 
+    private static final int DOCUMENT_COUNT = 200;
+
     private static final String BINARY_FULL_URL = "urn:uuid:8da1cfcc-05db-4aca-86ad-82aa756a64bb";
     private static final String REFERENCE_FULL_URL = "urn:uuid:8da1cfcc-05db-4aca-86ad-82aa756a64bc";
     private static final String MANIFEST_FULL_URL = "urn:uuid:8da1cfcc-05db-4aca-86ad-82aa756a64bd";
@@ -66,6 +76,85 @@ public class Iti65ValidatorTest {
         }
     }
 
+    @Test
+    public void testValidationEngineOfComponent() throws Exception {
+        var bundle = provideAndRegister();
+        var configuration = new Iti65TransactionConfiguration();
+        var validator = (Iti65Validator) configuration.getFhirValidator();
+        validator.initialize();
+
+        // The validator, and so the engine, is created once per transaction configuration
+        assertSame(validator, configuration.getFhirValidator());
+
+        var engine = validator.getValidationEngine();
+        var result = engine.validate(bundle);
+        var expected = result.isSuccessful() ? 0 : result.getMessages().size();
+        assertEquals(expected, validationMessages(validator, bundle));
+        assertEquals(expected, validationMessages(new Iti65Validator(FhirContext.forR4()), bundle));
+    }
+
+    @Test
+    public void testValidationEngineUsesFhirContext() {
+        var fhirContext = FhirContext.forR4();
+        var validator = new Iti65Validator(fhirContext);
+        assertSame(fhirContext, validator.getValidationEngine().getFhirContext());
+        validator.getValidationEngine().close();
+    }
+
+    @Test
+    public void testParallelEntryValidation() throws Exception {
+        var bundle = provideAndRegister();
+        var manifest = (DocumentManifest) bundle.getEntry().get(0).getResource();
+        var reference = bundle.getEntry().get(1);
+        for (var i = 0; i < DOCUMENT_COUNT; ++i) {
+            var entry = reference.copy().setFullUrl("urn:uuid:" + UUID.randomUUID());
+            // Entries without declared profile must be validated against the profile of their slice,
+            // some of them lack the mandatory status
+            entry.getResource().getMeta().getProfile().clear();
+            if (i % 2 == 0) {
+                ((DocumentReference) entry.getResource()).setStatus(null);
+            }
+            manifest.addContent().setReference(entry.getFullUrl());
+            bundle.addEntry(entry);
+        }
+        var validator = new Iti65Validator(FhirContext.forR4());
+        validator.initialize();
+
+        var serialIssues = entryIssues(validator, bundle, Collections.emptyMap());
+        var parallelIssues = entryIssues(validator, bundle,
+                Collections.singletonMap(Constants.FHIR_VALIDATE_ENTRIES_IN_PARALLEL, true));
+        assertFalse(serialIssues.isEmpty());
+        assertEquals(serialIssues, parallelIssues);
+    }
+
+    private static int validationMessages(Iti65Validator validator, Bundle bundle) {
+        try {
+            validator.validateRequest(bundle, Collections.emptyMap());
+            return 0;
+        } catch (UnprocessableEntityException e) {
+            return ((OperationOutcome) e.getOperationOutcome()).getIssue().size();
+        }
+    }
+
+    /**
+     * @return issues located within entry resources, sorted. Locations are normalized, as the serial validation
+     * adds the resource type and ID after the entry path.
+     */
+    private static List<String> entryIssues(Iti65Validator validator, Bundle bundle, Map<String, Object> parameters) {
+        try {
+            validator.validateRequest(bundle, parameters);
+            return List.of();
+        } catch (UnprocessableEntityException e) {
+            return ((OperationOutcome) e.getOperationOutcome()).getIssue().stream()
+                    .filter(issue -> issue.hasLocation() && issue.getLocation().get(0).getValue().matches("Bundle\\.entry\\[\\d+]\\.resource.*"))
+                    .map(issue -> issue.getSeverity() + " " +
+                            issue.getLocation().get(0).getValue().replaceAll("/\\*[^*]*\\*/", "") + " " +
+                            issue.getDiagnostics())
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
     private Bundle provideAndRegister() throws Exception {
         var bundle = new Bundle().setType(Bundle.BundleType.TRANSACTION);
         bundle.getMeta().addProfile(Iti65Constants.ITI65_MINIMAL_METADATA_PROFILE);
@@ -17,9 +17,9 @@
 package org.openehealth.ipf.commons.ihe.fhir.iti65;
 
 import ca.uhn.fhir.context.FhirContext;
-import ca.uhn.fhir.context.support.IValidationSupport;
 import ca.uhn.fhir.rest.server.exceptions.UnprocessableEntityException;
-import org.hl7.fhir.common.hapi.validation.validator.FhirInstanceValidator;
+import ca.uhn.fhir.validation.ValidationOptions;
+import ca.uhn.fhir.validation.ValidationResult;
 import org.hl7.fhir.dstu3.model.Binary;
 import org.hl7.fhir.dstu3.model.Bundle;
 import org.hl7.fhir.dstu3.model.DocumentManifest;
@@ -30,18 +30,18 @@ import org.hl7.fhir.dstu3.model.Patient;
 import org.hl7.fhir.dstu3.model.Reference;
 import org.hl7.fhir.dstu3.model.Resource;
 import org.hl7.fhir.dstu3.model.ResourceType;
-import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r5.utils.validation.constants.BestPracticeWarningLevel;
 import org.openehealth.ipf.commons.ihe.fhir.CustomValidationSupport;
 import org.openehealth.ipf.commons.ihe.fhir.FhirTransactionValidator;
+import org.openehealth.ipf.commons.ihe.fhir.FhirValidationEngine;
 import org.openehealth.ipf.commons.ihe.fhir.support.FhirUtils;
 import org.openehealth.ipf.commons.ihe.xds.core.responses.ErrorCode;
 
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.Function;
 
 /**
@@ -52,25 +52,29 @@ import java.util.function.Function;
  */
 public class Iti65Validator extends FhirTransactionValidator.Support {
 
-    private final FhirContext fhirContext;
-    private final Map<Class<?>, FhirInstanceValidator> validators;
+    private static final Set<Class<?>> VALIDATED_RESOURCES = Set.of(
+            DocumentManifest.class, DocumentReference.class, ListResource.class);
+
+    private final FhirValidationEngine validationEngine;
 
 
     public Iti65Validator(FhirContext fhirContext) {
-        this.fhirContext = fhirContext;
-        IValidationSupport validationSupport = new CustomValidationSupport(fhirContext, "META-INF/profiles/MHD-");
-        validators = new HashMap<>();
-        validators.put(DocumentManifest.class, fhirInstanceValidator(validationSupport));
-        validators.put(DocumentReference.class, fhirInstanceValidator(validationSupport));
-        validators.put(ListResource.class, fhirInstanceValidator(validationSupport));
+        validationEngine = new FhirValidationEngine(fhirContext,
+                new CustomValidationSupport(fhirContext, "META-INF/profiles/MHD-"),
+                instanceValidator -> {
+                    instanceValidator.setNoTerminologyChecks(true);
+                    instanceValidator.setBestPracticeWarningLevel(BestPracticeWarningLevel.Hint);
+                    instanceValidator.setErrorForUnknownProfiles(true);
+                });
+    }
+
+    public FhirValidationEngine getValidationEngine() {
+        return validationEngine;
     }
 
-    private FhirInstanceValidator fhirInstanceValidator(IValidationSupport validationSupport) {
-        var fhirInstanceValidator = new FhirInstanceValidator(validationSupport);
-        fhirInstanceValidator.setNoTerminologyChecks(true);
-        fhirInstanceValidator.setBestPracticeWarningLevel(BestPracticeWarningLevel.Hint);
-        fhirInstanceValidator.setErrorForUnknownProfiles(true);
-        return fhirInstanceValidator;
+    @Override
+    public void initialize() {
+        validationEngine.warmUp(new DocumentManifest(), new DocumentReference(), new ListResource());
     }
 
     @Override
@@ -79,20 +83,25 @@ public class Iti65Validator extends FhirTransactionValidator.Support {
         validateTransactionBundle(transactionBundle);
         validateBundleConsistency(transactionBundle);
 
-        for (var entry : transactionBundle.getEntry()) {
-            Class<? extends IBaseResource> clazz = entry.getResource().getClass();
-            if (validators.containsKey(clazz)) {
-                var validator = fhirContext.newValidator();
-                validator.registerValidatorModule(validators.get(clazz));
-                var validationResult = validator.validateWithResult(entry.getResource());
-                if (!validationResult.isSuccessful()) {
-                    var operationOutcome = validationResult.toOperationOutcome();
-                    throw FhirUtils.exception(UnprocessableEntityException::new, operationOutcome, "Validation Failed");
+        if (isValidateEntriesInParallel(parameters)) {
+            checkValidationResult(validationEngine.validateEntries(transactionBundle,
+                    resource -> VALIDATED_RESOURCES.contains(resource.getClass()) ? new ValidationOptions() : null));
+        } else {
+            for (var entry : transactionBundle.getEntry()) {
+                if (VALIDATED_RESOURCES.contains(entry.getResource().getClass())) {
+                    checkValidationResult(validationEngine.validate(entry.getResource()));
                 }
             }
         }
     }
 
+    private static void checkValidationResult(ValidationResult validationResult) {
+        if (!validationResult.isSuccessful()) {
+            var operationOutcome = validationResult.toOperationOutcome();
+            throw FhirUtils.exception(UnprocessableEntityException::new, operationOutcome, "Validation Failed");
+        }
+    }
+
 
     /**
      * Validates bundle type, meta data and consistency of contained resources
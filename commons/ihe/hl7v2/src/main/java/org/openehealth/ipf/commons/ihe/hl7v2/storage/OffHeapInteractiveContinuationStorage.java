@@ -0,0 +1,456 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.ipf.commons.ihe.hl7v2.storage;
+
+import ca.uhn.hl7v2.HL7Exception;
+import ca.uhn.hl7v2.model.Message;
+import ca.uhn.hl7v2.parser.Parser;
+import org.openehealth.ipf.modules.hl7.HL7v2Exception;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An {@link InteractiveContinuationStorage} which keeps the fragments as encoded bytes outside
+ * of the Java heap &mdash; in direct memory, or, when a directory is configured,
+ * in temporary files (one per fragment chain), which are deleted when the chain is removed.
+ * <p>
+ * Direct memory is allocated in slabs of fixed-size blocks. Blocks of removed fragments are
+ * returned to the pool immediately and reused for new fragments, so that releasing memory does
+ * not depend on the garbage collection of direct buffers. The slabs themselves are kept until
+ * the storage is {@link #close() closed}, i.e. the reserved direct memory corresponds to the
+ * highest number of bytes stored at a time.
+ * <p>
+ * Fragment chains expire when they have not been accessed for the configured time to live.
+ * Expired chains are removed on each access and by a background thread, which checks the
+ * chains periodically at half the time to live. When the configured maximal number of chains
+ * or bytes is exceeded, the least recently accessed chains are evicted.
+ * <p>
+ * HAPI message instances are only created by {@link #put(String, String, Message)}
+ * and {@link #get(String, String)}; consumers supporting {@link EncodedInteractiveContinuationStorage}
+ * use the encoded form directly.
+ *
+ * @since 4.5
+ */
+public class OffHeapInteractiveContinuationStorage implements EncodedInteractiveContinuationStorage, Closeable {
+
+    private static final transient Logger LOG = LoggerFactory.getLogger(OffHeapInteractiveContinuationStorage.class);
+
+    private final Parser parser;
+
+    // access-ordered, the eldest entry is the least recently accessed chain
+    private final Map<String, Chain> chains = new LinkedHashMap<>(16, 0.75f, true);
+    private final BlockPool blockPool = new BlockPool();
+    private long byteCount;
+    private ScheduledExecutorService sweeper;
+
+    private long timeToLiveMillis = 600_000L;
+    private int maxChains = 1000;
+    private long maxBytes = 256L * 1024 * 1024;
+    private Path directory;
+
+
+    /**
+     * @param parser
+     *      parser used to encode and decode fragments passed as HAPI message instances.
+     */
+    public OffHeapInteractiveContinuationStorage(Parser parser) {
+        this.parser = requireNonNull(parser);
+    }
+
+
+    @Override
+    public void put(String continuationPointer, String chainId, Message fragment) {
+        try {
+            putEncoded(continuationPointer, chainId, parser.encode(fragment));
+        } catch (HL7Exception e) {
+            throw new HL7v2Exception(e);
+        }
+    }
+
+
+    @Override
+    public Message get(String continuationPointer, String chainId) {
+        var fragment = getEncoded(continuationPointer, chainId);
+        try {
+            return (fragment != null) ? parser.parse(fragment) : null;
+        } catch (HL7Exception e) {
+            throw new HL7v2Exception(e);
+        }
+    }
+
+
+    @Override
+    public synchronized void putEncoded(String continuationPointer, String chainId, String fragment) {
+        var now = System.currentTimeMillis();
+        evictExpired(now);
+        ensureSweeperStarted();
+        var chain = chains.get(chainId);
+        try {
+            if (chain == null) {
+                LOG.debug("Create chain for storage key {}", chainId);
+                chain = new Chain(directory);
+                chains.put(chainId, chain);
+            }
+            byteCount += chain.put(continuationPointer, fragment.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot store interactive continuation fragment", e);
+        }
+        chain.lastAccess = now;
+        evictOversized(chain);
+    }
+
+
+    @Override
+    public synchronized String getEncoded(String continuationPointer, String chainId) {
+        var now = System.currentTimeMillis();
+        evictExpired(now);
+        var chain = chains.get(chainId);
+        if (chain == null) {
+            return null;
+        }
+        chain.lastAccess = now;
+        try {
+            var bytes = chain.get(continuationPointer);
+            return (bytes != null) ? new String(bytes, StandardCharsets.UTF_8) : null;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read interactive continuation fragment", e);
+        }
+    }
+
+
+    @Override
+    public synchronized boolean delete(String chainId) {
+        var chain = chains.remove(chainId);
+        if (chain == null) {
+            return false;
+        }
+        release(chain);
+        return true;
+    }
+
+
+    /**
+     * Removes all fragment chains, releases the direct memory and stops the background expiry.
+     */
+    @Override
+    public synchronized void close() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+            sweeper = null;
+        }
+        chains.values().forEach(this::release);
+        chains.clear();
+        blockPool.clear();
+    }
+
+
+    /**
+     * Removes the fragment chains which have not been accessed for the configured time to live.
+     * Called periodically by a background thread.
+     */
+    public synchronized void evictExpired() {
+        evictExpired(System.currentTimeMillis());
+    }
+
+
+    /**
+     * @return number of stored fragment chains.
+     */
+    public synchronized int getChainCount() {
+        return chains.size();
+    }
+
+
+    /**
+     * @return number of bytes occupied by the stored fragments.
+     */
+    public synchronized long getByteCount() {
+        return byteCount;
+    }
+
+
+    /**
+     * @return number of bytes of direct memory reserved for fragments.
+     */
+    public synchronized long getReservedBytes() {
+        return blockPool.getReservedBytes();
+    }
+
+
+    /**
+     * Sets the time in milliseconds after which a fragment chain expires when it is not accessed.
+     * Defaults to 10 minutes. Must be set before the first fragment is stored.
+     */
+    public void setTimeToLiveMillis(long timeToLiveMillis) {
+        this.timeToLiveMillis = timeToLiveMillis;
+    }
+
+
+    /**
+     * Sets the maximal number of fragment chains. Defaults to 1000.
+     */
+    public void setMaxChains(int maxChains) {
+        this.maxChains = maxChains;
+    }
+
+
+    /**
+     * Sets the maximal number of bytes occupied by all fragments. Defaults to 256 MB.
+     * The chain being filled is never evicted, even when it alone exceeds this limit.
+     */
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+
+    /**
+     * Sets the directory for temporary files, in which the fragments shall be stored.
+     * Defaults to <code>null</code>, which means that the fragments are kept in direct byte buffers.
+     */
+    public void setDirectory(Path directory) {
+        this.directory = directory;
+    }
+
+
+    private void ensureSweeperStarted() {
+        if (sweeper == null) {
+            sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                var thread = new Thread(runnable, "ipf-hl7v2-continuation-expiry");
+                thread.setDaemon(true);
+                return thread;
+            });
+            var interval = Math.max(timeToLiveMillis / 2, 1);
+            sweeper.scheduleWithFixedDelay(this::evictExpired, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+
+    private void evictExpired(long now) {
+        var iterator = chains.entrySet().iterator();
+        while (iterator.hasNext()) {
+            var entry = iterator.next();
+            if (now - entry.getValue().lastAccess < timeToLiveMillis) {
+                break;
+            }
+            LOG.debug("Chain for storage key {} expired", entry.getKey());
+            iterator.remove();
+            release(entry.getValue());
+        }
+    }
+
+
+    private void evictOversized(Chain current) {
+        var iterator = chains.entrySet().iterator();
+        while (((chains.size() > maxChains) || (byteCount > maxBytes)) && iterator.hasNext()) {
+            var entry = iterator.next();
+            if (entry.getValue() != current) {
+                LOG.debug("Evict chain for storage key {}", entry.getKey());
+                iterator.remove();
+                release(entry.getValue());
+            }
+        }
+    }
+
+
+    private void release(Chain chain) {
+        byteCount -= chain.size;
+        try {
+            chain.close();
+        } catch (IOException e) {
+            LOG.warn("Cannot release interactive continuation chain", e);
+        }
+    }
+
+
+    /**
+     * Chain of interactive continuation fragments of a query's response.
+     * <p>
+     * Keys correspond to continuation pointers of the fragments;
+     * the key of the first fragment is <code>null</code>.
+     */
+    private class Chain implements Closeable {
+        private final FileChannel channel;
+        private final Map<String, Fragment> fragments = new HashMap<>();
+        private long size;
+        private long lastAccess;
+
+        Chain(Path directory) throws IOException {
+            channel = (directory != null)
+                    ? FileChannel.open(Files.createTempFile(directory, "continuation", ".hl7"),
+                            StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE)
+                    : null;
+        }
+
+        /**
+         * @return change of the size of this chain.
+         */
+        long put(String continuationPointer, byte[] bytes) throws IOException {
+            Fragment fragment;
+            if (channel != null) {
+                var position = channel.size();
+                var buffer = ByteBuffer.wrap(bytes);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer, position + buffer.position());
+                }
+                fragment = new Fragment(null, position, bytes.length);
+            } else {
+                fragment = new Fragment(blockPool.write(bytes), 0L, bytes.length);
+            }
+            var previous = fragments.put(continuationPointer, fragment);
+            if (previous != null && previous.blocks != null) {
+                blockPool.free(previous.blocks);
+            }
+            var delta = (long) bytes.length - ((previous != null) ? previous.length : 0);
+            size += delta;
+            return delta;
+        }
+
+        byte[] get(String continuationPointer) throws IOException {
+            var fragment = fragments.get(continuationPointer);
+            if (fragment == null) {
+                return null;
+            }
+            if (channel != null) {
+                var buffer = ByteBuffer.allocate(fragment.length);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, fragment.position + buffer.position()) < 0) {
+                        throw new IOException("Unexpected end of fragment file");
+                    }
+                }
+                return buffer.array();
+            }
+            return blockPool.read(fragment.blocks, fragment.length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (var fragment : fragments.values()) {
+                if (fragment.blocks != null) {
+                    blockPool.free(fragment.blocks);
+                }
+            }
+            fragments.clear();
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+
+
+    private static class Fragment {
+        private final int[] blocks;
+        private final long position;
+        private final int length;
+
+        Fragment(int[] blocks, long position, int length) {
+            this.blocks = blocks;
+            this.position = position;
+            this.length = length;
+        }
+    }
+
+
+    /**
+     * Direct memory divided into blocks of fixed size. Slabs of blocks are allocated when no free
+     * block is left; freed blocks are reused. Not thread-safe, guarded by the enclosing storage.
+     */
+    private static class BlockPool {
+        private static final int BLOCK_SIZE = 1024;
+        private static final int BLOCKS_PER_SLAB = 1024;
+
+        private final List<ByteBuffer> slabs = new ArrayList<>();
+        private int[] freeBlocks = new int[0];
+        private int freeCount;
+
+        /**
+         * @return numbers of the blocks containing the given bytes.
+         */
+        int[] write(byte[] bytes) {
+            var blocks = new int[(bytes.length + BLOCK_SIZE - 1) / BLOCK_SIZE];
+            for (var i = 0; i < blocks.length; ++i) {
+                if (freeCount == 0) {
+                    addSlab();
+                }
+                blocks[i] = freeBlocks[--freeCount];
+                var offset = i * BLOCK_SIZE;
+                block(blocks[i]).put(bytes, offset, Math.min(BLOCK_SIZE, bytes.length - offset));
+            }
+            return blocks;
+        }
+
+        byte[] read(int[] blocks, int length) {
+            var bytes = new byte[length];
+            for (var i = 0; i < blocks.length; ++i) {
+                var offset = i * BLOCK_SIZE;
+                block(blocks[i]).get(bytes, offset, Math.min(BLOCK_SIZE, length - offset));
+            }
+            return bytes;
+        }
+
+        void free(int[] blocks) {
+            for (var block : blocks) {
+                freeBlocks[freeCount++] = block;
+            }
+        }
+
+        long getReservedBytes() {
+            return (long) slabs.size() * BLOCKS_PER_SLAB * BLOCK_SIZE;
+        }
+
+        void clear() {
+            slabs.clear();
+            freeBlocks = new int[0];
+            freeCount = 0;
+        }
+
+        private ByteBuffer block(int block) {
+            var buffer = slabs.get(block / BLOCKS_PER_SLAB).duplicate();
+            buffer.position((block % BLOCKS_PER_SLAB) * BLOCK_SIZE);
+            return buffer;
+        }
+
+        private void addSlab() {
+            var first = slabs.size() * BLOCKS_PER_SLAB;
+            slabs.add(ByteBuffer.allocateDirect(BLOCKS_PER_SLAB * BLOCK_SIZE));
+            freeBlocks = Arrays.copyOf(freeBlocks, first + BLOCKS_PER_SLAB);
+            // lower block numbers are used first
+            for (var block = first + BLOCKS_PER_SLAB - 1; block >= first; --block) {
+                freeBlocks[freeCount++] = block;
+            }
+        }
+    }
+}
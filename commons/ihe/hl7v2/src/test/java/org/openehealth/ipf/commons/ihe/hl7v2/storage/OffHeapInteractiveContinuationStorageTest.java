@@ -0,0 +1,147 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.ipf.commons.ihe.hl7v2.storage;
+
+import ca.uhn.hl7v2.parser.PipeParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OffHeapInteractiveContinuationStorageTest {
+
+    private static final String FRAGMENT = "MSH|^~\\&|A|B|C|D|20230101120000||RSP^K22^RSP_K21|1|P|2.5\rMSA|AA|2\r";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testDirectBuffers() {
+        try (var storage = new OffHeapInteractiveContinuationStorage(new PipeParser())) {
+            assertStoresFragments(storage);
+        }
+    }
+
+    @Test
+    public void testTemporaryFiles() throws Exception {
+        try (var storage = new OffHeapInteractiveContinuationStorage(new PipeParser())) {
+            storage.setDirectory(directory);
+            assertStoresFragments(storage);
+            storage.putEncoded(null, "chain", FRAGMENT);
+            storage.delete("chain");
+            // temporary files are deleted when their chain is removed, or even earlier, depending on the OS
+            try (var files = Files.list(directory)) {
+                assertEquals(0, files.count());
+            }
+        }
+    }
+
+    private static void assertStoresFragments(OffHeapInteractiveContinuationStorage storage) {
+        storage.putEncoded(null, "chain", FRAGMENT);
+        storage.putEncoded("cp1", "chain", FRAGMENT + "QAK|\u00e4\r");
+        assertEquals(FRAGMENT, storage.getEncoded(null, "chain"));
+        assertEquals(FRAGMENT + "QAK|\u00e4\r", storage.getEncoded("cp1", "chain"));
+        assertNull(storage.getEncoded("cp2", "chain"));
+        assertNull(storage.getEncoded(null, "other"));
+        assertEquals(1, storage.getChainCount());
+
+        assertTrue(storage.delete("chain"));
+        assertFalse(storage.delete("chain"));
+        assertNull(storage.getEncoded(null, "chain"));
+        assertEquals(0, storage.getByteCount());
+    }
+
+    @Test
+    public void testSizeLimits() {
+        try (var storage = new OffHeapInteractiveContinuationStorage(new PipeParser())) {
+            storage.setMaxChains(2);
+            storage.putEncoded(null, "chain1", FRAGMENT);
+            storage.putEncoded(null, "chain2", FRAGMENT);
+            storage.getEncoded(null, "chain1");
+            storage.putEncoded(null, "chain3", FRAGMENT);
+            assertEquals(FRAGMENT, storage.getEncoded(null, "chain1"));
+            assertNull(storage.getEncoded(null, "chain2"));
+            assertEquals(2 * FRAGMENT.length(), storage.getByteCount());
+
+            storage.setMaxBytes(FRAGMENT.length() * 3L);
+            storage.putEncoded("cp1", "chain3", FRAGMENT);
+            storage.putEncoded("cp2", "chain3", FRAGMENT);
+            assertEquals(1, storage.getChainCount());
+            assertEquals(FRAGMENT, storage.getEncoded("cp2", "chain3"));
+        }
+    }
+
+    @Test
+    public void testExpiration() throws Exception {
+        try (var storage = new OffHeapInteractiveContinuationStorage(new PipeParser())) {
+            storage.setTimeToLiveMillis(100L);
+            storage.putEncoded(null, "chain", FRAGMENT);
+            Thread.sleep(200L);
+            assertNull(storage.getEncoded(null, "chain"));
+            assertEquals(0, storage.getChainCount());
+            assertEquals(0, storage.getByteCount());
+        }
+    }
+
+    @Test
+    public void testBackgroundExpiration() throws Exception {
+        try (var storage = new OffHeapInteractiveContinuationStorage(new PipeParser())) {
+            storage.setTimeToLiveMillis(100L);
+            storage.putEncoded(null, "chain", FRAGMENT);
+            // no further access to the storage
+            Thread.sleep(400L);
+            assertEquals(0, storage.getChainCount());
+            assertEquals(0, storage.getByteCount());
+        }
+    }
+
+    @Test
+    public void testDirectMemoryIsReused() {
+        try (var storage = new OffHeapInteractiveContinuationStorage(new PipeParser())) {
+            var large = FRAGMENT + "NTE|" + "x".repeat(5000) + "\r";
+            storage.putEncoded(null, "chain1", large);
+            storage.putEncoded("cp1", "chain1", FRAGMENT);
+            var reserved = storage.getReservedBytes();
+            assertTrue(reserved > 0);
+
+            for (var i = 0; i < 1000; i++) {
+                assertTrue(storage.delete("chain1"));
+                storage.putEncoded(null, "chain1", large);
+                storage.putEncoded("cp1", "chain1", FRAGMENT);
+                storage.putEncoded("cp1", "chain1", FRAGMENT);
+            }
+            assertEquals(reserved, storage.getReservedBytes());
+            assertEquals(large, storage.getEncoded(null, "chain1"));
+            assertEquals(FRAGMENT, storage.getEncoded("cp1", "chain1"));
+        }
+    }
+
+    @Test
+    public void testMessages() throws Exception {
+        try (var storage = new OffHeapInteractiveContinuationStorage(new PipeParser())) {
+            var parser = new PipeParser();
+            storage.put(null, "chain", parser.parse(FRAGMENT));
+            assertEquals(parser.encode(parser.parse(FRAGMENT)), storage.getEncoded(null, "chain"));
+            assertEquals(parser.encode(parser.parse(FRAGMENT)), parser.encode(storage.get(null, "chain")));
+        }
+    }
+}
@@ -119,6 +119,16 @@ public class JaxWsClientFactory<AuditDatasetType extends WsAuditDataset> {
         return clientPool.take();
     }
 
+    /**
+     * Returns a client stub for the web-service without waiting for a stub to be returned to the pool.
+     *
+     * @return the client stub, or <code>null</code> if all stubs of the pool are in use
+     * @since 4.5
+     */
+    public Object tryGetClient() {
+        return clientPool.tryTake();
+    }
+
     /**
      * @return the service info of this factory.
      */
@@ -219,7 +229,7 @@ public class JaxWsClientFactory<AuditDatasetType extends WsAuditDataset> {
     
     class PortFactory implements PoolObjectFactory<Object> {
         @Override
-        public Object create() {
+        public synchronized Object create() {
             var wsdlURL = getClass().getClassLoader().getResource(wsTransactionConfiguration.getWsdlLocation());
             var service = Service.create(wsdlURL, wsTransactionConfiguration.getServiceName());
             var port = service.getPort(wsTransactionConfiguration.getSei());
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.ipf.commons.ihe.ws.cxf.payload;
+
+import org.apache.cxf.io.CachedOutputStream;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Raw bytes of a message payload, which are only decoded into a String when requested.
+ * <p>
+ * In streaming mode, the bytes are kept in a CXF {@link CachedOutputStream}, which spills over
+ * into a temporary file when the configured threshold is exceeded, and binary parts of MIME
+ * multipart payloads (e.g. MTOM attachments) are replaced by a short placeholder when decoding.
+ * Otherwise, the bytes are kept in memory and decoded as they are.
+ *
+ * @since 4.5
+ */
+final class CachedPayload {
+
+    private final CachedOutputStream cache = new CachedOutputStream();
+    private final String charsetName;
+    private final boolean streaming;
+    private boolean released;
+
+    /**
+     * @param charsetName character set name, may be <code>null</code> if not known.
+     * @param streaming   whether the payload may be spilled over into a temporary file,
+     *                    and binary MIME parts shall be skipped when decoding.
+     */
+    CachedPayload(String charsetName, boolean streaming) {
+        this.charsetName = (charsetName != null) ? charsetName : Charset.defaultCharset().name();
+        this.streaming = streaming;
+        if (streaming) {
+            // keep the temporary file until this payload is released, even when the
+            // input streams handed out in the meantime have already been closed
+            cache.holdTempFile();
+        } else {
+            cache.setThreshold(Long.MAX_VALUE);
+        }
+    }
+
+    OutputStream getOutputStream() {
+        return cache;
+    }
+
+    InputStream getInputStream() throws IOException {
+        return cache.getInputStream();
+    }
+
+    /**
+     * Decodes the cached bytes.
+     *
+     * @param contentType MIME type of the payload, may be <code>null</code> if not known.
+     * @return decoded payload.
+     */
+    String decode(String contentType) {
+        if (released) {
+            throw new IllegalStateException("Cached payload has already been released");
+        }
+        try {
+            var boundary = streaming ? getBoundary(contentType) : null;
+            if (boundary == null) {
+                var sb = new StringBuilder();
+                cache.writeCacheTo(sb, charsetName);
+                return sb.toString();
+            }
+            var text = new ByteArrayOutputStream();
+            try (var in = new BufferedInputStream(cache.getInputStream())) {
+                copyTextParts(in, text, ("--" + boundary).getBytes(StandardCharsets.US_ASCII));
+            }
+            return text.toString(charsetName);
+        } catch (IOException e) {
+            throw new RuntimeException("Error when decoding payload", e);
+        }
+    }
+
+    /**
+     * Releases the cached bytes and the temporary file, if any, in streaming mode.
+     * In-memory payloads remain available.
+     */
+    void release() {
+        if (streaming && !released) {
+            released = true;
+            try {
+                cache.releaseTempFileHold();
+                cache.close();
+            } catch (IOException e) {
+                throw new RuntimeException("Error when releasing payload", e);
+            }
+        }
+    }
+
+
+    private static String getBoundary(String contentType) {
+        if ((contentType == null) || !contentType.regionMatches(true, 0, "multipart/", 0, 10)) {
+            return null;
+        }
+        for (var parameter : contentType.split(";")) {
+            var pos = parameter.indexOf('=');
+            if ((pos > 0) && "boundary".equalsIgnoreCase(parameter.substring(0, pos).trim())) {
+                var boundary = parameter.substring(pos + 1).trim();
+                if ((boundary.length() > 1) && boundary.startsWith("\"") && boundary.endsWith("\"")) {
+                    boundary = boundary.substring(1, boundary.length() - 1);
+                }
+                return boundary.isEmpty() ? null : boundary;
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * Copies a MIME multipart payload, replacing the bodies of binary parts by a placeholder.
+     */
+    private static void copyTextParts(InputStream in, OutputStream out, byte[] delimiter) throws IOException {
+        var failure = failureFunction(delimiter);
+        if (!copyUntil(in, out, delimiter, failure)) {
+            return;
+        }
+        while (true) {
+            out.write(delimiter);
+            // rest of the delimiter line, "--" for the close delimiter
+            var line = readLine(in);
+            out.write(line);
+            if ((line.length >= 2) && (line[0] == '-') && (line[1] == '-')) {
+                in.transferTo(out);
+                return;
+            }
+
+            var binary = false;
+            while ((line = readLine(in)).length > 0) {
+                out.write(line);
+                if ((line[0] == '\r') || (line[0] == '\n')) {
+                    break;
+                }
+                var header = new String(line, StandardCharsets.US_ASCII);
+                if (header.regionMatches(true, 0, "Content-Type:", 0, 13)) {
+                    binary = isBinary(header.substring(13).trim().toLowerCase());
+                }
+            }
+
+            if (binary) {
+                var counter = new CountingOutputStream();
+                var found = copyUntil(in, counter, delimiter, failure);
+                out.write(String.format("[%d bytes of binary content omitted]\r\n", counter.count)
+                        .getBytes(StandardCharsets.US_ASCII));
+                if (!found) {
+                    return;
+                }
+            } else if (!copyUntil(in, out, delimiter, failure)) {
+                return;
+            }
+        }
+    }
+
+
+    /**
+     * Copies bytes until the delimiter is found (Knuth-Morris-Pratt matching).
+     *
+     * @return <code>true</code> if the delimiter has been found and consumed,
+     * <code>false</code> if the end of the stream has been reached.
+     */
+    private static boolean copyUntil(InputStream in, OutputStream out, byte[] delimiter, int[] failure) throws IOException {
+        var matched = 0;
+        int b;
+        while ((b = in.read()) != -1) {
+            while ((matched > 0) && (b != delimiter[matched])) {
+                var next = failure[matched - 1];
+                out.write(delimiter, 0, matched - next);
+                matched = next;
+            }
+            if (b == delimiter[matched]) {
+                if (++matched == delimiter.length) {
+                    return true;
+                }
+            } else {
+                out.write(b);
+            }
+        }
+        out.write(delimiter, 0, matched);
+        return false;
+    }
+
+    private static int[] failureFunction(byte[] pattern) {
+        var failure = new int[pattern.length];
+        for (int i = 1, k = 0; i < pattern.length; ++i) {
+            while ((k > 0) && (pattern[i] != pattern[k])) {
+                k = failure[k - 1];
+            }
+            if (pattern[i] == pattern[k]) {
+                ++k;
+            }
+            failure[i] = k;
+        }
+        return failure;
+    }
+
+    private static byte[] readLine(InputStream in) throws IOException {
+        var line = new ByteArrayOutputStream(80);
+        int b;
+        while ((b = in.read()) != -1) {
+            line.write(b);
+            if (b == '\n') {
+                break;
+            }
+        }
+        return line.toByteArray();
+    }
+
+    private static boolean isBinary(String contentType) {
+        return !(contentType.startsWith("text/") || contentType.contains("xml") || contentType.contains("json"));
+    }
+
+
+    private static class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            ++count;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -26,6 +26,7 @@ import org.apache.cxf.wsdl.interceptors.DocLiteralInInterceptor;
 import org.apache.cxf.interceptor.Fault;
 import org.apache.cxf.interceptor.StaxInInterceptor;
 import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageUtils;
 import org.apache.cxf.phase.AbstractPhaseInterceptor;
 import org.apache.cxf.phase.Phase;
 import org.openehealth.ipf.commons.ihe.ws.utils.SoapUtils;
@@ -36,6 +37,9 @@ import static org.openehealth.ipf.commons.ihe.ws.cxf.payload.StringPayloadHolder
 /**
  * CXF interceptor that saves String payload of the incoming SOAP message
  * body into the CXF message.  Usable on both client and server sides.
+ * <p>
+ * When {@link StringPayloadHolder#STREAMING_CAPTURE_ENABLED} is set, the raw bytes
+ * are cached instead and decoded only when the String payload is requested.
  *
  * @author Dmytro Rud
  */
@@ -74,6 +78,11 @@ public class InPayloadExtractorInterceptor extends AbstractPhaseInterceptor<Mess
             return;
         }
 
+        if (MessageUtils.getContextualBoolean(message, StringPayloadHolder.STREAMING_CAPTURE_ENABLED, false)) {
+            capturePayload(message);
+            return;
+        }
+
         // extract current message contents from the stream,
         // substitute the used stream by an again-usable one.
         byte[] bytes;
@@ -101,17 +110,75 @@ public class InPayloadExtractorInterceptor extends AbstractPhaseInterceptor<Mess
         }
 
         // save the String payload into the message's content map
+        getPayloadHolder(message).put(payloadType, payload);
+
+        // optionally take care of dropping HTTP payload and
+        // input stream after the SOAP Body has been successfully parsed
+        if (payloadType == PayloadType.HTTP) {
+            message.getInterceptorChain().add(new DropHttpPayloadInterceptor(null));
+        }
+    }
+
+
+    /**
+     * Streaming mode: caches the raw message bytes, possibly in a temporary file,
+     * and defers decoding until the String payload is actually requested.
+     */
+    private void capturePayload(Message message) {
+        var cachedPayload = new CachedPayload((String) message.get(Message.ENCODING), true);
+        try {
+            IOUtils.copyAndCloseInput(message.getContent(InputStream.class), cachedPayload.getOutputStream());
+            cachedPayload.getOutputStream().flush();
+            message.setContent(InputStream.class, cachedPayload.getInputStream());
+        } catch (IOException e) {
+            cachedPayload.release();
+            throw new RuntimeException("Error when extracting payload", e);
+        }
+
+        // after the attachment interceptor, the stream contains only the root part of a multipart message
+        var contentType = (payloadType == PayloadType.HTTP) ? (String) message.get(Message.CONTENT_TYPE) : null;
+        getPayloadHolder(message).putLazily(payloadType, () -> {
+            var payload = cachedPayload.decode(contentType);
+            return (payloadType == PayloadType.SOAP_BODY) ? SoapUtils.extractSoapBody(payload) : payload;
+        });
+        message.put(getId(), cachedPayload);
+
+        if (payloadType == PayloadType.HTTP) {
+            message.getInterceptorChain().add(new DropHttpPayloadInterceptor(getId()));
+        } else {
+            message.getInterceptorChain().add(new ReleaseCachedPayloadInterceptor(getId()));
+        }
+    }
+
+
+    @Override
+    public void handleFault(Message message) {
+        // fault handlers like rejection handling strategies may need the payload
+        // after the chain has been unwound, therefore decode it before releasing the cache
+        if (message.get(getId()) != null) {
+            var payloadHolder = message.getContent(StringPayloadHolder.class);
+            if (payloadHolder != null) {
+                payloadHolder.get(payloadType);
+            }
+            releaseCachedPayload(message, getId());
+        }
+    }
+
+
+    private static StringPayloadHolder getPayloadHolder(Message message) {
         var payloadHolder = message.getContent(StringPayloadHolder.class);
         if (payloadHolder == null) {
             payloadHolder = new StringPayloadHolder();
             message.setContent(StringPayloadHolder.class, payloadHolder);
         }
-        payloadHolder.put(payloadType, payload);
+        return payloadHolder;
+    }
 
-        // optionally take care of dropping HTTP payload and
-        // input stream after the SOAP Body has been successfully parsed
-        if (payloadType == PayloadType.HTTP) {
-            message.getInterceptorChain().add(new DropHttpPayloadInterceptor());
+
+    private static void releaseCachedPayload(Message message, String key) {
+        var cachedPayload = (CachedPayload) message.remove(key);
+        if (cachedPayload != null) {
+            cachedPayload.release();
         }
     }
 
@@ -123,10 +190,12 @@ public class InPayloadExtractorInterceptor extends AbstractPhaseInterceptor<Mess
      * {@link org.apache.cxf.wsdl.interceptors.DocLiteralInInterceptor}.
      */
     private static class DropHttpPayloadInterceptor extends AbstractPhaseInterceptor<Message> {
+        private final String cachedPayloadKey;
 
-        private DropHttpPayloadInterceptor() {
+        private DropHttpPayloadInterceptor(String cachedPayloadKey) {
             super(Phase.UNMARSHAL);
             addAfter(DocLiteralInInterceptor.class.getName());
+            this.cachedPayloadKey = cachedPayloadKey;
         }
 
         @Override
@@ -136,6 +205,28 @@ public class InPayloadExtractorInterceptor extends AbstractPhaseInterceptor<Mess
                 payloadHolder.remove(PayloadType.HTTP);
             }
             message.removeContent(InputStream.class);
+            if (cachedPayloadKey != null) {
+                releaseCachedPayload(message, cachedPayloadKey);
+            }
+        }
+    }
+
+
+    /**
+     * Interceptor which releases the cached SOAP Body bytes (and the temporary
+     * file, if any) after the service has been invoked.
+     */
+    private static class ReleaseCachedPayloadInterceptor extends AbstractPhaseInterceptor<Message> {
+        private final String cachedPayloadKey;
+
+        private ReleaseCachedPayloadInterceptor(String cachedPayloadKey) {
+            super(Phase.POST_INVOKE);
+            this.cachedPayloadKey = cachedPayloadKey;
+        }
+
+        @Override
+        public void handleMessage(Message message) throws Fault {
+            releaseCachedPayload(message, cachedPayloadKey);
         }
     }
 }
@@ -26,6 +26,8 @@ import static org.openehealth.ipf.commons.ihe.ws.cxf.payload.StringPayloadHolder
  * CXF interceptor that reads outgoing payload collected by the output 
  * stream proxy installed in {@link OutStreamSubstituteInterceptor} 
  * and stores it in the message as String content type.
+ * <p>
+ * The payload is decoded lazily, see {@link StringPayloadHolder#putLazily}.
  * 
  * @author Dmytro Rud
  */
@@ -57,10 +59,10 @@ public class OutPayloadExtractorInterceptor extends AbstractPhaseInterceptor<Mes
             wrapper.deactivate();
         }
 
-        var soapEnvelope = wrapper.getCollectedPayload();
-        var payload = SoapUtils.extractSoapBody(soapEnvelope);
+        // decode the collected bytes only when the payload is actually requested, i.e. by the
+        // audit and payload logging interceptors, which run before the output stream is closed
         var payloadHolder = new StringPayloadHolder();
-        payloadHolder.put(SOAP_BODY, payload);
+        payloadHolder.putLazily(SOAP_BODY, () -> SoapUtils.extractSoapBody(wrapper.getCollectedPayload()));
         message.setContent(StringPayloadHolder.class, payloadHolder);
     }
 }
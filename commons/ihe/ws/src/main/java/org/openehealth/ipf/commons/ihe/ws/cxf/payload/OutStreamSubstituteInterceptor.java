@@ -21,6 +21,7 @@ import com.ctc.wstx.sw.BufferingXmlWriter;
 import org.apache.cxf.interceptor.StaxOutInterceptor;
 import org.apache.cxf.io.CacheAndWriteOutputStream;
 import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageUtils;
 import org.apache.cxf.phase.AbstractPhaseInterceptor;
 import org.apache.cxf.phase.Phase;
 
@@ -77,7 +78,8 @@ public class OutStreamSubstituteInterceptor extends AbstractPhaseInterceptor<Mes
             x = MOUT_STREAM_FIELD.get(writer);
             checkClass(x, OutputStream.class);
             var os = (OutputStream) x;
-            var wrapper = new WrappedOutputStream(os, (String) message.get(Message.ENCODING));
+            var wrapper = new WrappedOutputStream(os, (String) message.get(Message.ENCODING),
+                    MessageUtils.getContextualBoolean(message, StringPayloadHolder.STREAMING_CAPTURE_ENABLED, false));
             message.setContent(OutputStream.class, wrapper);
             MOUT_STREAM_FIELD.set(writer, wrapper);
         } catch (IllegalAccessException e) {
@@ -16,6 +16,7 @@
 package org.openehealth.ipf.commons.ihe.ws.cxf.payload;
 
 import java.util.EnumMap;
+import java.util.function.Supplier;
 
 /**
  * Holder for various types of String message payloads.
@@ -23,6 +24,18 @@ import java.util.EnumMap;
  */
 public class StringPayloadHolder {
 
+    /**
+     * When the CXF message contains <code>Boolean.TRUE</code> in the contextual property
+     * with this name, payload is captured in streaming mode: raw bytes are cached in a CXF
+     * {@link org.apache.cxf.io.CachedOutputStream}, which spills over into a temporary file
+     * for large messages, and are only decoded when a String payload is actually requested.
+     * Bodies of binary MIME parts, e.g. MTOM attachments, are omitted from the decoded HTTP payload.
+     *
+     * @since 4.5
+     */
+    public static final String STREAMING_CAPTURE_ENABLED =
+            StringPayloadHolder.class.getName() + ".streaming.capture.enabled";
+
     /**
      * Types of supported payload:
      * <ul>
@@ -36,18 +49,34 @@ public class StringPayloadHolder {
 
 
     // not synchronized, because parallel access is not expected
-    private final EnumMap<PayloadType, String> map =
+    private final EnumMap<PayloadType, Object> map =
             new EnumMap<>(PayloadType.class);
 
 
     public String get(PayloadType payloadType) {
-        return map.get(payloadType);
+        var payload = map.get(payloadType);
+        if (payload instanceof Supplier) {
+            payload = ((Supplier<?>) payload).get();
+            map.put(payloadType, payload);
+        }
+        return (String) payload;
     }
 
     public void put(PayloadType payloadType, String payload) {
         map.put(payloadType, payload);
     }
 
+    /**
+     * Stores a payload which will be created when it is requested for the first time.
+     *
+     * @param payloadType     payload type.
+     * @param payloadSupplier supplier of the payload, called at most once.
+     * @since 4.5
+     */
+    public void putLazily(PayloadType payloadType, Supplier<String> payloadSupplier) {
+        map.put(payloadType, payloadSupplier);
+    }
+
     public void remove(PayloadType payloadType) {
         map.remove(payloadType);
     }
@@ -18,19 +18,22 @@ package org.openehealth.ipf.commons.ihe.ws.cxf.payload;
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.nio.charset.Charset;
 
 /**
  * An implementation of output stream which serves as a proxy for another output
- * stream instance and collects the data pieces to be written in a string buffer
+ * stream instance and collects the data pieces to be written
  * (these pieces are XML and/or MIME artifacts).
+ * <p>
+ * The collected bytes are only decoded when the payload is requested.
+ * In streaming mode, they are cached in a CXF {@link org.apache.cxf.io.CachedOutputStream}
+ * which spills over into a temporary file for large messages, and the bodies of binary
+ * MIME parts are omitted from the payload.
  *
  * @author Dmytro Rud
  */
 public class WrappedOutputStream extends FilterOutputStream {
 
-    private final String charsetName;
-    private final StringBuilder payloadCollector;
+    private final CachedPayload payloadCollector;
     private boolean isActive;
 
     /**
@@ -42,10 +45,26 @@ public class WrappedOutputStream extends FilterOutputStream {
      *      character set name, may be <code>null</code> if not known.
      */
     public WrappedOutputStream(OutputStream os, String charsetName) {
+        this(os, charsetName, false);
+    }
+
+
+    /**
+     * Constructor.
+     *
+     * @param os
+     *      the output data stream to be wrapped
+     * @param charsetName
+     *      character set name, may be <code>null</code> if not known.
+     * @param streamingCapture
+     *      whether the payload shall be collected in streaming mode,
+     *      see {@link StringPayloadHolder#STREAMING_CAPTURE_ENABLED}.
+     * @since 4.5
+     */
+    public WrappedOutputStream(OutputStream os, String charsetName, boolean streamingCapture) {
         super(os);
-        this.charsetName = (charsetName != null) ? charsetName : Charset.defaultCharset().name();
         isActive = true;
-        payloadCollector = new StringBuilder();
+        payloadCollector = new CachedPayload(charsetName, streamingCapture);
     }
 
 
@@ -54,7 +73,20 @@ public class WrappedOutputStream extends FilterOutputStream {
      * @return SOAP payload as XML String.
      */
     public String getCollectedPayload() {
-        return payloadCollector.toString();
+        return getCollectedPayload(null);
+    }
+
+
+    /**
+     * Returns the collected message payload.
+     * @param contentType
+     *      MIME type of the message, may be <code>null</code> if not known.
+     *      In streaming mode, bodies of binary parts of multipart messages are omitted.
+     * @return SOAP payload as XML String.
+     * @since 4.5
+     */
+    public String getCollectedPayload(String contentType) {
+        return payloadCollector.decode(contentType);
     }
 
 
@@ -70,9 +102,19 @@ public class WrappedOutputStream extends FilterOutputStream {
 
     @Override
     public void write(byte[] b, int off, int len) throws IOException {
-        super.write(b, off, len);
+        out.write(b, off, len);
         if (isActive) {
-            payloadCollector.append(new String(b, off, len, charsetName));
+            payloadCollector.getOutputStream().write(b, off, len);
+        }
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            payloadCollector.release();
         }
     }
 }
@@ -142,7 +142,7 @@ public class WsPayloadLoggerBase
     private static String getOutboundBodyPayload(Message message) {
         var wrapper = OutStreamSubstituteInterceptor.getStreamWrapper(message);
         wrapper.deactivate();
-        return wrapper.getCollectedPayload();
+        return wrapper.getCollectedPayload((String) message.get(Message.CONTENT_TYPE));
     }
 
     private static String getInteractionId(Message message) {
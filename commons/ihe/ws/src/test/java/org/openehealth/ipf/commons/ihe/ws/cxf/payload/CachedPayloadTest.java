@@ -0,0 +1,82 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.ipf.commons.ihe.ws.cxf.payload;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CachedPayloadTest {
+
+    private static final String CONTENT_TYPE =
+            "multipart/related; type=\"application/xop+xml\"; boundary=\"uuid:abc\"; start=\"<root>\"";
+
+    private static final String SOAP_PART =
+            "--uuid:abc\r\n" +
+            "Content-Type: application/xop+xml; charset=UTF-8; type=\"application/soap+xml\"\r\n" +
+            "\r\n" +
+            "<Envelope>--uuid:ab \u00e4</Envelope>\r\n";
+
+    private static final String MULTIPART =
+            SOAP_PART +
+            "--uuid:abc\r\n" +
+            "Content-Type: application/octet-stream\r\n" +
+            "Content-ID: <1>\r\n" +
+            "\r\n" +
+            "\u0001\u0002--uuid:a--uuid:ab\u0003\r\n" +
+            "--uuid:abc--\r\n";
+
+    private static CachedPayload cache(String payload, boolean streaming) throws Exception {
+        var cachedPayload = new CachedPayload("UTF-8", streaming);
+        cachedPayload.getOutputStream().write(payload.getBytes(StandardCharsets.UTF_8));
+        cachedPayload.getOutputStream().flush();
+        return cachedPayload;
+    }
+
+    @Test
+    public void testBinaryPartsSkipped() throws Exception {
+        var cachedPayload = cache(MULTIPART, true);
+        assertEquals(
+                SOAP_PART +
+                "--uuid:abc\r\n" +
+                "Content-Type: application/octet-stream\r\n" +
+                "Content-ID: <1>\r\n" +
+                "\r\n" +
+                "[22 bytes of binary content omitted]\r\n" +
+                "--uuid:abc--\r\n",
+                cachedPayload.decode(CONTENT_TYPE));
+        cachedPayload.release();
+    }
+
+    @Test
+    public void testNonStreamingKeepsEverything() throws Exception {
+        var cachedPayload = cache(MULTIPART, false);
+        assertEquals(MULTIPART, cachedPayload.decode(CONTENT_TYPE));
+        cachedPayload.release();
+        assertEquals(MULTIPART, cachedPayload.decode(CONTENT_TYPE));
+    }
+
+    @Test
+    public void testSinglePart() throws Exception {
+        var cachedPayload = cache("<Envelope>\u00e4</Envelope>", true);
+        assertEquals("<Envelope>\u00e4</Envelope>", cachedPayload.decode("application/soap+xml; charset=UTF-8"));
+        cachedPayload.release();
+        assertThrows(IllegalStateException.class, () -> cachedPayload.decode(null));
+    }
+}
@@ -22,17 +22,26 @@ import org.openehealth.ipf.commons.ihe.xds.core.stub.ebrs30.rim.*;
 
 import javax.xml.bind.JAXBElement;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
  * Base class for requests and responses that contain various ebXML 3.0
  * objects.
+ * <p>
+ * The accessors use an index of the contents by object type and classification node,
+ * which is built on first access. The index is rebuilt when the contents list is replaced
+ * or its size changes; when objects are replaced in place, {@link #invalidateIndex()} must
+ * be called.
  * @author Jens Riemschneider
  */
 public abstract class EbXMLObjectContainer30 implements EbXMLObjectContainer {
     private final EbXMLObjectLibrary objectLibrary;
+    private ContentIndex index;
 
     @Override
     public EbXMLObjectLibrary getObjectLibrary() {
@@ -65,6 +74,7 @@ public abstract class EbXMLObjectContainer30 implements EbXMLObjectContainer {
     public void addAssociation(EbXMLAssociation association) {
         if (association != null) {
             var internal = ((EbXMLAssociation30)association).getInternal();
+            invalidateIndex();
             getContents().add(EbXMLFactory30.RIM_FACTORY.createAssociation(internal));
         }        
     }
@@ -73,6 +83,7 @@ public abstract class EbXMLObjectContainer30 implements EbXMLObjectContainer {
     public void addExtrinsicObject(EbXMLExtrinsicObject extrinsic) {
         if (extrinsic != null) {
             var internal = ((EbXMLExtrinsicObject30)extrinsic).getInternal();
+            invalidateIndex();
             getContents().add(EbXMLFactory30.RIM_FACTORY.createExtrinsicObject(internal));
         }        
     }
@@ -81,18 +92,17 @@ public abstract class EbXMLObjectContainer30 implements EbXMLObjectContainer {
     public void addRegistryPackage(EbXMLRegistryPackage regPackage) {
         if (regPackage != null) {
             var internal = ((EbXMLRegistryPackage30)regPackage).getInternal();
+            invalidateIndex();
             getContents().add(EbXMLFactory30.RIM_FACTORY.createRegistryPackage(internal));
         }        
     }
 
     @Override
     public List<EbXMLAssociation> getAssociations() {
-        var results = new ArrayList<EbXMLAssociation>();
-        for (var identifiable : getContents()) {
-            var association = cast(identifiable, AssociationType1.class);
-            if (association != null) {
-                results.add(new EbXMLAssociation30(association, objectLibrary));
-            }
+        var associations = getIndex().getByType(AssociationType1.class);
+        var results = new ArrayList<EbXMLAssociation>(associations.size());
+        for (var association : associations) {
+            results.add(new EbXMLAssociation30(association, objectLibrary));
         }
         
         return results;
@@ -100,12 +110,10 @@ public abstract class EbXMLObjectContainer30 implements EbXMLObjectContainer {
 
     @Override
     public List<EbXMLClassification> getClassifications() {
-        var results = new ArrayList<EbXMLClassification>();
-        for (var identifiable : getContents()) {
-            var classification = cast(identifiable, ClassificationType.class);
-            if (classification != null) {
-                results.add(new EbXMLClassification30(classification));
-            }
+        var classifications = getIndex().getByType(ClassificationType.class);
+        var results = new ArrayList<EbXMLClassification>(classifications.size());
+        for (var classification : classifications) {
+            results.add(new EbXMLClassification30(classification));
         }
         
         return results;
@@ -115,15 +123,18 @@ public abstract class EbXMLObjectContainer30 implements EbXMLObjectContainer {
     public List<EbXMLExtrinsicObject> getExtrinsicObjects(String... objectTypes) {
         noNullElements(objectTypes, "objectTypes cannot be null or contain null elements");
 
+        var index = getIndex();
         var results = new ArrayList<EbXMLExtrinsicObject>();
-        for (var identifiable : getContents()) {
-            var extrinsic = cast(identifiable, ExtrinsicObjectType.class);
-            if (extrinsic != null) {
-                for (var objectType : objectTypes) {
-                    if (objectType.equals(extrinsic.getObjectType())) {
-                        results.add(new EbXMLExtrinsicObject30(extrinsic, objectLibrary));
-                        break;
-                    }
+        if (objectTypes.length == 1) {
+            for (var extrinsic : index.getExtrinsicObjects(objectTypes[0])) {
+                results.add(new EbXMLExtrinsicObject30(extrinsic, objectLibrary));
+            }
+        } else if (objectTypes.length > 1) {
+            // keep the document order across all requested object types
+            var acceptedTypes = new HashSet<>(List.of(objectTypes));
+            for (var extrinsic : index.getByType(ExtrinsicObjectType.class)) {
+                if ((extrinsic.getObjectType() != null) && acceptedTypes.contains(extrinsic.getObjectType())) {
+                    results.add(new EbXMLExtrinsicObject30(extrinsic, objectLibrary));
                 }
             }
         }
@@ -133,12 +144,10 @@ public abstract class EbXMLObjectContainer30 implements EbXMLObjectContainer {
 
     @Override
     public List<EbXMLExtrinsicObject> getExtrinsicObjects() {
-        var results = new ArrayList<EbXMLExtrinsicObject>();
-        for (var identifiable : getContents()) {
-            var extrinsic = cast(identifiable, ExtrinsicObjectType.class);
-            if (extrinsic != null) {
-                results.add(new EbXMLExtrinsicObject30(extrinsic, objectLibrary));
-            }
+        var extrinsics = getIndex().getByType(ExtrinsicObjectType.class);
+        var results = new ArrayList<EbXMLExtrinsicObject>(extrinsics.size());
+        for (var extrinsic : extrinsics) {
+            results.add(new EbXMLExtrinsicObject30(extrinsic, objectLibrary));
         }
         
         return results;
@@ -148,11 +157,11 @@ public abstract class EbXMLObjectContainer30 implements EbXMLObjectContainer {
     public List<EbXMLRegistryPackage> getRegistryPackages(String classificationNode) {
         notNull(classificationNode, "classificationNode cannot be null");
 
-        var acceptedIds = getAcceptedIds(classificationNode);
+        var index = getIndex();
+        var acceptedIds = index.getClassifiedObjects(classificationNode);
         
         var results = new ArrayList<EbXMLRegistryPackage>();
-        for (var identifiable : getContents()) {
-            var regPackage = cast(identifiable, RegistryPackageType.class);
+        for (var regPackage : index.getByType(RegistryPackageType.class)) {
             if (matchesFilter(regPackage, acceptedIds, classificationNode)) {
                 results.add(new EbXMLRegistryPackage30(regPackage, objectLibrary));
             }
@@ -163,12 +172,10 @@ public abstract class EbXMLObjectContainer30 implements EbXMLObjectContainer {
 
     @Override
     public List<EbXMLRegistryPackage> getRegistryPackages() {
-        var results = new ArrayList<EbXMLRegistryPackage>();
-        for (var identifiable : getContents()) {
-            var regPackage = cast(identifiable, RegistryPackageType.class);
-            if (regPackage != null) {
-                results.add(new EbXMLRegistryPackage30(regPackage, objectLibrary));
-            }
+        var regPackages = getIndex().getByType(RegistryPackageType.class);
+        var results = new ArrayList<EbXMLRegistryPackage>(regPackages.size());
+        for (var regPackage : regPackages) {
+            results.add(new EbXMLRegistryPackage30(regPackage, objectLibrary));
         }
         
         return results;
@@ -178,6 +185,7 @@ public abstract class EbXMLObjectContainer30 implements EbXMLObjectContainer {
     public void addClassification(EbXMLClassification classification) {
         if (classification != null) {
             var internal = ((EbXMLClassification30)classification).getInternal();
+            invalidateIndex();
             getContents().add(EbXMLFactory30.RIM_FACTORY.createClassification(internal));
         }
     }
@@ -202,15 +210,30 @@ public abstract class EbXMLObjectContainer30 implements EbXMLObjectContainer {
         return false;
     }
 
-    private Set<String> getAcceptedIds(String classificationNode) {
-        var acceptedIds = new HashSet<String>();
-        for (var identifiable : getContents()) {
-            var classification = cast(identifiable, ClassificationType.class);
-            if (classification != null && classificationNode.equals(classification.getClassificationNode())) {
-                acceptedIds.add(classification.getClassifiedObject());
-            }
+    /**
+     * Discards the index of the contents, so that it is rebuilt on next access.
+     * Must be called when objects in the contents list are replaced in place.
+     */
+    protected void invalidateIndex() {
+        index = null;
+    }
+
+    /**
+     * @param type
+     *          the type of the objects.
+     * @return all objects in the contents which are of the given type, in document order.
+     * @see #cast(JAXBElement, Class)
+     */
+    protected <T extends IdentifiableType> List<T> getContents(Class<T> type) {
+        return getIndex().getByType(type);
+    }
+
+    private ContentIndex getIndex() {
+        var contents = getContents();
+        if ((index == null) || !index.isValidFor(contents)) {
+            index = new ContentIndex(contents);
         }
-        return acceptedIds;
+        return index;
     }
 
     /**
@@ -234,4 +257,67 @@ public abstract class EbXMLObjectContainer30 implements EbXMLObjectContainer {
      * @return retrieves the list of contained objects.
      */
     abstract List<JAXBElement<? extends IdentifiableType>> getContents();
-}
\ No newline at end of file
+
+
+    /**
+     * Index of the contents by object type, by object type of extrinsic objects
+     * and by classification node.
+     */
+    private static final class ContentIndex {
+        private final List<JAXBElement<? extends IdentifiableType>> contents;
+        private final int size;
+        private final Map<Class<?>, List<IdentifiableType>> byType = new HashMap<>();
+        private final Map<String, List<ExtrinsicObjectType>> extrinsicsByObjectType = new HashMap<>();
+        private final Map<String, Set<String>> classifiedObjectsByNode = new HashMap<>();
+
+        private ContentIndex(List<JAXBElement<? extends IdentifiableType>> contents) {
+            this.contents = contents;
+            this.size = contents.size();
+            for (var identifiable : contents) {
+                // same semantics as cast(): match both the declared and the actual type
+                var declaredType = identifiable.getDeclaredType();
+                var value = identifiable.getValue();
+                add(declaredType, value);
+                if (value.getClass() != declaredType) {
+                    add(value.getClass(), value);
+                }
+
+                if (value instanceof ExtrinsicObjectType) {
+                    var extrinsic = (ExtrinsicObjectType) value;
+                    if ((extrinsic.getObjectType() != null) &&
+                            ((declaredType == ExtrinsicObjectType.class) || (value.getClass() == ExtrinsicObjectType.class))) {
+                        extrinsicsByObjectType.computeIfAbsent(extrinsic.getObjectType(), k -> new ArrayList<>()).add(extrinsic);
+                    }
+                } else if (value instanceof ClassificationType) {
+                    var classification = (ClassificationType) value;
+                    if ((classification.getClassificationNode() != null) &&
+                            ((declaredType == ClassificationType.class) || (value.getClass() == ClassificationType.class))) {
+                        classifiedObjectsByNode.computeIfAbsent(classification.getClassificationNode(), k -> new HashSet<>())
+                                .add(classification.getClassifiedObject());
+                    }
+                }
+            }
+        }
+
+        private void add(Class<?> type, IdentifiableType value) {
+            byType.computeIfAbsent(type, k -> new ArrayList<>()).add(value);
+        }
+
+        private boolean isValidFor(List<JAXBElement<? extends IdentifiableType>> contents) {
+            return (this.contents == contents) && (size == contents.size());
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T extends IdentifiableType> List<T> getByType(Class<T> type) {
+            return (List<T>) byType.getOrDefault(type, Collections.emptyList());
+        }
+
+        private List<ExtrinsicObjectType> getExtrinsicObjects(String objectType) {
+            return extrinsicsByObjectType.getOrDefault(objectType, Collections.emptyList());
+        }
+
+        private Set<String> getClassifiedObjects(String classificationNode) {
+            return classifiedObjectsByNode.getOrDefault(classificationNode, Collections.emptySet());
+        }
+    }
+}
\ No newline at end of file
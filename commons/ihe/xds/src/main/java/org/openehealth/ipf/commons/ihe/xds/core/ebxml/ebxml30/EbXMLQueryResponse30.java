@@ -117,14 +117,11 @@ public class EbXMLQueryResponse30 extends EbXMLObjectContainer30 implements EbXM
     @Override
     public List<ObjectReference> getReferences() {
         var results = new ArrayList<ObjectReference>();
-        for (var identifiable : getContents()) {
-            var objRefEbXML = cast(identifiable, ObjectRefType.class);
-            if (objRefEbXML != null) {
-                var objRef = new ObjectReference();
-                objRef.setId(objRefEbXML.getId());
-                objRef.setHome(objRefEbXML.getHome());
-                results.add(objRef);
-            }
+        for (var objRefEbXML : getContents(ObjectRefType.class)) {
+            var objRef = new ObjectReference();
+            objRef.setId(objRefEbXML.getId());
+            objRef.setHome(objRefEbXML.getHome());
+            results.add(objRef);
         }
         
         return results;
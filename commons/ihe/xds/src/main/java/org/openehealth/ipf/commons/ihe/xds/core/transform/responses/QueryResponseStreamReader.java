@@ -0,0 +1,216 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.ipf.commons.ihe.xds.core.transform.responses;
+
+import org.openehealth.ipf.commons.ihe.xds.core.ebxml.EbXMLObjectLibrary;
+import org.openehealth.ipf.commons.ihe.xds.core.ebxml.ebxml30.EbXMLAssociation30;
+import org.openehealth.ipf.commons.ihe.xds.core.ebxml.ebxml30.EbXMLExtrinsicObject30;
+import org.openehealth.ipf.commons.ihe.xds.core.ebxml.ebxml30.EbXMLFactory30;
+import org.openehealth.ipf.commons.ihe.xds.core.ebxml.ebxml30.EbXMLRegistryPackage30;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.Association;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.DocumentEntry;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.DocumentEntryType;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.Folder;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.ObjectReference;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.SubmissionSet;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.Vocabulary;
+import org.openehealth.ipf.commons.ihe.xds.core.responses.QueryResponse;
+import org.openehealth.ipf.commons.ihe.xds.core.responses.Status;
+import org.openehealth.ipf.commons.ihe.xds.core.stub.ebrs30.rim.AssociationType1;
+import org.openehealth.ipf.commons.ihe.xds.core.stub.ebrs30.rim.ClassificationType;
+import org.openehealth.ipf.commons.ihe.xds.core.stub.ebrs30.rim.ExtrinsicObjectType;
+import org.openehealth.ipf.commons.ihe.xds.core.stub.ebrs30.rim.ObjectRefType;
+import org.openehealth.ipf.commons.ihe.xds.core.stub.ebrs30.rim.RegistryPackageType;
+import org.openehealth.ipf.commons.ihe.xds.core.stub.ebrs30.rs.RegistryErrorList;
+import org.openehealth.ipf.commons.ihe.xds.core.transform.ebxml.AssociationTransformer;
+import org.openehealth.ipf.commons.ihe.xds.core.transform.ebxml.DocumentEntryTransformer;
+import org.openehealth.ipf.commons.ihe.xds.core.transform.ebxml.FolderTransformer;
+import org.openehealth.ipf.commons.ihe.xds.core.transform.ebxml.SubmissionSetTransformer;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.stream.XMLStreamException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Incremental reader of large ebXML 3.0 query responses (<code>query:AdhocQueryResponse</code>),
+ * e.g. aggregated by XCA gateways. The objects contained in the response are emitted one
+ * at a time, without building the JAXB tree of the whole registry object list, so that
+ * the consumer can filter, forward or page them:
+ * <ul>
+ *     <li>{@link DocumentEntry} for each stable or on-demand document entry,</li>
+ *     <li>{@link Folder} and {@link SubmissionSet} for each registry package, as soon as its
+ *     classification has been read &mdash; registry packages without one are ignored, as in
+ *     {@link QueryResponseTransformer#fromEbXML},</li>
+ *     <li>{@link Association} for each association,</li>
+ *     <li>{@link ObjectReference} for each object reference.</li>
+ * </ul>
+ * The status and errors of the response are available via {@link #getStatus()} and {@link #getErrors()}.
+ * <p>
+ * Instances are not thread-safe.
+ *
+ * @since 4.5
+ */
+public class QueryResponseStreamReader extends ResponseStreamReaderBase<Object> {
+
+    private static final Set<String> DOCUMENT_ENTRY_TYPES = Set.of(DocumentEntryType.STABLE_OR_ON_DEMAND);
+
+    private final EbXMLObjectLibrary objectLibrary;
+    private final DocumentEntryTransformer documentEntryTransformer;
+    private final FolderTransformer folderTransformer;
+    private final SubmissionSetTransformer submissionSetTransformer;
+    private final AssociationTransformer associationTransformer;
+
+    // registry packages waiting for their classification, and vice versa
+    private final Map<String, RegistryPackageType> unclassifiedPackages = new LinkedHashMap<>();
+    private final Map<String, String> classificationNodes = new HashMap<>();
+
+    /**
+     * Constructs the reader.
+     * @param inputStream
+     *          XML representation of the query response, will not be closed by this reader.
+     */
+    public QueryResponseStreamReader(InputStream inputStream) {
+        super(inputStream);
+        var factory = new EbXMLFactory30();
+        objectLibrary = factory.createObjectLibrary();
+        documentEntryTransformer = new DocumentEntryTransformer(factory);
+        folderTransformer = new FolderTransformer(factory);
+        submissionSetTransformer = new SubmissionSetTransformer(factory);
+        associationTransformer = new AssociationTransformer(factory);
+    }
+
+    /**
+     * Reads all remaining objects into a {@link QueryResponse}. Mainly useful for small responses.
+     * @return the query response.
+     */
+    public QueryResponse readAll() {
+        var response = new QueryResponse();
+        response.setStatus(getStatus());
+        response.getErrors().addAll(getErrors());
+        forEachRemaining(object -> {
+            if (object instanceof DocumentEntry) {
+                response.getDocumentEntries().add((DocumentEntry) object);
+            } else if (object instanceof Folder) {
+                response.getFolders().add((Folder) object);
+            } else if (object instanceof SubmissionSet) {
+                response.getSubmissionSets().add((SubmissionSet) object);
+            } else if (object instanceof Association) {
+                response.getAssociations().add((Association) object);
+            } else if (object instanceof ObjectReference) {
+                response.getReferences().add((ObjectReference) object);
+            }
+        });
+        return response;
+    }
+
+    @Override
+    boolean handleElement(String namespaceUri, String localName) throws XMLStreamException, JAXBException {
+        if (QUERY_NS.equals(namespaceUri) && "AdhocQueryResponse".equals(localName)) {
+            setStatus(Status.valueOfOpcode(getAttributeValue("status")));
+            return false;
+        }
+        if (RS_NS.equals(namespaceUri) && "RegistryErrorList".equals(localName)) {
+            addErrors(unmarshal(RegistryErrorList.class));
+            return true;
+        }
+        if (!RIM_NS.equals(namespaceUri)) {
+            return false;
+        }
+
+        switch (localName) {
+            case "RegistryObjectList":
+                return false;
+            case "ExtrinsicObject":
+                handleExtrinsicObject(unmarshal(ExtrinsicObjectType.class));
+                return true;
+            case "RegistryPackage":
+                handleRegistryPackage(unmarshal(RegistryPackageType.class));
+                return true;
+            case "Classification":
+                handleClassification(unmarshal(ClassificationType.class));
+                return true;
+            case "Association":
+                emit(associationTransformer.fromEbXML(new EbXMLAssociation30(unmarshal(AssociationType1.class), objectLibrary)));
+                return true;
+            case "ObjectRef":
+                var objectRef = unmarshal(ObjectRefType.class);
+                emit(new ObjectReference(objectRef.getId(), objectRef.getHome()));
+                return true;
+            default:
+                skipElement();
+                return true;
+        }
+    }
+
+    private void handleExtrinsicObject(ExtrinsicObjectType extrinsic) {
+        if (DOCUMENT_ENTRY_TYPES.contains(extrinsic.getObjectType())) {
+            emit(documentEntryTransformer.fromEbXML(new EbXMLExtrinsicObject30(extrinsic, objectLibrary)));
+        }
+    }
+
+    private void handleRegistryPackage(RegistryPackageType regPackage) {
+        var id = regPackage.getId();
+        if (id == null) {
+            return;
+        }
+        var classificationNode = classificationNodes.remove(id);
+        if (classificationNode == null) {
+            for (var classification : regPackage.getClassification()) {
+                if (id.equals(classification.getClassifiedObject()) && isPackageNode(classification.getClassificationNode())) {
+                    classificationNode = classification.getClassificationNode();
+                    break;
+                }
+            }
+        }
+        if (classificationNode != null) {
+            emitRegistryPackage(regPackage, classificationNode);
+        } else {
+            unclassifiedPackages.put(id, regPackage);
+        }
+    }
+
+    private void handleClassification(ClassificationType classification) {
+        var classifiedObject = classification.getClassifiedObject();
+        var classificationNode = classification.getClassificationNode();
+        if ((classifiedObject == null) || !isPackageNode(classificationNode)) {
+            return;
+        }
+        var regPackage = unclassifiedPackages.remove(classifiedObject);
+        if (regPackage != null) {
+            emitRegistryPackage(regPackage, classificationNode);
+        } else {
+            classificationNodes.put(classifiedObject, classificationNode);
+        }
+    }
+
+    private void emitRegistryPackage(RegistryPackageType regPackage, String classificationNode) {
+        var ebXML = new EbXMLRegistryPackage30(regPackage, objectLibrary);
+        if (Vocabulary.FOLDER_CLASS_NODE.equals(classificationNode)) {
+            emit(folderTransformer.fromEbXML(ebXML));
+        } else {
+            emit(submissionSetTransformer.fromEbXML(ebXML));
+        }
+    }
+
+    private static boolean isPackageNode(String classificationNode) {
+        return Vocabulary.FOLDER_CLASS_NODE.equals(classificationNode)
+                || Vocabulary.SUBMISSION_SET_CLASS_NODE.equals(classificationNode);
+    }
+}
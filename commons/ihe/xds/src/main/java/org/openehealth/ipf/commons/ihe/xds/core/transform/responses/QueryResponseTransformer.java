@@ -19,6 +19,7 @@ import org.openehealth.ipf.commons.ihe.xds.core.ebxml.EbXMLFactory;
 import org.openehealth.ipf.commons.ihe.xds.core.ebxml.EbXMLObjectLibrary;
 import org.openehealth.ipf.commons.ihe.xds.core.ebxml.EbXMLQueryResponse;
 import org.openehealth.ipf.commons.ihe.xds.core.metadata.Document;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.DocumentEntry;
 import org.openehealth.ipf.commons.ihe.xds.core.metadata.DocumentEntryType;
 import org.openehealth.ipf.commons.ihe.xds.core.metadata.Vocabulary;
 import org.openehealth.ipf.commons.ihe.xds.core.responses.QueryResponse;
@@ -28,21 +29,35 @@ import org.openehealth.ipf.commons.ihe.xds.core.transform.ebxml.FolderTransforme
 import org.openehealth.ipf.commons.ihe.xds.core.transform.ebxml.SubmissionSetTransformer;
 
 import javax.activation.DataHandler;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static org.apache.commons.lang3.Validate.notNull;
 
 /**
  * Transforms between {@link QueryResponse} and the {@link EbXMLQueryResponse} representation.
+ * <p>
+ * When transforming large responses into ebXML, document entries, folders, submission sets and
+ * associations are converted in parallel. The order of the objects in the result is the same as
+ * with sequential conversion.
  *
  * @author Jens Riemschneider
  */
 public class QueryResponseTransformer {
+    /**
+     * Default minimum number of objects in a response to convert them in parallel.
+     */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 500;
+
     private final EbXMLFactory factory;
     private final SubmissionSetTransformer submissionSetTransformer;
     private final DocumentEntryTransformer documentEntryTransformer;
     private final FolderTransformer folderTransformer;
     private final AssociationTransformer associationTransformer;
     private final ErrorInfoListTransformer errorInfoListTransformer;
+    private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
 
     /**
      * Constructs the transformer.
@@ -60,6 +75,18 @@ public class QueryResponseTransformer {
         errorInfoListTransformer = new ErrorInfoListTransformer(factory);
     }
 
+    /**
+     * Sets the minimum number of document entries, folders, submission sets and associations
+     * in a response to convert them into ebXML in parallel. Defaults to {@link #DEFAULT_PARALLEL_THRESHOLD}.
+     *
+     * @param parallelThreshold minimum number of objects to convert them in parallel,
+     *                          {@link Integer#MAX_VALUE} to always convert sequentially.
+     * @since 4.5
+     */
+    public void setParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
     /**
      * Transforms a {@link QueryResponse} to a {@link EbXMLQueryResponse}.
      *
@@ -79,31 +106,42 @@ public class QueryResponseTransformer {
             ebXML.setErrors(errorInfoListTransformer.toEbXML(response.getErrors()));
         }
 
-        for (var docEntry : response.getDocumentEntries()) {
-            var extrinsic = documentEntryTransformer.toEbXML(docEntry, library);
-            for (var document : response.getDocuments()) {
-                if ((document != null) && (document.getDocumentEntry() == docEntry)) {
-                    extrinsic.setDataHandler(document.getContent(DataHandler.class));
-                    break;
-                }
+        // the first document referring to the entry wins
+        var documents = new IdentityHashMap<DocumentEntry, Document>();
+        for (var document : response.getDocuments()) {
+            if ((document != null) && !documents.containsKey(document.getDocumentEntry())) {
+                documents.put(document.getDocumentEntry(), document);
             }
-            ebXML.addExtrinsicObject(extrinsic);
         }
 
-        for (var folder : response.getFolders()) {
-            ebXML.addRegistryPackage(folderTransformer.toEbXML(folder, library));
-            addClassification(ebXML, folder.getEntryUuid(), Vocabulary.FOLDER_CLASS_NODE, library);
-        }
+        var parallel = (response.getDocumentEntries().size() + response.getFolders().size()
+                + response.getSubmissionSets().size() + response.getAssociations().size()) >= parallelThreshold;
 
-        for (var set : response.getSubmissionSets()) {
-            ebXML.addRegistryPackage(submissionSetTransformer.toEbXML(set, library));
-            addClassification(ebXML, set.getEntryUuid(), Vocabulary.SUBMISSION_SET_CLASS_NODE, library);
+        var extrinsics = convert(response.getDocumentEntries(), parallel, docEntry -> {
+            var extrinsic = documentEntryTransformer.toEbXML(docEntry, library);
+            var document = documents.get(docEntry);
+            if ((extrinsic != null) && (document != null)) {
+                extrinsic.setDataHandler(document.getContent(DataHandler.class));
+            }
+            return extrinsic;
+        });
+        extrinsics.forEach(ebXML::addExtrinsicObject);
+
+        var folders = convert(response.getFolders(), parallel, folder -> folderTransformer.toEbXML(folder, library));
+        for (var i = 0; i < folders.size(); ++i) {
+            ebXML.addRegistryPackage(folders.get(i));
+            addClassification(ebXML, response.getFolders().get(i).getEntryUuid(), Vocabulary.FOLDER_CLASS_NODE, library);
         }
 
-        for (var association : response.getAssociations()) {
-            ebXML.addAssociation(associationTransformer.toEbXML(association, library));
+        var sets = convert(response.getSubmissionSets(), parallel, set -> submissionSetTransformer.toEbXML(set, library));
+        for (var i = 0; i < sets.size(); ++i) {
+            ebXML.addRegistryPackage(sets.get(i));
+            addClassification(ebXML, response.getSubmissionSets().get(i).getEntryUuid(), Vocabulary.SUBMISSION_SET_CLASS_NODE, library);
         }
 
+        convert(response.getAssociations(), parallel, association -> associationTransformer.toEbXML(association, library))
+                .forEach(ebXML::addAssociation);
+
         response.getReferences().forEach(ebXML::addReference);
 
         return ebXML;
@@ -163,6 +201,14 @@ public class QueryResponseTransformer {
         return response;
     }
 
+    /**
+     * Converts the given objects, preserving their order.
+     */
+    private static <T, R> List<R> convert(List<T> objects, boolean parallel, Function<T, R> conversion) {
+        var stream = parallel ? objects.parallelStream() : objects.stream();
+        return stream.map(conversion).collect(Collectors.toList());
+    }
+
     private void addClassification(EbXMLQueryResponse ebXML, String classified, String node, EbXMLObjectLibrary library) {
         var classification = factory.createClassification(library);
         classification.setClassifiedObject(classified);
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.ipf.commons.ihe.xds.core.transform.responses;
+
+import org.openehealth.ipf.commons.ihe.xds.core.XdsJaxbDataBinding;
+import org.openehealth.ipf.commons.ihe.xds.core.ebxml.ebxml30.EbXMLFactory30;
+import org.openehealth.ipf.commons.ihe.xds.core.ebxml.ebxml30.EbXMLRegistryError30;
+import org.openehealth.ipf.commons.ihe.xds.core.responses.ErrorInfo;
+import org.openehealth.ipf.commons.ihe.xds.core.responses.Status;
+import org.openehealth.ipf.commons.ihe.xds.core.stub.ebrs30.rs.RegistryErrorList;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.Closeable;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.Collectors;
+
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * Base class for pull-based readers of large ebXML 3.0 response messages.
+ * <p>
+ * The XML document is traversed with StAX. Only the elements recognized by the subclass
+ * are unmarshalled with JAXB, one at a time, so that the memory footprint does not depend
+ * on the size of the response. Container elements, e.g. SOAP envelopes, are entered transparently.
+ *
+ * @param <T> type of the emitted objects.
+ * @since 4.5
+ */
+abstract class ResponseStreamReaderBase<T> implements Iterator<T>, Closeable {
+
+    static final String RIM_NS = "urn:oasis:names:tc:ebxml-regrep:xsd:rim:3.0";
+    static final String RS_NS = "urn:oasis:names:tc:ebxml-regrep:xsd:rs:3.0";
+    static final String QUERY_NS = "urn:oasis:names:tc:ebxml-regrep:xsd:query:3.0";
+    static final String XDS_NS = "urn:ihe:iti:xds-b:2007";
+
+    private static final XMLInputFactory XML_INPUT_FACTORY;
+
+    static {
+        XML_INPUT_FACTORY = XMLInputFactory.newFactory();
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    private final XMLStreamReader reader;
+    private final Unmarshaller unmarshaller;
+    private final ErrorInfoListTransformer errorInfoListTransformer;
+    private final Deque<T> pending = new ArrayDeque<>();
+    private final List<ErrorInfo> errors = new ArrayList<>();
+    private Status status;
+    private boolean exhausted;
+
+    /**
+     * @param inputStream XML document, will not be closed by this reader.
+     */
+    ResponseStreamReaderBase(InputStream inputStream) {
+        notNull(inputStream, "input stream cannot be null");
+        try {
+            reader = XML_INPUT_FACTORY.createXMLStreamReader(inputStream);
+            unmarshaller = JaxbContextHolder.CONTEXT.createUnmarshaller();
+        } catch (XMLStreamException | JAXBException e) {
+            throw new RuntimeException("Cannot create response reader", e);
+        }
+        unmarshaller.setListener(new XdsJaxbDataBinding.UnmarshallerListener());
+        errorInfoListTransformer = new ErrorInfoListTransformer(new EbXMLFactory30());
+    }
+
+    /**
+     * Handles the start element the reader is currently positioned at.
+     *
+     * @return <code>true</code> if the element has been consumed, e.g. by {@link #unmarshal(Class)}
+     * or {@link #skipElement()}, <code>false</code> if its contents shall be traversed.
+     */
+    abstract boolean handleElement(String namespaceUri, String localName) throws XMLStreamException, JAXBException;
+
+    /**
+     * @return the status of the response, <code>null</code> if not contained in the message.
+     * Reads the message up to the first emitted object.
+     */
+    public Status getStatus() {
+        hasNext();
+        return status;
+    }
+
+    /**
+     * @return the errors of the response. Reads the message up to the first emitted object.
+     */
+    public List<ErrorInfo> getErrors() {
+        hasNext();
+        return Collections.unmodifiableList(errors);
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            while (pending.isEmpty() && !exhausted) {
+                if (reader.isStartElement()) {
+                    if (!handleElement(reader.getNamespaceURI(), reader.getLocalName())) {
+                        reader.next();
+                    }
+                } else if (reader.hasNext()) {
+                    reader.next();
+                } else {
+                    exhausted = true;
+                }
+            }
+        } catch (XMLStreamException | JAXBException e) {
+            throw new RuntimeException("Cannot read response", e);
+        }
+        return !pending.isEmpty();
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return pending.poll();
+    }
+
+    /**
+     * Closes the XML reader. The underlying input stream is not closed.
+     */
+    @Override
+    public void close() {
+        try {
+            reader.close();
+        } catch (XMLStreamException e) {
+            throw new RuntimeException("Cannot close response reader", e);
+        }
+    }
+
+    void emit(T object) {
+        pending.add(object);
+    }
+
+    void setStatus(Status status) {
+        this.status = status;
+    }
+
+    void addErrors(RegistryErrorList errorList) {
+        if (errorList != null) {
+            errors.addAll(errorInfoListTransformer.fromEbXML(errorList.getRegistryError().stream()
+                    .map(EbXMLRegistryError30::new)
+                    .collect(Collectors.toList())));
+        }
+    }
+
+    String getAttributeValue(String localName) {
+        return reader.getAttributeValue(null, localName);
+    }
+
+    /**
+     * Unmarshals the current element. Afterwards, the reader is positioned after its end tag.
+     */
+    <V> V unmarshal(Class<V> type) throws JAXBException {
+        return unmarshaller.unmarshal(reader, type).getValue();
+    }
+
+    /**
+     * Skips the current element. Afterwards, the reader is positioned after its end tag.
+     */
+    void skipElement() throws XMLStreamException {
+        var depth = 1;
+        while (depth > 0) {
+            var event = reader.next();
+            if (event == XMLStreamReader.START_ELEMENT) {
+                ++depth;
+            } else if (event == XMLStreamReader.END_ELEMENT) {
+                --depth;
+            }
+        }
+        reader.next();
+    }
+
+
+    private static class JaxbContextHolder {
+        private static final JAXBContext CONTEXT;
+
+        static {
+            try {
+                CONTEXT = JAXBContext.newInstance(
+                        org.openehealth.ipf.commons.ihe.xds.core.stub.ebrs30.rim.ObjectFactory.class,
+                        org.openehealth.ipf.commons.ihe.xds.core.stub.ebrs30.rs.ObjectFactory.class,
+                        org.openehealth.ipf.commons.ihe.xds.core.stub.ebrs30.query.ObjectFactory.class,
+                        org.openehealth.ipf.commons.ihe.xds.core.ebxml.ebxml30.ObjectFactory.class);
+            } catch (JAXBException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.ipf.commons.ihe.xds.core.transform.responses;
+
+import org.openehealth.ipf.commons.ihe.xds.core.ebxml.ebxml30.EbXMLRetrieveDocumentSetResponse30;
+import org.openehealth.ipf.commons.ihe.xds.core.ebxml.ebxml30.RetrieveDocumentSetResponseType;
+import org.openehealth.ipf.commons.ihe.xds.core.ebxml.ebxml30.RetrieveDocumentSetResponseType.DocumentResponse;
+import org.openehealth.ipf.commons.ihe.xds.core.responses.RetrievedDocument;
+import org.openehealth.ipf.commons.ihe.xds.core.responses.RetrievedDocumentSet;
+import org.openehealth.ipf.commons.ihe.xds.core.responses.Status;
+import org.openehealth.ipf.commons.ihe.xds.core.stub.ebrs30.rs.RegistryResponseType;
+
+import javax.xml.bind.JAXBException;
+import java.io.InputStream;
+
+/**
+ * Incremental reader of large ebXML 3.0 retrieve responses (<code>xds:RetrieveDocumentSetResponse</code>).
+ * The documents are emitted one at a time as {@link RetrievedDocument} objects. Document contents
+ * must be inlined as base64 text; XOP references to MTOM attachments are not resolved.
+ * The status and errors of the response are available via {@link #getStatus()} and {@link #getErrors()}.
+ * <p>
+ * Instances are not thread-safe.
+ *
+ * @since 4.5
+ */
+public class RetrieveDocumentSetResponseStreamReader extends ResponseStreamReaderBase<RetrievedDocument> {
+
+    /**
+     * Constructs the reader.
+     * @param inputStream
+     *          XML representation of the retrieve response, will not be closed by this reader.
+     */
+    public RetrieveDocumentSetResponseStreamReader(InputStream inputStream) {
+        super(inputStream);
+    }
+
+    /**
+     * Reads all remaining documents into a {@link RetrievedDocumentSet}. Mainly useful for small responses.
+     * @return the retrieved document set.
+     */
+    public RetrievedDocumentSet readAll() {
+        var response = new RetrievedDocumentSet();
+        response.setStatus(getStatus());
+        response.getErrors().addAll(getErrors());
+        forEachRemaining(response.getDocuments()::add);
+        return response;
+    }
+
+    @Override
+    boolean handleElement(String namespaceUri, String localName) throws JAXBException {
+        if (RS_NS.equals(namespaceUri) && "RegistryResponse".equals(localName)) {
+            var registryResponse = unmarshal(RegistryResponseType.class);
+            setStatus(Status.valueOfOpcode(registryResponse.getStatus()));
+            addErrors(registryResponse.getRegistryErrorList());
+            return true;
+        }
+        if (XDS_NS.equals(namespaceUri) && "DocumentResponse".equals(localName)) {
+            // reuse the conversion of the wrapper for a single document
+            var response = new RetrieveDocumentSetResponseType();
+            response.getDocumentResponse().add(unmarshal(DocumentResponse.class));
+            new EbXMLRetrieveDocumentSetResponse30(response).getDocuments().forEach(this::emit);
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.ipf.commons.ihe.xds.core.transform.responses.ebxml30;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.openehealth.ipf.commons.ihe.xds.core.SampleData;
+import org.openehealth.ipf.commons.ihe.xds.core.ebxml.ebxml30.EbXMLFactory30;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.AssigningAuthority;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.Association;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.AssociationLabel;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.AssociationType;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.Document;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.DocumentEntryType;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.Identifiable;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.Vocabulary;
+import org.openehealth.ipf.commons.ihe.xds.core.responses.QueryResponse;
+import org.openehealth.ipf.commons.ihe.xds.core.responses.Status;
+import org.openehealth.ipf.commons.ihe.xds.core.transform.responses.QueryResponseTransformer;
+
+import javax.activation.DataHandler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Transformation of {@link QueryResponse} objects with many entries.
+ */
+public class LargeQueryResponseTransformerTest {
+    private static final int ENTRIES = 10000;
+
+    private static QueryResponse response;
+    private final QueryResponseTransformer transformer = new QueryResponseTransformer(new EbXMLFactory30());
+
+    @BeforeAll
+    public static void setUpClass() {
+        response = createResponse(false);
+    }
+
+    private static QueryResponse createResponse(boolean crossCommunity) {
+        var patientId = new Identifiable("id3", new AssigningAuthority("1.3"));
+        var response = new QueryResponse();
+        response.setStatus(Status.SUCCESS);
+
+        var submissionSet = SampleData.createSubmissionSet(patientId);
+        response.getSubmissionSets().add(submissionSet);
+        var folder = SampleData.createFolder(patientId);
+        response.getFolders().add(folder);
+
+        for (var i = 0; i < ENTRIES; i++) {
+            var docEntry = SampleData.createDocumentEntry(patientId);
+            docEntry.setEntryUuid("document" + i);
+            docEntry.setUniqueId("1.2.3." + i);
+            if (crossCommunity) {
+                docEntry.setHomeCommunityId("urn:oid:1.2.3.4." + (i % 10));
+            }
+            response.getDocumentEntries().add(docEntry);
+
+            var association = new Association();
+            association.setAssociationType(AssociationType.HAS_MEMBER);
+            association.setSourceUuid(submissionSet.getEntryUuid());
+            association.setTargetUuid(docEntry.getEntryUuid());
+            association.setLabel(AssociationLabel.ORIGINAL);
+            association.setEntryUuid("association" + i);
+            response.getAssociations().add(association);
+        }
+        return response;
+    }
+
+    @Test
+    public void testRoundTrip() {
+        var ebXML = transformer.toEbXML(response);
+        assertEquals(response, transformer.fromEbXML(ebXML));
+    }
+
+    @Test
+    public void testParallelConversion() {
+        var sequentialTransformer = new QueryResponseTransformer(new EbXMLFactory30());
+        sequentialTransformer.setParallelThreshold(Integer.MAX_VALUE);
+        var parallelTransformer = new QueryResponseTransformer(new EbXMLFactory30());
+        parallelTransformer.setParallelThreshold(1);
+
+        var crossCommunityResponse = createResponse(true);
+        var dataHandlers = new DataHandler[ENTRIES];
+        for (var i = 0; i < ENTRIES; i += 3) {
+            dataHandlers[i] = new DataHandler("document " + i, "text/plain");
+            crossCommunityResponse.getDocuments().add(
+                    new Document(crossCommunityResponse.getDocumentEntries().get(i), dataHandlers[i]));
+        }
+
+        for (var source : new QueryResponse[]{response, crossCommunityResponse}) {
+            var sequential = sequentialTransformer.toEbXML(source);
+            var parallel = parallelTransformer.toEbXML(source);
+            assertEquals(sequentialTransformer.fromEbXML(sequential), parallelTransformer.fromEbXML(parallel));
+            var extrinsics = parallel.getExtrinsicObjects();
+            for (var i = 0; i < ENTRIES; i++) {
+                assertEquals("document" + i, extrinsics.get(i).getId());
+                if (source == crossCommunityResponse) {
+                    assertSame(dataHandlers[i], extrinsics.get(i).getDataHandler());
+                } else {
+                    assertNull(extrinsics.get(i).getDataHandler());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testAccessors() {
+        var ebXML = transformer.toEbXML(response);
+        for (var i = 0; i < 2; i++) {
+            assertEquals(ENTRIES, ebXML.getExtrinsicObjects(DocumentEntryType.STABLE_OR_ON_DEMAND).size());
+            assertEquals(ENTRIES, ebXML.getExtrinsicObjects(DocumentEntryType.STABLE.getUuid()).size());
+            assertEquals(ENTRIES, ebXML.getAssociations().size());
+            assertEquals(1, ebXML.getRegistryPackages(Vocabulary.FOLDER_CLASS_NODE).size());
+            assertEquals(1, ebXML.getRegistryPackages(Vocabulary.SUBMISSION_SET_CLASS_NODE).size());
+        }
+
+        // the index must be rebuilt after modifications
+        ebXML.addAssociation(ebXML.getAssociations().get(0));
+        assertEquals(ENTRIES + 1, ebXML.getAssociations().size());
+    }
+}
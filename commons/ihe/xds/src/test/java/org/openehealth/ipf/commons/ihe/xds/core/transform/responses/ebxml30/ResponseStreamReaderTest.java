@@ -0,0 +1,135 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.ipf.commons.ihe.xds.core.transform.responses.ebxml30;
+
+import org.junit.jupiter.api.Test;
+import org.openehealth.ipf.commons.ihe.xds.core.SampleData;
+import org.openehealth.ipf.commons.ihe.xds.core.XdsJaxbDataBinding;
+import org.openehealth.ipf.commons.ihe.xds.core.ebxml.ebxml30.EbXMLFactory30;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.AssigningAuthority;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.DocumentEntry;
+import org.openehealth.ipf.commons.ihe.xds.core.metadata.Identifiable;
+import org.openehealth.ipf.commons.ihe.xds.core.requests.DocumentReference;
+import org.openehealth.ipf.commons.ihe.xds.core.responses.RetrievedDocument;
+import org.openehealth.ipf.commons.ihe.xds.core.responses.RetrievedDocumentSet;
+import org.openehealth.ipf.commons.ihe.xds.core.responses.Status;
+import org.openehealth.ipf.commons.ihe.xds.core.stub.ebrs30.query.AdhocQueryResponse;
+import org.openehealth.ipf.commons.ihe.xds.core.stub.ebrs30.rim.ClassificationType;
+import org.openehealth.ipf.commons.ihe.xds.core.transform.responses.QueryResponseStreamReader;
+import org.openehealth.ipf.commons.ihe.xds.core.transform.responses.QueryResponseTransformer;
+import org.openehealth.ipf.commons.ihe.xds.core.transform.responses.RetrieveDocumentSetResponseStreamReader;
+import org.openehealth.ipf.commons.ihe.xds.core.transform.responses.RetrieveDocumentSetResponseTransformer;
+
+import javax.activation.DataHandler;
+import javax.xml.bind.JAXBContext;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link QueryResponseStreamReader} and {@link RetrieveDocumentSetResponseStreamReader}.
+ */
+public class ResponseStreamReaderTest {
+    private final EbXMLFactory30 factory = new EbXMLFactory30();
+    private final QueryResponseTransformer queryTransformer = new QueryResponseTransformer(factory);
+
+    private static byte[] marshal(Object jaxbObject) throws Exception {
+        var marshaller = JAXBContext.newInstance(jaxbObject.getClass()).createMarshaller();
+        marshaller.setListener(new XdsJaxbDataBinding.MarshallerListener());
+        var out = new ByteArrayOutputStream();
+        marshaller.marshal(jaxbObject, out);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testQueryResponse() throws Exception {
+        var response = SampleData.createQueryResponseWithLeafClass(Status.PARTIAL_SUCCESS,
+                new Identifiable("id1", new AssigningAuthority("1.3")),
+                new Identifiable("id2", new AssigningAuthority("1.3")));
+        response.getErrors().addAll(SampleData.createResponse().getErrors());
+        var ebXML = queryTransformer.toEbXML(response);
+        var bytes = marshal(ebXML.getInternal());
+
+        try (var reader = new QueryResponseStreamReader(new ByteArrayInputStream(bytes))) {
+            assertEquals(Status.PARTIAL_SUCCESS, reader.getStatus());
+            assertEquals(3, reader.getErrors().size());
+            assertTrue(reader.next() instanceof DocumentEntry);
+        }
+
+        try (var reader = new QueryResponseStreamReader(new ByteArrayInputStream(bytes))) {
+            assertEquals(queryTransformer.fromEbXML(ebXML), reader.readAll());
+            assertFalse(reader.hasNext());
+        }
+    }
+
+    @Test
+    public void testClassificationsBeforeRegistryPackages() throws Exception {
+        var response = SampleData.createQueryResponseWithLeafClass();
+        var ebXML = queryTransformer.toEbXML(response);
+        var contents = ((AdhocQueryResponse) ebXML.getInternal()).getRegistryObjectList().getIdentifiable();
+        contents.sort((o1, o2) -> Boolean.compare(
+                o2.getDeclaredType() == ClassificationType.class,
+                o1.getDeclaredType() == ClassificationType.class));
+
+        try (var reader = new QueryResponseStreamReader(new ByteArrayInputStream(marshal(ebXML.getInternal())))) {
+            assertEquals(response, reader.readAll());
+        }
+    }
+
+    @Test
+    public void testObjectReferences() throws Exception {
+        var response = SampleData.createQueryResponseWithObjRef();
+        var ebXML = queryTransformer.toEbXML(response);
+        try (var reader = new QueryResponseStreamReader(new ByteArrayInputStream(marshal(ebXML.getInternal())))) {
+            assertEquals(response, reader.readAll());
+        }
+    }
+
+    @Test
+    public void testRetrieveDocumentSetResponse() throws Exception {
+        var response = new RetrievedDocumentSet();
+        response.setStatus(Status.PARTIAL_SUCCESS);
+        response.getErrors().addAll(SampleData.createResponse().getErrors());
+        for (var i = 0; i < 3; i++) {
+            var requestData = new DocumentReference("repo" + i, "doc" + i, "urn:oid:1.2." + i);
+            var document = new RetrievedDocument();
+            document.setRequestData(requestData);
+            document.setDataHandler(new DataHandler(("content " + i).getBytes(StandardCharsets.UTF_8), "text/plain"));
+            document.setMimeType("text/plain");
+            response.getDocuments().add(document);
+        }
+        var ebXML = new RetrieveDocumentSetResponseTransformer(factory).toEbXML(response);
+
+        try (var reader = new RetrieveDocumentSetResponseStreamReader(new ByteArrayInputStream(marshal(ebXML.getInternal())))) {
+            var result = reader.readAll();
+            assertEquals(Status.PARTIAL_SUCCESS, result.getStatus());
+            assertEquals(response.getErrors(), result.getErrors());
+            assertEquals(3, result.getDocuments().size());
+            for (var i = 0; i < 3; i++) {
+                var document = result.getDocuments().get(i);
+                assertEquals(response.getDocuments().get(i).getRequestData(), document.getRequestData());
+                assertEquals("text/plain", document.getMimeType());
+                var content = new ByteArrayOutputStream();
+                document.getDataHandler().writeTo(content);
+                assertEquals("content " + i, content.toString(StandardCharsets.UTF_8));
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.ipf.platform.camel.ihe.core;
+
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.Exchange;
+
+/**
+ * Interceptor which is able to process exchanges asynchronously, i.e. without blocking the
+ * calling thread while the wrapped processor is working.
+ * <p>
+ * Failures are reported by setting the exception on the exchange instead of throwing it.
+ * Asynchronous processing stops at the first wrapped processor which is neither an
+ * asynchronous interceptor nor an {@link org.apache.camel.AsyncProcessor}, this processor
+ * is then called synchronously.
+ *
+ * @see InterceptableEndpoint#isAsyncProducerChain()
+ * @since 4.5
+ */
+public interface AsyncInterceptor extends Interceptor {
+
+    /**
+     * Processes the given exchange asynchronously, following the contract of
+     * {@link org.apache.camel.AsyncProcessor#process(Exchange, AsyncCallback)}.
+     *
+     * @param exchange the exchange to process.
+     * @param callback callback to be invoked when the exchange has been completed.
+     * @return <code>true</code> when the exchange has been completed synchronously.
+     */
+    boolean process(Exchange exchange, AsyncCallback callback);
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.ipf.platform.camel.ihe.core;
+
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.AsyncProducer;
+import org.apache.camel.Exchange;
+import org.apache.camel.support.AsyncCallbackToCompletableFutureAdapter;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Adapter which exposes a chain of {@link AsyncInterceptor}s as a Camel {@link AsyncProducer}.
+ *
+ * @since 4.5
+ */
+public class AsyncInterceptor2ProducerAdapter extends Interceptor2ProducerAdapter implements AsyncProducer {
+    private final AsyncInterceptor interceptor;
+
+    public AsyncInterceptor2ProducerAdapter(AsyncInterceptor interceptor, AsyncProducer originalProducer) {
+        super(interceptor, originalProducer);
+        this.interceptor = interceptor;
+    }
+
+    @Override
+    public boolean process(Exchange exchange, AsyncCallback callback) {
+        return interceptor.process(exchange, callback);
+    }
+
+    @Override
+    public CompletableFuture<Exchange> processAsync(Exchange exchange) {
+        var callback = new AsyncCallbackToCompletableFutureAdapter<>(exchange);
+        process(exchange, callback);
+        return callback.getFuture();
+    }
+}
@@ -60,7 +60,19 @@ public interface InterceptableEndpoint<
         return InterceptorUtils.adaptProducerChain(
                 producerInterceptorChain,
                 this,
-                producer);
+                producer,
+                isAsyncProducerChain());
+    }
+
+    /**
+     * Whether the producer interceptor chain shall be processed asynchronously, as far as its
+     * interceptors implement {@link AsyncInterceptor}. Defaults to <code>false</code>.
+     *
+     * @return <code>true</code> when the calling thread shall not wait for the completion of the exchange.
+     * @since 4.5
+     */
+    default boolean isAsyncProducerChain() {
+        return false;
     }
 
     /**
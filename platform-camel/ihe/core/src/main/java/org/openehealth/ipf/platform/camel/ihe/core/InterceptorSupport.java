@@ -17,6 +17,8 @@
 package org.openehealth.ipf.platform.camel.ihe.core;
 
 
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.AsyncProcessor;
 import org.apache.camel.Endpoint;
 import org.apache.camel.Exchange;
 import org.apache.camel.Processor;
@@ -54,6 +56,31 @@ public abstract class InterceptorSupport extends ChainableImpl implements Interc
         this.endpoint = endpoint;
     }
 
+    /**
+     * Lets the wrapped processor process the given exchange asynchronously, if it supports this,
+     * otherwise synchronously. Failures are set on the exchange.
+     *
+     * @param exchange the exchange to process.
+     * @param callback callback to be invoked when the wrapped processor has completed the exchange.
+     * @return <code>true</code> when the exchange has been completed synchronously.
+     * @since 4.5
+     */
+    protected boolean processWrapped(Exchange exchange, AsyncCallback callback) {
+        if (wrappedProcessor instanceof AsyncInterceptor) {
+            return ((AsyncInterceptor) wrappedProcessor).process(exchange, callback);
+        }
+        if (wrappedProcessor instanceof AsyncProcessor) {
+            return ((AsyncProcessor) wrappedProcessor).process(exchange, callback);
+        }
+        try {
+            wrappedProcessor.process(exchange);
+        } catch (Exception e) {
+            exchange.setException(e);
+        }
+        callback.done(true);
+        return true;
+    }
+
     /**
      * Returns character set configured in the given Camel exchange,
      * or, when none found, the system default character set.
@@ -15,6 +15,7 @@
  */
 package org.openehealth.ipf.platform.camel.ihe.core;
 
+import org.apache.camel.AsyncProducer;
 import org.apache.camel.Endpoint;
 import org.apache.camel.Processor;
 import org.apache.camel.Producer;
@@ -30,6 +31,22 @@ public class InterceptorUtils {
             List<Interceptor> chain,
             Endpoint endpoint,
             Producer originalProducer) {
+        return adaptProducerChain(chain, endpoint, originalProducer, false);
+    }
+
+    /**
+     * Wraps the given producer into the given interceptor chain.
+     *
+     * @param async whether the resulting producer shall process exchanges asynchronously. This is
+     *              only possible when the original producer is an {@link AsyncProducer} and the
+     *              outermost interceptor is an {@link AsyncInterceptor}, otherwise the flag is ignored.
+     * @since 4.5
+     */
+    public static Producer adaptProducerChain(
+            List<Interceptor> chain,
+            Endpoint endpoint,
+            Producer originalProducer,
+            boolean async) {
         Processor processor = originalProducer;
         for (var interceptor : chain) {
             interceptor.setEndpoint(endpoint);
@@ -37,6 +54,9 @@ public class InterceptorUtils {
             processor = interceptor;
         }
 
+        if (async && (originalProducer instanceof AsyncProducer) && (processor instanceof AsyncInterceptor)) {
+            return new AsyncInterceptor2ProducerAdapter((AsyncInterceptor) processor, (AsyncProducer) originalProducer);
+        }
         return new Interceptor2ProducerAdapter(processor, originalProducer);
     }
 }
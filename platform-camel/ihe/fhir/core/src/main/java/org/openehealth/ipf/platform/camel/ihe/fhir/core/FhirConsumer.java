@@ -27,7 +27,9 @@ import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
 import org.apache.camel.Exchange;
 import org.apache.camel.Processor;
 import org.apache.camel.SuspendableService;
+import org.apache.camel.builder.ThreadPoolProfileBuilder;
 import org.apache.camel.support.DefaultConsumer;
+import org.apache.camel.util.concurrent.ThreadPoolRejectedPolicy;
 import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IIdType;
@@ -39,6 +41,7 @@ import org.openehealth.ipf.commons.ihe.fhir.audit.FhirAuditDataset;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 import static org.openehealth.ipf.commons.ihe.fhir.Constants.FHIR_REQUEST_SIZE_ONLY;
 
@@ -53,6 +56,7 @@ import static org.openehealth.ipf.commons.ihe.fhir.Constants.FHIR_REQUEST_SIZE_O
 public class FhirConsumer<AuditDatasetType extends FhirAuditDataset> extends DefaultConsumer
         implements SuspendableService, RequestConsumer {
 
+    private ExecutorService prefetchExecutor;
 
     public FhirConsumer(FhirEndpoint<AuditDatasetType, ? extends FhirComponent<AuditDatasetType>> endpoint, Processor processor) {
         super(endpoint, processor);
@@ -76,12 +80,29 @@ public class FhirConsumer<AuditDatasetType extends FhirAuditDataset> extends Def
     @Override
     protected void doStart() throws Exception {
         super.doStart();
+        var endpointConfiguration = getEndpoint().getInterceptableConfiguration();
+        if (supportsLazyLoading() && endpointConfiguration.isCacheBundles() && endpointConfiguration.isPrefetchBundles()) {
+            // Prefetching is optional, so it is skipped when all threads are busy
+            var poolSize = endpointConfiguration.getPrefetchBundlesPoolSize();
+            var profile = new ThreadPoolProfileBuilder("FhirBundlePrefetch")
+                    .poolSize(poolSize)
+                    .maxPoolSize(poolSize)
+                    .maxQueueSize(poolSize)
+                    .rejectedPolicy(ThreadPoolRejectedPolicy.Abort)
+                    .build();
+            prefetchExecutor = getEndpoint().getCamelContext().getExecutorServiceManager()
+                    .newThreadPool(this, "FhirBundlePrefetch", profile);
+        }
         getEndpoint().connect(this);
     }
 
     @Override
     protected void doStop() throws Exception {
         getEndpoint().disconnect(this);
+        if (prefetchExecutor != null) {
+            getEndpoint().getCamelContext().getExecutorServiceManager().shutdown(prefetchExecutor);
+            prefetchExecutor = null;
+        }
         super.doStop();
     }
 
@@ -218,14 +239,20 @@ public class FhirConsumer<AuditDatasetType extends FhirAuditDataset> extends Def
      */
     protected IBundleProvider getBundleProvider(Object payload, Map<String, Object> headers) {
         var endpointConfiguration = getEndpoint().getInterceptableConfiguration();
-        return supportsLazyLoading() ?
-                new LazyBundleProvider(this,
-                        endpointConfiguration.isCacheBundles(),
-                        endpointConfiguration.isSort(),
-                        payload,
-                        headers) :
-                new EagerBundleProvider(this,
-                        endpointConfiguration.isSort(),
-                        payload, headers);
+        if (supportsLazyLoading()) {
+            var bundleProvider = new LazyBundleProvider(this,
+                    endpointConfiguration.isCacheBundles(),
+                    endpointConfiguration.isSort(),
+                    payload,
+                    headers);
+            if (endpointConfiguration.getCacheBundlesMaxSize() > 0) {
+                bundleProvider.setMaxCachedResources(endpointConfiguration.getCacheBundlesMaxSize());
+            }
+            bundleProvider.setPrefetchExecutor(prefetchExecutor);
+            return bundleProvider;
+        }
+        return new EagerBundleProvider(this,
+                endpointConfiguration.isSort(),
+                payload, headers);
     }
 }
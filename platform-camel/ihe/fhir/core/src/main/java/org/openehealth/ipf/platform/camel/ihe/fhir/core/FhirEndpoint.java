@@ -63,6 +63,17 @@ public abstract class FhirEndpoint<AuditDatasetType extends FhirAuditDataset, Co
         return fhirComponent;
     }
 
+    @Override
+    protected void doStart() throws Exception {
+        super.doStart();
+        if (config.isWarmUpValidation()) {
+            var validator = fhirComponent.getFhirTransactionConfiguration().getFhirValidator();
+            if (validator != null) {
+                validator.initialize();
+            }
+        }
+    }
+
     @Override
     public Producer doCreateProducer() {
         return new FhirProducer<AuditDatasetType>(this);
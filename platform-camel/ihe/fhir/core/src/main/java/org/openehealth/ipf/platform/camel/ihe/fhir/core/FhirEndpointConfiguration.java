@@ -58,6 +58,10 @@ public class FhirEndpointConfiguration<AuditDatasetType extends FhirAuditDataset
     static final String LENIENT = "lenient";
     static final String LAZY_LOAD_BUNDLES = "lazyLoadBundles";
     static final String CACHE_BUNDLES = "cacheBundles";
+    static final String CACHE_BUNDLES_MAX_SIZE = "cacheBundlesMaxSize";
+    static final String PREFETCH_BUNDLES = "prefetchBundles";
+    static final String PREFETCH_BUNDLES_POOL_SIZE = "prefetchBundlesPoolSize";
+    static final String WARM_UP_VALIDATION = "warmUpValidation";
     static final String HTTP_CLIENT_TYPE = "httpClient";
     static final String CONSUMER_SELECTOR = "consumerSelector";
     static final String SORT = "sort";
@@ -102,6 +106,7 @@ public class FhirEndpointConfiguration<AuditDatasetType extends FhirAuditDataset
      * If this is true, sorting is executed in the BundleProvider if _sort parameters are provided. The sorting logic is expected to
      * be implemented in {@link org.openehealth.ipf.commons.ihe.fhir.FhirSearchParameters} implementations. If this is false,
      * the Camel route is expected to return sorted results if the query has requested this.
+     * If {@link #lazyLoadBundles} is true, only each fetched range of results is sorted.
      */
     @Getter
     @UriParam
@@ -121,6 +126,42 @@ public class FhirEndpointConfiguration<AuditDatasetType extends FhirAuditDataset
     @UriParam
     private final boolean cacheBundles;
 
+    /**
+     * Only considered if {@link #cacheBundles} is true. Maximal number of resources cached per paging request,
+     * the least recently used ranges of results are evicted first. 0 means no limit.
+     */
+    @Getter
+    @UriParam
+    private final int cacheBundlesMaxSize;
+
+    /**
+     * Only considered if {@link #cacheBundles} is true. After a page of results has been requested,
+     * the following page is fetched in the background. The route is then called from a thread of a separate pool,
+     * with a copy of the headers of the original request, but without any thread-bound context of the request thread
+     * (e.g. a security context). Prefetching is skipped if all threads of the pool are busy.
+     */
+    @Getter
+    @UriParam
+    private final boolean prefetchBundles;
+
+    /**
+     * Only considered if {@link #prefetchBundles} is true. Number of threads used for prefetching results,
+     * shared by all paging requests of the consumer. Defaults to 4.
+     */
+    @Getter
+    @UriParam
+    private final int prefetchBundlesPoolSize;
+
+    /**
+     * If this is true, the model validator of the FHIR transaction (see {@link FhirCamelValidators#MODEL}) is
+     * initialized when the endpoint is started, so that profiles are not loaded while processing the first request.
+     * This prolongs the start of the endpoint and loads the profiles even if the route never validates requests.
+     * Defaults to false, i.e. the validator is initialized when the first request is validated.
+     */
+    @Getter
+    @UriParam
+    private final boolean warmUpValidation;
+
     protected FhirEndpointConfiguration(FhirComponent<AuditDatasetType> component, String path, Map<String, Object> parameters) throws Exception {
         super(component, parameters);
 
@@ -138,6 +179,14 @@ public class FhirEndpointConfiguration<AuditDatasetType extends FhirAuditDataset
                 parameters, LAZY_LOAD_BUNDLES, Boolean.class, false);
         this.cacheBundles = component.getAndRemoveParameter(
                 parameters, CACHE_BUNDLES, Boolean.class, true);
+        this.cacheBundlesMaxSize = component.getAndRemoveParameter(
+                parameters, CACHE_BUNDLES_MAX_SIZE, Integer.class, 0);
+        this.prefetchBundles = component.getAndRemoveParameter(
+                parameters, PREFETCH_BUNDLES, Boolean.class, false);
+        this.prefetchBundlesPoolSize = component.getAndRemoveParameter(
+                parameters, PREFETCH_BUNDLES_POOL_SIZE, Integer.class, 4);
+        this.warmUpValidation = component.getAndRemoveParameter(
+                parameters, WARM_UP_VALIDATION, Boolean.class, false);
         this.sort = component.getAndRemoveParameter(
                 parameters, SORT, Boolean.class, false);
         this.consumerSelector = component.getAndRemoveOrResolveReferenceParameter(
@@ -44,9 +44,14 @@ public class Iti68Component extends ServletComponent implements InterceptableCom
 
     @Override
     protected Endpoint createEndpoint(String uri, String remaining, Map<String, Object> parameters) throws Exception {
+        var customHttpBinding = parameters.containsKey("httpBinding");
         var endpoint = (Iti68Endpoint)super.createEndpoint(uri, remaining, parameters);
         // Ensure that the audit/auditContext parameter is evaluated
         endpoint.setConfig(new AuditableEndpointConfiguration(this, parameters));
+        // Stream documents and support conditional and range requests unless configured otherwise
+        if (!customHttpBinding) {
+            endpoint.setHttpBinding(new Iti68HttpBinding(endpoint));
+        }
         return endpoint;
     }
 
@@ -0,0 +1,341 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.ipf.platform.camel.ihe.fhir.iti68;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.http.common.DefaultHttpBinding;
+import org.apache.camel.http.common.HttpCommonEndpoint;
+import org.apache.camel.http.common.HttpMessage;
+import org.apache.camel.util.IOHelper;
+
+import javax.activation.DataHandler;
+import javax.activation.FileDataSource;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+/**
+ * HTTP binding for ITI-68 endpoints which streams the retrieved document to the client and supports
+ * conditional and partial GET requests.
+ * <p>
+ * The route may return the document as {@link File}, {@link Path}, {@link DataHandler}, {@link InputStream}
+ * or byte array. The document is never loaded into memory as a whole: files are read directly at the
+ * requested offset, other sources are skipped up to it.
+ * <ul>
+ * <li>An <code>ETag</code> header set by the route is used as entity tag. For files, a weak entity tag
+ * is derived from size and modification date otherwise. For byte arrays, a weak entity tag is derived
+ * from size and content, but only if the request is conditional or partial.</li>
+ * <li><code>If-None-Match</code> and <code>If-Modified-Since</code> requests are answered with
+ * <code>304 Not Modified</code> if the document has not changed.</li>
+ * <li>A single byte range requested in the <code>Range</code> header is answered with
+ * <code>206 Partial Content</code>, provided that the document size is known. For input streams and
+ * data handlers, the size can be provided by the route in the <code>Content-Length</code> header.
+ * Multiple ranges are not supported, the whole document is returned in this case.</li>
+ * </ul>
+ *
+ * @since 4.5
+ */
+public class Iti68HttpBinding extends DefaultHttpBinding {
+
+    private static final Pattern RANGE_PATTERN = Pattern.compile("bytes=(\\d*)-(\\d*)");
+    private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+
+    public Iti68HttpBinding(HttpCommonEndpoint endpoint) {
+        super(endpoint);
+    }
+
+    @Override
+    public void doWriteResponse(Message message, HttpServletResponse response, Exchange exchange) throws IOException {
+        var httpMessage = exchange.getIn(HttpMessage.class);
+        var responseCode = message.getHeader(Exchange.HTTP_RESPONSE_CODE, Integer.class);
+        var request = httpMessage != null ? httpMessage.getRequest() : null;
+        var document = (request != null && (responseCode == null || responseCode == HttpServletResponse.SC_OK))
+                ? Document.of(message, isConditionalOrPartial(request))
+                : null;
+        if (document == null) {
+            super.doWriteResponse(message, response, exchange);
+            return;
+        }
+
+        for (var header : new String[]{"Range", "If-Range", "If-None-Match", "If-Modified-Since"}) {
+            message.removeHeader(header);
+        }
+        message.removeHeader(Exchange.CONTENT_LENGTH);
+        if (document.etag != null) {
+            message.setHeader("ETag", document.etag);
+        }
+        if (document.lastModified > 0) {
+            message.setHeader("Last-Modified", HTTP_DATE.format(Instant.ofEpochMilli(document.lastModified)));
+        }
+
+        if (isNotModified(request, document)) {
+            document.discard();
+            message.setHeader(Exchange.HTTP_RESPONSE_CODE, HttpServletResponse.SC_NOT_MODIFIED);
+            message.setBody(null);
+        } else if (document.length >= 0) {
+            message.setHeader("Accept-Ranges", "bytes");
+            var range = requestedRange(request, document);
+            if (range == null) {
+                message.setBody(document.open(0, document.length));
+                response.setContentLengthLong(document.length);
+            } else if (range.length == 0) {
+                document.discard();
+                message.setHeader(Exchange.HTTP_RESPONSE_CODE, HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                message.setHeader("Content-Range", "bytes */" + document.length);
+                message.setBody(null);
+            } else {
+                message.setHeader(Exchange.HTTP_RESPONSE_CODE, HttpServletResponse.SC_PARTIAL_CONTENT);
+                message.setHeader("Content-Range",
+                        "bytes " + range[0] + "-" + (range[1] - 1) + "/" + document.length);
+                message.setBody(document.open(range[0], range[1] - range[0]));
+                response.setContentLengthLong(range[1] - range[0]);
+            }
+        }
+        super.doWriteResponse(message, response, exchange);
+    }
+
+    private static boolean isConditionalOrPartial(HttpServletRequest request) {
+        return request.getHeader("If-None-Match") != null
+                || request.getHeader("If-Modified-Since") != null
+                || request.getHeader("Range") != null;
+    }
+
+    private static boolean isNotModified(HttpServletRequest request, Document document) {
+        var ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            return document.etag != null && matches(ifNoneMatch, document.etag);
+        }
+        if (document.lastModified > 0) {
+            try {
+                var ifModifiedSince = request.getDateHeader("If-Modified-Since");
+                return ifModifiedSince >= 0 && document.lastModified / 1000 <= ifModifiedSince / 1000;
+            } catch (IllegalArgumentException e) {
+                // malformed date, ignore the condition
+            }
+        }
+        return false;
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        var opaqueTag = opaqueTag(etag);
+        return Arrays.stream(ifNoneMatch.split(","))
+                .map(String::trim)
+                .anyMatch(tag -> "*".equals(tag) || opaqueTag.equals(opaqueTag(tag)));
+    }
+
+    private static String opaqueTag(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    /**
+     * @return <code>null</code> if the whole document shall be returned, an empty array if the requested range
+     * is not satisfiable, or start (inclusive) and end (exclusive) offset of the requested range otherwise
+     */
+    private static long[] requestedRange(HttpServletRequest request, Document document) {
+        var rangeHeader = request.getHeader("Range");
+        if (rangeHeader == null) {
+            return null;
+        }
+        var ifRange = request.getHeader("If-Range");
+        if (ifRange != null && (document.etag == null || document.etag.startsWith("W/") || !ifRange.equals(document.etag))) {
+            return null;
+        }
+        return parseRange(rangeHeader.trim(), document.length);
+    }
+
+    static long[] parseRange(String rangeHeader, long length) {
+        var matcher = RANGE_PATTERN.matcher(rangeHeader);
+        if (!matcher.matches() || (matcher.group(1).isEmpty() && matcher.group(2).isEmpty())) {
+            return null;
+        }
+        try {
+            long start, end;
+            if (matcher.group(1).isEmpty()) {
+                // suffix range: the last n bytes
+                start = Math.max(length - Long.parseLong(matcher.group(2)), 0);
+                end = length;
+            } else {
+                start = Long.parseLong(matcher.group(1));
+                end = matcher.group(2).isEmpty() ? length : Math.min(Long.parseLong(matcher.group(2)) + 1, length);
+            }
+            return (start < end) ? new long[]{start, end} : new long[0];
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Document to be sent, along with the metadata required for conditional and partial requests.
+     */
+    private static final class Document {
+
+        private final Object body;
+        private final long length;
+        private final long lastModified;
+        private final String etag;
+
+        private Document(Object body, long length, long lastModified, String etag) {
+            this.body = body;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.etag = etag;
+        }
+
+        /**
+         * @param deriveContentTag whether an entity tag shall be derived from the content of byte arrays,
+         *                         which requires reading the whole array
+         */
+        static Document of(Message message, boolean deriveContentTag) throws IOException {
+            var body = message.getBody();
+            var etag = message.getHeader("ETag", String.class);
+            if (body instanceof DataHandler && ((DataHandler) body).getDataSource() instanceof FileDataSource) {
+                body = ((FileDataSource) ((DataHandler) body).getDataSource()).getFile();
+            }
+            if (body instanceof File) {
+                body = ((File) body).toPath();
+            }
+            if (body instanceof Path) {
+                var path = (Path) body;
+                var length = Files.size(path);
+                var lastModified = Files.getLastModifiedTime(path).toMillis();
+                return new Document(path, length, lastModified,
+                        etag != null ? etag : "W/\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"");
+            }
+            if (body instanceof byte[]) {
+                var bytes = (byte[]) body;
+                if (etag == null && deriveContentTag) {
+                    etag = "W/\"" + Integer.toHexString(bytes.length) + "-" + Integer.toHexString(Arrays.hashCode(bytes)) + "\"";
+                }
+                return new Document(bytes, bytes.length, -1L, etag);
+            }
+            if (body instanceof DataHandler || body instanceof InputStream) {
+                var length = message.getHeader(Exchange.CONTENT_LENGTH, Long.class);
+                return new Document(body, length != null ? length : -1L, -1L, etag);
+            }
+            return null;
+        }
+
+        InputStream open(long offset, long count) throws IOException {
+            InputStream in;
+            if (body instanceof Path) {
+                // skipping is implemented by seeking on file channels
+                in = Files.newInputStream((Path) body);
+            } else if (body instanceof byte[]) {
+                in = new ByteArrayInputStream((byte[]) body);
+            } else if (body instanceof DataHandler) {
+                in = ((DataHandler) body).getInputStream();
+            } else {
+                in = (InputStream) body;
+            }
+            try {
+                var remaining = offset;
+                while (remaining > 0) {
+                    var skipped = in.skip(remaining);
+                    if (skipped <= 0) {
+                        if (in.read() < 0) {
+                            throw new IOException("Document ends before offset " + offset);
+                        }
+                        skipped = 1;
+                    }
+                    remaining -= skipped;
+                }
+            } catch (IOException e) {
+                IOHelper.close(in);
+                throw e;
+            }
+            return new RangeInputStream(in, count);
+        }
+
+        void discard() {
+            if (body instanceof InputStream) {
+                IOHelper.close((InputStream) body);
+            } else if (body instanceof DataHandler) {
+                // releases streaming data sources, e.g. attachments of a retrieved document
+                try {
+                    IOHelper.close(((DataHandler) body).getInputStream());
+                } catch (IOException e) {
+                    // nothing to release
+                }
+            }
+        }
+    }
+
+    /**
+     * Input stream returning at most the given number of bytes from the underlying stream.
+     */
+    private static final class RangeInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        RangeInputStream(InputStream in, long count) {
+            super(in);
+            this.remaining = count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            var b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            var n = super.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            var skipped = super.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -26,6 +26,7 @@ import org.openehealth.ipf.platform.camel.ihe.atna.AuditableComponent;
 import org.openehealth.ipf.platform.camel.ihe.atna.AuditableEndpointConfiguration;
 import org.openehealth.ipf.platform.camel.ihe.core.InterceptableComponent;
 import org.openehealth.ipf.platform.camel.ihe.fhir.iti68.Iti68Endpoint;
+import org.openehealth.ipf.platform.camel.ihe.fhir.iti68.Iti68HttpBinding;
 
 import java.net.URI;
 import java.util.Map;
@@ -45,9 +46,14 @@ public class Iti68BinaryComponent extends ServletComponent implements Intercepta
 
     @Override
     protected Endpoint createEndpoint(String uri, String remaining, Map<String, Object> parameters) throws Exception {
+        var customHttpBinding = parameters.containsKey("httpBinding");
         var endpoint = (Iti68BinaryEndpoint)super.createEndpoint(uri, remaining, parameters);
         // Ensure that the audit/auditContext parameter is evaluated
         endpoint.setConfig(new AuditableEndpointConfiguration(this, parameters));
+        // Stream documents and support conditional and range requests unless configured otherwise
+        if (!customHttpBinding) {
+            endpoint.setHttpBinding(new Iti68HttpBinding(endpoint));
+        }
         return endpoint;
     }
 
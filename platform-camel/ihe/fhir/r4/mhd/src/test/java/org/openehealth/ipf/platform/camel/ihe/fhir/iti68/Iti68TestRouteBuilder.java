@@ -35,6 +35,7 @@ public class Iti68TestRouteBuilder extends RouteBuilder {
     static final String DOCUMENT_UNIQUE_ID = "documentUniqueId";
     static final String HOME_COMMUNITY_ID = "homeCommunityId";
     static final String REPOSITORY_ID = "repositoryId";
+    static final String ETAG = "\"document-1\"";
 
     static final byte[] DATA;
 
@@ -56,6 +57,10 @@ public class Iti68TestRouteBuilder extends RouteBuilder {
                 .setHeader(Exchange.HTTP_METHOD, constant(HttpMethods.GET))
                 .toF("http:localhost:%d", StandardTestContainer.DEMO_APP_PORT);
 
+        from("direct:conditional")
+                .setHeader(Exchange.HTTP_METHOD, constant(HttpMethods.GET))
+                .toF("http:localhost:%d?throwExceptionOnFailure=false", StandardTestContainer.DEMO_APP_PORT);
+
         from("mhd-iti68:download?audit=true")
                 .errorHandler(noErrorHandler())
                 .transform(new Iti68Responder());
@@ -71,6 +76,8 @@ public class Iti68TestRouteBuilder extends RouteBuilder {
             auditDataset.setHomeCommunityId(HOME_COMMUNITY_ID);
             auditDataset.setRepositoryUniqueId(REPOSITORY_ID);
             if (!returnError) {
+                exchange.getIn().setHeader(Exchange.CONTENT_LENGTH, DATA.length);
+                exchange.getIn().setHeader("ETag", ETAG);
                 return new ByteArrayInputStream(DATA);
             } else {
                 throw new RuntimeException("Something went wrong");
@@ -17,12 +17,15 @@
 package org.openehealth.ipf.platform.camel.ihe.fhir.iti68;
 
 import ca.uhn.fhir.rest.gclient.ICriterion;
+import org.apache.camel.Exchange;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.openehealth.ipf.commons.audit.codes.*;
 import org.openehealth.ipf.commons.audit.utils.AuditUtils;
 import org.openehealth.ipf.commons.ihe.fhir.audit.codes.FhirEventTypeCode;
 
+import java.util.Arrays;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -38,6 +41,32 @@ public class TestIti68Success extends AbstractTestIti68 {
     }
 
 
+    @Test
+    public void testRetrieveDocumentRange() {
+        var response = producerTemplate.request("direct:conditional",
+                exchange -> exchange.getIn().setHeader("Range", "bytes=100-199")).getMessage();
+        assertEquals(206, response.getHeader(Exchange.HTTP_RESPONSE_CODE, Integer.class));
+        assertEquals("bytes 100-199/" + Iti68TestRouteBuilder.DATA.length, response.getHeader("Content-Range"));
+        assertEquals(Iti68TestRouteBuilder.ETAG, response.getHeader("ETag"));
+        assertArrayEquals(Arrays.copyOfRange(Iti68TestRouteBuilder.DATA, 100, 200), response.getBody(byte[].class));
+    }
+
+    @Test
+    public void testRetrieveDocumentRangeNotSatisfiable() {
+        var response = producerTemplate.request("direct:conditional",
+                exchange -> exchange.getIn().setHeader("Range", "bytes=20000-")).getMessage();
+        assertEquals(416, response.getHeader(Exchange.HTTP_RESPONSE_CODE, Integer.class));
+        assertEquals("bytes */" + Iti68TestRouteBuilder.DATA.length, response.getHeader("Content-Range"));
+    }
+
+    @Test
+    public void testRetrieveDocumentNotModified() {
+        var response = producerTemplate.request("direct:conditional",
+                exchange -> exchange.getIn().setHeader("If-None-Match", Iti68TestRouteBuilder.ETAG)).getMessage();
+        assertEquals(304, response.getHeader(Exchange.HTTP_RESPONSE_CODE, Integer.class));
+        assertEquals(Iti68TestRouteBuilder.ETAG, response.getHeader("ETag"));
+    }
+
     @Test
     public void testRetrieveDocument() {
 
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.ipf.platform.camel.ihe.hl7v2;
+
+import ca.uhn.hl7v2.HL7Exception;
+import ca.uhn.hl7v2.model.Message;
+import ca.uhn.hl7v2.parser.Parser;
+import ca.uhn.hl7v2.preparser.PreParser;
+import org.apache.camel.Exchange;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Per-exchange view on an incoming HL7v2 request string, so that the consumer-side interceptors
+ * parse the request at most once. Single fields like MSH-9 or MSH-14 are read by means of the
+ * HAPI {@link PreParser}, without parsing the whole message; the complete HAPI message is only
+ * created when it is requested for the first time.
+ * <p>
+ * The first field lookup also reads the header fields used by the consumer-side interceptors
+ * (see {@link #HEADER_FIELDS}), so that the request is pre-parsed only once on its way through the
+ * interceptor chain.
+ * <p>
+ * The context is bound to the request string it has been created for. When an interceptor replaces
+ * the body of the exchange by another string (e.g. after defragmentation), a new context is created.
+ * </p>
+ *
+ * @since 4.5
+ */
+public class Hl7v2ParsingContext {
+
+    /**
+     * Name of the exchange property containing the context
+     */
+    public static final String EXCHANGE_PROPERTY = "ipf.hl7v2.ParsingContext";
+
+    /**
+     * Fields which are read along with the first requested ones: sending application (MSH-3),
+     * message type (MSH-9), version (MSH-12), continuation pointers (MSH-14, DSC-1) and
+     * continuation style (DSC-2)
+     */
+    static final String[] HEADER_FIELDS = {
+            "MSH-3-1", "MSH-3-2", "MSH-3-3", "MSH-9-1", "MSH-9-2", "MSH-9-3", "MSH-12", "MSH-14", "DSC-1", "DSC-2"};
+
+    private final String messageString;
+    private final Map<String, String> fields = new HashMap<>();
+    private Parser parser;
+    private Message message;
+
+    protected Hl7v2ParsingContext(String messageString) {
+        this.messageString = messageString;
+    }
+
+    /**
+     * Returns the context for the current body of the exchange's in-message, creating it if necessary.
+     *
+     * @param exchange Camel exchange
+     * @return parsing context
+     */
+    public static Hl7v2ParsingContext of(Exchange exchange) {
+        var messageString = exchange.getIn().getBody(String.class);
+        var context = exchange.getProperty(EXCHANGE_PROPERTY, Hl7v2ParsingContext.class);
+        if (context == null || !Objects.equals(context.messageString, messageString)) {
+            context = new Hl7v2ParsingContext(messageString);
+            exchange.setProperty(EXCHANGE_PROPERTY, context);
+        }
+        return context;
+    }
+
+    /**
+     * Removes the context from the exchange, e.g. when the message has been handed over to the route
+     * and might be modified there.
+     *
+     * @param exchange Camel exchange
+     */
+    public static void remove(Exchange exchange) {
+        exchange.removeProperty(EXCHANGE_PROPERTY);
+    }
+
+    /**
+     * @return the request string this context has been created for
+     */
+    public String getMessageString() {
+        return messageString;
+    }
+
+    /**
+     * Returns field values without parsing the message, see {@link PreParser#getFields(String, String...)}.
+     * Fields that have been requested before are not looked up again.
+     *
+     * @param paths Terser-like paths of the fields, e.g. "MSH-9-1"
+     * @return field values, null for fields which are not present
+     * @throws HL7Exception if the message cannot be pre-parsed
+     */
+    public String[] getFields(String... paths) throws HL7Exception {
+        var missing = new ArrayList<String>(paths.length + HEADER_FIELDS.length);
+        if (fields.isEmpty()) {
+            missing.addAll(Arrays.asList(HEADER_FIELDS));
+        }
+        for (var path : paths) {
+            if (!fields.containsKey(path) && !missing.contains(path)) {
+                missing.add(path);
+            }
+        }
+        if (!missing.isEmpty()) {
+            var missingPaths = missing.toArray(new String[0]);
+            var values = preParse(messageString, missingPaths);
+            for (var i = 0; i < missingPaths.length; i++) {
+                fields.put(missingPaths[i], values[i]);
+            }
+        }
+        var result = new String[paths.length];
+        for (var i = 0; i < paths.length; i++) {
+            result[i] = fields.get(paths[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Reads field values from the request string, invoked at most once per {@link #getFields(String...)} call.
+     *
+     * @param messageString request string
+     * @param paths         Terser-like paths of the fields
+     * @return field values
+     * @throws HL7Exception if the message cannot be pre-parsed
+     */
+    protected String[] preParse(String messageString, String... paths) throws HL7Exception {
+        return PreParser.getFields(messageString, paths);
+    }
+
+    /**
+     * Returns the HAPI message, which is parsed when this method is called for the first time
+     * (or with a different parser).
+     *
+     * @param parser HL7v2 parser
+     * @return parsed message
+     * @throws HL7Exception if the message cannot be parsed
+     */
+    public Message getMessage(Parser parser) throws HL7Exception {
+        if (message == null || this.parser != parser) {
+            message = parser.parse(messageString);
+            this.parser = parser;
+        }
+        return message;
+    }
+}
@@ -23,6 +23,7 @@ import org.openehealth.ipf.modules.hl7.message.MessageUtils;
 import org.openehealth.ipf.platform.camel.ihe.core.InterceptorSupport;
 import org.openehealth.ipf.platform.camel.ihe.hl7v2.HL7v2Endpoint;
 import org.openehealth.ipf.platform.camel.ihe.hl7v2.Hl7v2MarshalUtils;
+import org.openehealth.ipf.platform.camel.ihe.hl7v2.Hl7v2ParsingContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -53,12 +54,14 @@ public class ConsumerMarshalInterceptor extends InterceptorSupport {
         Message originalMessage;
         var parser = getEndpoint(HL7v2Endpoint.class).getHl7v2TransactionConfiguration().getParser();
 
-        // This should already be a string
+        // This should already be a string. Preceding interceptors may have parsed it already.
         var inMessage = exchange.getIn();
-        var originalString = inMessage.getBody(String.class);
+        var parsingContext = Hl7v2ParsingContext.of(exchange);
+        var originalString = parsingContext.getMessageString();
+        Hl7v2ParsingContext.remove(exchange);
 
         try {
-            originalMessage = parser.parse(originalString);
+            originalMessage = parsingContext.getMessage(parser);
         } catch (HL7Exception e) {
             LOG.error("Unmarshalling failed, message processing not possible ({}). Creating a default NAK response", e.getMessage());
             LOG.debug("Exception details: ", e);
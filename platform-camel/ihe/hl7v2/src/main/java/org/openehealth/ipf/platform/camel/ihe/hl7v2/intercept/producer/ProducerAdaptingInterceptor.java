@@ -15,9 +15,11 @@
  */
 package org.openehealth.ipf.platform.camel.ihe.hl7v2.intercept.producer;
 
+import org.apache.camel.AsyncCallback;
 import org.apache.camel.Exchange;
 import org.apache.camel.ExchangePattern;
 import org.apache.commons.lang3.ClassUtils;
+import org.openehealth.ipf.platform.camel.ihe.core.AsyncInterceptor;
 import org.openehealth.ipf.platform.camel.ihe.core.InterceptorSupport;
 import org.openehealth.ipf.platform.camel.ihe.hl7v2.HL7v2Endpoint;
 import org.openehealth.ipf.platform.camel.ihe.hl7v2.Hl7v2AdaptingException;
@@ -29,7 +31,7 @@ import org.openehealth.ipf.platform.camel.ihe.hl7v2.Hl7v2MarshalUtils;
  *
  * @author Dmytro Rud
  */
-public class ProducerAdaptingInterceptor extends InterceptorSupport {
+public class ProducerAdaptingInterceptor extends InterceptorSupport implements AsyncInterceptor {
 
     private final String charsetName;
 
@@ -61,6 +63,25 @@ public class ProducerAdaptingInterceptor extends InterceptorSupport {
      */
     @Override
     public void process(Exchange exchange) throws Exception {
+        adaptRequest(exchange);
+
+        // run the route
+        getWrappedProcessor().process(exchange);
+    }
+
+    @Override
+    public boolean process(Exchange exchange, AsyncCallback callback) {
+        try {
+            adaptRequest(exchange);
+        } catch (Exception e) {
+            exchange.setException(e);
+            callback.done(true);
+            return true;
+        }
+        return processWrapped(exchange, callback);
+    }
+
+    private void adaptRequest(Exchange exchange) throws Exception {
         if (charsetName != null) {
             exchange.setProperty(Exchange.CHARSET_NAME, charsetName);
         }
@@ -76,8 +97,5 @@ public class ProducerAdaptingInterceptor extends InterceptorSupport {
 
         exchange.getIn().setBody(msg);
         exchange.setPattern(ExchangePattern.InOut);
-        
-        // run the route
-        getWrappedProcessor().process(exchange);
     }
 }
@@ -15,7 +15,9 @@
  */
 package org.openehealth.ipf.platform.camel.ihe.hl7v2.intercept.producer;
 
+import org.apache.camel.AsyncCallback;
 import org.apache.camel.Exchange;
+import org.openehealth.ipf.platform.camel.ihe.core.AsyncInterceptor;
 import org.openehealth.ipf.platform.camel.ihe.core.InterceptorSupport;
 import org.openehealth.ipf.platform.camel.ihe.hl7v2.HL7v2Endpoint;
 import org.openehealth.ipf.platform.camel.ihe.hl7v2.Hl7v2MarshalUtils;
@@ -26,7 +28,7 @@ import org.openehealth.ipf.platform.camel.ihe.hl7v2.Hl7v2MarshalUtils;
  *
  * @author Dmytro Rud
  */
-public class ProducerMarshalInterceptor extends InterceptorSupport {
+public class ProducerMarshalInterceptor extends InterceptorSupport implements AsyncInterceptor {
 
     private final String charsetName;
 
@@ -39,16 +41,43 @@ public class ProducerMarshalInterceptor extends InterceptorSupport {
      */
     @Override
     public void process(Exchange exchange) throws Exception {
-        // marshal
+        marshal(exchange);
+
+        // run the route
+        getWrappedProcessor().process(exchange);
+
+        unmarshal(exchange);
+    }
+
+    @Override
+    public boolean process(Exchange exchange, AsyncCallback callback) {
+        try {
+            marshal(exchange);
+        } catch (Exception e) {
+            exchange.setException(e);
+            callback.done(true);
+            return true;
+        }
+        return processWrapped(exchange, doneSync -> {
+            if (exchange.getException() == null) {
+                try {
+                    unmarshal(exchange);
+                } catch (Exception e) {
+                    exchange.setException(e);
+                }
+            }
+            callback.done(doneSync);
+        });
+    }
+
+    private void marshal(Exchange exchange) throws Exception {
         var message = exchange.getIn();
         message.setBody(Hl7v2MarshalUtils.convertMessageToByteArray(
                 message,
                 exchange.getProperty(Exchange.CHARSET_NAME, charsetName, String.class)));
+    }
 
-        // run the route
-        getWrappedProcessor().process(exchange);
-
-        // unmarshal
+    private void unmarshal(Exchange exchange) throws Exception {
         var hl7Message = Hl7v2MarshalUtils.convertBodyToMessage(
                 exchange.getMessage(), charsetName,
                 getEndpoint(HL7v2Endpoint.class).getHl7v2TransactionConfiguration().getParser());
@@ -15,8 +15,12 @@
  */
 package org.openehealth.ipf.platform.camel.ihe.hl7v2.intercept.producer;
 
+import ca.uhn.hl7v2.model.Message;
+import org.apache.camel.AsyncCallback;
 import org.apache.camel.Exchange;
+import org.openehealth.ipf.platform.camel.ihe.core.AsyncInterceptor;
 import org.openehealth.ipf.platform.camel.ihe.core.InterceptorSupport;
+import org.openehealth.ipf.platform.camel.ihe.hl7v2.HL7v2Endpoint;
 import org.openehealth.ipf.platform.camel.ihe.hl7v2.intercept.AcceptanceInterceptorUtils;
 
 
@@ -24,10 +28,23 @@ import org.openehealth.ipf.platform.camel.ihe.hl7v2.intercept.AcceptanceIntercep
  * Producer-side interceptor for request message acceptance checking.
  * @author Dmytro Rud
  */
-public class ProducerRequestAcceptanceInterceptor extends InterceptorSupport {
+public class ProducerRequestAcceptanceInterceptor extends InterceptorSupport implements AsyncInterceptor {
 
     @Override
     public void process(Exchange exchange) throws Exception {
         AcceptanceInterceptorUtils.processRequest(this, exchange);
     }
+
+    @Override
+    public boolean process(Exchange exchange, AsyncCallback callback) {
+        try {
+            var config = getEndpoint(HL7v2Endpoint.class).getHl7v2TransactionConfiguration();
+            config.checkRequestAcceptance(exchange.getIn().getBody(Message.class));
+        } catch (Exception e) {
+            exchange.setException(e);
+            callback.done(true);
+            return true;
+        }
+        return processWrapped(exchange, callback);
+    }
 }
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.ipf.platform.camel.ihe.hl7v2;
+
+import ca.uhn.hl7v2.DefaultHapiContext;
+import ca.uhn.hl7v2.HL7Exception;
+import ca.uhn.hl7v2.model.Message;
+import ca.uhn.hl7v2.parser.PipeParser;
+import ca.uhn.hl7v2.preparser.PreParser;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Tests for {@link Hl7v2ParsingContext}.
+ */
+public class Hl7v2ParsingContextTest {
+
+    private static final String REQUEST =
+            "MSH|^~\\&|MESA_PD_CONSUMER|MESA_DEPARTMENT|MESA_PD_SUPPLIER|PIM|20081031112704||QBP^Q22|324406609|P|2.5|||ER\r" +
+            "QPD|IHE PDQ Query|1402274727|@PID.3.1^12345678~@PID.3.4.1^HZLN\r" +
+            "RCP|I|10^RD\r" +
+            "DSC|1\r";
+
+    private Exchange exchange;
+
+    @BeforeEach
+    public void setUp() {
+        exchange = new DefaultExchange(new DefaultCamelContext());
+    }
+
+    @Test
+    public void testFieldsArePreParsedOnce() throws Exception {
+        var context = install(REQUEST);
+        assertSame(context, Hl7v2ParsingContext.of(exchange));
+
+        var fields = context.getFields("MSH-14", "DSC-1", "DSC-2");
+        assertArrayEquals(PreParser.getFields(REQUEST, "MSH-14", "DSC-1", "DSC-2"), fields);
+        assertEquals(1, context.preParsed);
+
+        // header fields have been read along with the first ones
+        var header = Hl7v2ParsingContext.of(exchange).getFields("MSH-9-1", "MSH-9-2", "MSH-12", "MSH-3-1");
+        assertArrayEquals(new String[]{"QBP", "Q22", "2.5", "MESA_PD_CONSUMER"}, header);
+        assertEquals(1, context.preParsed);
+
+        // other fields are read on demand
+        assertArrayEquals(new String[]{"I"}, context.getFields("RCP-1"));
+        assertArrayEquals(new String[]{"I", "QBP"}, context.getFields("RCP-1", "MSH-9-1"));
+        assertEquals(2, context.preParsed);
+    }
+
+    @Test
+    public void testMessageIsParsedOnce() throws Exception {
+        var parser = new CountingParser();
+        exchange.getIn().setBody(REQUEST);
+        var context = Hl7v2ParsingContext.of(exchange);
+
+        var message = context.getMessage(parser);
+        assertSame(message, Hl7v2ParsingContext.of(exchange).getMessage(parser));
+        assertEquals(1, parser.parsed);
+
+        // the same result as parsing the request string directly
+        assertEquals(new DefaultHapiContext().getPipeParser().parse(REQUEST).encode(), message.encode());
+    }
+
+    @Test
+    public void testContextIsDroppedWhenBodyIsReplaced() throws Exception {
+        var context = install(REQUEST);
+        context.getFields("MSH-9-1");
+
+        // equal content, e.g. after a type conversion: context is kept
+        exchange.getIn().setBody(new String(REQUEST.toCharArray()));
+        assertSame(context, Hl7v2ParsingContext.of(exchange));
+
+        var replacement = REQUEST.replace("QBP^Q22", "QBP^Q21");
+        exchange.getIn().setBody(replacement);
+        var replacementContext = Hl7v2ParsingContext.of(exchange);
+        assertNotSame(context, replacementContext);
+        assertSame(replacement, replacementContext.getMessageString());
+        assertArrayEquals(new String[]{"Q21"}, replacementContext.getFields("MSH-9-2"));
+        assertSame(replacementContext, exchange.getProperty(Hl7v2ParsingContext.EXCHANGE_PROPERTY));
+
+        Hl7v2ParsingContext.remove(exchange);
+        assertNull(exchange.getProperty(Hl7v2ParsingContext.EXCHANGE_PROPERTY));
+    }
+
+    private CountingParsingContext install(String request) {
+        exchange.getIn().setBody(request);
+        var context = new CountingParsingContext(request);
+        exchange.setProperty(Hl7v2ParsingContext.EXCHANGE_PROPERTY, context);
+        return context;
+    }
+
+    private static class CountingParsingContext extends Hl7v2ParsingContext {
+
+        private int preParsed;
+
+        CountingParsingContext(String messageString) {
+            super(messageString);
+        }
+
+        @Override
+        protected String[] preParse(String messageString, String... paths) throws HL7Exception {
+            preParsed++;
+            return super.preParse(messageString, paths);
+        }
+    }
+
+    private static class CountingParser extends PipeParser {
+
+        private int parsed;
+
+        @Override
+        public Message parse(String message) throws HL7Exception {
+            parsed++;
+            return super.parse(message);
+        }
+    }
+}
@@ -16,10 +16,13 @@
 package org.openehealth.ipf.platform.camel.ihe.hpd.iti58
 
 import org.apache.camel.builder.RouteBuilder
+import org.apache.cxf.binding.soap.SoapFault
 import org.openehealth.ipf.commons.ihe.hpd.controls.ControlUtils
 import org.openehealth.ipf.commons.ihe.hpd.stub.dsmlv2.*
 
 import javax.naming.ldap.PagedResultsControl
+import javax.xml.namespace.QName
+import java.util.concurrent.CountDownLatch
 
 import static org.openehealth.ipf.platform.camel.ihe.hpd.HpdCamelValidators.iti58RequestValidator
 import static org.openehealth.ipf.platform.camel.ihe.hpd.HpdCamelValidators.iti58ResponseValidator
@@ -33,6 +36,8 @@ class Iti58TestRouteBuilder extends RouteBuilder {
 
     static int paginationRequestNumber = 0
 
+    static volatile CountDownLatch slowRequestReceived = new CountDownLatch(1)
+
     void configure() throws Exception {
         from('hpd-iti58:hpd-service1?inInterceptors=#serverInLogger&outInterceptors=#serverOutLogger')
                 .process(iti58RequestValidator())
@@ -42,6 +47,19 @@ class Iti58TestRouteBuilder extends RouteBuilder {
                 }
                 .process(iti58ResponseValidator())
 
+        // responds after a delay, so that the request stays in flight for a while
+        from('hpd-iti58:hpd-service3')
+                .process {
+                    slowRequestReceived.countDown()
+                    Thread.sleep(1000)
+                    BatchRequest batchRequest = it.in.getMandatoryBody(BatchRequest.class)
+                    it.message.body = new BatchResponse(requestID: batchRequest.requestID)
+                }
+
+        // ends with a SOAP fault
+        from('hpd-iti58:hpd-service4')
+                .throwException(new SoapFault('SOAP fault in the test route', new QName('http://openehealth.org/ipf', 'soapfault')))
+
         from('hpd-iti58:hpd-service2?inInterceptors=#serverInLogger&outInterceptors=#serverOutLogger&supportPagination=true&paginationStorage=#paginationStorage&supportSorting=true')
         //.process(iti58RequestValidator())
                 .process {
@@ -16,6 +16,9 @@
 package org.openehealth.ipf.platform.camel.ihe.hpd.iti58
 
 import groovy.util.logging.Slf4j
+import org.apache.camel.Exchange
+import org.apache.camel.support.DefaultExchange
+import org.apache.camel.support.SynchronizationAdapter
 import org.apache.cxf.jaxb.JAXBDataBinding
 import org.apache.cxf.jaxb.io.DataReaderImpl
 import org.apache.cxf.staxutils.StaxUtils
@@ -29,11 +32,16 @@ import org.openehealth.ipf.commons.ihe.hpd.controls.ControlUtils
 import org.openehealth.ipf.commons.ihe.hpd.controls.sorting.SortControl2
 import org.openehealth.ipf.commons.ihe.hpd.stub.dsmlv2.*
 import org.openehealth.ipf.commons.xml.XmlUtils
+import org.openehealth.ipf.platform.camel.ihe.hpd.HpdQueryProducer
 import org.openehealth.ipf.platform.camel.ihe.ws.StandardTestContainer
 
 import javax.naming.ldap.PagedResultsControl
 import javax.naming.ldap.SortControl
 import javax.naming.ldap.SortKey
+import javax.xml.ws.soap.SOAPFaultException
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.TimeUnit
 
 /**
  * @author Dmytro Rud
@@ -45,6 +53,10 @@ class TestIti58 extends StandardTestContainer {
 
     final String SERVICE1 = "hpd-iti58://localhost:${port}/hpd-service1?inInterceptors=#clientInLogger&outInterceptors=#clientOutLogger"
     final String SERVICE2 = "hpd-iti58://localhost:${port}/hpd-service2?inInterceptors=#clientInLogger&outInterceptors=#clientOutLogger&supportPagination=true"
+    final String ASYNC_SERVICE1 = "hpd-iti58://localhost:${port}/hpd-service1?asyncInvocation=true"
+    final String ASYNC_SERVICE3 = "hpd-iti58://localhost:${port}/hpd-service3?asyncInvocation=true&maxInFlightRequests=1"
+    final String ASYNC_FAULTING_SERVICE = "hpd-iti58://localhost:${port}/hpd-service4?asyncInvocation=true&maxInFlightRequests=1"
+    final String ASYNC_UNREACHABLE_SERVICE = "hpd-iti58://localhost:1/hpd-service1?asyncInvocation=true&maxInFlightRequests=1"
 
 
     static void main(args) {
@@ -84,6 +96,94 @@ class TestIti58 extends StandardTestContainer {
         assert batchResponse.getBatchResponses().empty
     }
 
+    @Test
+    void testIti58AsyncInvocation() {
+        BatchResponse batchResponse = sendIt(ASYNC_SERVICE1, simpleBatchRequest('21'))
+        assert batchResponse.requestID == '21'
+        assert batchResponse.getBatchResponses().empty
+    }
+
+    @Test
+    void testIti58AsyncCallbackCompletion() {
+        def exchange = new DefaultExchange(camelContext)
+        exchange.in.body = simpleBatchRequest('22')
+        def completed = new CountDownLatch(1)
+        def future = producerTemplate.asyncCallback(ASYNC_SERVICE1, exchange, new SynchronizationAdapter() {
+            @Override
+            void onDone(Exchange done) {
+                completed.countDown()
+            }
+        })
+
+        assert completed.await(10, TimeUnit.SECONDS)
+        Exchange result = future.get(10, TimeUnit.SECONDS)
+        assert !result.exception
+        assert result.message.getBody(BatchResponse.class).requestID == '22'
+    }
+
+    @Test
+    void testIti58AsyncErrorPropagation() {
+        // the in-flight slot must be released after each failure
+        2.times {
+            def exchange = new DefaultExchange(camelContext)
+            exchange.in.body = simpleBatchRequest('23')
+            Exchange result = producerTemplate.send(ASYNC_UNREACHABLE_SERVICE, exchange)
+            assert result.exception
+            assert !(result.exception instanceof RejectedExecutionException)
+        }
+    }
+
+    @Test
+    void testIti58AsyncSoapFault() {
+        // the in-flight slot must be released after each fault
+        2.times {
+            def exchange = new DefaultExchange(camelContext)
+            exchange.in.body = simpleBatchRequest('28')
+            Exchange result = producerTemplate.send(ASYNC_FAULTING_SERVICE, exchange)
+            assert result.exception instanceof SOAPFaultException
+            assert result.exception.message.contains('SOAP fault in the test route')
+        }
+    }
+
+    @Test
+    void testIti58MaxInFlightRequests() {
+        Iti58TestRouteBuilder.slowRequestReceived = new CountDownLatch(1)
+        def pending = producerTemplate.asyncRequestBody(ASYNC_SERVICE3, simpleBatchRequest('24'), BatchResponse.class)
+        assert Iti58TestRouteBuilder.slowRequestReceived.await(10, TimeUnit.SECONDS)
+
+        // the limit is reached: fail fast instead of blocking the caller
+        def exchange = new DefaultExchange(camelContext)
+        exchange.in.body = simpleBatchRequest('25')
+        Exchange rejected = producerTemplate.send(ASYNC_SERVICE3, exchange)
+        assert rejected.exception instanceof RejectedExecutionException
+
+        assert pending.get(10, TimeUnit.SECONDS).requestID == '24'
+        assert sendIt(ASYNC_SERVICE3, simpleBatchRequest('26')).requestID == '26'
+    }
+
+    @Test
+    void testPaginatedQueryFallsBackToSynchronousInvocation() {
+        def producer = camelContext.getEndpoint(SERVICE2 + '&asyncInvocation=true').createProducer()
+        assert producer instanceof HpdQueryProducer
+        // pagination handler present: no asynchronous invocation, the client is not even touched
+        assert !producer.callServiceAsync(null, simpleBatchRequest('27'), null)
+    }
+
+    private static BatchRequest simpleBatchRequest(String requestId) {
+        return new BatchRequest(
+                requestID: requestId,
+                batchRequests: [
+                        new SearchRequest(
+                                requestID: requestId + '-1',
+                                dn: 'O=HPDTEST1,DC=HPD',
+                                scope: SearchRequest.SearchScope.WHOLE_SUBTREE,
+                                derefAliases: SearchRequest.DerefAliasesType.NEVER_DEREF_ALIASES,
+                                filter: new Filter(present: new AttributeDescription(name: 'uid')),
+                        ),
+                ],
+        )
+    }
+
     @Test
     void testIti58Controls() {
         BatchRequest batchRequest = new BatchRequest(
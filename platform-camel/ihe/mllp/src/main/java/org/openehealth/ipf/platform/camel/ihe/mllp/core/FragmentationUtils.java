@@ -15,9 +15,13 @@
  */
 package org.openehealth.ipf.platform.camel.ihe.mllp.core;
 
+import ca.uhn.hl7v2.parser.EncodingCharacters;
+import org.openehealth.ipf.modules.hl7.parser.DefaultEscaping;
+
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.regex.Pattern;
 
 /**
  * Helper methods for segment fragmentation, unsolicited request fragmentation,
@@ -147,6 +151,138 @@ public class FragmentationUtils {
     }
 
 
+    /**
+     * Sets MSH-7, MSH-10 and MSA-2 in the given ER7 representation of an interactive
+     * continuation fragment without parsing the whole message. Like {@link ca.uhn.hl7v2.util.Terser#set},
+     * only the first component of the first repetition of each field is replaced.
+     * @param fragment
+     *      string representation of the fragment.
+     * @param timestamp
+     *      new value for MSH-7.
+     * @param messageId
+     *      new value for MSH-10.
+     * @param requestMessageId
+     *      new value for MSA-2.
+     * @return
+     *      string representation of the updated fragment.
+     * @since 4.5
+     */
+    public static String refreshFragment(String fragment, String timestamp, String messageId, String requestMessageId) {
+        var fieldSeparator = fragment.charAt(3);
+        var mshEnd = fragment.indexOf('\r');
+        if (mshEnd == -1) {
+            mshEnd = fragment.length();
+        }
+        var msh = fragment.substring(0, mshEnd);
+        var mshFields = splitFields(msh, fieldSeparator);
+        var encodingCharacters = new EncodingCharacters(fieldSeparator, mshFields.get(1));
+
+        // in MSH, the field separator itself is MSH-1
+        setFirstComponent(mshFields, 6, timestamp, encodingCharacters);
+        setFirstComponent(mshFields, 9, messageId, encodingCharacters);
+
+        var sb = new StringBuilder(fragment.length() + 64);
+        appendFields(sb, mshFields, fieldSeparator);
+
+        var msaStart = fragment.indexOf("\rMSA" + fieldSeparator, mshEnd);
+        if (msaStart == -1) {
+            sb.append(fragment, mshEnd, fragment.length());
+            return sb.toString();
+        }
+        ++msaStart;
+        var msaEnd = fragment.indexOf('\r', msaStart);
+        if (msaEnd == -1) {
+            msaEnd = fragment.length();
+        }
+        var msaFields = splitFields(fragment.substring(msaStart, msaEnd), fieldSeparator);
+        setFirstComponent(msaFields, 2, requestMessageId, encodingCharacters);
+
+        sb.append(fragment, mshEnd, msaStart);
+        appendFields(sb, msaFields, fieldSeparator);
+        sb.append(fragment, msaEnd, fragment.length());
+        return sb.toString();
+    }
+
+
+    /**
+     * Returns the encoded content of a field of the first segment with the given name
+     * in the given HL7 message string representation, without parsing the message.
+     * @param message
+     *      string representation of the HL7 message.
+     * @param segmentName
+     *      name of the segment, e.g. <code>PID</code>.
+     * @param fieldNumber
+     *      number of the field as in the HL7 standard, must be greater than 1 for MSH.
+     * @return
+     *      encoded field content, an empty string when the field is not present,
+     *      or <code>null</code> when the segment is not present.
+     * @since 4.5
+     */
+    public static String findField(String message, String segmentName, int fieldNumber) {
+        if (message.length() < 4) {
+            return null;
+        }
+        var fieldSeparator = message.charAt(3);
+        var segmentStart = 0;
+        if (!message.startsWith(segmentName + fieldSeparator)) {
+            segmentStart = message.indexOf('\r' + segmentName + fieldSeparator);
+            if (segmentStart == -1) {
+                return null;
+            }
+            ++segmentStart;
+        }
+        var segmentEnd = message.indexOf('\r', segmentStart);
+        if (segmentEnd == -1) {
+            segmentEnd = message.length();
+        }
+
+        // in MSH, the field separator itself is MSH-1
+        var start = segmentStart;
+        for (var i = "MSH".equals(segmentName) ? 1 : 0; i < fieldNumber; ++i) {
+            start = message.indexOf(fieldSeparator, start);
+            if ((start == -1) || (start >= segmentEnd)) {
+                return "";
+            }
+            ++start;
+        }
+        var end = message.indexOf(fieldSeparator, start);
+        if ((end == -1) || (end > segmentEnd)) {
+            end = segmentEnd;
+        }
+        return message.substring(start, end);
+    }
+
+
+    private static List<String> splitFields(String segment, char fieldSeparator) {
+        return new ArrayList<>(List.of(segment.split(Pattern.quote(String.valueOf(fieldSeparator)), -1)));
+    }
+
+
+    private static void appendFields(StringBuilder sb, List<String> fields, char fieldSeparator) {
+        sb.append(fields.get(0));
+        for (var i = 1; i < fields.size(); ++i) {
+            sb.append(fieldSeparator).append(fields.get(i));
+        }
+    }
+
+
+    private static void setFirstComponent(List<String> fields, int index, String value, EncodingCharacters encodingCharacters) {
+        while (fields.size() <= index) {
+            fields.add("");
+        }
+        var field = fields.get(index);
+        var end = 0;
+        while ((end < field.length())
+                && (field.charAt(end) != encodingCharacters.getComponentSeparator())
+                && (field.charAt(end) != encodingCharacters.getRepetitionSeparator())
+                && (field.charAt(end) != encodingCharacters.getSubcomponentSeparator())) {
+            ++end;
+        }
+        var escapedValue = (value != null) ? DefaultEscaping.INSTANCE.escape(value, encodingCharacters) : "";
+        fields.set(index, escapedValue + field.substring(end));
+    }
+
+
     /**
      * Creates a single key string from the given key pieces.
      */
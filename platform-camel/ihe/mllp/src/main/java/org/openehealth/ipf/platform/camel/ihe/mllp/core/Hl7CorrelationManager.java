@@ -42,8 +42,7 @@ public class Hl7CorrelationManager extends TimeoutCorrelationManagerSupport {
     @Override
     public String getRequestCorrelationId(Object request) {
         try {
-            Message message = getMessage(request);
-            var msgId = new Terser(message).get("/MSH-10");
+            var msgId = getMessageId(request, "MSH", 10);
             LOG.debug("Recorded request with msg id {}", msgId);
             return msgId;
         } catch (HL7Exception e) {
@@ -54,8 +53,7 @@ public class Hl7CorrelationManager extends TimeoutCorrelationManagerSupport {
     @Override
     public String getResponseCorrelationId(Object response) {
         try {
-            Message message = getMessage(response);
-            var msgId = new Terser(message).get("/MSA-2");
+            var msgId = getMessageId(response, "MSA", 2);
             LOG.debug("Recorded response with msg id {}", msgId);
             return msgId;
         } catch (HL7Exception e) {
@@ -63,6 +61,28 @@ public class Hl7CorrelationManager extends TimeoutCorrelationManagerSupport {
         }
     }
 
+    /**
+     * Reads the message ID from the given field. Encoded messages are only parsed when the ID
+     * contains escape sequences, because correlating every message of a busy connection
+     * would otherwise double the parsing effort.
+     */
+    private String getMessageId(Object object, String segmentName, int fieldNumber) throws HL7Exception {
+        if (!(object instanceof Message)) {
+            var encoded = (object instanceof byte[]) ? new String((byte[]) object) : object.toString();
+            var field = FragmentationUtils.findField(encoded, segmentName, fieldNumber);
+            if ((field != null) && (encoded.length() > 7) && (field.indexOf(encoded.charAt(6)) == -1)) {
+                // stop at the component, repetition or subcomponent separator
+                var separators = encoded.substring(4, 8);
+                var end = 0;
+                while ((end < field.length()) && (separators.indexOf(field.charAt(end)) == -1)) {
+                    ++end;
+                }
+                return (end > 0) ? field.substring(0, end) : null;
+            }
+        }
+        return new Terser(getMessage(object)).get("/" + segmentName + "-" + fieldNumber);
+    }
+
     private Message getMessage(Object request) throws HL7Exception {
         Message message;
         if (request instanceof Message) {
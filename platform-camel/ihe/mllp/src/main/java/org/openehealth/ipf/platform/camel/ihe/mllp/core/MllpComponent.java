@@ -100,8 +100,14 @@ public abstract class MllpComponent<ConfigType extends MllpEndpointConfiguration
         nettyParameters.put("sync", true);
         nettyParameters.put("lazyChannelCreation", true);
         nettyParameters.put("transferExchange", false);
-        nettyParameters.put("serverInitializerFactory",
-                new CustomServerInitializerFactory(getAndRemoveParameter(parameters, MLLP_ENDPOINT_CONFIG, MllpEndpointConfiguration.class)));
+        var mllpEndpointConfig = getAndRemoveParameter(parameters, MLLP_ENDPOINT_CONFIG, MllpEndpointConfiguration.class);
+        nettyParameters.put("serverInitializerFactory", new CustomServerInitializerFactory(mllpEndpointConfig));
+
+        // Pipelining: several requests share a channel. Unless configured explicitly, each channel gets
+        // a correlation manager of its own, see PipeliningMllpProducer
+        if ((mllpEndpointConfig != null) && mllpEndpointConfig.isPipelining()) {
+            nettyParameters.put("producerPoolEnabled", false);
+        }
 
         if (!nettyParameters.containsKey("decoders")) {
             nettyParameters.put("decoders", "#" + DEFAULT_HL7_DECODER_FACTORY_BEAN_NAME);
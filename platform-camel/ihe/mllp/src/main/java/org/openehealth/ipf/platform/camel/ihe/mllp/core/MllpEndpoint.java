@@ -95,12 +95,32 @@ public abstract class MllpEndpoint<
     /**
      * Returns the original camel-netty producer which will be wrapped
      * into a set of PIX/PDQ-specific interceptors in {@link #createProducer()}.
+     * When pipelining is enabled, a {@link PipeliningMllpProducer} is returned instead.
      */
     @Override
     public Producer doCreateProducer() throws Exception {
+        if (config.isPipelining()) {
+            return new PipeliningMllpProducer(
+                    this,
+                    wrappedEndpoint,
+                    getHl7v2TransactionConfiguration().getHapiContext(),
+                    config.getPipeliningConnections(),
+                    config.getPipeliningWindowSize(),
+                    config.getPipeliningQueueSize(),
+                    config.isPipeliningOrderedByPatient());
+        }
         return wrappedEndpoint.createProducer();
     }
 
+    /**
+     * Returns <code>true</code> when pipelining is enabled, so that the calling thread is released
+     * as soon as the request has been handed over to the {@link PipeliningMllpProducer}.
+     */
+    @Override
+    public boolean isAsyncProducerChain() {
+        return config.isPipelining();
+    }
+
     /**
      * Returns the original starting point of the camel-netty route which will be wrapped
      * into a set of PIX/PDQ-specific interceptors in {@link #createConsumer(Processor)}.
@@ -149,6 +169,22 @@ public abstract class MllpEndpoint<
         return config.getSegmentFragmentationThreshold();
     }
 
+    /**
+     * Returns <code>true</code> if this endpoint sends several requests over one connection without waiting for responses.
+     */
+    @ManagedAttribute(description = "Pipelining Enabled")
+    public boolean isPipelining() {
+        return config.isPipelining();
+    }
+
+    /**
+     * Returns the maximal number of outstanding requests per connection when pipelining is enabled.
+     */
+    @ManagedAttribute(description = "Pipelining Window Size")
+    public int getPipeliningWindowSize() {
+        return config.getPipeliningWindowSize();
+    }
+
     @ManagedAttribute(description = "Component Type Name")
     public String getComponentType() {
         return getComponent().getClass().getName();
@@ -38,6 +38,17 @@ public class MllpEndpointConfiguration extends AuditableEndpointConfiguration {
     @Getter
     private final ConsumerDispatchingInterceptor dispatcher;
 
+    @Getter
+    private final boolean pipelining;
+    @Getter
+    private final int pipeliningConnections;
+    @Getter
+    private final int pipeliningWindowSize;
+    @Getter
+    private final boolean pipeliningOrderedByPatient;
+    @Getter
+    private final int pipeliningQueueSize;
+
     protected MllpEndpointConfiguration(MllpComponent<?, ?> component, String uri, Map<String, Object> parameters) throws Exception {
         super(component, parameters);
 
@@ -48,6 +59,17 @@ public class MllpEndpointConfiguration extends AuditableEndpointConfiguration {
 
         dispatcher = component.resolveAndRemoveReferenceParameter(parameters, "dispatcher", ConsumerDispatchingInterceptor.class);
 
+        pipelining = component.getAndRemoveParameter(
+                parameters, "pipelining", boolean.class, false);
+        pipeliningConnections = component.getAndRemoveParameter(
+                parameters, "pipeliningConnections", int.class, 1);
+        pipeliningWindowSize = component.getAndRemoveParameter(
+                parameters, "pipeliningWindowSize", int.class, 10);
+        pipeliningOrderedByPatient = component.getAndRemoveParameter(
+                parameters, "pipeliningOrderedByPatient", boolean.class, false);
+        pipeliningQueueSize = component.getAndRemoveParameter(
+                parameters, "pipeliningQueueSize", int.class, 1000);
+
     }
 
 }
@@ -0,0 +1,379 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.ipf.platform.camel.ihe.mllp.core;
+
+import ca.uhn.hl7v2.HapiContext;
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.AsyncProducer;
+import org.apache.camel.Exchange;
+import org.apache.camel.component.netty.NettyEndpoint;
+import org.apache.camel.component.netty.NettyProducer;
+import org.apache.camel.support.DefaultAsyncProducer;
+import org.apache.camel.support.service.ServiceHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.openehealth.ipf.platform.camel.ihe.mllp.core.FragmentationUtils.findField;
+
+/**
+ * Asynchronous MLLP producer which sends requests over a fixed set of connections to the remote
+ * endpoint, with several requests being outstanding on each connection at the same time.
+ * <p>
+ * The calling thread is never blocked. The exchange is completed when the correlation manager of
+ * the connection has matched the response to the request, or when the request has timed out.
+ * Unless a correlation manager is configured for the endpoint explicitly, each connection gets an
+ * {@link Hl7CorrelationManager} of its own, so that equal message control IDs on different connections
+ * do not interfere.
+ * <p>
+ * Each connection accepts up to <code>windowSize</code> outstanding requests. When all windows are full,
+ * further requests are queued and sent in the order of their arrival as soon as responses have been
+ * received. Requests which do not fit into the queue of <code>queueSize</code> entries fail with a
+ * {@link RejectedExecutionException}. Optionally, requests concerning the same patient (identified by the
+ * first repetition of PID-3) are sent strictly one after another, so that the recipient cannot process
+ * them out of order. For this purpose, patients are mapped to a fixed number of stripes, so that
+ * unrelated patients may occasionally wait for each other as well.
+ * <p>
+ * The interceptors of the MLLP endpoint process the exchange asynchronously as well, see
+ * {@link MllpEndpoint#isAsyncProducerChain()}. When the interceptor chain contains interceptors which
+ * only support synchronous processing, e.g. for unsolicited fragmentation, interactive continuation
+ * or custom interceptors, the calling thread waits for the completion of its own exchange, without
+ * affecting other callers.
+ *
+ * @since 4.5
+ */
+public class PipeliningMllpProducer extends DefaultAsyncProducer {
+
+    private static final transient Logger LOG = LoggerFactory.getLogger(PipeliningMllpProducer.class);
+
+    private static final int PATIENT_STRIPES = 256;
+
+    private static final int RUNNING = 0;
+    private static final int RETURNED = 1;
+    private static final int COMPLETED = 2;
+
+    private final List<AsyncProducer> connections;
+    private final int windowSize;
+    private final int queueSize;
+
+    // guarded by mutex
+    private final Object mutex = new Object();
+    private final int[] outstandingRequests;
+    private final boolean[] busyPatients;
+    private final Deque<PendingRequest> queue = new ArrayDeque<>();
+    private int nextConnection;
+
+    // requests to be sent by an outer frame of the current thread, see send()
+    private final ThreadLocal<Deque<PendingRequest>> sending = new ThreadLocal<>();
+
+    /**
+     * @param endpoint           MLLP endpoint this producer belongs to.
+     * @param wrappedEndpoint    camel-netty endpoint configured without producer pool.
+     * @param hapiContext        HAPI context for the correlation managers of the connections.
+     * @param connectionCount    number of connections to the remote endpoint.
+     * @param windowSize         maximal number of outstanding requests per connection.
+     * @param queueSize          maximal number of requests waiting for a free window.
+     * @param orderedByPatient   whether requests concerning the same patient shall be sent one after another.
+     */
+    public PipeliningMllpProducer(
+            MllpEndpoint<?, ?, ?> endpoint,
+            NettyEndpoint wrappedEndpoint,
+            HapiContext hapiContext,
+            int connectionCount,
+            int windowSize,
+            int queueSize,
+            boolean orderedByPatient)
+    {
+        this(endpoint, createConnections(wrappedEndpoint, hapiContext, connectionCount), windowSize, queueSize, orderedByPatient);
+    }
+
+    PipeliningMllpProducer(
+            MllpEndpoint<?, ?, ?> endpoint,
+            List<AsyncProducer> connections,
+            int windowSize,
+            int queueSize,
+            boolean orderedByPatient)
+    {
+        super(endpoint);
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("Window size must be positive");
+        }
+        if (queueSize < 0) {
+            throw new IllegalArgumentException("Queue size must not be negative");
+        }
+        this.connections = connections;
+        this.windowSize = windowSize;
+        this.queueSize = queueSize;
+        outstandingRequests = new int[connections.size()];
+        busyPatients = orderedByPatient ? new boolean[PATIENT_STRIPES] : null;
+    }
+
+    /**
+     * Creates camel-netty producers, each of them keeping a single channel, because the producer pool is disabled.
+     */
+    private static List<AsyncProducer> createConnections(NettyEndpoint wrappedEndpoint, HapiContext hapiContext, int connectionCount) {
+        if (connectionCount < 1) {
+            throw new IllegalArgumentException("Connection count must be positive");
+        }
+        var connections = new ArrayList<AsyncProducer>(connectionCount);
+        for (var i = 0; i < connectionCount; ++i) {
+            var configuration = wrappedEndpoint.getConfiguration().copy();
+            if (configuration.getCorrelationManager() == null) {
+                var correlationManager = new Hl7CorrelationManager(hapiContext);
+                correlationManager.setTimeout(configuration.getRequestTimeout());
+                configuration.setCorrelationManager(correlationManager);
+            }
+            connections.add(new NettyProducer(wrappedEndpoint, configuration));
+        }
+        return connections;
+    }
+
+    @Override
+    public boolean process(Exchange exchange, AsyncCallback callback) {
+        int patient;
+        try {
+            patient = getPatientStripe(exchange);
+        } catch (Exception e) {
+            exchange.setException(e);
+            callback.done(true);
+            return true;
+        }
+
+        var request = new PendingRequest(exchange, callback, patient);
+        List<PendingRequest> ready;
+        var rejected = false;
+        synchronized (mutex) {
+            queue.add(request);
+            ready = takeReady();
+            if ((queue.size() > queueSize) && (request.connection == -1)) {
+                queue.removeLast();
+                rejected = true;
+            }
+        }
+        send(ready);
+        if (rejected) {
+            exchange.setException(new RejectedExecutionException(
+                    "Pipelining queue of " + getEndpoint().getEndpointUri() + " is full"));
+            callback.done(true);
+            return true;
+        }
+
+        // the request may have been completed synchronously, or by another thread in the meantime
+        if (request.state.compareAndSet(RUNNING, RETURNED)) {
+            return false;
+        }
+        callback.done(true);
+        return true;
+    }
+
+    /**
+     * Removes the requests which can be sent now from the queue, in the order of their arrival,
+     * and assigns connections to them. Must be called while holding the mutex.
+     */
+    private List<PendingRequest> takeReady() {
+        List<PendingRequest> ready = Collections.emptyList();
+        for (var iterator = queue.iterator(); iterator.hasNext(); ) {
+            var request = iterator.next();
+            if ((request.patient >= 0) && busyPatients[request.patient]) {
+                continue;
+            }
+            var connection = takeConnection();
+            if (connection == -1) {
+                LOG.debug("All pipelining windows are full, {} requests are waiting", queue.size());
+                break;
+            }
+            if (request.patient >= 0) {
+                busyPatients[request.patient] = true;
+            }
+            request.connection = connection;
+            iterator.remove();
+            if (ready.isEmpty()) {
+                ready = new ArrayList<>();
+            }
+            ready.add(request);
+        }
+        return ready;
+    }
+
+    /**
+     * Takes a slot in the window of the first connection which has one, starting at a round-robin position.
+     *
+     * @return index of the connection, or -1 when all windows are full.
+     */
+    private int takeConnection() {
+        for (var i = 0; i < outstandingRequests.length; ++i) {
+            var index = (nextConnection + i) % outstandingRequests.length;
+            if (outstandingRequests[index] < windowSize) {
+                ++outstandingRequests[index];
+                nextConnection = (index + 1) % outstandingRequests.length;
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Sends the given requests. When called back synchronously from a connection which is being
+     * called by this thread, the requests are handed over to the outer call instead of recursing.
+     */
+    private void send(List<PendingRequest> requests) {
+        if (requests.isEmpty()) {
+            return;
+        }
+        var pending = sending.get();
+        if (pending != null) {
+            pending.addAll(requests);
+            return;
+        }
+        pending = new ArrayDeque<>(requests);
+        sending.set(pending);
+        try {
+            PendingRequest request;
+            while ((request = pending.poll()) != null) {
+                sendNow(request);
+            }
+        } finally {
+            sending.remove();
+        }
+    }
+
+    private void sendNow(PendingRequest request) {
+        // released when the response has been correlated, or when the request has failed or timed out
+        var released = new AtomicBoolean();
+        try {
+            connections.get(request.connection).process(request.exchange, doneSync -> {
+                if (released.compareAndSet(false, true)) {
+                    release(request);
+                }
+            });
+        } catch (RuntimeException e) {
+            request.exchange.setException(e);
+            if (released.compareAndSet(false, true)) {
+                release(request);
+            }
+        }
+    }
+
+    /**
+     * Frees the window slot and the patient stripe of the given request, sends waiting requests
+     * and completes the exchange.
+     */
+    private void release(PendingRequest request) {
+        List<PendingRequest> ready;
+        synchronized (mutex) {
+            --outstandingRequests[request.connection];
+            if (request.patient >= 0) {
+                busyPatients[request.patient] = false;
+            }
+            ready = takeReady();
+        }
+        send(ready);
+        complete(request);
+    }
+
+    private static void complete(PendingRequest request) {
+        if (!request.state.compareAndSet(RUNNING, COMPLETED)) {
+            request.callback.done(false);
+        }
+    }
+
+    /**
+     * @return number of requests which may still be sent over the given connection without waiting.
+     */
+    int getAvailableWindow(int connection) {
+        synchronized (mutex) {
+            return windowSize - outstandingRequests[connection];
+        }
+    }
+
+    /**
+     * @return number of requests waiting for a free window.
+     */
+    int getQueueLength() {
+        synchronized (mutex) {
+            return queue.size();
+        }
+    }
+
+    /**
+     * @return stripe of the patient the request concerns, or -1 when requests need not be ordered.
+     */
+    private int getPatientStripe(Exchange exchange) {
+        if (busyPatients == null) {
+            return -1;
+        }
+        var body = exchange.getIn().getBody();
+        if (body == null) {
+            return -1;
+        }
+        // ISO-8859-1 maps bytes one-to-one, which suffices for building a key
+        var message = (body instanceof byte[])
+                ? new String((byte[]) body, StandardCharsets.ISO_8859_1)
+                : exchange.getIn().getBody(String.class);
+        var pid3 = (message != null) ? findField(message, "PID", 3) : null;
+        if ((pid3 == null) || pid3.isEmpty()) {
+            return -1;
+        }
+        var repetitionEnd = pid3.indexOf(message.charAt(5));
+        var patientKey = (repetitionEnd == -1) ? pid3 : pid3.substring(0, repetitionEnd);
+        return Math.floorMod(patientKey.hashCode(), PATIENT_STRIPES);
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        super.doStart();
+        ServiceHelper.startService(connections);
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        List<PendingRequest> waiting;
+        synchronized (mutex) {
+            waiting = new ArrayList<>(queue);
+            queue.clear();
+        }
+        for (var request : waiting) {
+            request.exchange.setException(new RejectedExecutionException(
+                    "Producer for " + getEndpoint().getEndpointUri() + " has been stopped"));
+            complete(request);
+        }
+        ServiceHelper.stopService(connections);
+        super.doStop();
+    }
+
+    private static class PendingRequest {
+        private final Exchange exchange;
+        private final AsyncCallback callback;
+        private final int patient;
+        private final AtomicInteger state = new AtomicInteger(RUNNING);
+        private int connection = -1;
+
+        PendingRequest(Exchange exchange, AsyncCallback callback, int patient) {
+            this.exchange = exchange;
+            this.callback = callback;
+            this.patient = patient;
+        }
+    }
+}
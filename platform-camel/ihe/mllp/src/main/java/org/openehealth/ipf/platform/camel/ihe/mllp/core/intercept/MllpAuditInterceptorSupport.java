@@ -18,6 +18,7 @@ package org.openehealth.ipf.platform.camel.ihe.mllp.core.intercept;
 
 import ca.uhn.hl7v2.model.Message;
 import ca.uhn.hl7v2.util.Terser;
+import org.apache.camel.AsyncCallback;
 import org.apache.camel.Exchange;
 import org.apache.camel.component.netty.NettyConstants;
 import org.apache.commons.lang3.ArrayUtils;
@@ -60,10 +61,7 @@ public abstract class MllpAuditInterceptorSupport<AuditDatasetType extends MllpA
             return;
         }
 
-        var auditDataset = createAndEnrichAuditDatasetFromRequest(exchange, msg);
-        determineParticipantsAddresses(exchange, auditDataset);
-        extractSslClientUser(exchange, auditDataset);
-
+        var auditDataset = createAuditDataset(exchange, msg);
         var failed = false;
         try {
             getWrappedProcessor().process(exchange);
@@ -77,14 +75,66 @@ public abstract class MllpAuditInterceptorSupport<AuditDatasetType extends MllpA
             }
             throw e;
         } finally {
-            if (auditDataset != null) {
-                auditDataset.setEventOutcomeIndicator(failed ?
-                        EventOutcomeIndicator.MajorFailure :
-                        EventOutcomeIndicator.Success);
-                getAuditStrategy().doAudit(auditContext, auditDataset);
-            } else {
-                LOG.warn("Audit dataset is not initialized, no auditing happens");
+            audit(auditDataset, failed);
+        }
+    }
+
+    /**
+     * Asynchronous variant of {@link #process(Exchange)}, auditing when the wrapped processor
+     * has completed the exchange.
+     *
+     * @since 4.5
+     */
+    public boolean process(Exchange exchange, AsyncCallback callback) {
+        var msg = exchange.getIn().getBody(Message.class);
+
+        // skip auditing in case of non-auditable message types
+        if (!isAuditable(msg)) {
+            return processWrapped(exchange, callback);
+        }
+
+        var auditDataset = createAuditDataset(exchange, msg);
+        return processWrapped(exchange, doneSync -> {
+            var failed = true;
+            try {
+                var exception = exchange.getException();
+                if (exception == null) {
+                    var result = exchange.getMessage().getBody(Message.class);
+                    enrichAuditDatasetFromResponse(auditDataset, result);
+                    failed = !AuditUtils.isPositiveAck(result);
+                } else if (auditDataset != null) {
+                    auditDataset.setEventOutcomeDescription(exception.getMessage());
+                }
+            } catch (Exception e) {
+                exchange.setException(e);
+                if (auditDataset != null) {
+                    auditDataset.setEventOutcomeDescription(e.getMessage());
+                }
+            } finally {
+                try {
+                    audit(auditDataset, failed);
+                } finally {
+                    callback.done(doneSync);
+                }
             }
+        });
+    }
+
+    private AuditDatasetType createAuditDataset(Exchange exchange, Message msg) {
+        var auditDataset = createAndEnrichAuditDatasetFromRequest(exchange, msg);
+        determineParticipantsAddresses(exchange, auditDataset);
+        extractSslClientUser(exchange, auditDataset);
+        return auditDataset;
+    }
+
+    private void audit(AuditDatasetType auditDataset, boolean failed) {
+        if (auditDataset != null) {
+            auditDataset.setEventOutcomeIndicator(failed ?
+                    EventOutcomeIndicator.MajorFailure :
+                    EventOutcomeIndicator.Success);
+            getAuditStrategy().doAudit(auditContext, auditDataset);
+        } else {
+            LOG.warn("Audit dataset is not initialized, no auditing happens");
         }
     }
 
@@ -17,16 +17,17 @@ package org.openehealth.ipf.platform.camel.ihe.mllp.core.intercept.consumer;
 
 import ca.uhn.hl7v2.ErrorCode;
 import ca.uhn.hl7v2.HL7Exception;
-import ca.uhn.hl7v2.preparser.PreParser;
 import org.apache.camel.CamelContext;
 import org.apache.camel.CamelException;
 import org.apache.camel.Exchange;
 import org.apache.camel.RuntimeCamelException;
 import org.apache.camel.StartupListener;
 import org.openehealth.ipf.commons.ihe.hl7v2.Hl7v2AcceptanceException;
+import org.openehealth.ipf.commons.ihe.hl7v2.Hl7v2TransactionConfiguration;
 import org.openehealth.ipf.platform.camel.ihe.core.Interceptor;
 import org.openehealth.ipf.platform.camel.ihe.core.InterceptorSupport;
 import org.openehealth.ipf.platform.camel.ihe.hl7v2.HL7v2Endpoint;
+import org.openehealth.ipf.platform.camel.ihe.hl7v2.Hl7v2ParsingContext;
 import org.openehealth.ipf.platform.camel.ihe.mllp.core.MllpEndpoint;
 import org.openehealth.ipf.platform.camel.ihe.mllp.core.MllpTransactionEndpoint;
 import org.slf4j.Logger;
@@ -35,6 +36,7 @@ import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -50,6 +52,7 @@ public final class ConsumerDispatchingInterceptor extends InterceptorSupport
 
     private final List<String> routeIds = new ArrayList<>();
     private final Map<String, Interceptor> map = new HashMap<>();
+    private volatile DispatchRoutingTable routingTable = DispatchRoutingTable.compile(Map.of());
 
 
     /**
@@ -89,6 +92,19 @@ public final class ConsumerDispatchingInterceptor extends InterceptorSupport
         if (!addTargets(camelContext)) {
             LOG.info("Mllp Dispatcher endpoint exposed without transaction targets.");
         }
+        compileRoutingTable();
+    }
+
+    /**
+     * Compiles the routing table from the transaction configurations of the target routes,
+     * so that incoming messages need not be checked against each of them.
+     */
+    private void compileRoutingTable() {
+        var configurations = new LinkedHashMap<String, Hl7v2TransactionConfiguration<?>>();
+        for (var routeId : routeIds) {
+            configurations.putIfAbsent(routeId, map.get(routeId).getEndpoint(MllpEndpoint.class).getHl7v2TransactionConfiguration());
+        }
+        routingTable = DispatchRoutingTable.compile(configurations);
     }
 
     /**
@@ -133,9 +149,12 @@ public final class ConsumerDispatchingInterceptor extends InterceptorSupport
     @Override
     public void process(Exchange exchange) throws Exception {
 
-        // determine attributes of the message
-        var message = exchange.getIn().getBody(String.class);
-        var fields = PreParser.getFields(message, "MSH-9-1", "MSH-9-2", "MSH-9-3", "MSH-12");
+        // determine attributes of the message, use the PreParser e.g. for XML-encoded messages
+        var parsingContext = Hl7v2ParsingContext.of(exchange);
+        var fields = DispatchRoutingTable.scanMessageHeader(parsingContext.getMessageString());
+        if (fields == null) {
+            fields = parsingContext.getFields("MSH-9-1", "MSH-9-2", "MSH-9-3", "MSH-12");
+        }
         var messageType = fields[0];
         var triggerEvent = fields[1];
         var messageStructure = fields[2];
@@ -143,7 +162,7 @@ public final class ConsumerDispatchingInterceptor extends InterceptorSupport
 
         // check who can accept the message
         var found = false;
-        for (var routeId : routeIds) {
+        for (var routeId : routingTable.getCandidates(messageType, triggerEvent, version)) {
             var interceptor = map.get(routeId);
             var config = interceptor.getEndpoint(MllpEndpoint.class).getHl7v2TransactionConfiguration();
             try {
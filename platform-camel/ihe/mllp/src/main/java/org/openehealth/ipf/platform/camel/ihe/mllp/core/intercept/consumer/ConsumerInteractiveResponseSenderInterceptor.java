@@ -22,6 +22,7 @@ import org.apache.camel.Endpoint;
 import org.apache.camel.Exchange;
 import org.openehealth.ipf.commons.ihe.hl7v2.Constants;
 import org.openehealth.ipf.commons.ihe.hl7v2.Hl7v2TransactionConfiguration;
+import org.openehealth.ipf.commons.ihe.hl7v2.storage.EncodedInteractiveContinuationStorage;
 import org.openehealth.ipf.commons.ihe.hl7v2.storage.InteractiveContinuationStorage;
 import org.openehealth.ipf.modules.hl7.message.MessageUtils;
 import org.openehealth.ipf.platform.camel.core.util.Exchanges;
@@ -40,6 +41,7 @@ import static org.apache.commons.lang3.StringUtils.isNotEmpty;
 import static org.openehealth.ipf.platform.camel.ihe.mllp.core.FragmentationUtils.appendSegments;
 import static org.openehealth.ipf.platform.camel.ihe.mllp.core.FragmentationUtils.joinSegments;
 import static org.openehealth.ipf.platform.camel.ihe.mllp.core.FragmentationUtils.keyString;
+import static org.openehealth.ipf.platform.camel.ihe.mllp.core.FragmentationUtils.refreshFragment;
 import static org.openehealth.ipf.platform.camel.ihe.mllp.core.FragmentationUtils.splitString;
 import static org.openehealth.ipf.platform.camel.ihe.mllp.core.FragmentationUtils.uniqueId;
 
@@ -142,7 +144,19 @@ public class ConsumerInteractiveResponseSenderInterceptor extends InterceptorSup
 
         // handle query
         final var chainId = keyString(queryTag, msh31, msh32, msh33);
-        var responseMessage = storage.get(continuationPointer, chainId);
+        Message responseMessage = null;
+        if (storage instanceof EncodedInteractiveContinuationStorage) {
+            var encodedFragment = ((EncodedInteractiveContinuationStorage) storage).getEncoded(continuationPointer, chainId);
+            if (encodedFragment != null) {
+                // a prepared encoded response fragment found -- update it without parsing and send it to the user
+                LOG.debug("Use prepared encoded fragment for {}", continuationPointer);
+                Exchanges.resultMessage(exchange).setBody(refreshFragment(
+                        encodedFragment, MessageUtils.hl7Now(), uniqueId(), requestTerser.get("MSH-10")));
+                return;
+            }
+        } else {
+            responseMessage = storage.get(continuationPointer, chainId);
+        }
         if (responseMessage != null) {
             // a prepared response fragment found -- perform some post-processing and send it to the user
             LOG.debug("Use prepared fragment for {}", continuationPointer);
@@ -224,7 +238,12 @@ public class ConsumerInteractiveResponseSenderInterceptor extends InterceptorSup
             fragmentTerser.set("QAK-5", Integer.toString(endRecordIndex - startRecordIndex));
             fragmentTerser.set("QAK-6", Integer.toString(recordBoundaries.size() - 1 - endRecordIndex));
 
-            storage.put(continuationPointer, chainId, fragment);
+            if (storage instanceof EncodedInteractiveContinuationStorage) {
+                ((EncodedInteractiveContinuationStorage) storage).putEncoded(
+                        continuationPointer, chainId, parser.encode(fragment));
+            } else {
+                storage.put(continuationPointer, chainId, fragment);
+            }
             continuationPointer = nextContinuationPointer;
 
             // remember the first fragment in order to return it
@@ -15,13 +15,13 @@
  */
 package org.openehealth.ipf.platform.camel.ihe.mllp.core.intercept.consumer;
 
-import ca.uhn.hl7v2.HL7Exception;
 import ca.uhn.hl7v2.util.Terser;
 import org.apache.camel.Endpoint;
 import org.apache.camel.Exchange;
 import org.openehealth.ipf.commons.ihe.hl7v2.storage.UnsolicitedFragmentationStorage;
 import org.openehealth.ipf.modules.hl7.message.MessageUtils;
 import org.openehealth.ipf.platform.camel.ihe.core.InterceptorSupport;
+import org.openehealth.ipf.platform.camel.ihe.hl7v2.Hl7v2ParsingContext;
 import org.openehealth.ipf.platform.camel.ihe.mllp.core.MllpTransactionEndpoint;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -56,19 +56,13 @@ public class ConsumerRequestDefragmenterInterceptor extends InterceptorSupport {
      */
     @Override
     public void process(Exchange exchange) throws Exception {
-        var requestString = exchange.getIn().getBody(String.class);
-        var parser = getEndpoint(MllpTransactionEndpoint.class).getHl7v2TransactionConfiguration().getParser();
-        var requestMessage = parser.parse(requestString);
-        var requestTerser = new Terser(requestMessage);
-        var msh14 = requestTerser.get("MSH-14");
-        String dsc1 = null;
-        try {
-            if (! "I".equals(requestTerser.get("DSC-2"))) {
-                dsc1 = requestTerser.get("DSC-1");
-            }
-        } catch (HL7Exception e) {
-            // segment DSC does not exist in cancel requests
-        }
+        // read the relevant fields without parsing the whole message
+        var parsingContext = Hl7v2ParsingContext.of(exchange);
+        var requestString = parsingContext.getMessageString();
+        var fields = parsingContext.getFields("MSH-14", "DSC-1", "DSC-2");
+        var msh14 = fields[0];
+        // DSC-2 == 'I' denotes interactive continuation instead of fragmentation
+        var dsc1 = "I".equals(fields[2]) ? null : fields[1];
 
         // pass when the message is not fragmented
         if (isEmpty(msh14) && isEmpty(dsc1)) {
@@ -77,9 +71,10 @@ public class ConsumerRequestDefragmenterInterceptor extends InterceptorSupport {
         }
 
         // get pieces of the accumulator's key
-        var msh31 = requestTerser.get("MSH-3-1");
-        var msh32 = requestTerser.get("MSH-3-2");
-        var msh33 = requestTerser.get("MSH-3-3");
+        var msh3 = parsingContext.getFields("MSH-3-1", "MSH-3-2", "MSH-3-3");
+        var msh31 = msh3[0];
+        var msh32 = msh3[1];
+        var msh33 = msh3[2];
 
         // create an accumulator (on the arrival of the first fragment) 
         // or get an existing one (on the arrival of fragments 2..n)
@@ -112,6 +107,9 @@ public class ConsumerRequestDefragmenterInterceptor extends InterceptorSupport {
         LOG.debug("Processed fragment {} requesting {}", msh14, dsc1);
             
         storage.put(keyString(dsc1, msh31, msh32, msh33), accumulator);
+        var parser = getEndpoint(MllpTransactionEndpoint.class).getHl7v2TransactionConfiguration().getParser();
+        var requestMessage = parsingContext.getMessage(parser);
+        var requestTerser = new Terser(requestMessage);
         var ack = MessageUtils.response(
                 requestMessage, "ACK", 
                 requestTerser.get("MSH-9-2"));
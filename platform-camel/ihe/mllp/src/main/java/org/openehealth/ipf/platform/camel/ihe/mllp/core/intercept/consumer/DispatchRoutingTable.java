@@ -0,0 +1,190 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.ipf.platform.camel.ihe.mllp.core.intercept.consumer;
+
+import ca.uhn.hl7v2.Version;
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.openehealth.ipf.commons.ihe.hl7v2.Hl7v2TransactionConfiguration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable routing table of the {@link ConsumerDispatchingInterceptor}, which maps
+ * message type (MSH-9-1), trigger event (MSH-9-2) and HL7 version (MSH-12) of a request
+ * to the IDs of the routes which can potentially accept it, in the order of their registration.
+ * <p>
+ * The table is compiled from the allowed request message types, trigger events and HL7 versions
+ * of the transaction configurations. Routes whose configurations contain wildcards are candidates
+ * for every request. The final acceptance check, including the message structure (MSH-9-3),
+ * remains with the transaction configuration of the candidate routes.
+ *
+ * @since 4.5
+ */
+final class DispatchRoutingTable {
+
+    private static final String WILDCARD = "*";
+
+    private final Map<String, List<String>> candidates;
+    private final List<String> wildcardCandidates;
+
+
+    private DispatchRoutingTable(Map<String, List<String>> candidates, List<String> wildcardCandidates) {
+        this.candidates = candidates;
+        this.wildcardCandidates = wildcardCandidates;
+    }
+
+
+    /**
+     * Compiles a routing table.
+     *
+     * @param configurations transaction configurations of the target routes, keyed by route ID,
+     *                       in the order in which the routes shall be considered.
+     * @return routing table
+     */
+    static DispatchRoutingTable compile(Map<String, Hl7v2TransactionConfiguration<?>> configurations) {
+        // collect explicitly accepted keys per route
+        var explicitKeys = new LinkedHashMap<String, Set<String>>();
+        var wildcardRouteIds = new ArrayList<String>();
+        for (var entry : configurations.entrySet()) {
+            var config = entry.getValue();
+            if (hasWildcards(config)) {
+                wildcardRouteIds.add(entry.getKey());
+                explicitKeys.put(entry.getKey(), Collections.emptySet());
+                continue;
+            }
+            var keys = new LinkedHashSet<String>();
+            var messageTypes = config.getAllowedRequestMessageTypes();
+            for (var i = 0; i < messageTypes.length; ++i) {
+                for (var triggerEvent : StringUtils.split(config.getAllowedRequestTriggerEvents()[i], ' ')) {
+                    for (var version : config.getHl7Versions()) {
+                        keys.add(key(messageTypes[i], triggerEvent, version));
+                    }
+                }
+            }
+            explicitKeys.put(entry.getKey(), keys);
+        }
+
+        // for each key, list the routes in their original order
+        var allKeys = new LinkedHashSet<String>();
+        explicitKeys.values().forEach(allKeys::addAll);
+        var candidates = new HashMap<String, List<String>>();
+        for (var key : allKeys) {
+            var routeIds = new ArrayList<String>();
+            for (var entry : explicitKeys.entrySet()) {
+                if (entry.getValue().contains(key) || wildcardRouteIds.contains(entry.getKey())) {
+                    routeIds.add(entry.getKey());
+                }
+            }
+            candidates.put(key, List.copyOf(routeIds));
+        }
+        return new DispatchRoutingTable(Map.copyOf(candidates), List.copyOf(wildcardRouteIds));
+    }
+
+
+    /**
+     * Returns IDs of the routes which can potentially accept a request with the given attributes.
+     *
+     * @param messageType  value from MSH-9-1, can be <code>null</code>.
+     * @param triggerEvent value from MSH-9-2, can be <code>null</code>.
+     * @param version      value from MSH-12, can be <code>null</code>.
+     * @return route IDs in the order of registration, never <code>null</code>.
+     */
+    List<String> getCandidates(String messageType, String triggerEvent, String version) {
+        var routeIds = candidates.get(key(messageType, triggerEvent, Version.versionOf(version)));
+        return (routeIds != null) ? routeIds : wildcardCandidates;
+    }
+
+
+    /**
+     * Extracts MSH-9-1, MSH-9-2, MSH-9-3 and MSH-12 from the given ER7-encoded message
+     * in a single pass over the MSH segment, without parsing the message.
+     *
+     * @param message ER7-encoded message.
+     * @return array of the four field values, <code>null</code> for fields which are not present;
+     * or <code>null</code> when the message does not start with an MSH segment (e.g. because it is XML-encoded).
+     */
+    static String[] scanMessageHeader(String message) {
+        if ((message == null) || (message.length() < 8) || !message.startsWith("MSH")) {
+            return null;
+        }
+        var fieldSeparator = message.charAt(3);
+        var componentSeparator = message.charAt(4);
+
+        // skip MSH-2, which contains the component separator itself
+        var start = message.indexOf(fieldSeparator, 4) + 1;
+        if (start == 0) {
+            return null;
+        }
+        var result = new String[4];
+        var field = 3;
+        var component = 1;
+        var length = message.length();
+        for (var i = start; i <= length; ++i) {
+            var c = (i < length) ? message.charAt(i) : '\r';
+            var segmentEnd = (c == '\r') || (c == '\n');
+            if ((c == fieldSeparator) || (c == componentSeparator) || segmentEnd) {
+                if ((field == 9) && (component <= 3)) {
+                    result[component - 1] = value(message, start, i);
+                } else if ((field == 12) && (component == 1)) {
+                    result[3] = value(message, start, i);
+                    break;
+                }
+                if (segmentEnd) {
+                    break;
+                }
+                if (c == fieldSeparator) {
+                    ++field;
+                    component = 1;
+                } else {
+                    ++component;
+                }
+                start = i + 1;
+            }
+        }
+        return result;
+    }
+
+
+    private static String value(String message, int start, int end) {
+        return (start < end) ? message.substring(start, end) : null;
+    }
+
+
+    private static boolean hasWildcards(Hl7v2TransactionConfiguration<?> config) {
+        if (ArrayUtils.contains(config.getAllowedRequestMessageTypes(), WILDCARD)) {
+            return true;
+        }
+        for (var triggerEvents : config.getAllowedRequestTriggerEvents()) {
+            if (ArrayUtils.contains(StringUtils.split(triggerEvents, ' '), WILDCARD)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    private static String key(String messageType, String triggerEvent, Version version) {
+        return messageType + '^' + triggerEvent + '^' + version;
+    }
+}
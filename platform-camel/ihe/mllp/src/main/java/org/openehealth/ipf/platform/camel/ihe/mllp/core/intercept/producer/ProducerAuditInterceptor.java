@@ -21,6 +21,7 @@ import org.openehealth.ipf.commons.audit.utils.AuditUtils;
 import org.openehealth.ipf.commons.ihe.core.atna.AuditStrategy;
 import org.openehealth.ipf.commons.ihe.hl7v2.audit.MllpAuditDataset;
 import org.openehealth.ipf.platform.camel.ihe.atna.AuditableEndpoint;
+import org.openehealth.ipf.platform.camel.ihe.core.AsyncInterceptor;
 import org.openehealth.ipf.platform.camel.ihe.mllp.core.intercept.MllpAuditInterceptorSupport;
 
 
@@ -30,7 +31,7 @@ import org.openehealth.ipf.platform.camel.ihe.mllp.core.intercept.MllpAuditInter
  * @author Dmytro Rud
  */
 public class ProducerAuditInterceptor<AuditDatasetType extends MllpAuditDataset>
-        extends MllpAuditInterceptorSupport<AuditDatasetType> {
+        extends MllpAuditInterceptorSupport<AuditDatasetType> implements AsyncInterceptor {
 
 
     public ProducerAuditInterceptor(AuditContext auditContext) {
@@ -15,7 +15,9 @@
  */
 package org.openehealth.ipf.platform.camel.ihe.mllp.core.intercept.producer;
 
+import org.apache.camel.AsyncCallback;
 import org.apache.camel.Exchange;
+import org.openehealth.ipf.platform.camel.ihe.core.AsyncInterceptor;
 import org.openehealth.ipf.platform.camel.ihe.core.InterceptorSupport;
 import org.openehealth.ipf.platform.camel.ihe.hl7v2.Hl7v2MarshalUtils;
 import org.openehealth.ipf.platform.camel.ihe.mllp.core.FragmentationUtils;
@@ -28,18 +30,52 @@ import org.openehealth.ipf.platform.camel.ihe.mllp.core.MllpEndpoint;
  *
  * @author Dmytro Rud
  */
-public class ProducerStringProcessingInterceptor extends InterceptorSupport {
+public class ProducerStringProcessingInterceptor extends InterceptorSupport implements AsyncInterceptor {
 
     @Override
     public void process(Exchange exchange) throws Exception {
-        final var charsetName = getEndpoint(MllpEndpoint.class).getCharsetName();
+        prepareRequest(exchange);
+
+        // run the route
+        getWrappedProcessor().process(exchange);
+
+        // Read in the response. If an exception is set (e.g. because the connection was closed, return it)
+        if (exchange.getException() != null) {
+            throw exchange.getException();
+        }
+        readResponse(exchange);
+    }
+
+    @Override
+    public boolean process(Exchange exchange, AsyncCallback callback) {
+        try {
+            prepareRequest(exchange);
+        } catch (Exception e) {
+            exchange.setException(e);
+            callback.done(true);
+            return true;
+        }
+        return processWrapped(exchange, doneSync -> {
+            if (exchange.getException() == null) {
+                try {
+                    readResponse(exchange);
+                } catch (Exception e) {
+                    exchange.setException(e);
+                }
+            }
+            callback.done(doneSync);
+        });
+    }
+
+    private void prepareRequest(Exchange exchange) {
+        var charsetName = getEndpoint(MllpEndpoint.class).getCharsetName();
         if (charsetName != null) {
             exchange.setProperty(Exchange.CHARSET_NAME, charsetName);
         }
 
         var supportSegmentFragmentation = getEndpoint(MllpEndpoint.class).isSupportSegmentFragmentation();
         var segmentFragmentationThreshold = getEndpoint(MllpEndpoint.class).getSegmentFragmentationThreshold();
-        
+
         // preprocess output
         if (supportSegmentFragmentation && (segmentFragmentationThreshold >= 5)) {
             var message = exchange.getIn();
@@ -47,18 +83,13 @@ public class ProducerStringProcessingInterceptor extends InterceptorSupport {
             s = FragmentationUtils.ensureMaximalSegmentsLength(s, segmentFragmentationThreshold);
             message.setBody(s);
         }
-        
-        // run the route
-        getWrappedProcessor().process(exchange);
+    }
 
-        // Read in the response. If an exception is set (e.g. because the connection was closed, return it)
-        if (exchange.getException() != null) {
-            throw exchange.getException();
-        }
+    private void readResponse(Exchange exchange) throws Exception {
         var message = exchange.getMessage();
-        exchange.getMessage().setBody(Hl7v2MarshalUtils.convertBodyToString(
+        message.setBody(Hl7v2MarshalUtils.convertBodyToString(
                 message,
-                charsetName,
-                supportSegmentFragmentation));
+                getEndpoint(MllpEndpoint.class).getCharsetName(),
+                getEndpoint(MllpEndpoint.class).isSupportSegmentFragmentation()));
     }
 }
@@ -74,4 +74,39 @@ class TestFragmentationUtils {
          assert splittedAtLength10 == FragmentationUtils.ensureMaximalSegmentsLength(original, 10)
          assert original == FragmentationUtils.ensureMaximalSegmentsLength(original, 1000)
      }
+
+     @Test
+     void testRefreshFragment() {
+         String fragment =
+             'MSH|^~\\&|MESA_PD_SUPPLIER|PIM|MESA_PD_CONSUMER|MESA_DEPARTMENT|' +
+             '20081031112704||RSP^K22^RSP_K21|old-id|P|2.5\r' +
+             'MSA|AA|old-request-id\r' +
+             'QAK|1402274727|OK|IHE PDQ Query|2|1|1\r' +
+             'PID|1||12345678^^^&1.2.3.4&ISO\r'
+
+         String refreshed =
+             'MSH|^~\\&|MESA_PD_SUPPLIER|PIM|MESA_PD_CONSUMER|MESA_DEPARTMENT|' +
+             '20230101120000||RSP^K22^RSP_K21|new-id|P|2.5\r' +
+             'MSA|AA|new\\S\\request-id\r' +
+             'QAK|1402274727|OK|IHE PDQ Query|2|1|1\r' +
+             'PID|1||12345678^^^&1.2.3.4&ISO\r'
+
+         assert refreshed == FragmentationUtils.refreshFragment(fragment, '20230101120000', 'new-id', 'new^request-id')
+     }
+
+     @Test
+     void testFindField() {
+         String message =
+             'MSH|^~\\&|MESA_PD_SUPPLIER|PIM|MESA_PD_CONSUMER|MESA_DEPARTMENT|' +
+             '20081031112704||RSP^K22^RSP_K21|msg-id|P|2.5\r' +
+             'MSA|AA|request-id\r' +
+             'PID|1||12345678^^^&1.2.3.4&ISO~87654321^^^&1.2.3.5&ISO'
+
+         assert 'msg-id' == FragmentationUtils.findField(message, 'MSH', 10)
+         assert '^~\\&' == FragmentationUtils.findField(message, 'MSH', 2)
+         assert 'request-id' == FragmentationUtils.findField(message, 'MSA', 2)
+         assert '12345678^^^&1.2.3.4&ISO~87654321^^^&1.2.3.5&ISO' == FragmentationUtils.findField(message, 'PID', 3)
+         assert '' == FragmentationUtils.findField(message, 'MSA', 5)
+         assert null == FragmentationUtils.findField(message, 'QAK', 1)
+     }
 }
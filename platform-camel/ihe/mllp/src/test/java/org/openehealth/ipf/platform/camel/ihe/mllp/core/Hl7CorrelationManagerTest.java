@@ -0,0 +1,59 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.ipf.platform.camel.ihe.mllp.core;
+
+import ca.uhn.hl7v2.DefaultHapiContext;
+import ca.uhn.hl7v2.parser.PipeParser;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests for {@link Hl7CorrelationManager}.
+ */
+public class Hl7CorrelationManagerTest {
+
+    private static final String REQUEST =
+            "MSH|^~\\&|SENDER|FACILITY|RECEIVER|FACILITY|20230101120000||ADT^A01|%s|P|2.5\r" +
+            "EVN|A01|20230101120000\r";
+
+    private static final String RESPONSE =
+            "MSH|^~\\&|RECEIVER|FACILITY|SENDER|FACILITY|20230101120001||ACK^A01|4711|P|2.5\r" +
+            "MSA|AA|%s\r";
+
+    private final Hl7CorrelationManager correlationManager = new Hl7CorrelationManager(new DefaultHapiContext());
+
+    @Test
+    public void testCorrelationIds() throws Exception {
+        var request = String.format(REQUEST, "MSG00001");
+        var response = String.format(RESPONSE, "MSG00001");
+        assertEquals("MSG00001", correlationManager.getRequestCorrelationId(request));
+        assertEquals("MSG00001", correlationManager.getResponseCorrelationId(response));
+        assertEquals("MSG00001", correlationManager.getRequestCorrelationId(request.getBytes(StandardCharsets.UTF_8)));
+        assertEquals("MSG00001", correlationManager.getResponseCorrelationId(new PipeParser().parse(response)));
+    }
+
+    @Test
+    public void testCorrelationIdsWithSeparatorsAndEscapes() {
+        // components are not part of the ID
+        assertEquals("MSG00001", correlationManager.getRequestCorrelationId(String.format(REQUEST, "MSG00001^X")));
+        // escape sequences are resolved by parsing
+        assertEquals("MSG|00001", correlationManager.getRequestCorrelationId(String.format(REQUEST, "MSG\\F\\00001")));
+        assertEquals("MSG|00001", correlationManager.getResponseCorrelationId(String.format(RESPONSE, "MSG\\F\\00001")));
+    }
+}
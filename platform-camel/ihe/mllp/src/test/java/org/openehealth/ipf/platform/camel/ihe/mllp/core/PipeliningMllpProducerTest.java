@@ -0,0 +1,291 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.ipf.platform.camel.ihe.mllp.core;
+
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.AsyncProducer;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultAsyncProducer;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openehealth.ipf.platform.camel.ihe.core.Interceptor;
+import org.openehealth.ipf.platform.camel.ihe.core.InterceptorUtils;
+import org.openehealth.ipf.platform.camel.ihe.mllp.core.intercept.producer.ProducerStringProcessingInterceptor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link PipeliningMllpProducer}, with connections which complete
+ * their exchanges only when told to do so by the test.
+ */
+public class PipeliningMllpProducerTest {
+
+    private static final String REQUEST =
+            "MSH|^~\\&|SENDER|FACILITY|RECEIVER|FACILITY|20230101120000||ADT^A01|%s|P|2.5\r" +
+            "EVN|A01|20230101120000\r" +
+            "PID|||%s||Doe^John\r";
+
+    private final MllpEndpoint<?, ?, ?> endpoint = mock(MllpEndpoint.class);
+    private ExecutorService executorService;
+
+    @BeforeEach
+    public void setUp() {
+        executorService = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testCallerIsReleasedAfterWrite() {
+        var connection = new TestConnection();
+        var producer = new PipeliningMllpProducer(endpoint, List.of(connection), 2, 100, false);
+        var completed = new CopyOnWriteArrayList<Exchange>();
+
+        var exchange = exchange("1", "123");
+        assertFalse(producer.process(exchange, doneSync -> completed.add(exchange)));
+        assertEquals(List.of(exchange), connection.written);
+        assertTrue(completed.isEmpty());
+
+        connection.complete(0);
+        assertEquals(List.of(exchange), completed);
+        assertEquals(2, producer.getAvailableWindow(0));
+    }
+
+    @Test
+    public void testWindowLimit() throws Exception {
+        var connection = new TestConnection();
+        var producer = new PipeliningMllpProducer(endpoint, List.of(connection), 2, 100, false);
+
+        producer.process(exchange("1", "123"), doneSync -> { });
+        producer.process(exchange("2", "456"), doneSync -> { });
+        assertEquals(0, producer.getAvailableWindow(0));
+
+        // the window is full, the third request must wait for a response without blocking the caller
+        assertFalse(producer.process(exchange("3", "789"), doneSync -> { }));
+        assertEquals(2, connection.written.size());
+        assertEquals(1, producer.getQueueLength());
+
+        connection.complete(1);
+        assertEquals(3, connection.written.size());
+        assertEquals(0, producer.getQueueLength());
+        assertEquals("3", connection.written.get(2).getIn().getHeader("id"));
+        assertEquals(0, producer.getAvailableWindow(0));
+
+        // failures release the window as well
+        connection.fail(0);
+        connection.fail(2);
+        assertEquals(2, producer.getAvailableWindow(0));
+    }
+
+    @Test
+    public void testDistributionOverConnections() {
+        var connection1 = new TestConnection();
+        var connection2 = new TestConnection();
+        var producer = new PipeliningMllpProducer(endpoint, List.of(connection1, connection2), 1, 100, false);
+
+        producer.process(exchange("1", "123"), doneSync -> { });
+        producer.process(exchange("2", "456"), doneSync -> { });
+        assertEquals(1, connection1.written.size());
+        assertEquals(1, connection2.written.size());
+        assertEquals(0, producer.getAvailableWindow(0));
+        assertEquals(0, producer.getAvailableWindow(1));
+
+        connection2.complete(0);
+        producer.process(exchange("3", "789"), doneSync -> { });
+        assertEquals(2, connection2.written.size());
+    }
+
+    @Test
+    public void testOrderingByPatient() throws Exception {
+        var connection = new TestConnection();
+        var producer = new PipeliningMllpProducer(endpoint, List.of(connection), 10, 100, true);
+
+        producer.process(exchange("1", "123^^^AUTH"), doneSync -> { });
+        // other patients are not affected
+        producer.process(exchange("2", "456^^^AUTH"), doneSync -> { });
+        assertEquals(2, connection.written.size());
+
+        // same patient, identified by the first repetition of PID-3
+        assertFalse(producer.process(exchange("3", "123^^^AUTH~999^^^OTHER"), doneSync -> { }));
+        // requests concerning other patients overtake the waiting one
+        producer.process(exchange("4", "789^^^AUTH"), doneSync -> { });
+        assertEquals(3, connection.written.size());
+        assertEquals("4", connection.written.get(2).getIn().getHeader("id"));
+
+        // sent as soon as the response to the first request has been received
+        connection.complete(0);
+        assertEquals(4, connection.written.size());
+        assertEquals("3", connection.written.get(3).getIn().getHeader("id"));
+    }
+
+    @Test
+    public void testQueueLimit() {
+        var connection = new TestConnection();
+        var producer = new PipeliningMllpProducer(endpoint, List.of(connection), 1, 1, false);
+
+        producer.process(exchange("1", "123"), doneSync -> { });
+        producer.process(exchange("2", "456"), doneSync -> { });
+        assertEquals(1, producer.getQueueLength());
+
+        var exchange = exchange("3", "789");
+        var completedSync = new AtomicBoolean();
+        assertTrue(producer.process(exchange, completedSync::set));
+        assertTrue(completedSync.get());
+        assertTrue(exchange.getException() instanceof RejectedExecutionException);
+        assertEquals(1, producer.getQueueLength());
+
+        connection.complete(0);
+        assertEquals(2, connection.written.size());
+        assertEquals(0, producer.getQueueLength());
+    }
+
+    @Test
+    public void testSynchronousCompletion() {
+        // e.g. a connection which fails to write the request
+        var connection = new TestConnection() {
+            @Override
+            public boolean process(Exchange exchange, AsyncCallback callback) {
+                exchange.setException(new IllegalStateException("closed"));
+                callback.done(true);
+                return true;
+            }
+        };
+        var producer = new PipeliningMllpProducer(endpoint, List.of(connection), 1, 100, true);
+
+        var completedSync = new AtomicBoolean();
+        assertTrue(producer.process(exchange("1", "123"), completedSync::set));
+        assertTrue(completedSync.get());
+        assertEquals(1, producer.getAvailableWindow(0));
+
+        // the patient is not blocked by the failed request
+        assertTrue(producer.process(exchange("2", "123"), doneSync -> { }));
+    }
+
+    @Test
+    public void testQueuedRequestsFailOnStop() throws Exception {
+        var connection = new TestConnection();
+        var producer = new PipeliningMllpProducer(endpoint, List.of(connection), 1, 100, false);
+
+        producer.process(exchange("1", "123"), doneSync -> { });
+        var exchange = exchange("2", "456");
+        var completed = new CountDownLatch(1);
+        assertFalse(producer.process(exchange, doneSync -> completed.countDown()));
+
+        producer.doStop();
+        assertTrue(completed.await(5L, TimeUnit.SECONDS));
+        assertTrue(exchange.getException() instanceof RejectedExecutionException);
+    }
+
+    @Test
+    public void testCompletionFromOtherThread() throws Exception {
+        var connection = new TestConnection();
+        var producer = new PipeliningMllpProducer(endpoint, List.of(connection), 1, 100, false);
+        var exchange = exchange("1", "123");
+        var completed = new CountDownLatch(1);
+
+        producer.process(exchange, doneSync -> completed.countDown());
+        // e.g. a Netty I/O thread which has received the response
+        executorService.submit(() -> {
+            exchange.getMessage().setBody("response");
+            connection.complete(0);
+        });
+        assertTrue(completed.await(5L, TimeUnit.SECONDS));
+        assertSame("response", exchange.getMessage().getBody());
+        assertEquals(1, producer.getAvailableWindow(0));
+    }
+
+    @Test
+    public void testAsyncInterceptorChain() {
+        when(endpoint.getCharsetName()).thenReturn("UTF-8");
+        var connection = new TestConnection();
+        var producer = new PipeliningMllpProducer(endpoint, List.of(connection), 1, 100, false);
+        var chain = List.<Interceptor>of(new ProducerStringProcessingInterceptor());
+        var adapter = InterceptorUtils.adaptProducerChain(chain, endpoint, producer, true);
+        assertTrue(adapter instanceof AsyncProducer);
+
+        var exchange = exchange("1", "123");
+        var completed = new CopyOnWriteArrayList<Exchange>();
+        assertFalse(((AsyncProducer) adapter).process(exchange, doneSync -> completed.add(exchange)));
+        assertTrue(completed.isEmpty());
+
+        // the response is post-processed by the interceptor when it arrives
+        var response = "MSH|^~\\&|RECEIVER|FACILITY|SENDER|FACILITY|20230101120001||ACK^A01|2|P|2.5\rMSA|AA|1\r";
+        exchange.getMessage().setBody(response.getBytes(StandardCharsets.UTF_8));
+        connection.complete(0);
+        assertEquals(List.of(exchange), completed);
+        assertNull(exchange.getException());
+        assertEquals(response, exchange.getMessage().getBody());
+    }
+
+    private static Exchange exchange(String id, String patientId) {
+        var exchange = new DefaultExchange(new DefaultCamelContext());
+        exchange.getIn().setBody(String.format(REQUEST, id, patientId));
+        exchange.getIn().setHeader("id", id);
+        return exchange;
+    }
+
+    /**
+     * Connection which records written requests and keeps them outstanding until the test
+     * completes them, like a camel-netty producer waiting for the correlated response.
+     */
+    private static class TestConnection extends DefaultAsyncProducer {
+
+        private final List<Exchange> written = new CopyOnWriteArrayList<>();
+        private final List<AsyncCallback> callbacks = new CopyOnWriteArrayList<>();
+
+        TestConnection() {
+            super(mock(MllpEndpoint.class));
+        }
+
+        @Override
+        public boolean process(Exchange exchange, AsyncCallback callback) {
+            written.add(exchange);
+            callbacks.add(callback);
+            return false;
+        }
+
+        void complete(int index) {
+            callbacks.get(index).done(false);
+        }
+
+        void fail(int index) {
+            written.get(index).setException(new IllegalStateException("timeout"));
+            callbacks.get(index).done(false);
+        }
+    }
+}
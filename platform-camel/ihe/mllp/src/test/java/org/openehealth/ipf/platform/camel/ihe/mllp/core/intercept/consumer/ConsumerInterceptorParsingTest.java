@@ -0,0 +1,202 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.ipf.platform.camel.ihe.mllp.core.intercept.consumer;
+
+import ca.uhn.hl7v2.HL7Exception;
+import ca.uhn.hl7v2.model.Message;
+import ca.uhn.hl7v2.parser.PipeParser;
+import ca.uhn.hl7v2.preparser.PreParser;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openehealth.ipf.commons.ihe.hl7v2.Constants;
+import org.openehealth.ipf.commons.ihe.hl7v2.Hl7v2TransactionConfiguration;
+import org.openehealth.ipf.commons.ihe.hl7v2.NakFactory;
+import org.openehealth.ipf.commons.ihe.hl7v2.storage.SpringCacheUnsolicitedFragmentationStorage;
+import org.openehealth.ipf.platform.camel.ihe.hl7v2.Hl7v2ParsingContext;
+import org.openehealth.ipf.platform.camel.ihe.hl7v2.intercept.consumer.ConsumerMarshalInterceptor;
+import org.openehealth.ipf.platform.camel.ihe.mllp.core.MllpTransactionEndpoint;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that the consumer-side interceptors share the {@link Hl7v2ParsingContext} of the exchange,
+ * i.e. that each request is pre-parsed and parsed at most once, with the same result as parsing
+ * the request string directly.
+ */
+public class ConsumerInterceptorParsingTest {
+
+    private static final String REQUEST =
+            "MSH|^~\\&|MESA_PD_CONSUMER|MESA_DEPARTMENT|MESA_PD_SUPPLIER|PIM|20081031112704||QBP^Q22|324406609|P|2.5|||ER\r" +
+            "QPD|IHE PDQ Query|1402274727|@PID.3.1^12345678~@PID.3.4.1^HZLN\r" +
+            "RCP|I|10^RD\r";
+
+    private static final String FRAGMENT_1 =
+            "MSH|^~\\&|MESA_PD_CONSUMER|MESA_DEPARTMENT|MESA_PD_SUPPLIER|PIM|20081031112704||QBP^Q22|324406610|P|2.5|||ER\r" +
+            "QPD|IHE PDQ Query|1402274728|@PID.3.1^12345678~@PID.3.4.1^HZLN\r" +
+            "DSC|continuation-1\r";
+
+    private static final String FRAGMENT_2 =
+            "MSH|^~\\&|MESA_PD_CONSUMER|MESA_DEPARTMENT|MESA_PD_SUPPLIER|PIM|20081031112705||QBP^Q22|324406611|P|2.5||continuation-1|ER\r" +
+            "RCP|I|10^RD\r";
+
+    private static final String XML_REQUEST =
+            "<QBP_Q21 xmlns=\"urn:hl7-org:v2xml\"><MSH><MSH.1>|</MSH.1><MSH.2>^~\\&amp;</MSH.2>" +
+            "<MSH.9><MSG.1>QBP</MSG.1><MSG.2>Q22</MSG.2><MSG.3>QBP_Q21</MSG.3></MSH.9>" +
+            "<MSH.12><VID.1>2.5</VID.1></MSH.12></MSH></QBP_Q21>";
+
+    private final List<Message> routedMessages = new ArrayList<>();
+    private PipeParser parser;
+    private MllpTransactionEndpoint<?> endpoint;
+    private ConsumerRequestDefragmenterInterceptor defragmenter;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        parser = spy(new PipeParser());
+        var configuration = mock(Hl7v2TransactionConfiguration.class);
+        when(configuration.getParser()).thenReturn(parser);
+        var nakFactory = mock(NakFactory.class);
+        when(nakFactory.createDefaultNak(any())).thenReturn(new PipeParser().parse(
+                "MSH|^~\\&|MESA_PD_SUPPLIER|PIM|MESA_PD_CONSUMER|MESA_DEPARTMENT|20081031112704||ACK^Q22|1|P|2.5\r" +
+                "MSA|AR|324406609\r"));
+
+        endpoint = mock(MllpTransactionEndpoint.class);
+        doReturn(configuration).when(endpoint).getHl7v2TransactionConfiguration();
+        doReturn(nakFactory).when(endpoint).getNakFactory();
+        when(endpoint.getUnsolicitedFragmentationStorage())
+                .thenReturn(new SpringCacheUnsolicitedFragmentationStorage(new ConcurrentMapCacheManager()));
+
+        var marshaller = new ConsumerMarshalInterceptor(false);
+        marshaller.setEndpoint(endpoint);
+        marshaller.setWrappedProcessor(exchange -> routedMessages.add(exchange.getIn().getBody(Message.class)));
+
+        defragmenter = new ConsumerRequestDefragmenterInterceptor();
+        defragmenter.setEndpoint(endpoint);
+        defragmenter.setWrappedProcessor(marshaller);
+    }
+
+    @Test
+    public void testRequestIsParsedOnce() throws Exception {
+        var exchange = exchange(REQUEST);
+        var parsingContext = install(exchange);
+
+        defragmenter.process(exchange);
+
+        assertEquals(1, parsingContext.preParsed);
+        verify(parser, times(1)).parse(anyString());
+        assertEquals(1, routedMessages.size());
+        assertEquals(new PipeParser().parse(REQUEST).encode(), routedMessages.get(0).encode());
+
+        // the route may modify the message, so that the context must not be used any longer
+        assertNull(exchange.getProperty(Hl7v2ParsingContext.EXCHANGE_PROPERTY));
+    }
+
+    @Test
+    public void testFragmentedRequestIsParsedOnce() throws Exception {
+        // intermediate fragment: parsed only for creating the acknowledgement
+        var exchange1 = exchange(FRAGMENT_1);
+        var parsingContext1 = install(exchange1);
+        defragmenter.process(exchange1);
+
+        assertEquals(1, parsingContext1.preParsed);
+        verify(parser, times(1)).parse(anyString());
+        assertTrue(routedMessages.isEmpty());
+        assertTrue(exchange1.getMessage().getBody(String.class).contains("MSA|CA|324406610"));
+
+        // last fragment: the assembled request replaces the body and gets a context of its own
+        var exchange2 = exchange(FRAGMENT_2);
+        var parsingContext2 = install(exchange2);
+        defragmenter.process(exchange2);
+
+        assertEquals(1, parsingContext2.preParsed);
+        verify(parser, times(2)).parse(anyString());
+        assertEquals(1, routedMessages.size());
+
+        var assembledRequest = FRAGMENT_1.substring(0, FRAGMENT_1.indexOf("DSC|")) + FRAGMENT_2.substring(FRAGMENT_2.indexOf('\r') + 1);
+        assertEquals(assembledRequest, exchange2.getIn().getHeader(Constants.ORIGINAL_MESSAGE_STRING_HEADER_NAME, String.class));
+        assertEquals(new PipeParser().parse(assembledRequest).encode(), routedMessages.get(0).encode());
+    }
+
+    @Test
+    public void testDispatcherSharesContext() throws Exception {
+        var dispatcher = new ConsumerDispatchingInterceptor(new DefaultCamelContext());
+        dispatcher.setEndpoint(endpoint);
+
+        // the message header of ER7-encoded requests is scanned without pre-parsing
+        var exchange = exchange(REQUEST);
+        var parsingContext = install(exchange);
+        dispatcher.process(exchange);
+        assertEquals(0, parsingContext.preParsed);
+        assertTrue(exchange.getMessage().getBody(String.class).contains("MSA|AR"));
+
+        // other requests are pre-parsed once, also for the succeeding interceptors
+        exchange = exchange(XML_REQUEST);
+        parsingContext = install(exchange);
+        dispatcher.process(exchange);
+        assertEquals(1, parsingContext.preParsed);
+
+        exchange.getIn().setBody(XML_REQUEST);
+        assertSame(parsingContext, Hl7v2ParsingContext.of(exchange));
+        assertArrayEquals(PreParser.getFields(XML_REQUEST, "MSH-14", "DSC-1", "DSC-2"),
+                parsingContext.getFields("MSH-14", "DSC-1", "DSC-2"));
+        assertEquals(1, parsingContext.preParsed);
+    }
+
+    private static Exchange exchange(String request) {
+        var exchange = new DefaultExchange(new DefaultCamelContext());
+        exchange.getIn().setBody(request);
+        return exchange;
+    }
+
+    private static CountingParsingContext install(Exchange exchange) {
+        var parsingContext = new CountingParsingContext(exchange.getIn().getBody(String.class));
+        exchange.setProperty(Hl7v2ParsingContext.EXCHANGE_PROPERTY, parsingContext);
+        return parsingContext;
+    }
+
+    private static class CountingParsingContext extends Hl7v2ParsingContext {
+
+        private int preParsed;
+
+        CountingParsingContext(String messageString) {
+            super(messageString);
+        }
+
+        @Override
+        protected String[] preParse(String messageString, String... paths) throws HL7Exception {
+            preParsed++;
+            return super.preParse(messageString, paths);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openehealth.ipf.platform.camel.ihe.mllp.core.intercept.consumer;
+
+import ca.uhn.hl7v2.DefaultHapiContext;
+import ca.uhn.hl7v2.ErrorCode;
+import ca.uhn.hl7v2.Version;
+import ca.uhn.hl7v2.preparser.PreParser;
+import org.junit.jupiter.api.Test;
+import org.openehealth.ipf.commons.ihe.hl7v2.Hl7v2AcceptanceException;
+import org.openehealth.ipf.commons.ihe.hl7v2.Hl7v2TransactionConfiguration;
+import org.openehealth.ipf.commons.ihe.hl7v2.PDQ;
+import org.openehealth.ipf.commons.ihe.hl7v2.PIX;
+import org.openehealth.ipf.commons.ihe.hl7v2.XPID;
+import org.openehealth.ipf.commons.ihe.hl7v2.audit.MllpAuditDataset;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Tests for {@link DispatchRoutingTable}, which must select the same routes as checking all transaction configurations.
+ */
+public class DispatchRoutingTableTest {
+
+    private static final String[] FIELDS = {"MSH-9-1", "MSH-9-2", "MSH-9-3", "MSH-12"};
+
+    private static final List<String> MESSAGES = List.of(
+            "MSH|^~\\&|MESA_PD_SUPPLIER|XYZ_HOSPITAL|dummy|dummy|20081204114742||ADT^A01|123456|T|2.3.1|||ER\r" +
+                    "EVN|A01|20081204114742\r",
+            "MSH|^~\\&|MESA_PIX_CLIENT|MESA_DEPARTMENT|MESA_XREF|XYZ_HOSPITAL|200603121200||QBP^Q23^QBP_Q21|10501110|P|2.5||||||||\n" +
+                    "QPD|QRY_1001^Query for Corresponding Identifiers^IHEDEMO|QRY10501110|ABC10501^^^HIMSS2005&1.3.6.1.4.1.21367.2005.1.1&ISO^PI\n",
+            "MSH|^~\\&|REPOSITORY|ENT|RSP1P8|GOOD HEALTH HOSPITAL|200701051530|SEC|ADT^A43^ADT_A43|0000009|P|2.5\r" +
+                    "EVN|A43|200701051530\r",
+            "MSH|^~\\&|PIX|IPF|CLIENT|IPF|200701051530||ADT^A31|0000010|P|2.5\r",
+            "MSH|^~\\&|LAB|IPF|CLIENT|IPF|200701051530||ORU^R01|0000011|P|2.5\r",
+            "MSH|^~\\&|DOC|IPF|CLIENT|IPF|200701051530||MDM^T04|0000012|P|2.5\r",
+            "MSH|^~\\&|SCHED|IPF|CLIENT|IPF|200701051530||SIU^S12|0000013|P|2.5\r",
+            "MSH|^~\\&|BILL|IPF|CLIENT|IPF|200701051530||DFT^P03|0000014|P|2.5",
+            "MSH|^~\\&|ANY|IPF|CLIENT|IPF|200701051530||ZZZ^Z99|0000015|P|2.4\r",
+            "MSH|^~\\&|ANY|IPF|CLIENT|IPF|200701051530||ADT^A99|0000016|P|2.5\r",
+            "MSH|^~\\&|ANY|IPF|CLIENT|IPF|200701051530||ADT^A01|0000017|P|2.6\r",
+            "MSH|^~\\&|ANY|IPF|CLIENT|IPF|200701051530||QBP^Q23^ADT_A01|0000018|P|2.5\r",
+            "MSH|^~\\&|ANY|IPF|CLIENT|IPF|200701051530\r");
+
+
+    private static Hl7v2TransactionConfiguration<MllpAuditDataset> configuration(
+            String name, Version version, String messageType, String triggerEvents)
+    {
+        return new Hl7v2TransactionConfiguration<>(
+                name,
+                name,
+                false,
+                null,
+                null,
+                new Version[] {version},
+                "Dispatch test adapter",
+                "IPF-Test",
+                ErrorCode.APPLICATION_INTERNAL_ERROR,
+                ErrorCode.APPLICATION_INTERNAL_ERROR,
+                new String[] {messageType},
+                new String[] {triggerEvents},
+                new String[] {"ACK"},
+                new String[] {"*"},
+                new boolean[] {false},
+                new boolean[] {false},
+                new DefaultHapiContext());
+    }
+
+    private static Map<String, Hl7v2TransactionConfiguration<?>> configurations() {
+        var configurations = new LinkedHashMap<String, Hl7v2TransactionConfiguration<?>>();
+        configurations.put("iti8", PIX.FeedInteractions.ITI_8_PIX.getHl7v2TransactionConfiguration());
+        configurations.put("iti9", PIX.QueryInteractions.ITI_9.getHl7v2TransactionConfiguration());
+        configurations.put("iti10", PIX.QueryInteractions.ITI_10.getHl7v2TransactionConfiguration());
+        configurations.put("any24", configuration("any24", Version.V24, "*", "*"));
+        configurations.put("iti21", PDQ.Interactions.ITI_21.getHl7v2TransactionConfiguration());
+        configurations.put("iti22", PDQ.Interactions.ITI_22.getHl7v2TransactionConfiguration());
+        configurations.put("iti64", XPID.Interactions.ITI_64.getHl7v2TransactionConfiguration());
+        configurations.put("oru", configuration("oru", Version.V25, "ORU", "R01"));
+        configurations.put("mdm", configuration("mdm", Version.V25, "MDM", "T02 T04"));
+        configurations.put("siu", configuration("siu", Version.V25, "SIU", "S12 S13 S14"));
+        configurations.put("orm", configuration("orm", Version.V25, "ORM", "O01"));
+        configurations.put("dft", configuration("dft", Version.V25, "DFT", "P03"));
+        return configurations;
+    }
+
+    private static String accepting(Map<String, Hl7v2TransactionConfiguration<?>> configurations,
+                                    Iterable<String> routeIds, String[] fields)
+    {
+        for (var routeId : routeIds) {
+            try {
+                configurations.get(routeId).checkMessageAcceptance(fields[0], fields[1], fields[2], fields[3], true);
+                return routeId;
+            } catch (Hl7v2AcceptanceException e) {
+                // try next one
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void testScanMessageHeader() throws Exception {
+        for (var message : MESSAGES) {
+            assertArrayEquals(PreParser.getFields(message, FIELDS), DispatchRoutingTable.scanMessageHeader(message), message);
+        }
+        assertNull(DispatchRoutingTable.scanMessageHeader("<ADT_A01 xmlns=\"urn:hl7-org:v2xml\"/>"));
+    }
+
+    @Test
+    public void testDispatch() {
+        var configurations = configurations();
+        var routingTable = DispatchRoutingTable.compile(configurations);
+
+        var expected = new String[] {"iti8", "iti9", "iti64", "iti10", "oru", "mdm", "siu", "dft", "any24", null, null, null, null};
+        for (var i = 0; i < MESSAGES.size(); ++i) {
+            var fields = DispatchRoutingTable.scanMessageHeader(MESSAGES.get(i));
+            assertEquals(expected[i], accepting(configurations, configurations.keySet(), fields), MESSAGES.get(i));
+            assertEquals(expected[i], accepting(configurations, routingTable.getCandidates(fields[0], fields[1], fields[3]), fields), MESSAGES.get(i));
+        }
+        assertEquals(List.of("iti8", "any24"), routingTable.getCandidates("ADT", "A01", "2.3.1"));
+        assertEquals(List.of("any24"), routingTable.getCandidates("ZZZ", "Z99", "2.4"));
+    }
+
+    @Test
+    public void testCandidatesMatchAllRoutes() {
+        var configurations = configurations();
+        var routingTable = DispatchRoutingTable.compile(configurations);
+
+        for (var messageType : new String[] {"ADT", "QBP", "ORU", "MDM", "SIU", "DFT", "ORM", "ZZZ"}) {
+            for (var triggerEvent : new String[] {"A01", "A04", "A31", "A40", "A43", "Q21", "Q22", "Q23", "R01", "T04", "S12", "P03", "O01", "Z99"}) {
+                for (var messageStructure : new String[] {null, "ADT_A01", "QBP_Q21"}) {
+                    for (var version : new String[] {"2.3.1", "2.4", "2.5", "2.6"}) {
+                        var fields = new String[] {messageType, triggerEvent, messageStructure, version};
+                        assertEquals(accepting(configurations, configurations.keySet(), fields),
+                                accepting(configurations, routingTable.getCandidates(messageType, triggerEvent, version), fields),
+                                String.join("|", messageType, triggerEvent, String.valueOf(messageStructure), version));
+                    }
+                }
+            }
+        }
+    }
+}
@@ -126,6 +126,8 @@ public abstract class AbstractWsEndpoint<
     private String username;
     private String password;
     private HTTPClientPolicy httpClientPolicy;
+    private boolean asyncInvocation;
+    private int maxInFlightRequests;
 
 
     protected AbstractWsEndpoint(
@@ -426,6 +428,40 @@ public abstract class AbstractWsEndpoint<
         return httpClientPolicy;
     }
 
+    /**
+     * @return <code>true</code> if producers shall send requests without blocking the
+     * calling thread until the response has been received. <code>false</code> by default.
+     */
+    @ManagedAttribute(description = "Asynchronous Invocation Enabled")
+    public boolean isAsyncInvocation() {
+        return asyncInvocation;
+    }
+
+    /**
+     * @param asyncInvocation <code>true</code> if producers shall send requests without blocking the
+     *                        calling thread until the response has been received.
+     */
+    public void setAsyncInvocation(boolean asyncInvocation) {
+        this.asyncInvocation = asyncInvocation;
+    }
+
+    /**
+     * @return maximal number of concurrently pending asynchronous requests of a producer,
+     * or 0 (default) for no limit.
+     */
+    @ManagedAttribute(description = "Maximal Number of In-Flight Requests")
+    public int getMaxInFlightRequests() {
+        return maxInFlightRequests;
+    }
+
+    /**
+     * @param maxInFlightRequests maximal number of concurrently pending asynchronous requests
+     *                            of a producer, or 0 for no limit.
+     */
+    public void setMaxInFlightRequests(int maxInFlightRequests) {
+        this.maxInFlightRequests = maxInFlightRequests;
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public AbstractWsComponent<AuditDatasetType, ConfigType, ? extends WsInteractionId> getComponent() {
@@ -20,16 +20,30 @@ import static org.openehealth.ipf.platform.camel.ihe.ws.HeaderUtils.processIncom
 import static org.openehealth.ipf.platform.camel.ihe.ws.HeaderUtils.processUserDefinedOutgoingHeaders;
 
 import com.ctc.wstx.exc.WstxEOFException;
+import java.io.IOException;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import javax.xml.soap.SOAPConstants;
+import javax.xml.soap.SOAPException;
+import javax.xml.soap.SOAPFactory;
+import javax.xml.soap.SOAPFault;
 import javax.xml.ws.BindingProvider;
+import javax.xml.ws.WebServiceException;
+import javax.xml.ws.handler.MessageContext;
 import javax.xml.ws.soap.SOAPFaultException;
+import org.apache.camel.AsyncCallback;
 import org.apache.camel.Exchange;
 import org.apache.camel.ExchangePattern;
 import org.apache.camel.Message;
-import org.apache.camel.support.DefaultProducer;
+import org.apache.camel.support.DefaultAsyncProducer;
+import org.apache.cxf.binding.soap.SoapFault;
+import org.apache.cxf.endpoint.ClientCallback;
 import org.apache.cxf.endpoint.ClientImpl;
 import org.apache.cxf.frontend.ClientProxy;
 import org.apache.cxf.headers.Header;
+import org.apache.cxf.interceptor.Fault;
 import org.apache.cxf.jaxws.context.WrappedMessageContext;
 import org.apache.cxf.ws.addressing.AddressingProperties;
 import org.apache.cxf.ws.addressing.AttributedURIType;
@@ -52,12 +66,18 @@ import org.slf4j.LoggerFactory;
  */
 public abstract class AbstractWsProducer<
         AuditDatasetType extends WsAuditDataset,
-        ConfigType extends WsTransactionConfiguration<AuditDatasetType>, InType, OutType> extends DefaultProducer {
+        ConfigType extends WsTransactionConfiguration<AuditDatasetType>, InType, OutType> extends DefaultAsyncProducer {
     private static final Logger LOG = LoggerFactory.getLogger(AbstractWsProducer.class);
 
+    /**
+     * Request context property which makes CXF use the asynchronous HTTP conduit, when available.
+     */
+    private static final String USE_ASYNC_HTTP_CONDUIT = "use.async.http.conduit";
+
     private final JaxWsClientFactory<AuditDatasetType> clientFactory;
     private final Class<InType> requestClass;
     private final Class<OutType> responseClass;
+    private final Semaphore inFlightRequests;
 
 
     /**
@@ -77,6 +97,9 @@ public abstract class AbstractWsProducer<
         this.clientFactory = requireNonNull(clientFactory, "client factory cannot be null");
         this.requestClass = requireNonNull(requestClass, "request class cannot be null");
         this.responseClass = requireNonNull(responseClass, "responseClass class cannot be null");
+        this.inFlightRequests = endpoint.getMaxInFlightRequests() > 0
+                ? new Semaphore(endpoint.getMaxInFlightRequests())
+                : null;
     }
 
 
@@ -84,84 +107,195 @@ public abstract class AbstractWsProducer<
     public void process(Exchange exchange) throws Exception {
         var body = exchange.getIn().getMandatoryBody(requestClass);
         final BindingProvider bindingProvider = (BindingProvider) clientFactory.getClient();
-        final OutType result;
         String replyToUri = null;
 
         try {
             // prepare
-            configureClient(bindingProvider);
-            var requestContext = (WrappedMessageContext) bindingProvider.getRequestContext();
-            cleanRequestContext(requestContext);
+            replyToUri = prepareRequest(exchange, bindingProvider);
 
-            enrichRequestContext(exchange, requestContext);
-            processUserDefinedOutgoingHeaders(requestContext, exchange.getIn(), true);
-
-            // set request encoding based on Camel exchange property
-            var requestEncoding = exchange.getProperty(Exchange.CHARSET_NAME, String.class);
-            if (requestEncoding != null) {
-                requestContext.put(org.apache.cxf.message.Message.ENCODING, requestEncoding);
-            }
+            // normalize response type when called via reflection or similar non-type-safe mechanisms
+            var result = responseClass.cast(callService(bindingProvider, body));
+            processResponse(exchange, replyToUri, result, (WrappedMessageContext) bindingProvider.getResponseContext());
+        } catch (SOAPFaultException fault) {
+            processFault(fault, replyToUri);
+        } finally {
+            clientFactory.restoreClient(bindingProvider);
+        }
+    }
 
-            // get and analyse WS-Addressing asynchrony configuration
-            var replyToHeader = exchange.getIn().getHeader(AbstractWsEndpoint.WSA_REPLYTO_HEADER_NAME, String.class);
-            replyToHeader = replyToHeader != null ? replyToHeader.trim() : null;
-            replyToUri = getWsTransactionConfiguration().isAllowAsynchrony()
-                    ? (replyToHeader == null || replyToHeader.isEmpty() ? null : replyToHeader)
-                    : null;
-
-            // for asynchronous interaction: configure WSA headers and store correlation data
-            if ((replyToUri != null) || Boolean.TRUE.equals(requestContext.get(AsynchronyCorrelator.FORCE_CORRELATION))) {
-                var messageId = "urn:uuid:" + UUID.randomUUID();
-                configureWSAHeaders(messageId, replyToUri, requestContext);
-
-                var correlator = getEndpoint().getCorrelator();
-                correlator.storeServiceEndpointUri(messageId, getEndpoint().getEndpointUri());
-
-                var correlationKey = exchange.getIn().getHeader(
-                        AbstractWsEndpoint.CORRELATION_KEY_HEADER_NAME,
-                        String.class);
-                if (correlationKey != null) {
-                    correlator.storeCorrelationKey(messageId, correlationKey);
-                }
 
-                var alternativeKeys = getAlternativeRequestKeys(exchange);
-                if (alternativeKeys != null) {
-                    correlator.storeAlternativeKeys(messageId, alternativeKeys);
-                }
+    /**
+     * Sends the request without blocking the calling thread, if the endpoint has been configured with
+     * <code>asyncInvocation=true</code> and the producer supports it
+     * (see {@link #callServiceAsync(Object, Object, ClientCallback)}). Otherwise, the request is sent synchronously.
+     * <p>
+     * The number of concurrently pending asynchronous requests is limited by the endpoint parameter
+     * <code>maxInFlightRequests</code> and by the size of the client pool (see
+     * {@link JaxWsClientFactory#POOL_SIZE_PROPERTY}, defaults to 100), as each pending request holds a client.
+     * When either limit is reached, the exchange fails immediately with a {@link RejectedExecutionException},
+     * so that the calling thread is never blocked.
+     * <p>
+     * SOAP faults are passed to the exchange as {@link SOAPFaultException}, as for synchronous invocations
+     * via the JAX-WS proxy.
+     */
+    @Override
+    public boolean process(Exchange exchange, AsyncCallback callback) {
+        if (!getEndpoint().isAsyncInvocation()) {
+            try {
+                process(exchange);
+            } catch (Exception e) {
+                exchange.setException(e);
             }
+            callback.done(true);
+            return true;
+        }
 
-            // invoke
-            exchange.setPattern((replyToUri == null) ? ExchangePattern.InOut : ExchangePattern.InOnly);
+        final InType body;
+        try {
+            body = exchange.getIn().getMandatoryBody(requestClass);
+        } catch (Exception e) {
+            exchange.setException(e);
+            callback.done(true);
+            return true;
+        }
+        if (inFlightRequests != null && !inFlightRequests.tryAcquire()) {
+            exchange.setException(new RejectedExecutionException(
+                    "Maximal number of in-flight requests reached: " + getEndpoint().getMaxInFlightRequests()));
+            callback.done(true);
+            return true;
+        }
 
-            // normalize response type when called via reflection or similar non-type-safe mechanisms
-            result = responseClass.cast(callService(bindingProvider, body));
-
-            // for synchronous interaction (replyToUri == null): handle response.
-            // (async responses are handled in the service instance derived from
-            // org.openehealth.ipf.platform.camel.ihe.ws.AbstractAsyncResponseWebService)
-            if (replyToUri == null) {
-                var responseMessage = exchange.getMessage();
-                responseMessage.getHeaders().putAll(exchange.getIn().getHeaders());
-                var responseContext = (WrappedMessageContext) bindingProvider.getResponseContext();
-                processIncomingHeaders(responseContext, responseMessage);
-                enrichResponseMessage(responseMessage, responseContext);
-
-                // set Camel exchange property based on response encoding
-                exchange.setProperty(Exchange.CHARSET_NAME,
-                    responseContext.get(org.apache.cxf.message.Message.ENCODING));
-                responseMessage.setBody(result, responseClass);
+        BindingProvider bindingProvider = null;
+        String replyToUri = null;
+        var sentAsynchronously = false;
+        try {
+            bindingProvider = (BindingProvider) clientFactory.tryGetClient();
+            if (bindingProvider == null) {
+                throw new RejectedExecutionException("No client available for " + getEndpoint().getEndpointUri());
+            }
+            replyToUri = prepareRequest(exchange, bindingProvider);
+            bindingProvider.getRequestContext().put(USE_ASYNC_HTTP_CONDUIT, Boolean.TRUE);
+            var completion = new AsyncCompletion(exchange, callback, bindingProvider, replyToUri);
+            sentAsynchronously = callServiceAsync(bindingProvider, body, completion);
+            if (sentAsynchronously) {
+                // the completion releases the client and the in-flight slot
+                return false;
             }
+            // asynchronous invocation not supported by this producer
+            var result = responseClass.cast(callService(bindingProvider, body));
+            processResponse(exchange, replyToUri, result, (WrappedMessageContext) bindingProvider.getResponseContext());
         } catch (SOAPFaultException fault) {
-            // handle http://www.w3.org/TR/2006/NOTE-soap11-ror-httpbinding-20060321/
-            // see also: https://issues.apache.org/jira/browse/CXF-3768
-            if ((replyToUri == null) ||
-                    (fault.getCause() == null) ||
-                    !(fault.getCause() instanceof WstxEOFException)) {
-                throw fault;
+            try {
+                processFault(fault, replyToUri);
+            } catch (Exception e) {
+                exchange.setException(e);
             }
+        } catch (Exception e) {
+            exchange.setException(e);
         } finally {
+            if (!sentAsynchronously) {
+                release(bindingProvider);
+            }
+        }
+        callback.done(true);
+        return true;
+    }
+
+
+    /**
+     * Returns the client to the factory, if it has been obtained, and frees the in-flight request slot.
+     */
+    private void release(BindingProvider bindingProvider) {
+        if (bindingProvider != null) {
             clientFactory.restoreClient(bindingProvider);
         }
+        if (inFlightRequests != null) {
+            inFlightRequests.release();
+        }
+    }
+
+
+    /**
+     * Prepares the client and its request context for the given exchange.
+     *
+     * @return WS-Addressing ReplyTo URI, or <code>null</code> for synchronous interaction.
+     */
+    private String prepareRequest(Exchange exchange, BindingProvider bindingProvider) {
+        configureClient(bindingProvider);
+        var requestContext = (WrappedMessageContext) bindingProvider.getRequestContext();
+        cleanRequestContext(requestContext);
+
+        enrichRequestContext(exchange, requestContext);
+        processUserDefinedOutgoingHeaders(requestContext, exchange.getIn(), true);
+
+        // set request encoding based on Camel exchange property
+        var requestEncoding = exchange.getProperty(Exchange.CHARSET_NAME, String.class);
+        if (requestEncoding != null) {
+            requestContext.put(org.apache.cxf.message.Message.ENCODING, requestEncoding);
+        }
+
+        // get and analyse WS-Addressing asynchrony configuration
+        var replyToHeader = exchange.getIn().getHeader(AbstractWsEndpoint.WSA_REPLYTO_HEADER_NAME, String.class);
+        replyToHeader = replyToHeader != null ? replyToHeader.trim() : null;
+        var replyToUri = getWsTransactionConfiguration().isAllowAsynchrony()
+                ? (replyToHeader == null || replyToHeader.isEmpty() ? null : replyToHeader)
+                : null;
+
+        // for asynchronous interaction: configure WSA headers and store correlation data
+        if ((replyToUri != null) || Boolean.TRUE.equals(requestContext.get(AsynchronyCorrelator.FORCE_CORRELATION))) {
+            var messageId = "urn:uuid:" + UUID.randomUUID();
+            configureWSAHeaders(messageId, replyToUri, requestContext);
+
+            var correlator = getEndpoint().getCorrelator();
+            correlator.storeServiceEndpointUri(messageId, getEndpoint().getEndpointUri());
+
+            var correlationKey = exchange.getIn().getHeader(
+                    AbstractWsEndpoint.CORRELATION_KEY_HEADER_NAME,
+                    String.class);
+            if (correlationKey != null) {
+                correlator.storeCorrelationKey(messageId, correlationKey);
+            }
+
+            var alternativeKeys = getAlternativeRequestKeys(exchange);
+            if (alternativeKeys != null) {
+                correlator.storeAlternativeKeys(messageId, alternativeKeys);
+            }
+        }
+
+        // invoke
+        exchange.setPattern((replyToUri == null) ? ExchangePattern.InOut : ExchangePattern.InOnly);
+        return replyToUri;
+    }
+
+
+    /**
+     * For synchronous interaction (replyToUri == null): handles the response.
+     * (async responses are handled in the service instance derived from
+     * org.openehealth.ipf.platform.camel.ihe.ws.AbstractAsyncResponseWebService)
+     */
+    private void processResponse(Exchange exchange, String replyToUri, OutType result, WrappedMessageContext responseContext) {
+        if (replyToUri == null) {
+            var responseMessage = exchange.getMessage();
+            responseMessage.getHeaders().putAll(exchange.getIn().getHeaders());
+            processIncomingHeaders(responseContext, responseMessage);
+            enrichResponseMessage(responseMessage, responseContext);
+
+            // set Camel exchange property based on response encoding
+            exchange.setProperty(Exchange.CHARSET_NAME,
+                responseContext.get(org.apache.cxf.message.Message.ENCODING));
+            responseMessage.setBody(result, responseClass);
+        }
+    }
+
+
+    private static void processFault(SOAPFaultException fault, String replyToUri) {
+        // handle http://www.w3.org/TR/2006/NOTE-soap11-ror-httpbinding-20060321/
+        // see also: https://issues.apache.org/jira/browse/CXF-3768
+        if ((replyToUri == null) ||
+                (fault.getCause() == null) ||
+                !(fault.getCause() instanceof WstxEOFException)) {
+            throw fault;
+        }
     }
 
 
@@ -171,6 +305,20 @@ public abstract class AbstractWsProducer<
     protected abstract OutType callService(Object client, InType body) throws Exception;
 
 
+    /**
+     * Sends the given request body to a Web Service via the given client proxy without waiting
+     * for the response, which shall be passed to the given callback.
+     * <p>
+     * Per default, asynchronous invocation is not supported, and this method returns <code>false</code>.
+     *
+     * @return <code>true</code> if the request has been sent asynchronously, <code>false</code> if
+     * the producer does not support asynchronous invocation for this request.
+     */
+    protected boolean callServiceAsync(Object client, InType body, ClientCallback callback) throws Exception {
+        return false;
+    }
+
+
     /**
      * Enriches the given Web Service request context
      * on the basis of the given Camel exchange, and vice versa.
@@ -273,4 +421,101 @@ public abstract class AbstractWsProducer<
         return responseClass;
     }
 
+
+
+    /**
+     * Completes the Camel exchange when the response of an asynchronous invocation has been received.
+     */
+    private final class AsyncCompletion extends ClientCallback {
+
+        private final Exchange exchange;
+        private final AsyncCallback callback;
+        private final BindingProvider bindingProvider;
+        private final String replyToUri;
+
+        private AsyncCompletion(Exchange exchange, AsyncCallback callback, BindingProvider bindingProvider, String replyToUri) {
+            this.exchange = exchange;
+            this.callback = callback;
+            this.bindingProvider = bindingProvider;
+            this.replyToUri = replyToUri;
+        }
+
+        @Override
+        public void handleResponse(Map<String, Object> ctx, Object[] res) {
+            super.handleResponse(ctx, res);
+            try {
+                var result = responseClass.cast((res != null && res.length > 0) ? res[0] : null);
+                processResponse(exchange, replyToUri, result, new WrappedMessageContext(ctx, null, MessageContext.Scope.APPLICATION));
+            } catch (Exception e) {
+                exchange.setException(e);
+            } finally {
+                complete();
+            }
+        }
+
+        @Override
+        public void handleException(Map<String, Object> ctx, Throwable ex) {
+            super.handleException(ctx, ex);
+            try {
+                var mapped = mapException(ex);
+                if (mapped instanceof SOAPFaultException) {
+                    processFault((SOAPFaultException) mapped, replyToUri);
+                } else {
+                    exchange.setException(mapped);
+                }
+            } catch (Exception e) {
+                exchange.setException(e);
+            } finally {
+                complete();
+            }
+        }
+
+        private void complete() {
+            release(bindingProvider);
+            callback.done(false);
+        }
+
+        /**
+         * CXF passes the exception to the callback as it is, so SOAP faults and transport errors are converted
+         * like the JAX-WS client proxy does for synchronous invocations.
+         */
+        private Throwable mapException(Throwable ex) {
+            if (ex instanceof SoapFault) {
+                var fault = (SoapFault) ex;
+                try {
+                    var exception = new SOAPFaultException(createSoapFault(fault));
+                    exception.initCause(fault.getCause() != null ? fault.getCause() : fault);
+                    return exception;
+                } catch (SOAPException e) {
+                    LOG.debug("Could not convert SOAP fault: {}", e.getMessage());
+                    return ex;
+                }
+            }
+            if (ex instanceof Fault && ex.getCause() instanceof IOException) {
+                return new WebServiceException(ex.getMessage(), ex.getCause());
+            }
+            return ex;
+        }
+
+        private SOAPFault createSoapFault(SoapFault fault) throws SOAPException {
+            var soap12 = SOAPConstants.URI_NS_SOAP_1_2_ENVELOPE.equals(fault.getFaultCode().getNamespaceURI());
+            var soapFault = SOAPFactory.newInstance(soap12 ? SOAPConstants.SOAP_1_2_PROTOCOL : SOAPConstants.SOAP_1_1_PROTOCOL)
+                    .createFault(fault.getReason(), fault.getFaultCode());
+            if (soap12 && fault.getSubCodes() != null) {
+                for (var subCode : fault.getSubCodes()) {
+                    soapFault.appendFaultSubcode(subCode);
+                }
+            }
+            if (fault.getRole() != null) {
+                soapFault.setFaultActor(fault.getRole());
+            }
+            if (fault.hasDetails()) {
+                var detail = soapFault.addDetail();
+                for (var node = fault.getDetail().getFirstChild(); node != null; node = node.getNextSibling()) {
+                    detail.appendChild(detail.getOwnerDocument().importNode(node, true));
+                }
+            }
+            return soapFault;
+        }
+    }
 }
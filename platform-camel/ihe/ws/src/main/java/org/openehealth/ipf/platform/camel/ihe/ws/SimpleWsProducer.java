@@ -15,6 +15,7 @@
  */
 package org.openehealth.ipf.platform.camel.ihe.ws;
 
+import org.apache.cxf.endpoint.ClientCallback;
 import org.apache.cxf.endpoint.ClientImpl;
 import org.apache.cxf.frontend.ClientProxy;
 import org.openehealth.ipf.commons.ihe.ws.JaxWsClientFactory;
@@ -70,4 +71,12 @@ public class SimpleWsProducer<
         var result = client.invoke(operationName, request);
         return (result != null) ? (OutType) result[0] : null;
     }
+
+
+    @Override
+    protected boolean callServiceAsync(Object clientObject, InType request, ClientCallback callback) throws Exception {
+        var client = (ClientImpl) ClientProxy.getClient(clientObject);
+        client.invoke(callback, operationName, request);
+        return true;
+    }
 }